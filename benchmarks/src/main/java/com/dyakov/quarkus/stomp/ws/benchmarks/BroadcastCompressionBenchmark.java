@@ -0,0 +1,104 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.compression.PerMessageDeflate;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsBroadcastFrame;
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.utils.Headers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU against bytes on the wire for one topic broadcast to its SockJS subscribers: {@code plain} sends the escaped
+ * messages as they are, {@code perSubscriber} deflates every subscriber's message like the Netty encoder does for a
+ * peer without context takeover, and {@code precompressed} deflates the shared parts once and splices in the
+ * subscriber headers. The {@code bytes} counter divided by {@code messages} is the average size on the wire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastCompressionBenchmark {
+
+    @Param({"100"})
+    int subscribers;
+
+    @Param({SockJsPayloads.ASCII, SockJsPayloads.ESCAPING, SockJsPayloads.LARGE})
+    String profile;
+
+    @Param({"1", "6"})
+    int level;
+
+    private Frame frame;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Wire {
+        public long bytes;
+        public long messages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            messages = 0;
+        }
+
+        void sent(ByteBuf message) {
+            bytes += message.readableBytes();
+            messages++;
+            message.release();
+        }
+    }
+
+    @Setup
+    public void setup() {
+        frame = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, "/channels/quotes",
+                Frame.CONTENT_TYPE, "application/json"), Buffer.buffer(SockJsPayloads.body(profile)));
+    }
+
+    @Benchmark
+    public void plain(Wire wire) {
+        SockJsBroadcastFrame broadcast = SockJsBroadcastFrame.create(frame);
+        try {
+            for (int i = 0; i < subscribers; i++) {
+                wire.sent(broadcast.encodeFor("sub-0", "message-" + i, false, false));
+            }
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    @Benchmark
+    public void perSubscriber(Wire wire) {
+        SockJsBroadcastFrame broadcast = SockJsBroadcastFrame.create(frame);
+        try {
+            for (int i = 0; i < subscribers; i++) {
+                ByteBuf message = broadcast.encodeFor("sub-0", "message-" + i, false, false);
+                try {
+                    wire.sent(PerMessageDeflate.deflate(message, level));
+                } finally {
+                    message.release();
+                }
+            }
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    @Benchmark
+    public void precompressed(Wire wire) {
+        SockJsBroadcastFrame broadcast = SockJsBroadcastFrame.create(frame);
+        try {
+            for (int i = 0; i < subscribers; i++) {
+                wire.sent(broadcast.deflateFor("sub-0", "message-" + i, false, false, level));
+            }
+        } finally {
+            broadcast.release();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.cluster.ClusterRelay;
+import com.dyakov.quarkus.stomp.ws.runtime.cluster.ClusteredDestination;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.utils.Headers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Frames/sec relayed from one node to the subscribers of the other nodes through {@link ClusterRelay}. The nodes
+ * share the event bus of one Vert.x instance, so this measures the relay and batching overhead, not the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterFanOutBenchmark {
+
+    static final int BURST = 256;
+    static final String TOPIC = "/cluster/ticks";
+
+    @Param({"2", "4", "8"})
+    int nodes;
+
+    @Param({"1", "256"})
+    int batchMaxFrames;
+
+    private Vertx vertx;
+    private ClusterRelay publisher;
+    private Frame frame;
+    private final AtomicReference<CountDownLatch> received = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        publisher = new ClusterRelay(vertx, "bench.cluster", 0, batchMaxFrames).start();
+        List<ClusterRelay> subscribers = new ArrayList<>();
+        for (int i = 1; i < nodes; i++) {
+            ClusterRelay node = new ClusterRelay(vertx, "bench.cluster", 0, batchMaxFrames).start();
+            node.addInterest(new CountingDestination());
+            subscribers.add(node);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (publisher.interestedNodes(TOPIC).size() < subscribers.size()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Interest in " + TOPIC + " was not propagated");
+            }
+            Thread.sleep(10);
+        }
+        frame = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, TOPIC),
+                Buffer.buffer("{\"symbol\":\"AAPL\",\"bid\":151.25,\"ask\":151.27,\"ts\":1665000000000}"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SockJsCoalescingBenchmark.await(vertx.close().toCompletionStage());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void fanOut() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(BURST * (nodes - 1));
+        received.set(latch);
+        for (int i = 0; i < BURST; i++) {
+            publisher.publish(TOPIC, frame);
+        }
+        publisher.flush();
+        if (!latch.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Burst was not delivered");
+        }
+    }
+
+    private class CountingDestination implements ClusteredDestination {
+
+        @Override
+        public String destination() {
+            return TOPIC;
+        }
+
+        @Override
+        public void deliver(Frame frame) {
+            CountDownLatch latch = received.get();
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+}
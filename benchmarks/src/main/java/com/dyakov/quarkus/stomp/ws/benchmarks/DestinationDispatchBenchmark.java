@@ -0,0 +1,85 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BroadcastTopic;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompServer;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompWebSocketConnectionImpl;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatch of one SEND frame to the SockJS subscribers of a destination, from the destination down to the encoded
+ * WebSocket frame. {@code topic} is the {@link BroadcastTopic} used by the extension, {@code vertx-topic} the
+ * Vert.x topic it replaced and {@code queue} the Vert.x queue, which delivers to a single subscriber.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DestinationDispatchBenchmark {
+
+    static final String DESTINATION = "/channels/quotes";
+
+    @Param({"1", "100", "1000", "10000"})
+    int subscribers;
+
+    @Param({"topic", "vertx-topic", "queue"})
+    String destinationType;
+
+    @Param({SockJsPayloads.ASCII, SockJsPayloads.ESCAPING, SockJsPayloads.LARGE})
+    String profile;
+
+    private Vertx vertx;
+    private Destination destination;
+    private Frame frame;
+    private final LongAdder writtenFrames = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        vertx = Vertx.vertx();
+        switch (destinationType) {
+            case "topic":
+                destination = new BroadcastTopic(DESTINATION);
+                break;
+            case "vertx-topic":
+                destination = Destination.topic(vertx, DESTINATION);
+                break;
+            default:
+                destination = Destination.queue(vertx, DESTINATION);
+                break;
+        }
+        StompServer server = new SockJsStompServer(vertx, new StompServerOptions()
+                .setPort(-1)
+                .setWebsocketBridge(true));
+        StompConnectionOptions connectionOptions = new StompConnectionOptions();
+        for (int i = 0; i < subscribers; i++) {
+            StompServerConnection connection = new SockJsStompWebSocketConnectionImpl(
+                    NullWebSocket.create(writtenFrames), server, null, vertx, connectionOptions, new WriteQueueStats(),
+                    StompMetrics.NOOP);
+            destination.subscribe(connection, new Frame(Command.SUBSCRIBE,
+                    Headers.create(Frame.ID, "sub-" + i, Frame.DESTINATION, DESTINATION), null));
+        }
+        frame = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, DESTINATION,
+                Frame.CONTENT_TYPE, "application/json"), Buffer.buffer(SockJsPayloads.body(profile)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SockJsCoalescingBenchmark.await(vertx.close().toCompletionStage());
+    }
+
+    @Benchmark
+    public Destination dispatch() {
+        return destination.dispatch(null, frame);
+    }
+}
@@ -0,0 +1,71 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.DestinationProvider;
+import com.dyakov.quarkus.stomp.ws.runtime.routing.DestinationIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Destination name to provider resolution: the {@link DestinationIndex} trie, with and without its memo cache,
+ * against the linear stream scan it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DestinationRoutingBenchmark {
+
+    static final int NAMES = 1024;
+
+    @Param({"10", "100", "1000"})
+    int providers;
+
+    private List<DestinationProvider> destinationProviders;
+    private DestinationIndex cached;
+    private DestinationIndex uncached;
+    private String[] names;
+    private int next;
+
+    @Setup
+    public void setup() {
+        destinationProviders = new ArrayList<>(providers);
+        for (int i = 0; i < providers; i++) {
+            destinationProviders.add(new TopicDestinationProvider("/app/channel-" + i + "/"));
+        }
+        cached = new DestinationIndex(destinationProviders, NAMES);
+        uncached = new DestinationIndex(destinationProviders, 0);
+        names = new String[NAMES];
+        for (int i = 0; i < NAMES; i++) {
+            names[i] = "/app/channel-" + (i * 7919 % providers) + "/user-" + i;
+        }
+    }
+
+    @Benchmark
+    public DestinationProvider linear() {
+        String name = nextName();
+        Optional<DestinationProvider> provider = destinationProviders.stream()
+                .filter(destinationProvider -> name.startsWith(destinationProvider.getDestinationPath()))
+                .findFirst();
+        return provider.orElse(null);
+    }
+
+    @Benchmark
+    public DestinationProvider indexed() {
+        return uncached.resolve(nextName());
+    }
+
+    @Benchmark
+    public DestinationProvider indexedCached() {
+        return cached.resolve(nextName());
+    }
+
+    private String nextName() {
+        return names[next++ & (NAMES - 1)];
+    }
+}
@@ -0,0 +1,80 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.DurableQueue;
+import com.dyakov.quarkus.stomp.ws.runtime.journal.Journal;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompServer;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompWebSocketConnectionImpl;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of a DURABLE_QUEUE dispatch to an {@code auto} SockJS subscriber: the frame is journaled, delivered
+ * and acknowledged, while the journal is forced to disk every {@code syncIntervalMillis} on its own thread. The
+ * journal is in a temporary directory, run it on the disk the application uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DurableQueueBenchmark {
+
+    static final String DESTINATION = "/queues/orders";
+
+    @Param({"1", "10"})
+    long syncIntervalMillis;
+
+    private Vertx vertx;
+    private Path directory;
+    private Journal journal;
+    private Destination queue;
+    private Frame frame;
+    private final LongAdder writtenFrames = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        vertx = Vertx.vertx();
+        directory = Files.createTempDirectory("stomp-journal");
+        journal = Journal.open(directory, 64 * 1024 * 1024, syncIntervalMillis);
+        queue = new DurableQueue(DESTINATION, journal);
+        StompServer server = new SockJsStompServer(vertx, new StompServerOptions()
+                .setPort(-1)
+                .setWebsocketBridge(true));
+        StompServerConnection connection = new SockJsStompWebSocketConnectionImpl(
+                NullWebSocket.create(writtenFrames), server, null, vertx, new StompConnectionOptions(),
+                new WriteQueueStats(), StompMetrics.NOOP);
+        queue.subscribe(connection, new Frame(Command.SUBSCRIBE,
+                Headers.create(Frame.ID, "sub-0", Frame.DESTINATION, DESTINATION), null));
+        frame = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, DESTINATION,
+                Frame.CONTENT_TYPE, "application/json"), Buffer.buffer(SockJsPayloads.body(SockJsPayloads.ASCII)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        journal.close();
+        SockJsCoalescingBenchmark.await(vertx.close().toCompletionStage());
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Destination dispatch() {
+        return queue.dispatch(null, frame);
+    }
+}
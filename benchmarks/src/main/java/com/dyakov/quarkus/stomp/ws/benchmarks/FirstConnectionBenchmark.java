@@ -0,0 +1,85 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.DestinationProvider;
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BroadcastTopic;
+import com.dyakov.quarkus.stomp.ws.runtime.handlers.IndexedStompServerHandler;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.routing.DestinationIndex;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompServer;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.WebSocket;
+import io.vertx.ext.stomp.StompServer;
+import io.vertx.ext.stomp.StompServerHandler;
+import io.vertx.ext.stomp.StompServerOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from a cold JVM to the first subscription: the STOMP server is started the way {@code StompServerRecorder}
+ * does at runtime init, from destination providers discovered at build time, then a SockJS client CONNECTs and
+ * SUBSCRIBEs until the RECEIPT. Every fork measures one cold start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class FirstConnectionBenchmark {
+
+    static final String PATH = "/stomp";
+
+    @Param({"10", "1000"})
+    int providers;
+
+    private Vertx vertx;
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        SockJsCoalescingBenchmark.await(vertx.close().toCompletionStage());
+    }
+
+    @Benchmark
+    public String firstSubscription() throws Exception {
+        vertx = Vertx.vertx();
+        List<DestinationProvider> discovered = new ArrayList<>(providers);
+        for (int i = 0; i < providers; i++) {
+            discovered.add(new TopicDestinationProvider("/channels/" + i));
+        }
+        DestinationIndex index = new DestinationIndex(discovered, 10_000);
+        StompServerHandler handler = new IndexedStompServerHandler(vertx, index)
+                .destinationFactory((v, name) -> index.resolve(name) == null ? null : new BroadcastTopic(name));
+        StompServer stompServer = new SockJsStompServer(vertx, new StompServerOptions()
+                .setPort(-1)
+                .setWebsocketBridge(true)
+                .setWebsocketPath(PATH), new StompConnectionOptions(), StompMetrics.NOOP, new WriteQueueStats())
+                .handler(handler);
+        HttpServer httpServer = vertx.createHttpServer().webSocketHandler(stompServer.webSocketHandler());
+        int port = SockJsCoalescingBenchmark.await(httpServer.listen(0).toCompletionStage()).actualPort();
+
+        CompletableFuture<String> receipt = new CompletableFuture<>();
+        WebSocket socket = SockJsCoalescingBenchmark.await(vertx.createHttpClient(new HttpClientOptions()
+                .setDefaultPort(port))
+                .webSocket(PATH + "/000/first/websocket")
+                .toCompletionStage());
+        socket.textMessageHandler(message -> {
+            if ("o".equals(message)) {
+                socket.writeTextMessage(SockJsPayloads.connect());
+            } else if (message.contains("CONNECTED")) {
+                socket.writeTextMessage("[\"SUBSCRIBE\\nid:0\\ndestination:/channels/" + (providers - 1)
+                        + "/quotes\\nreceipt:first\\n\\n\\u0000\"]");
+            } else if (message.contains("RECEIPT")) {
+                receipt.complete(message);
+            }
+        });
+        return receipt.get(30, TimeUnit.SECONDS);
+    }
+}
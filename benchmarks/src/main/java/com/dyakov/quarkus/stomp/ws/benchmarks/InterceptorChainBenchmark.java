@@ -0,0 +1,95 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BroadcastTopic;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.MessageInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SendInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompServer;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompWebSocketConnectionImpl;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cost of the SEND and MESSAGE interceptor chains on the dispatch of a frame to the SockJS subscribers of a topic.
+ * With {@code 0} interceptors the chains are {@code null} like when no bean is discovered, {@code 1} is a single
+ * interceptor called directly and more are called in turn. The interceptors let every frame through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterceptorChainBenchmark {
+
+    static final String DESTINATION = "/channels/quotes";
+
+    @Param({"0", "1", "4"})
+    int interceptors;
+
+    @Param({"100"})
+    int subscribers;
+
+    private Vertx vertx;
+    private SendInterceptor sendInterceptor;
+    private Destination destination;
+    private Frame frame;
+    private final LongAdder writtenFrames = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        vertx = Vertx.vertx();
+        List<SendInterceptor> send = new ArrayList<>();
+        List<MessageInterceptor> message = new ArrayList<>();
+        for (int i = 0; i < interceptors; i++) {
+            String header = "x-checked-" + i;
+            send.add((sent, connection) -> sent.getHeader(header) == null ? sent : null);
+            message.add((sent, subscriber) -> sent.getHeader(header) == null);
+        }
+        sendInterceptor = SendInterceptor.chain(send);
+        destination = new BroadcastTopic(DESTINATION, MessageInterceptor.chain(message));
+        StompServer server = new SockJsStompServer(vertx, new StompServerOptions()
+                .setPort(-1)
+                .setWebsocketBridge(true));
+        StompConnectionOptions connectionOptions = new StompConnectionOptions();
+        for (int i = 0; i < subscribers; i++) {
+            StompServerConnection connection = new SockJsStompWebSocketConnectionImpl(
+                    NullWebSocket.create(writtenFrames), server, null, vertx, connectionOptions, new WriteQueueStats(),
+                    StompMetrics.NOOP);
+            destination.subscribe(connection, new Frame(Command.SUBSCRIBE,
+                    Headers.create(Frame.ID, "sub-" + i, Frame.DESTINATION, DESTINATION), null));
+        }
+        frame = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, DESTINATION,
+                Frame.CONTENT_TYPE, "application/json"), Buffer.buffer(SockJsPayloads.body(SockJsPayloads.ASCII)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SockJsCoalescingBenchmark.await(vertx.close().toCompletionStage());
+    }
+
+    /**
+     * The path of a SEND frame through {@code IndexedStompServerHandler}: the SEND chain, then the dispatch.
+     */
+    @Benchmark
+    public Destination send() {
+        Frame sent = frame;
+        if (sendInterceptor != null) {
+            sent = sendInterceptor.onSend(sent, null);
+            if (sent == null) {
+                return null;
+            }
+        }
+        return destination.dispatch(null, sent);
+    }
+}
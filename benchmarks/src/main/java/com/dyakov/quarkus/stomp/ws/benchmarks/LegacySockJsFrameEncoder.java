@@ -0,0 +1,52 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * The String based outbound encoding SockJsStompWebSocketConnectionImpl used before the pooled
+ * SockJsFrameEncoder, kept as the baseline of the encoder benchmark.
+ */
+final class LegacySockJsFrameEncoder {
+
+    private LegacySockJsFrameEncoder() {
+    }
+
+    static String encode(String... messages) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("a[");
+        for (int i = 0; i < messages.length; i++) {
+            sb.append('"');
+            char[] quotedChars = JsonStringEncoder.getInstance().quoteAsString(messages[i]);
+            sb.append(escapeSockJsSpecialChars(quotedChars));
+            sb.append('"');
+            if (i < messages.length - 1) {
+                sb.append(',');
+            }
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    private static boolean isSockJsSpecialChar(char ch) {
+        return (ch <= '\u001F') || (ch >= '\u200C' && ch <= '\u200F') ||
+                (ch >= '\u2028' && ch <= '\u202F') || (ch >= '\u2060' && ch <= '\u206F') ||
+                (ch >= '\uFFF0') || (ch >= '\uD800' && ch <= '\uDFFF');
+    }
+
+    private static String escapeSockJsSpecialChars(char[] characters) {
+        StringBuilder result = new StringBuilder();
+        for (char c : characters) {
+            if (isSockJsSpecialChar(c)) {
+                result.append('\\').append('u');
+                String hex = Integer.toHexString(c).toLowerCase();
+                for (int i = 0; i < (4 - hex.length()); i++) {
+                    result.append('0');
+                }
+                result.append(hex);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
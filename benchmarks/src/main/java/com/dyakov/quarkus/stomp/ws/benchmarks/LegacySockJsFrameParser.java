@@ -0,0 +1,29 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.StompServerOptions;
+import io.vertx.ext.stomp.impl.FrameParser;
+
+/** The SockJS parser as it was before the streaming decoder, kept as a baseline for comparison **/
+public class LegacySockJsFrameParser extends FrameParser {
+
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    public LegacySockJsFrameParser(StompServerOptions options) {
+        super(options);
+    }
+
+    @Override
+    public synchronized void handle(Buffer event) {
+        String[] strings;
+        try {
+            strings = objectMapper.readValue(event.toString(), String[].class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+        Buffer buffer = Buffer.buffer(strings[0]);
+        super.handle(buffer);
+    }
+}
@@ -0,0 +1,278 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BroadcastTopic;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompServer;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.WebSocket;
+import io.vertx.ext.stomp.StompServer;
+import io.vertx.ext.stomp.StompServerHandler;
+import io.vertx.ext.stomp.StompServerOptions;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives simulated stomp.js clients over SockJS WebSockets on loopback, with the envelopes of
+ * {@code StompJsServerTest}: every client CONNECTs and SUBSCRIBEs to one destination, then a publisher SENDs
+ * timestamped messages to it at a fixed rate.
+ * <p>
+ * Reports the connection ramp rate, the publish to receive latency percentiles, the heap used per connection and
+ * the delivered messages per second. Without {@code --port} an embedded SockJS STOMP server is started in the same
+ * JVM, so the heap figure then covers both ends of every connection.
+ * <pre>
+ * java -cp benchmarks.jar com.dyakov.quarkus.stomp.ws.benchmarks.LoadGenerator \
+ *     [--host localhost] [--port 8080] [--path /stomp] [--destination /channels/load] \
+ *     [--clients 10000] [--ramp 2000] [--rate 100] [--duration 60] [--report load-report.txt]
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private final String host;
+    private final int port;
+    private final String path;
+    private final String destination;
+    private final int clients;
+    private final int rampPerSecond;
+    private final int ratePerSecond;
+    private final int durationSeconds;
+    private final String reportFile;
+
+    private final Recorder latency = new Recorder(TimeUnit.SECONDS.toMicros(60), 3);
+    private final LongAdder received = new LongAdder();
+    private final AtomicInteger failedConnections = new AtomicInteger();
+
+    private LoadGenerator(String[] args) {
+        String host = "localhost";
+        int port = 0;
+        String path = "/stomp";
+        String destination = "/channels/load";
+        int clients = 10_000;
+        int ramp = 2_000;
+        int rate = 100;
+        int duration = 60;
+        String report = "load-report.txt";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host":
+                    host = value;
+                    break;
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--path":
+                    path = value;
+                    break;
+                case "--destination":
+                    destination = value;
+                    break;
+                case "--clients":
+                    clients = Integer.parseInt(value);
+                    break;
+                case "--ramp":
+                    ramp = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    rate = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    duration = Integer.parseInt(value);
+                    break;
+                case "--report":
+                    report = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.destination = destination;
+        this.clients = clients;
+        this.rampPerSecond = ramp;
+        this.ratePerSecond = rate;
+        this.durationSeconds = duration;
+        this.reportFile = report;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(args).run();
+    }
+
+    private void run() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try {
+            long heapBefore = usedHeap();
+            int targetPort = port > 0 ? port : startEmbeddedServer(vertx);
+            HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+                    .setDefaultHost(host)
+                    .setDefaultPort(targetPort)
+                    .setMaxWebSockets(clients + 1));
+
+            CountDownLatch subscribed = new CountDownLatch(clients);
+            long rampStart = System.nanoTime();
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rampPerSecond);
+            for (int i = 0; i < clients; i++) {
+                long due = rampStart + i * intervalNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                subscriber(client, i, subscribed);
+            }
+            long rampTimeout = Math.max(60, clients / Math.max(1, rampPerSecond) * 2L);
+            boolean complete = subscribed.await(rampTimeout, TimeUnit.SECONDS);
+            double rampSeconds = (System.nanoTime() - rampStart) / 1e9;
+            long connected = clients - subscribed.getCount();
+            long heapPerConnection = connected == 0 ? 0 : (usedHeap() - heapBefore) / connected;
+            if (!complete) {
+                System.err.printf("Only %d of %d clients subscribed within %d s%n", connected, clients, rampTimeout);
+            }
+
+            WebSocket publisher = publisher(client);
+            latency.reset();
+            received.reset();
+            AtomicLong sent = new AtomicLong();
+            long publishStart = System.nanoTime();
+            long timer = vertx.setPeriodic(1, id -> {
+                long due = (System.nanoTime() - publishStart) * ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+                while (sent.get() < due) {
+                    sent.incrementAndGet();
+                    publisher.writeTextMessage(SockJsPayloads.send(destination, "@" + System.nanoTime() + "@"));
+                }
+            });
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            vertx.cancelTimer(timer);
+            double publishSeconds = (System.nanoTime() - publishStart) / 1e9;
+            // let the messages in flight arrive
+            TimeUnit.SECONDS.sleep(1);
+
+            report(rampSeconds, connected, heapPerConnection, sent.get(), publishSeconds, latency.getIntervalHistogram());
+        } finally {
+            vertx.close().toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private void subscriber(HttpClient client, int index, CountDownLatch subscribed) {
+        String receipt = "sub-" + index;
+        client.webSocket(sessionPath("load-" + index)).onComplete(ar -> {
+            if (ar.failed()) {
+                failedConnections.incrementAndGet();
+                return;
+            }
+            WebSocket socket = ar.result();
+            socket.textMessageHandler(message -> {
+                if ("o".equals(message)) {
+                    socket.writeTextMessage(SockJsPayloads.connect());
+                } else if (message.contains("CONNECTED")) {
+                    socket.writeTextMessage("[\"SUBSCRIBE\\nid:" + index + "\\ndestination:" + destination
+                            + "\\nreceipt:" + receipt + "\\n\\n\\u0000\"]");
+                } else if (message.contains("RECEIPT") && message.contains(receipt)) {
+                    subscribed.countDown();
+                } else {
+                    recordLatencies(message);
+                }
+            });
+        });
+    }
+
+    private WebSocket publisher(HttpClient client) throws Exception {
+        CountDownLatch connected = new CountDownLatch(1);
+        WebSocket socket = SockJsCoalescingBenchmark.await(client.webSocket(sessionPath("load-publisher"))
+                .toCompletionStage());
+        socket.textMessageHandler(message -> {
+            if ("o".equals(message)) {
+                socket.writeTextMessage(SockJsPayloads.connect());
+            } else if (message.contains("CONNECTED")) {
+                connected.countDown();
+            }
+        });
+        if (!connected.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Publisher could not connect");
+        }
+        return socket;
+    }
+
+    /**
+     * Records the latency of every {@code @<nanoTime>@} body in a SockJS message, which may hold several frames.
+     */
+    private void recordLatencies(String message) {
+        long now = System.nanoTime();
+        int start = message.indexOf('@');
+        while (start >= 0) {
+            int end = message.indexOf('@', start + 1);
+            if (end < 0) {
+                return;
+            }
+            long sentAt = Long.parseLong(message, start + 1, end, 10);
+            latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(now - sentAt), TimeUnit.SECONDS.toMicros(60)));
+            received.increment();
+            start = message.indexOf('@', end + 1);
+        }
+    }
+
+    private int startEmbeddedServer(Vertx vertx) throws Exception {
+        StompServerHandler handler = StompServerHandler.create(vertx)
+                .destinationFactory((v, name) -> new BroadcastTopic(name));
+        StompServer stompServer = new SockJsStompServer(vertx, new StompServerOptions()
+                .setPort(-1)
+                .setWebsocketBridge(true)
+                .setWebsocketPath(path), new StompConnectionOptions(), StompMetrics.NOOP, new WriteQueueStats())
+                .handler(handler);
+        HttpServer httpServer = vertx.createHttpServer().webSocketHandler(stompServer.webSocketHandler());
+        return SockJsCoalescingBenchmark.await(httpServer.listen(0).toCompletionStage()).actualPort();
+    }
+
+    private String sessionPath(String session) {
+        return path + "/000/" + session + "/websocket";
+    }
+
+    private void report(double rampSeconds, long connected, long heapPerConnection, long sent, double publishSeconds,
+                        Histogram histogram) throws IOException {
+        StringBuilder report = new StringBuilder()
+                .append("STOMP SockJS load report\n")
+                .append(String.format("target                 %s%n", port > 0 ? host + ":" + port : "embedded server"))
+                .append(String.format("clients                %d requested, %d subscribed, %d failed%n",
+                        clients, connected, failedConnections.get()))
+                .append(String.format("connection ramp        %.1f s, %.0f connections/s%n",
+                        rampSeconds, connected / rampSeconds))
+                .append(String.format("heap per connection    %d bytes%s%n", heapPerConnection,
+                        port > 0 ? " (client side)" : " (client and server side)"))
+                .append(String.format("published              %d messages in %.1f s, %.0f/s%n",
+                        sent, publishSeconds, sent / publishSeconds))
+                .append(String.format("delivered              %d messages, %.0f/s (expected %d)%n",
+                        received.sum(), received.sum() / publishSeconds, sent * connected))
+                .append("latency (ms)\n");
+        for (double percentile : new double[]{50, 90, 99, 99.9, 99.99}) {
+            report.append(String.format("  p%-6s              %.3f%n", percentile,
+                    histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        report.append(String.format("  max                  %.3f%n", histogram.getMaxValue() / 1000.0));
+        System.out.print(report);
+        Files.write(Paths.get(reportFile), report.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,76 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import io.netty.util.ReferenceCountUtil;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.impl.ws.WebSocketFrameImpl;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ServerWebSocket} which counts and discards what is written to it, so that dispatch can be measured
+ * with real connection objects but without the network.
+ */
+final class NullWebSocket {
+
+    private NullWebSocket() {
+    }
+
+    static ServerWebSocket create(LongAdder writtenFrames) {
+        return (ServerWebSocket) Proxy.newProxyInstance(NullWebSocket.class.getClassLoader(),
+                new Class<?>[]{ServerWebSocket.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "writeFrame":
+                            writtenFrames.increment();
+                            ReferenceCountUtil.release(((WebSocketFrameImpl) args[0]).getBinaryData());
+                            return written(method, args, proxy);
+                        case "writeTextMessage":
+                            writtenFrames.increment();
+                            return written(method, args, proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "NullWebSocket@" + Integer.toHexString(System.identityHashCode(proxy));
+                        default:
+                            return defaultValue(method.getReturnType(), proxy);
+                    }
+                });
+    }
+
+    /**
+     * @return a succeeded future for the write methods returning one, the web socket for the ones taking a
+     * completion handler, which is called right away
+     */
+    @SuppressWarnings("unchecked")
+    private static Object written(Method method, Object[] args, Object proxy) {
+        if (args.length > 1 && args[args.length - 1] instanceof Handler) {
+            ((Handler<AsyncResult<Void>>) args[args.length - 1]).handle(Future.succeededFuture());
+        }
+        return defaultValue(method.getReturnType(), proxy);
+    }
+
+    private static Object defaultValue(Class<?> type, Object proxy) {
+        if (type.isInstance(proxy)) {
+            return proxy;
+        } else if (type == Future.class) {
+            return Future.succeededFuture();
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,78 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.AckQueue;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompServer;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompWebSocketConnectionImpl;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A QUEUE consumer keeping {@code inFlight} frames unacknowledged: each operation dispatches a frame to a
+ * {@code client-individual} SockJS subscriber and ACKs the oldest one. {@code queue} is the {@link AckQueue} used by
+ * the extension, {@code vertx-queue} the Vert.x queue it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueueAckBenchmark {
+
+    static final String DESTINATION = "/queues/orders";
+
+    @Param({"queue", "vertx-queue"})
+    String destinationType;
+
+    @Param({"1", "100", "1000"})
+    int inFlight;
+
+    private Vertx vertx;
+    private Destination queue;
+    private StompServerConnection connection;
+    private Frame frame;
+    private final ArrayDeque<Frame> acks = new ArrayDeque<>();
+    private final LongAdder writtenFrames = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        vertx = Vertx.vertx();
+        queue = "queue".equals(destinationType) ? new AckQueue(DESTINATION) : Destination.queue(vertx, DESTINATION);
+        StompServer server = new SockJsStompServer(vertx, new StompServerOptions()
+                .setPort(-1)
+                .setWebsocketBridge(true))
+                .handler(StompServerHandler.create(vertx));
+        connection = new SockJsStompWebSocketConnectionImpl(NullWebSocket.create(writtenFrames), server,
+                written -> acks.add(new Frame(Command.ACK,
+                        Headers.create(Frame.ID, written.frame().getHeader(Frame.ACK)), null)),
+                vertx, new StompConnectionOptions(), new WriteQueueStats(), StompMetrics.NOOP);
+        queue.subscribe(connection, new Frame(Command.SUBSCRIBE, Headers.create(Frame.ID, "sub-0",
+                Frame.DESTINATION, DESTINATION, Frame.ACK, "client-individual"), null));
+        frame = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, DESTINATION,
+                Frame.CONTENT_TYPE, "application/json"), Buffer.buffer(SockJsPayloads.body(SockJsPayloads.ASCII)));
+        for (int i = 0; i < inFlight; i++) {
+            queue.dispatch(null, frame);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SockJsCoalescingBenchmark.await(vertx.close().toCompletionStage());
+    }
+
+    @Benchmark
+    public boolean dispatchAndAck() {
+        queue.dispatch(null, frame);
+        return queue.ack(connection, acks.poll());
+    }
+}
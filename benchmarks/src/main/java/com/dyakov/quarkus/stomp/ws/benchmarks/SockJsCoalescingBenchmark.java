@@ -0,0 +1,108 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BroadcastTopic;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompServer;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.WebSocket;
+import io.vertx.ext.stomp.*;
+import io.vertx.ext.stomp.utils.Headers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages/sec and per message latency percentiles of a topic burst delivered to one SockJS client over loopback,
+ * with outbound coalescing on and off. Throughput is reported per message, the sample mode gives p50..p99.99.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SockJsCoalescingBenchmark {
+
+    static final int BURST = 64;
+    static final String TOPIC = "/topic/ticks";
+
+    @Param({"false", "true"})
+    boolean coalescing;
+
+    private Vertx vertx;
+    private WebSocket client;
+    private Destination destination;
+    private Frame frame;
+    private volatile CountDownLatch received;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        vertx = Vertx.vertx();
+        StompConnectionOptions connectionOptions = new StompConnectionOptions();
+        connectionOptions.setCoalescingEnabled(coalescing);
+        StompServerHandler handler = StompServerHandler.create(vertx)
+                .destinationFactory((v, name) -> new BroadcastTopic(name));
+        StompServer stompServer = new SockJsStompServer(vertx, new StompServerOptions()
+                .setPort(-1)
+                .setWebsocketBridge(true)
+                .setWebsocketPath("/stomp"), connectionOptions, StompMetrics.NOOP, new WriteQueueStats())
+                .handler(handler);
+        HttpServer httpServer = vertx.createHttpServer().webSocketHandler(stompServer.webSocketHandler());
+        int port = await(httpServer.listen(0).toCompletionStage()).actualPort();
+
+        client = await(vertx.createHttpClient().webSocket(port, "localhost", "/stomp/000/bench/websocket")
+                .toCompletionStage());
+        client.textMessageHandler(this::onMessage);
+        client.writeTextMessage(SockJsPayloads.connect());
+        client.writeTextMessage(SockJsPayloads.subscribe("sub-0", TOPIC));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((destination = handler.getDestination(TOPIC)) == null || destination.numberOfSubscriptions() == 0) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Subscription to " + TOPIC + " was not registered");
+            }
+            Thread.sleep(10);
+        }
+        frame = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, TOPIC),
+                Buffer.buffer("{\"symbol\":\"AAPL\",\"bid\":151.25,\"ask\":151.27,\"ts\":1665000000000}"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        await(vertx.close().toCompletionStage());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(BURST);
+        received = latch;
+        for (int i = 0; i < BURST; i++) {
+            destination.dispatch(null, frame);
+        }
+        if (!latch.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Burst was not delivered");
+        }
+    }
+
+    private void onMessage(String message) {
+        CountDownLatch latch = received;
+        if (latch == null) {
+            return;
+        }
+        int index = 0;
+        while ((index = message.indexOf("\"MESSAGE", index)) >= 0) {
+            latch.countDown();
+            index++;
+        }
+    }
+
+    static <T> T await(CompletionStage<T> stage) throws Exception {
+        return stage.toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+}
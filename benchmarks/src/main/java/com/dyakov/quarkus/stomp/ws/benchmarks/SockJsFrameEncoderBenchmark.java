@@ -0,0 +1,49 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsFrameEncoder;
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound SockJS encoding of a MESSAGE frame: the pooled single pass {@link SockJsFrameEncoder} against the
+ * String based {@link LegacySockJsFrameEncoder}. Run with {@code -prof gc} to see allocations per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SockJsFrameEncoderBenchmark {
+
+    @Param({SockJsPayloads.ASCII, SockJsPayloads.ESCAPING, SockJsPayloads.LARGE})
+    String profile;
+
+    private String text;
+    private Buffer frame;
+
+    @Setup
+    public void setup() {
+        text = SockJsPayloads.messageFrame(profile);
+        frame = Buffer.buffer(text);
+    }
+
+    @Benchmark
+    public int pooled() {
+        ByteBuf message = SockJsFrameEncoder.encode(frame);
+        try {
+            return message.readableBytes();
+        } finally {
+            message.release();
+        }
+    }
+
+    @Benchmark
+    public String legacy() {
+        // the legacy path started from the frame's String form
+        return LegacySockJsFrameEncoder.encode(frame.toString());
+    }
+}
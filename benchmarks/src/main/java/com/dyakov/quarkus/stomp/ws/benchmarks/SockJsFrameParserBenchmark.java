@@ -0,0 +1,55 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsFrameParser;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerOptions;
+import io.vertx.ext.stomp.impl.FrameParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inbound SockJS decoding: the streaming {@link SockJsFrameParser} against the Jackson based
+ * {@link LegacySockJsFrameParser}. Run with {@code -prof gc} to see allocations per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SockJsFrameParserBenchmark {
+
+    @Param({"subscribe", SockJsPayloads.ASCII, SockJsPayloads.ESCAPING, SockJsPayloads.LARGE})
+    String message;
+
+    private Buffer payload;
+    private FrameParser streaming;
+    private FrameParser legacy;
+    private Frame last;
+
+    @Setup
+    public void setup() {
+        StompServerOptions options = new StompServerOptions();
+        if ("subscribe".equals(message)) {
+            payload = Buffer.buffer("[\"SUBSCRIBE\\nid:sub-0\\ndestination:/channels/quotes\\nack:auto\\n\\n\\u0000\"]");
+        } else {
+            payload = Buffer.buffer(SockJsPayloads.sendMessage(message));
+        }
+        streaming = new SockJsFrameParser(options).handler(frame -> last = frame);
+        legacy = new LegacySockJsFrameParser(options).handler(frame -> last = frame);
+    }
+
+    @Benchmark
+    public Frame streaming() {
+        streaming.handle(payload);
+        return last;
+    }
+
+    @Benchmark
+    public Frame legacy() {
+        legacy.handle(payload);
+        return last;
+    }
+}
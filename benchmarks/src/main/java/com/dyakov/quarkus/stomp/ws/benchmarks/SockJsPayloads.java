@@ -0,0 +1,72 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+/**
+ * SockJS client messages as sent by stomp.js, and the message bodies of the payload profiles shared by the
+ * benchmarks.
+ */
+final class SockJsPayloads {
+
+    /** A small JSON quote, nothing to escape beyond the JSON quotes */
+    static final String ASCII = "ascii";
+    /** JSON with nested quotes, backslashes, control characters and the ranges SockJS escapes as unicode */
+    static final String ESCAPING = "escaping";
+    /** A 64 KiB JSON array of quotes */
+    static final String LARGE = "large";
+
+    private SockJsPayloads() {
+    }
+
+    static String connect() {
+        return "[\"CONNECT\\naccept-version:1.0,1.1,2.0\\nhost:localhost\\n\\n\\u0000\"]";
+    }
+
+    static String subscribe(String id, String destination) {
+        return "[\"SUBSCRIBE\\nid:" + id + "\\ndestination:" + destination + "\\n\\n\\u0000\"]";
+    }
+
+    static String send(String destination, String body) {
+        return "[\"SEND\\ndestination:" + destination + "\\n\\n" + body + "\\u0000\"]";
+    }
+
+    static String body(String profile) {
+        switch (profile) {
+            case ASCII:
+                return "{\"symbol\":\"AAPL\",\"bid\":151.25,\"ask\":151.27,\"ts\":1665000000000}";
+            case ESCAPING:
+                StringBuilder escaping = new StringBuilder();
+                for (int i = 0; i < 8; i++) {
+                    escaping.append("{\"path\":\"C:\\\\quotes\\\\").append(i).append("\",\"note\":\"line\\nbreak\\ttab\",")
+                            .append("\"text\":\"\u00e9t\u00e9 \u20ac \u2028 \u200d \ud83d\ude00 \u0001\"}");
+                }
+                return escaping.toString();
+            case LARGE:
+                StringBuilder large = new StringBuilder("[");
+                while (large.length() < 64 * 1024) {
+                    if (large.length() > 1) {
+                        large.append(',');
+                    }
+                    large.append(body(ASCII));
+                }
+                return large.append(']').toString();
+            default:
+                throw new IllegalArgumentException("Unknown payload profile " + profile);
+        }
+    }
+
+    /**
+     * The MESSAGE frame a subscriber receives for a body of {@code profile}.
+     */
+    static String messageFrame(String profile) {
+        return "MESSAGE\ndestination:/channels/quotes\ncontent-type:application/json\nsubscription:sub-0\n"
+                + "message-id:9b5e2c1a-0\n\n" + body(profile) + "\u0000";
+    }
+
+    /**
+     * The SockJS message of a SEND frame with a body of {@code profile}, as a browser encodes it.
+     */
+    static String sendMessage(String profile) {
+        String frame = "SEND\ndestination:/channels/quotes\ncontent-type:application/json\n\n" + body(profile) + "\u0000";
+        // the server's encoding of an a[...] message, minus the frame type, is a valid client message
+        return LegacySockJsFrameEncoder.encode(frame).substring(1);
+    }
+}
@@ -0,0 +1,42 @@
+package com.dyakov.quarkus.stomp.ws.benchmarks;
+
+import com.dyakov.quarkus.stomp.ws.runtime.DestinationProvider;
+import io.vertx.ext.stomp.Destination;
+
+/**
+ * {@link DestinationProvider} of one topic at a fixed path, standing for the discovered provider beans.
+ */
+class TopicDestinationProvider extends DestinationProvider {
+
+    private final String path;
+    private volatile Destination destination;
+
+    TopicDestinationProvider(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public String getDestinationPath() {
+        return path;
+    }
+
+    @Override
+    public void setDestination(Destination destination) {
+        this.destination = destination;
+    }
+
+    @Override
+    public Destination getDestination() {
+        return destination;
+    }
+
+    @Override
+    public DestinationType getDestinationType() {
+        return DestinationType.TOPIC;
+    }
+
+    @Override
+    public boolean isDestinationSetUp() {
+        return destination != null;
+    }
+}
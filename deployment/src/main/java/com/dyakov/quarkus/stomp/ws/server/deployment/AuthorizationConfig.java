@@ -0,0 +1,34 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+import java.time.Duration;
+
+@ConfigGroup
+public class AuthorizationConfig {
+
+    /**
+     * How long the decision for a principal and destination is reused, 0 to ask the interceptor every time
+     */
+    @ConfigItem(defaultValue = "30s")
+    Duration cacheTtl;
+
+    /**
+     * Maximum number of cached decisions before the expired ones, then some others, are evicted
+     */
+    @ConfigItem(defaultValue = "100000")
+    int cacheMaxEntries;
+
+    /**
+     * How long a decision is waited for before the subscription is denied
+     */
+    @ConfigItem(defaultValue = "5s")
+    Duration timeout;
+
+    /**
+     * Call the interceptor on a worker thread, for interceptors which block
+     */
+    @ConfigItem(defaultValue = "false")
+    boolean worker;
+}
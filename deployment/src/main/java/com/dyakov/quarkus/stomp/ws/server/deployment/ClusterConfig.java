@@ -0,0 +1,28 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+import java.time.Duration;
+
+@ConfigGroup
+public class ClusterConfig {
+
+    /**
+     * Event bus address prefix used to relay the frames of CLUSTERED_TOPIC and CLUSTERED_QUEUE destinations
+     */
+    @ConfigItem(defaultValue = "stomp.cluster")
+    String address;
+
+    /**
+     * How long frames relayed to another node are batched, 0 to batch until the end of the current event loop task
+     */
+    @ConfigItem(defaultValue = "0ms")
+    Duration batchWindow;
+
+    /**
+     * Maximum number of frames of a destination sent to a node in one event bus message
+     */
+    @ConfigItem(defaultValue = "256")
+    int batchMaxFrames;
+}
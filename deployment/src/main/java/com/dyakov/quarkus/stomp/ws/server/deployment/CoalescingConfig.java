@@ -0,0 +1,28 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+import java.time.Duration;
+
+@ConfigGroup
+public class CoalescingConfig {
+
+    /**
+     * Batch the frames written to a SockJS connection into one multi element {@code a[...]} message
+     */
+    @ConfigItem(defaultValue = "false")
+    boolean enabled;
+
+    /**
+     * How long frames are collected before the batch is sent, 0 sends at the end of the current event loop turn
+     */
+    @ConfigItem(defaultValue = "0ms")
+    Duration window;
+
+    /**
+     * Size of the encoded batch after which it is sent without waiting for the window to elapse
+     */
+    @ConfigItem(defaultValue = "16384")
+    int maxBytes;
+}
@@ -0,0 +1,45 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+@ConfigGroup
+public class CompressionConfig {
+
+    /**
+     * Negotiate permessage-deflate on the HTTP server, which applies to every WebSocket of the application
+     */
+    @ConfigItem(defaultValue = "false")
+    boolean enabled;
+
+    /**
+     * Deflate compression level, from 1 (fastest) to 9 (smallest)
+     */
+    @ConfigItem(defaultValue = "6")
+    int level;
+
+    /**
+     * Messages of SockJS connections smaller than this many bytes are sent uncompressed
+     */
+    @ConfigItem(defaultValue = "256")
+    int minSize;
+
+    /**
+     * Accept the server_no_context_takeover requested by clients, trading ratio for memory and for precompressed
+     * broadcasts
+     */
+    @ConfigItem(defaultValue = "true")
+    boolean serverNoContextTakeover;
+
+    /**
+     * Ask clients to reset their compression context after every message
+     */
+    @ConfigItem(defaultValue = "false")
+    boolean clientNoContextTakeover;
+
+    /**
+     * Deflate the topic broadcasts once for all the SockJS subscribers which negotiated server_no_context_takeover
+     */
+    @ConfigItem(defaultValue = "false")
+    boolean precompressBroadcast;
+}
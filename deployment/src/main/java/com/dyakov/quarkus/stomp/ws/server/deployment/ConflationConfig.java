@@ -0,0 +1,20 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+@ConfigGroup
+public class ConflationConfig {
+
+    /**
+     * Header whose value is the conflation key of a frame, unless the destination provider names another one
+     */
+    @ConfigItem(defaultValue = "conflation-key")
+    String keyHeader;
+
+    /**
+     * Maximum number of keys per destination whose last frame is replayed to new subscribers
+     */
+    @ConfigItem(defaultValue = "10000")
+    int maxKeys;
+}
@@ -0,0 +1,22 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+import java.time.Duration;
+
+@ConfigGroup
+public class DestinationsConfig {
+
+    /**
+     * Time after which a per-name destination without subscriptions is evicted
+     */
+    @ConfigItem(defaultValue = "60s")
+    Duration idleTimeout;
+
+    /**
+     * Interval of the idle per-name destinations eviction
+     */
+    @ConfigItem(defaultValue = "30s")
+    Duration sweepInterval;
+}
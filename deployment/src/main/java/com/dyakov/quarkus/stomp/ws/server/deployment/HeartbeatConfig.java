@@ -0,0 +1,22 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+import java.time.Duration;
+
+@ConfigGroup
+public class HeartbeatConfig {
+
+    /**
+     * Idle time after which the SockJS {@code h} frame is sent to keep proxies from closing the connection
+     */
+    @ConfigItem(defaultValue = "25s")
+    Duration sockjsInterval;
+
+    /**
+     * Resolution of the heartbeat scheduler shared by the connections of an event loop
+     */
+    @ConfigItem(defaultValue = "1s")
+    Duration tick;
+}
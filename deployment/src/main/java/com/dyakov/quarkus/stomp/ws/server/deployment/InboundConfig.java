@@ -0,0 +1,38 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+@ConfigGroup
+public class InboundConfig {
+
+    /**
+     * Maximum size in bytes of a frame received from a client, command and headers included
+     */
+    @ConfigItem(defaultValue = "16777216")
+    long maxFrameSize;
+
+    /**
+     * Maximum number of headers of a frame received from a client
+     */
+    @ConfigItem(defaultValue = "1000")
+    int maxHeaders;
+
+    /**
+     * Maximum size in bytes of a header line of a frame received from a client
+     */
+    @ConfigItem(defaultValue = "10240")
+    int maxHeaderLength;
+
+    /**
+     * Maximum size in bytes of the body of a frame received from a client
+     */
+    @ConfigItem(defaultValue = "10485760")
+    long maxBodySize;
+
+    /**
+     * Declared body size in bytes above which a SEND body is streamed to the LargeBodySink bean, if there is one
+     */
+    @ConfigItem(defaultValue = "1048576")
+    long streamThreshold;
+}
@@ -0,0 +1,35 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+import java.time.Duration;
+
+@ConfigGroup
+public class JournalConfig {
+
+    /**
+     * Directory holding the journal of every DURABLE_QUEUE destination, in a sub-directory per destination
+     */
+    @ConfigItem(defaultValue = "stomp-journal")
+    String directory;
+
+    /**
+     * Size in bytes of a memory-mapped journal segment, which bounds the size of a journaled frame
+     */
+    @ConfigItem(defaultValue = "67108864")
+    int segmentSize;
+
+    /**
+     * How often the journaled frames and acknowledgements are forced to disk in one batch
+     */
+    @ConfigItem(defaultValue = "10ms")
+    Duration syncInterval;
+
+    /**
+     * Maximum number of DURABLE_QUEUE destinations open at once, each maps a segment and runs a sync thread. A
+     * SUBSCRIBE or SEND to another one is refused until an idle per-name queue is evicted
+     */
+    @ConfigItem(defaultValue = "64")
+    int maxQueues;
+}
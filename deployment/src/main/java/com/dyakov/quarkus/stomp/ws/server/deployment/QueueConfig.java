@@ -0,0 +1,30 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BacklogPolicy;
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+@ConfigGroup
+public class QueueConfig {
+
+    /**
+     * Maximum number of unacknowledged frames of a subscription, unless its SUBSCRIBE frame has a prefetch-count
+     * header, 0 for no limit
+     */
+    @ConfigItem(defaultValue = "0")
+    int prefetchCount;
+
+    /**
+     * Maximum number of frames of a queue waiting for a subscription to have room, when every subscription holds
+     * its prefetch count, 0 for none
+     */
+    @ConfigItem(defaultValue = "10000")
+    int maxBacklog;
+
+    /**
+     * What a full backlog does with the next frame: drop-oldest, drop-newest, or reject, which sends an ERROR frame
+     * to its sender and closes its connection
+     */
+    @ConfigItem(defaultValue = "reject")
+    BacklogPolicy backlogPolicy;
+}
@@ -0,0 +1,14 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+@ConfigGroup
+public class RoutingConfig {
+
+    /**
+     * Maximum number of destination names whose provider lookup is memoized
+     */
+    @ConfigItem(defaultValue = "10000")
+    int cacheSize;
+}
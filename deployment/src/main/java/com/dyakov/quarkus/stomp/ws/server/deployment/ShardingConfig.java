@@ -0,0 +1,21 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+@ConfigGroup
+public class ShardingConfig {
+
+    /**
+     * Run one STOMP server per event loop, see quarkus.vertx.event-loops-pool-size, each holding the connections
+     * and subscriptions of its event loop
+     */
+    @ConfigItem(defaultValue = "false")
+    boolean enabled;
+
+    /**
+     * Maximum number of frames handed over by the other event loops which a shard delivers in one event loop task
+     */
+    @ConfigItem(defaultValue = "256")
+    int drainBatch;
+}
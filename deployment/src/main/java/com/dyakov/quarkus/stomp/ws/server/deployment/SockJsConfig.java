@@ -0,0 +1,42 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigGroup
+public class SockJsConfig {
+
+    /**
+     * Time an xhr session is kept without a pending xhr or xhr_streaming request before it is closed
+     */
+    @ConfigItem(defaultValue = "5s")
+    Duration sessionTimeout;
+
+    /**
+     * Bytes sent over one xhr_streaming response before the client is made to open a new one
+     */
+    @ConfigItem(defaultValue = "131072")
+    long streamingLimit;
+
+    /**
+     * Maximum size in bytes of the body of an xhr_send request, larger ones are answered with 413
+     */
+    @ConfigItem(defaultValue = "16777216")
+    long sendMaxSize;
+
+    /**
+     * Whether clients must send the JSESSIONID cookie, for load balancers with sticky sessions
+     */
+    @ConfigItem(defaultValue = "false")
+    boolean cookieNeeded;
+
+    /**
+     * Origins announced by the info endpoint and allowed by the CORS headers of the xhr transports, as host:port
+     * patterns where * matches any host or port
+     */
+    @ConfigItem(defaultValue = "*:*")
+    List<String> origins;
+}
@@ -0,0 +1,21 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.builder.item.SimpleBuildItem;
+
+import java.util.List;
+
+/**
+ * The identifiers of the destination provider beans, by priority then by bean class.
+ */
+public final class StompDestinationProvidersBuildItem extends SimpleBuildItem {
+
+    private final List<String> providers;
+
+    public StompDestinationProvidersBuildItem(List<String> providers) {
+        this.providers = providers;
+    }
+
+    public List<String> getProviders() {
+        return providers;
+    }
+}
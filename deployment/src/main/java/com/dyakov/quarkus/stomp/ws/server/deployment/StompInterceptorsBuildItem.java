@@ -0,0 +1,47 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.builder.item.SimpleBuildItem;
+
+import java.util.List;
+
+/**
+ * The identifiers of the SEND, MESSAGE and CONNECT interceptor beans, each list in calling order, and of the
+ * SUBSCRIBE interceptor beans, by priority.
+ */
+public final class StompInterceptorsBuildItem extends SimpleBuildItem {
+
+    private final List<String> send;
+    private final List<String> message;
+    private final List<String> connect;
+    private final List<String> subscribe;
+    private final List<String> asyncSubscribe;
+
+    public StompInterceptorsBuildItem(List<String> send, List<String> message, List<String> connect,
+                                      List<String> subscribe, List<String> asyncSubscribe) {
+        this.send = send;
+        this.message = message;
+        this.connect = connect;
+        this.subscribe = subscribe;
+        this.asyncSubscribe = asyncSubscribe;
+    }
+
+    public List<String> getSend() {
+        return send;
+    }
+
+    public List<String> getMessage() {
+        return message;
+    }
+
+    public List<String> getConnect() {
+        return connect;
+    }
+
+    public List<String> getSubscribe() {
+        return subscribe;
+    }
+
+    public List<String> getAsyncSubscribe() {
+        return asyncSubscribe;
+    }
+}
@@ -0,0 +1,21 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import io.quarkus.builder.item.SimpleBuildItem;
+import io.quarkus.runtime.RuntimeValue;
+
+/**
+ * The instrumentation handed to the STOMP server, produced when a metrics backend is present.
+ */
+public final class StompMetricsBuildItem extends SimpleBuildItem {
+
+    private final RuntimeValue<StompMetrics> metrics;
+
+    public StompMetricsBuildItem(RuntimeValue<StompMetrics> metrics) {
+        this.metrics = metrics;
+    }
+
+    public RuntimeValue<StompMetrics> getMetrics() {
+        return metrics;
+    }
+}
@@ -17,4 +17,94 @@ public class StompServerConfig {
      */
     @ConfigItem(name = "isSockJS", defaultValue = "true")
     boolean isSockJS;
-}
\ No newline at end of file
+
+    /**
+     * Outbound frame coalescing for SockJS connections
+     */
+    @ConfigItem
+    CoalescingConfig coalescing;
+
+    /**
+     * Sessions of the SockJS xhr-streaming and xhr-polling transports
+     */
+    @ConfigItem
+    SockJsConfig sockjs;
+
+    /**
+     * Heartbeats of the WebSocket connections
+     */
+    @ConfigItem
+    HeartbeatConfig heartbeat;
+
+    /**
+     * permessage-deflate of the WebSocket connections
+     */
+    @ConfigItem
+    CompressionConfig compression;
+
+    /**
+     * Outbound frames held back for slow consumers of SockJS connections
+     */
+    @ConfigItem
+    WriteQueueConfig writeQueue;
+
+    /**
+     * Resolution of destination names to destination providers
+     */
+    @ConfigItem
+    RoutingConfig routing;
+
+    /**
+     * Lifecycle of the destinations of providers which create one destination per name
+     */
+    @ConfigItem
+    DestinationsConfig destinations;
+
+    /**
+     * Relay of the clustered destinations between the nodes over the Vert.x event bus
+     */
+    @ConfigItem
+    ClusterConfig cluster;
+
+    /**
+     * Sharding of the STOMP server across the event loops
+     */
+    @ConfigItem
+    ShardingConfig sharding;
+
+    /**
+     * Authorization of the SUBSCRIBE frames by an AsyncSubscribeInterceptor bean
+     */
+    @ConfigItem
+    AuthorizationConfig authorization;
+
+    /**
+     * Last value per key of the CONFLATED_TOPIC destinations
+     */
+    @ConfigItem
+    ConflationConfig conflation;
+
+    /**
+     * Flow control of the QUEUE subscriptions which acknowledge their frames
+     */
+    @ConfigItem
+    QueueConfig queue;
+
+    /**
+     * Limits of the STOMP transactions, whose frames are staged off-heap until COMMIT
+     */
+    @ConfigItem
+    TransactionConfig transaction;
+
+    /**
+     * Memory-mapped journal of the DURABLE_QUEUE destinations
+     */
+    @ConfigItem
+    JournalConfig journal;
+
+    /**
+     * Limits on the frames received from the clients, enforced while they are decoded
+     */
+    @ConfigItem
+    InboundConfig inbound;
+}
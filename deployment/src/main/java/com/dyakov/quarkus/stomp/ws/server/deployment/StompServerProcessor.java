@@ -1,18 +1,47 @@
 package com.dyakov.quarkus.stomp.ws.server.deployment;
 
+import com.dyakov.quarkus.stomp.ws.runtime.DestinationProvider;
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.StompDestinationOptions;
 import com.dyakov.quarkus.stomp.ws.runtime.StompServerRecorder;
+import com.dyakov.quarkus.stomp.ws.runtime.compression.StompCompressionCustomizer;
+import com.dyakov.quarkus.stomp.ws.runtime.inbound.LargeBodySink;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.AsyncSubscribeInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.ConnectInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.MessageInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SendInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SubscribeInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import io.quarkus.arc.deployment.AdditionalBeanBuildItem;
+import io.quarkus.arc.deployment.SynthesisFinishedBuildItem;
+import io.quarkus.arc.deployment.UnremovableBeanBuildItem;
+import io.quarkus.arc.processor.BeanInfo;
+import io.quarkus.deployment.Capabilities;
+import io.quarkus.deployment.Capability;
 import io.quarkus.deployment.annotations.BuildProducer;
 import io.quarkus.deployment.annotations.BuildStep;
 import io.quarkus.deployment.annotations.ExecutionTime;
 import io.quarkus.deployment.annotations.Record;
 import io.quarkus.deployment.builditem.FeatureBuildItem;
+import io.quarkus.deployment.builditem.ShutdownContextBuildItem;
+import io.quarkus.runtime.RuntimeValue;
 import io.quarkus.vertx.core.deployment.CoreVertxBuildItem;
 import io.quarkus.vertx.http.deployment.RouteBuildItem;
+import org.jboss.jandex.AnnotationInstance;
+import org.jboss.jandex.AnnotationTarget;
+import org.jboss.jandex.DotName;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 public class StompServerProcessor {
 
     private static final String FEATURE = "stomp-server";
+    private static final DotName PRIORITY = DotName.createSimple("javax.annotation.Priority");
     private final String infoPathSegment = "/info";
+    private final String sessionPathSegment = "/:server/:session";
 
     @BuildStep
     FeatureBuildItem feature() {
@@ -21,25 +50,144 @@ public class StompServerProcessor {
 
     StompServerConfig stompServerConfig;
 
+    @BuildStep
+    AdditionalBeanBuildItem compressionCustomizer() {
+        return AdditionalBeanBuildItem.unremovableOf(StompCompressionCustomizer.class);
+    }
+
+    @BuildStep
+    UnremovableBeanBuildItem largeBodySink() {
+        return UnremovableBeanBuildItem.beanTypes(DotName.createSimple(LargeBodySink.class.getName()));
+    }
+
+    @BuildStep
+    UnremovableBeanBuildItem unremovableInterceptors() {
+        return UnremovableBeanBuildItem.beanTypes(
+                DotName.createSimple(SendInterceptor.class.getName()),
+                DotName.createSimple(MessageInterceptor.class.getName()),
+                DotName.createSimple(ConnectInterceptor.class.getName()),
+                DotName.createSimple(SubscribeInterceptor.class.getName()),
+                DotName.createSimple(AsyncSubscribeInterceptor.class.getName()));
+    }
+
+    @BuildStep
+    UnremovableBeanBuildItem unremovableDestinationProviders() {
+        return UnremovableBeanBuildItem.beanTypes(DotName.createSimple(DestinationProvider.class.getName()));
+    }
+
+    /**
+     * Finds the interceptor beans among the beans discovered by ArC, producer methods and fields and synthetic
+     * beans included, so that they are looked up by identifier at startup.
+     */
+    @BuildStep
+    StompInterceptorsBuildItem discoverInterceptors(SynthesisFinishedBuildItem synthesisFinished) {
+        return new StompInterceptorsBuildItem(
+                beanIdentifiers(synthesisFinished, SendInterceptor.class),
+                beanIdentifiers(synthesisFinished, MessageInterceptor.class),
+                beanIdentifiers(synthesisFinished, ConnectInterceptor.class),
+                beanIdentifiers(synthesisFinished, SubscribeInterceptor.class),
+                beanIdentifiers(synthesisFinished, AsyncSubscribeInterceptor.class));
+    }
+
+    /**
+     * Finds the destination provider beans among the beans discovered by ArC, so that they are looked up by
+     * identifier at startup instead of by a type-safe resolution over every bean.
+     */
+    @BuildStep
+    StompDestinationProvidersBuildItem discoverDestinationProviders(SynthesisFinishedBuildItem synthesisFinished) {
+        return new StompDestinationProvidersBuildItem(beanIdentifiers(synthesisFinished, DestinationProvider.class));
+    }
+
+    /**
+     * The identifiers of the beans of {@code type}, by ascending {@code @Priority} then by bean class.
+     */
+    private static List<String> beanIdentifiers(SynthesisFinishedBuildItem synthesisFinished, Class<?> type) {
+        return synthesisFinished.beanStream().withBeanType(type).stream()
+                .sorted(Comparator.comparingInt(StompServerProcessor::priority)
+                        .thenComparing(bean -> bean.getBeanClass().toString())
+                        .thenComparing(BeanInfo::getIdentifier))
+                .map(BeanInfo::getIdentifier)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the {@code @Priority} of the bean class, producer method or producer field
+     */
+    private static int priority(BeanInfo bean) {
+        AnnotationInstance priority = null;
+        AnnotationTarget target = bean.getTarget().orElse(null);
+        if (target != null) {
+            switch (target.kind()) {
+                case CLASS:
+                    priority = target.asClass().classAnnotation(PRIORITY);
+                    break;
+                case METHOD:
+                    priority = target.asMethod().annotation(PRIORITY);
+                    break;
+                case FIELD:
+                    priority = target.asField().annotation(PRIORITY);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return priority == null ? Integer.MAX_VALUE : priority.value().asInt();
+    }
+
+    @BuildStep
+    @Record(ExecutionTime.RUNTIME_INIT)
+    void configureMetrics(Capabilities capabilities,
+                          StompServerRecorder stompServerRecorder,
+                          BuildProducer<StompMetricsBuildItem> metrics) {
+        if (capabilities.isPresent(Capability.MICROMETER)) {
+            metrics.produce(new StompMetricsBuildItem(stompServerRecorder.micrometerMetrics()));
+        }
+    }
+
     @BuildStep
     @Record(ExecutionTime.RUNTIME_INIT)
     public void configureStompWsServer(StompServerRecorder stompServerRecorder,
                                        BuildProducer<RouteBuildItem> routes,
-                                       CoreVertxBuildItem vertx) {
+                                       CoreVertxBuildItem vertx,
+                                       Optional<StompMetricsBuildItem> metricsBuildItem,
+                                       StompInterceptorsBuildItem interceptors,
+                                       StompDestinationProvidersBuildItem destinationProviders,
+                                       ShutdownContextBuildItem shutdownContext) {
+        RuntimeValue<StompMetrics> metrics = metricsBuildItem.map(StompMetricsBuildItem::getMetrics)
+                .orElseGet(stompServerRecorder::noMetrics);
+        stompServerRecorder.registerInterceptors(interceptors.getSend(), interceptors.getMessage(),
+                interceptors.getConnect(), interceptors.getSubscribe(), interceptors.getAsyncSubscribe());
+        stompServerRecorder.registerDestinationProviders(destinationProviders.getProviders());
+        stompServerRecorder.closeOnShutdown(shutdownContext);
         if (stompServerConfig.isSockJS) {
-            configureStompServerOverSockJs(stompServerRecorder, routes, vertx);
+            configureStompServerOverSockJs(stompServerRecorder, routes, vertx, metrics);
         } else {
-            configureStompServerOverWebsocket(stompServerRecorder, routes, vertx);
+            configureStompServerOverWebsocket(stompServerRecorder, routes, vertx, metrics);
         }
     }
 
     private void configureStompServerOverSockJs(StompServerRecorder stompServerRecorder,
                                                 BuildProducer<RouteBuildItem> routes,
-                                                CoreVertxBuildItem vertx) {
-        stompServerRecorder.initStompServer(vertx.getVertx(), stompServerConfig.websocketPath, true);
+                                                CoreVertxBuildItem vertx,
+                                                RuntimeValue<StompMetrics> metrics) {
+        StompConnectionOptions connectionOptions = connectionOptions();
+        stompServerRecorder.initStompServer(vertx.getVertx(), stompServerConfig.websocketPath, true,
+                connectionOptions, destinationOptions(), metrics);
         routes.produce(RouteBuildItem.builder()
                 .route(stompServerConfig.websocketPath + infoPathSegment)
-                .handler(stompServerRecorder.sockJsInfoHandler())
+                .handler(stompServerRecorder.sockJsInfoHandler(connectionOptions))
+                .build());
+        routes.produce(RouteBuildItem.builder()
+                .route(stompServerConfig.websocketPath + sessionPathSegment + "/xhr_streaming")
+                .handler(stompServerRecorder.xhrStreamingHandler())
+                .build());
+        routes.produce(RouteBuildItem.builder()
+                .route(stompServerConfig.websocketPath + sessionPathSegment + "/xhr")
+                .handler(stompServerRecorder.xhrPollingHandler())
+                .build());
+        routes.produce(RouteBuildItem.builder()
+                .route(stompServerConfig.websocketPath + sessionPathSegment + "/xhr_send")
+                .handler(stompServerRecorder.xhrSendHandler())
                 .build());
         routes.produce(RouteBuildItem.builder()
                 .route(stompServerConfig.websocketPath + "/*")
@@ -49,12 +197,71 @@ public class StompServerProcessor {
 
     private void configureStompServerOverWebsocket(StompServerRecorder stompServerRecorder,
                                                    BuildProducer<RouteBuildItem> routes,
-                                                   CoreVertxBuildItem vertx) {
-        stompServerRecorder.initStompServer(vertx.getVertx(), stompServerConfig.websocketPath, false);
+                                                   CoreVertxBuildItem vertx,
+                                                   RuntimeValue<StompMetrics> metrics) {
+        stompServerRecorder.initStompServer(vertx.getVertx(), stompServerConfig.websocketPath, false,
+                connectionOptions(), destinationOptions(), metrics);
         routes.produce(RouteBuildItem.builder()
                 .route(stompServerConfig.websocketPath)
                 .handler(stompServerRecorder.stompHandler())
                 .build());
     }
 
+    private StompConnectionOptions connectionOptions() {
+        StompConnectionOptions options = new StompConnectionOptions();
+        options.setCoalescingEnabled(stompServerConfig.coalescing.enabled);
+        options.setCoalescingWindowMillis(stompServerConfig.coalescing.window.toMillis());
+        options.setCoalescingMaxBytes(stompServerConfig.coalescing.maxBytes);
+        options.setSockJsHeartbeatMillis(stompServerConfig.heartbeat.sockjsInterval.toMillis());
+        options.setHeartbeatTickMillis(stompServerConfig.heartbeat.tick.toMillis());
+        options.setWriteQueueMaxBytes(stompServerConfig.writeQueue.maxBytes);
+        options.setWriteQueuePolicy(stompServerConfig.writeQueue.policy);
+        options.setSockJsSessionTimeoutMillis(stompServerConfig.sockjs.sessionTimeout.toMillis());
+        options.setSockJsStreamingLimitBytes(stompServerConfig.sockjs.streamingLimit);
+        options.setSockJsSendMaxBytes(stompServerConfig.sockjs.sendMaxSize);
+        options.setSockJsCookieNeeded(stompServerConfig.sockjs.cookieNeeded);
+        options.setSockJsOrigins(stompServerConfig.sockjs.origins);
+        options.setCompressionEnabled(stompServerConfig.compression.enabled);
+        options.setCompressionLevel(stompServerConfig.compression.level);
+        options.setCompressionMinBytes(stompServerConfig.compression.minSize);
+        options.setCompressionServerNoContextTakeover(stompServerConfig.compression.serverNoContextTakeover);
+        options.setCompressionClientNoContextTakeover(stompServerConfig.compression.clientNoContextTakeover);
+        options.setCompressionPrecompressBroadcast(stompServerConfig.compression.precompressBroadcast);
+        options.setInboundMaxFrameBytes(stompServerConfig.inbound.maxFrameSize);
+        options.setInboundMaxHeaders(stompServerConfig.inbound.maxHeaders);
+        options.setInboundMaxHeaderBytes(stompServerConfig.inbound.maxHeaderLength);
+        options.setInboundMaxBodyBytes(stompServerConfig.inbound.maxBodySize);
+        options.setInboundStreamThresholdBytes(stompServerConfig.inbound.streamThreshold);
+        return options;
+    }
+
+    private StompDestinationOptions destinationOptions() {
+        StompDestinationOptions options = new StompDestinationOptions();
+        options.setRoutingCacheSize(stompServerConfig.routing.cacheSize);
+        options.setIdleDestinationMillis(stompServerConfig.destinations.idleTimeout.toMillis());
+        options.setIdleSweepMillis(stompServerConfig.destinations.sweepInterval.toMillis());
+        options.setClusterAddress(stompServerConfig.cluster.address);
+        options.setClusterBatchWindowMillis(stompServerConfig.cluster.batchWindow.toMillis());
+        options.setClusterBatchMaxFrames(stompServerConfig.cluster.batchMaxFrames);
+        options.setSharded(stompServerConfig.sharding.enabled);
+        options.setShardDrainBatch(stompServerConfig.sharding.drainBatch);
+        options.setAuthorizationCacheTtlMillis(stompServerConfig.authorization.cacheTtl.toMillis());
+        options.setAuthorizationCacheMaxEntries(stompServerConfig.authorization.cacheMaxEntries);
+        options.setAuthorizationTimeoutMillis(stompServerConfig.authorization.timeout.toMillis());
+        options.setAuthorizationOnWorker(stompServerConfig.authorization.worker);
+        options.setConflationKeyHeader(stompServerConfig.conflation.keyHeader);
+        options.setConflationMaxKeys(stompServerConfig.conflation.maxKeys);
+        options.setJournalDirectory(stompServerConfig.journal.directory);
+        options.setJournalSegmentBytes(stompServerConfig.journal.segmentSize);
+        options.setJournalSyncIntervalMillis(stompServerConfig.journal.syncInterval.toMillis());
+        options.setJournalMaxQueues(stompServerConfig.journal.maxQueues);
+        options.setQueuePrefetchCount(stompServerConfig.queue.prefetchCount);
+        options.setQueueMaxBacklog(stompServerConfig.queue.maxBacklog);
+        options.setQueueBacklogPolicy(stompServerConfig.queue.backlogPolicy);
+        options.setTransactionMaxFrames(stompServerConfig.transaction.maxFrames);
+        options.setTransactionMaxBytes(stompServerConfig.transaction.maxSize);
+        options.setTransactionMaxAgeMillis(stompServerConfig.transaction.maxAge.toMillis());
+        return options;
+    }
+
 }
\ No newline at end of file
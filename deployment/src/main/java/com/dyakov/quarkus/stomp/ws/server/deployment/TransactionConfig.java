@@ -0,0 +1,28 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+import java.time.Duration;
+
+@ConfigGroup
+public class TransactionConfig {
+
+    /**
+     * Maximum number of SEND, ACK and NACK frames of a transaction
+     */
+    @ConfigItem(defaultValue = "1000")
+    int maxFrames;
+
+    /**
+     * Maximum size in bytes of the frames staged by the open transactions of a connection
+     */
+    @ConfigItem(defaultValue = "10485760")
+    long maxSize;
+
+    /**
+     * Time after which a transaction which was neither committed nor aborted is discarded, 0 for no limit
+     */
+    @ConfigItem(defaultValue = "60s")
+    Duration maxAge;
+}
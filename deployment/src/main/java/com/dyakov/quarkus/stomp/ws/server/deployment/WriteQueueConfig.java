@@ -0,0 +1,22 @@
+package com.dyakov.quarkus.stomp.ws.server.deployment;
+
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueuePolicy;
+import io.quarkus.runtime.annotations.ConfigGroup;
+import io.quarkus.runtime.annotations.ConfigItem;
+
+@ConfigGroup
+public class WriteQueueConfig {
+
+    /**
+     * Maximum bytes queued for a connection whose socket does not drain
+     */
+    @ConfigItem(defaultValue = "1048576")
+    long maxBytes;
+
+    /**
+     * What to do with the topic MESSAGEs without acknowledgement of a connection once max-bytes are queued:
+     * drop-oldest, drop-newest, conflate or disconnect. The other frames always disconnect it
+     */
+    @ConfigItem(defaultValue = "disconnect")
+    WriteQueuePolicy policy;
+}
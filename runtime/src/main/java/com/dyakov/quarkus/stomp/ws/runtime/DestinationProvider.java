@@ -5,11 +5,22 @@ import io.vertx.ext.stomp.Destination;
 import org.jboss.logging.Logger;
 
 import javax.enterprise.event.Observes;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public abstract class DestinationProvider {
 
     private static final Logger log = Logger.getLogger(DestinationProvider.class.getName());
 
+    private final ConcurrentMap<String, NamedDestination> namedDestinations = new ConcurrentHashMap<>();
+
     abstract public String getDestinationPath();
 
     abstract public void setDestination(Destination destination);
@@ -21,11 +32,117 @@ public abstract class DestinationProvider {
     abstract public boolean isDestinationSetUp();
 
     public static enum DestinationType {
-        TOPIC, QUEUE
+        TOPIC, QUEUE, CLUSTERED_TOPIC, CLUSTERED_QUEUE, CONFLATED_TOPIC, DURABLE_QUEUE
+    }
+
+    /**
+     * The header whose value is the conflation key of the frames of a {@link DestinationType#CONFLATED_TOPIC},
+     * {@code null} to use the configured one.
+     */
+    public String getConflationKeyHeader() {
+        return null;
+    }
+
+    /**
+     * Whether every destination name under {@link #getDestinationPath()} gets its own {@link Destination}, created
+     * on first use and evicted once it has been idle. By default one destination is shared by all the names of the
+     * path, see {@link #setDestination(Destination)}.
+     */
+    public boolean isDestinationPerName() {
+        return false;
+    }
+
+    /**
+     * @return the destination of {@code name} if it exists, only used when {@link #isDestinationPerName()}
+     */
+    public Destination getNamedDestination(String name) {
+        NamedDestination named = namedDestinations.get(name);
+        if (named == null) {
+            return null;
+        }
+        named.touch();
+        return named.destination;
+    }
+
+    /**
+     * @return the destination of {@code name}, created with {@code factory} if it does not exist yet
+     */
+    public Destination getOrCreateNamedDestination(String name, Function<String, Destination> factory) {
+        NamedDestination named = namedDestinations.computeIfAbsent(name, key -> {
+            Destination destination = factory.apply(key);
+            return destination == null ? null : new NamedDestination(destination);
+        });
+        if (named == null) {
+            return null;
+        }
+        named.touch();
+        return named.destination;
+    }
+
+    public Collection<Destination> getNamedDestinations() {
+        List<Destination> destinations = new ArrayList<>(namedDestinations.size());
+        for (NamedDestination named : namedDestinations.values()) {
+            destinations.add(named.destination);
+        }
+        return destinations;
+    }
+
+    /**
+     * Drops the named destinations without subscriptions which have not been looked up for {@code idleMillis}, and
+     * closes the {@link Closeable} ones. A destination is checked and removed in one atomic step, which a
+     * concurrent {@link #getOrCreateNamedDestination} of the same name waits for, and the evicted ones are closed
+     * afterwards.
+     *
+     * @return the number of evicted destinations
+     */
+    public int evictIdleDestinations(long idleMillis) {
+        long now = NamedDestination.now();
+        List<Destination> evicted = new ArrayList<>();
+        for (String name : namedDestinations.keySet()) {
+            namedDestinations.computeIfPresent(name, (key, named) -> {
+                if (now - named.lastAccess >= idleMillis && named.destination.numberOfSubscriptions() == 0) {
+                    evicted.add(named.destination);
+                    return null;
+                }
+                return named;
+            });
+        }
+        for (Destination destination : evicted) {
+            if (destination instanceof Closeable) {
+                close((Closeable) destination);
+            }
+        }
+        return evicted.size();
+    }
+
+    private static void close(Closeable destination) {
+        try {
+            destination.close();
+        } catch (IOException | RuntimeException e) {
+            log.warnf(e, "Cannot close the evicted destination %s", destination);
+        }
     }
 
     public void init(@Observes StartupEvent event) {
         log.debug("Destination provider started: " + this.getClass().getSimpleName());
     }
 
+    private static final class NamedDestination {
+
+        private final Destination destination;
+        private volatile long lastAccess = now();
+
+        NamedDestination(Destination destination) {
+            this.destination = destination;
+        }
+
+        void touch() {
+            lastAccess = now();
+        }
+
+        static long now() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        }
+    }
+
 }
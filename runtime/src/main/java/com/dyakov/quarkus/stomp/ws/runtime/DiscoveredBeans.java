@@ -0,0 +1,41 @@
+package com.dyakov.quarkus.stomp.ws.runtime;
+
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.ArcContainer;
+import io.quarkus.arc.InjectableBean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks up the beans found by the ArC bean discovery at build time, class beans, producer methods and fields and
+ * synthetic beans alike, by their identifier, so that startup needs no type-safe resolution over every bean.
+ */
+public final class DiscoveredBeans {
+
+    private DiscoveredBeans() {
+    }
+
+    /**
+     * @return the beans of {@code beanIdentifiers}, in order, the identifiers of no bean left out
+     */
+    public static <T> List<T> lookup(List<String> beanIdentifiers, Class<T> type) {
+        List<T> beans = new ArrayList<>(beanIdentifiers.size());
+        ArcContainer container = Arc.container();
+        for (String beanIdentifier : beanIdentifiers) {
+            InjectableBean<?> bean = container.bean(beanIdentifier);
+            if (bean != null) {
+                beans.add(type.cast(container.instance(bean).get()));
+            }
+        }
+        return beans;
+    }
+
+    /**
+     * @return the first bean of {@code beanIdentifiers}, {@code null} if there is none
+     */
+    public static <T> T first(List<String> beanIdentifiers, Class<T> type) {
+        List<T> beans = lookup(beanIdentifiers, type);
+        return beans.isEmpty() ? null : beans.get(0);
+    }
+}
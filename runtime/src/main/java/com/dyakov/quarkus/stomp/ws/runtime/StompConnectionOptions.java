@@ -0,0 +1,220 @@
+package com.dyakov.quarkus.stomp.ws.runtime;
+
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueuePolicy;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Per connection settings of the STOMP WebSocket server, recorded at build time from the extension configuration.
+ */
+public class StompConnectionOptions {
+
+    private boolean coalescingEnabled;
+    private long coalescingWindowMillis;
+    private int coalescingMaxBytes = 16 * 1024;
+    private long sockJsHeartbeatMillis = 25_000;
+    private long heartbeatTickMillis = 1_000;
+    private long writeQueueMaxBytes = 1024 * 1024;
+    private WriteQueuePolicy writeQueuePolicy = WriteQueuePolicy.DISCONNECT;
+    private long sockJsSessionTimeoutMillis = 5_000;
+    private long sockJsStreamingLimitBytes = 128 * 1024;
+    private boolean sockJsCookieNeeded;
+    private List<String> sockJsOrigins = Collections.singletonList("*:*");
+    private long sockJsSendMaxBytes = 16 * 1024 * 1024;
+    private boolean compressionEnabled;
+    private int compressionLevel = 6;
+    private int compressionMinBytes = 256;
+    private boolean compressionServerNoContextTakeover = true;
+    private boolean compressionClientNoContextTakeover;
+    private boolean compressionPrecompressBroadcast;
+    private long inboundMaxFrameBytes = 16 * 1024 * 1024;
+    private int inboundMaxHeaders = 1000;
+    private int inboundMaxHeaderBytes = 10 * 1024;
+    private long inboundMaxBodyBytes = 10 * 1024 * 1024;
+    private long inboundStreamThresholdBytes = 1024 * 1024;
+
+    public boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    public void setCoalescingEnabled(boolean coalescingEnabled) {
+        this.coalescingEnabled = coalescingEnabled;
+    }
+
+    public long getCoalescingWindowMillis() {
+        return coalescingWindowMillis;
+    }
+
+    public void setCoalescingWindowMillis(long coalescingWindowMillis) {
+        this.coalescingWindowMillis = coalescingWindowMillis;
+    }
+
+    public int getCoalescingMaxBytes() {
+        return coalescingMaxBytes;
+    }
+
+    public void setCoalescingMaxBytes(int coalescingMaxBytes) {
+        this.coalescingMaxBytes = coalescingMaxBytes;
+    }
+
+    public long getSockJsHeartbeatMillis() {
+        return sockJsHeartbeatMillis;
+    }
+
+    public void setSockJsHeartbeatMillis(long sockJsHeartbeatMillis) {
+        this.sockJsHeartbeatMillis = sockJsHeartbeatMillis;
+    }
+
+    public long getHeartbeatTickMillis() {
+        return heartbeatTickMillis;
+    }
+
+    public void setHeartbeatTickMillis(long heartbeatTickMillis) {
+        this.heartbeatTickMillis = heartbeatTickMillis;
+    }
+
+    public long getWriteQueueMaxBytes() {
+        return writeQueueMaxBytes;
+    }
+
+    public void setWriteQueueMaxBytes(long writeQueueMaxBytes) {
+        this.writeQueueMaxBytes = writeQueueMaxBytes;
+    }
+
+    public WriteQueuePolicy getWriteQueuePolicy() {
+        return writeQueuePolicy;
+    }
+
+    public void setWriteQueuePolicy(WriteQueuePolicy writeQueuePolicy) {
+        this.writeQueuePolicy = writeQueuePolicy;
+    }
+
+    public long getSockJsSessionTimeoutMillis() {
+        return sockJsSessionTimeoutMillis;
+    }
+
+    public void setSockJsSessionTimeoutMillis(long sockJsSessionTimeoutMillis) {
+        this.sockJsSessionTimeoutMillis = sockJsSessionTimeoutMillis;
+    }
+
+    public long getSockJsStreamingLimitBytes() {
+        return sockJsStreamingLimitBytes;
+    }
+
+    public void setSockJsStreamingLimitBytes(long sockJsStreamingLimitBytes) {
+        this.sockJsStreamingLimitBytes = sockJsStreamingLimitBytes;
+    }
+
+    public boolean isSockJsCookieNeeded() {
+        return sockJsCookieNeeded;
+    }
+
+    public void setSockJsCookieNeeded(boolean sockJsCookieNeeded) {
+        this.sockJsCookieNeeded = sockJsCookieNeeded;
+    }
+
+    public List<String> getSockJsOrigins() {
+        return sockJsOrigins;
+    }
+
+    public void setSockJsOrigins(List<String> sockJsOrigins) {
+        this.sockJsOrigins = sockJsOrigins;
+    }
+
+    public long getSockJsSendMaxBytes() {
+        return sockJsSendMaxBytes;
+    }
+
+    public void setSockJsSendMaxBytes(long sockJsSendMaxBytes) {
+        this.sockJsSendMaxBytes = sockJsSendMaxBytes;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionMinBytes() {
+        return compressionMinBytes;
+    }
+
+    public void setCompressionMinBytes(int compressionMinBytes) {
+        this.compressionMinBytes = compressionMinBytes;
+    }
+
+    public boolean isCompressionServerNoContextTakeover() {
+        return compressionServerNoContextTakeover;
+    }
+
+    public void setCompressionServerNoContextTakeover(boolean compressionServerNoContextTakeover) {
+        this.compressionServerNoContextTakeover = compressionServerNoContextTakeover;
+    }
+
+    public boolean isCompressionClientNoContextTakeover() {
+        return compressionClientNoContextTakeover;
+    }
+
+    public void setCompressionClientNoContextTakeover(boolean compressionClientNoContextTakeover) {
+        this.compressionClientNoContextTakeover = compressionClientNoContextTakeover;
+    }
+
+    public boolean isCompressionPrecompressBroadcast() {
+        return compressionPrecompressBroadcast;
+    }
+
+    public void setCompressionPrecompressBroadcast(boolean compressionPrecompressBroadcast) {
+        this.compressionPrecompressBroadcast = compressionPrecompressBroadcast;
+    }
+
+    public long getInboundMaxFrameBytes() {
+        return inboundMaxFrameBytes;
+    }
+
+    public void setInboundMaxFrameBytes(long inboundMaxFrameBytes) {
+        this.inboundMaxFrameBytes = inboundMaxFrameBytes;
+    }
+
+    public int getInboundMaxHeaders() {
+        return inboundMaxHeaders;
+    }
+
+    public void setInboundMaxHeaders(int inboundMaxHeaders) {
+        this.inboundMaxHeaders = inboundMaxHeaders;
+    }
+
+    public int getInboundMaxHeaderBytes() {
+        return inboundMaxHeaderBytes;
+    }
+
+    public void setInboundMaxHeaderBytes(int inboundMaxHeaderBytes) {
+        this.inboundMaxHeaderBytes = inboundMaxHeaderBytes;
+    }
+
+    public long getInboundMaxBodyBytes() {
+        return inboundMaxBodyBytes;
+    }
+
+    public void setInboundMaxBodyBytes(long inboundMaxBodyBytes) {
+        this.inboundMaxBodyBytes = inboundMaxBodyBytes;
+    }
+
+    public long getInboundStreamThresholdBytes() {
+        return inboundStreamThresholdBytes;
+    }
+
+    public void setInboundStreamThresholdBytes(long inboundStreamThresholdBytes) {
+        this.inboundStreamThresholdBytes = inboundStreamThresholdBytes;
+    }
+}
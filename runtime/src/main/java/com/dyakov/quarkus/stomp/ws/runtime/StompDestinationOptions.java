@@ -0,0 +1,227 @@
+package com.dyakov.quarkus.stomp.ws.runtime;
+
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BacklogPolicy;
+
+/**
+ * Destination routing and management settings of the STOMP server, recorded at build time from the extension
+ * configuration.
+ */
+public class StompDestinationOptions {
+
+    private int routingCacheSize = 10_000;
+    private long idleDestinationMillis = 60_000;
+    private long idleSweepMillis = 30_000;
+    private String clusterAddress = "stomp.cluster";
+    private long clusterBatchWindowMillis;
+    private int clusterBatchMaxFrames = 256;
+    private boolean sharded;
+    private int shardDrainBatch = 256;
+    private long authorizationCacheTtlMillis = 30_000;
+    private int authorizationCacheMaxEntries = 100_000;
+    private long authorizationTimeoutMillis = 5_000;
+    private boolean authorizationOnWorker;
+    private String conflationKeyHeader = "conflation-key";
+    private int conflationMaxKeys = 10_000;
+    private String journalDirectory = "stomp-journal";
+    private int journalSegmentBytes = 64 * 1024 * 1024;
+    private long journalSyncIntervalMillis = 10;
+    private int journalMaxQueues = 64;
+    private int queuePrefetchCount;
+    private int queueMaxBacklog = 10_000;
+    private BacklogPolicy queueBacklogPolicy = BacklogPolicy.REJECT;
+    private int transactionMaxFrames = 1000;
+    private long transactionMaxBytes = 10 * 1024 * 1024;
+    private long transactionMaxAgeMillis = 60_000;
+
+    public int getRoutingCacheSize() {
+        return routingCacheSize;
+    }
+
+    public void setRoutingCacheSize(int routingCacheSize) {
+        this.routingCacheSize = routingCacheSize;
+    }
+
+    public long getIdleDestinationMillis() {
+        return idleDestinationMillis;
+    }
+
+    public void setIdleDestinationMillis(long idleDestinationMillis) {
+        this.idleDestinationMillis = idleDestinationMillis;
+    }
+
+    public long getIdleSweepMillis() {
+        return idleSweepMillis;
+    }
+
+    public void setIdleSweepMillis(long idleSweepMillis) {
+        this.idleSweepMillis = idleSweepMillis;
+    }
+
+    public String getClusterAddress() {
+        return clusterAddress;
+    }
+
+    public void setClusterAddress(String clusterAddress) {
+        this.clusterAddress = clusterAddress;
+    }
+
+    public long getClusterBatchWindowMillis() {
+        return clusterBatchWindowMillis;
+    }
+
+    public void setClusterBatchWindowMillis(long clusterBatchWindowMillis) {
+        this.clusterBatchWindowMillis = clusterBatchWindowMillis;
+    }
+
+    public int getClusterBatchMaxFrames() {
+        return clusterBatchMaxFrames;
+    }
+
+    public void setClusterBatchMaxFrames(int clusterBatchMaxFrames) {
+        this.clusterBatchMaxFrames = clusterBatchMaxFrames;
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    public void setSharded(boolean sharded) {
+        this.sharded = sharded;
+    }
+
+    public int getShardDrainBatch() {
+        return shardDrainBatch;
+    }
+
+    public void setShardDrainBatch(int shardDrainBatch) {
+        this.shardDrainBatch = shardDrainBatch;
+    }
+
+    public long getAuthorizationCacheTtlMillis() {
+        return authorizationCacheTtlMillis;
+    }
+
+    public void setAuthorizationCacheTtlMillis(long authorizationCacheTtlMillis) {
+        this.authorizationCacheTtlMillis = authorizationCacheTtlMillis;
+    }
+
+    public int getAuthorizationCacheMaxEntries() {
+        return authorizationCacheMaxEntries;
+    }
+
+    public void setAuthorizationCacheMaxEntries(int authorizationCacheMaxEntries) {
+        this.authorizationCacheMaxEntries = authorizationCacheMaxEntries;
+    }
+
+    public long getAuthorizationTimeoutMillis() {
+        return authorizationTimeoutMillis;
+    }
+
+    public void setAuthorizationTimeoutMillis(long authorizationTimeoutMillis) {
+        this.authorizationTimeoutMillis = authorizationTimeoutMillis;
+    }
+
+    public boolean isAuthorizationOnWorker() {
+        return authorizationOnWorker;
+    }
+
+    public void setAuthorizationOnWorker(boolean authorizationOnWorker) {
+        this.authorizationOnWorker = authorizationOnWorker;
+    }
+
+    public String getConflationKeyHeader() {
+        return conflationKeyHeader;
+    }
+
+    public void setConflationKeyHeader(String conflationKeyHeader) {
+        this.conflationKeyHeader = conflationKeyHeader;
+    }
+
+    public int getConflationMaxKeys() {
+        return conflationMaxKeys;
+    }
+
+    public void setConflationMaxKeys(int conflationMaxKeys) {
+        this.conflationMaxKeys = conflationMaxKeys;
+    }
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    public void setJournalDirectory(String journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    public int getJournalSegmentBytes() {
+        return journalSegmentBytes;
+    }
+
+    public void setJournalSegmentBytes(int journalSegmentBytes) {
+        this.journalSegmentBytes = journalSegmentBytes;
+    }
+
+    public long getJournalSyncIntervalMillis() {
+        return journalSyncIntervalMillis;
+    }
+
+    public void setJournalSyncIntervalMillis(long journalSyncIntervalMillis) {
+        this.journalSyncIntervalMillis = journalSyncIntervalMillis;
+    }
+
+    public int getJournalMaxQueues() {
+        return journalMaxQueues;
+    }
+
+    public void setJournalMaxQueues(int journalMaxQueues) {
+        this.journalMaxQueues = journalMaxQueues;
+    }
+
+    public int getQueuePrefetchCount() {
+        return queuePrefetchCount;
+    }
+
+    public void setQueuePrefetchCount(int queuePrefetchCount) {
+        this.queuePrefetchCount = queuePrefetchCount;
+    }
+
+    public int getQueueMaxBacklog() {
+        return queueMaxBacklog;
+    }
+
+    public void setQueueMaxBacklog(int queueMaxBacklog) {
+        this.queueMaxBacklog = queueMaxBacklog;
+    }
+
+    public BacklogPolicy getQueueBacklogPolicy() {
+        return queueBacklogPolicy;
+    }
+
+    public void setQueueBacklogPolicy(BacklogPolicy queueBacklogPolicy) {
+        this.queueBacklogPolicy = queueBacklogPolicy;
+    }
+
+    public int getTransactionMaxFrames() {
+        return transactionMaxFrames;
+    }
+
+    public void setTransactionMaxFrames(int transactionMaxFrames) {
+        this.transactionMaxFrames = transactionMaxFrames;
+    }
+
+    public long getTransactionMaxBytes() {
+        return transactionMaxBytes;
+    }
+
+    public void setTransactionMaxBytes(long transactionMaxBytes) {
+        this.transactionMaxBytes = transactionMaxBytes;
+    }
+
+    public long getTransactionMaxAgeMillis() {
+        return transactionMaxAgeMillis;
+    }
+
+    public void setTransactionMaxAgeMillis(long transactionMaxAgeMillis) {
+        this.transactionMaxAgeMillis = transactionMaxAgeMillis;
+    }
+}
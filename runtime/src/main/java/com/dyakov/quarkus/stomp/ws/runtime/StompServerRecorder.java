@@ -1,25 +1,57 @@
 package com.dyakov.quarkus.stomp.ws.runtime;
 
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.cluster.ClusterRelay;
+import com.dyakov.quarkus.stomp.ws.runtime.compression.StompCompressionCustomizer;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.AckQueue;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BroadcastTopic;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.ClusteredQueue;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.ClusteredTopic;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.ConflatedTopic;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.DurableQueue;
+import com.dyakov.quarkus.stomp.ws.runtime.handlers.IndexedStompServerHandler;
+import com.dyakov.quarkus.stomp.ws.runtime.inbound.GuardedStompServer;
+import com.dyakov.quarkus.stomp.ws.runtime.inbound.LargeBodySink;
 import com.dyakov.quarkus.stomp.ws.runtime.handlers.SubscribeHandler;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.AsyncSubscribeInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.StompInterceptors;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SubscribeAuthorizer;
 import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SubscribeInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.journal.Journal;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.MicrometerStompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.routing.DestinationIndex;
+import com.dyakov.quarkus.stomp.ws.runtime.sharding.ShardedDestination;
+import com.dyakov.quarkus.stomp.ws.runtime.sharding.StompShards;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsSessions;
 import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompServer;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsXhrTransport;
+import com.dyakov.quarkus.stomp.ws.runtime.transactions.StagedTransactions;
 import io.quarkus.arc.Arc;
 import io.quarkus.arc.InstanceHandle;
+import io.quarkus.runtime.RuntimeValue;
+import io.quarkus.runtime.ShutdownContext;
 import io.quarkus.runtime.annotations.Recorder;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
-import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.stomp.*;
 import io.vertx.ext.web.RoutingContext;
 import org.jboss.logging.Logger;
 
-import javax.enterprise.inject.spi.CDI;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 @Recorder
 public class StompServerRecorder {
@@ -28,81 +60,313 @@ public class StompServerRecorder {
 
     private StompServer stompServer;
 
-    List<DestinationProvider> destinationProviders;
+    private StompShards shards;
 
-    public void initStompServer(Supplier<Vertx> vertxSupplier, String websocketPath, boolean isSockJs) {
-        collectDestinationProviders();
-        SubscribeHandler subscribeHandler = getSubscribeHandler();
+    private StompInterceptors interceptors = StompInterceptors.NONE;
+
+    private StompDestinationOptions destinationOptions;
+
+    private List<String> destinationProviders = List.of();
+
+    DestinationIndex destinationIndex;
+
+    private ClusterRelay clusterRelay;
+
+    private StagedTransactions transactions;
+
+    /** The handler which evicts the idle destinations of all the shards */
+    private IndexedStompServerHandler evictingHandler;
+
+    /**
+     * The open durable queues, their journal can only be opened once. A queue leaves once closed, on the eviction of
+     * its named destination or on shutdown.
+     */
+    private final Map<String, DurableQueue> durableQueues = new ConcurrentHashMap<>();
+
+    public void initStompServer(Supplier<Vertx> vertxSupplier, String websocketPath, boolean isSockJs,
+                                StompConnectionOptions connectionOptions,
+                                StompDestinationOptions destinationOptions,
+                                RuntimeValue<StompMetrics> metricsValue) {
+        StompMetrics metrics = metricsValue.getValue();
+        this.destinationOptions = destinationOptions;
+        configureCompression(connectionOptions);
+        collectDestinationProviders(destinationOptions);
+        registerDestinationGauges(metrics);
         Vertx vertx = vertxSupplier.get();
+        SubscribeHandler subscribeHandler = getSubscribeHandler(vertx, destinationOptions);
+        transactions = new StagedTransactions(vertx, destinationOptions.getTransactionMaxFrames(),
+                destinationOptions.getTransactionMaxBytes(), destinationOptions.getTransactionMaxAgeMillis());
+        startClusterRelay(vertx, destinationOptions);
         StompServerOptions options = new StompServerOptions()
                 .setPort(-1)
                 .setSecured(false)
                 .setWebsocketBridge(true)
-                .setWebsocketPath(websocketPath);
+                .setWebsocketPath(websocketPath)
+                // the frame parser checks the frames the inbound guard let through against the same limits
+                .setMaxHeaders(connectionOptions.getInboundMaxHeaders())
+                .setMaxHeaderLength(connectionOptions.getInboundMaxHeaderBytes())
+                .setMaxBodyLength((int) Math.min(Integer.MAX_VALUE, connectionOptions.getInboundMaxBodyBytes()));
         log.debugf("SockJS flag is %s", isSockJs);
-        stompServer = isSockJs ? new SockJsStompServer(vertx, options) : StompServer.create(vertx, options);
-        stompServer.handler(StompServerHandler.create(vertx)
-                .destinationFactory(getDestinationFactory(vertx))
-                .subscribeHandler(subscribeHandler));
+        WriteQueueStats writeQueueStats = new WriteQueueStats();
+        if (isSockJs) {
+            metrics.writeQueues(writeQueueStats);
+        }
+        if (destinationOptions.isSharded()) {
+            shards = StompShards.create(vertx, destinationOptions.getShardDrainBatch());
+            log.debugf("STOMP server sharded across %s event loops", shards.size());
+            SockJsSessions xhrSessions = new SockJsSessions(vertx, connectionOptions);
+            for (int i = 0; i < shards.size(); i++) {
+                StompServer server = createStompServer(vertx, options, isSockJs, connectionOptions, metrics,
+                        writeQueueStats);
+                if (isSockJs) {
+                    ((SockJsStompServer) server).xhrSessions(xhrSessions);
+                }
+                // the destinations are shared by the shards, one of them is enough to evict the idle ones
+                server.handler(createStompServerHandler(vertx, metrics, subscribeHandler, transactions,
+                        i == 0 ? destinationOptions : null));
+                shards.get(i).server(server);
+            }
+            stompServer = shards.get(0).server();
+        } else {
+            stompServer = createStompServer(vertx, options, isSockJs, connectionOptions, metrics, writeQueueStats);
+            stompServer.handler(createStompServerHandler(vertx, metrics, subscribeHandler, transactions,
+                    destinationOptions));
+        }
+    }
+
+    private StompServer createStompServer(Vertx vertx, StompServerOptions options, boolean isSockJs,
+                                          StompConnectionOptions connectionOptions, StompMetrics metrics,
+                                          WriteQueueStats writeQueueStats) {
+        LargeBodySink largeBodySink = largeBodySink();
+        return isSockJs
+                ? new SockJsStompServer(vertx, options, connectionOptions, metrics, writeQueueStats)
+                        .largeBodySink(largeBodySink)
+                : new GuardedStompServer(vertx, options, connectionOptions).largeBodySink(largeBodySink);
     }
 
-    private SubscribeHandler getSubscribeHandler() {
-        InstanceHandle<SubscribeInterceptor> instance = Arc.container().instance(SubscribeInterceptor.class);
+    private LargeBodySink largeBodySink() {
+        InstanceHandle<LargeBodySink> instance = Arc.container().instance(LargeBodySink.class);
+        return instance.isAvailable() ? instance.get() : null;
+    }
+
+    private StompServerHandler createStompServerHandler(Vertx vertx, StompMetrics metrics,
+                                                        SubscribeHandler subscribeHandler,
+                                                        StagedTransactions transactions,
+                                                        StompDestinationOptions evictionOptions) {
+        IndexedStompServerHandler handler = new IndexedStompServerHandler(vertx, destinationIndex)
+                .metrics(metrics)
+                .interceptors(interceptors)
+                .transactions(transactions);
+        if (evictionOptions != null) {
+            evictingHandler = handler.evictIdleDestinations(evictionOptions.getIdleDestinationMillis(),
+                    evictionOptions.getIdleSweepMillis());
+        }
+        return handler.destinationFactory(getDestinationFactory(vertx))
+                .subscribeHandler(subscribeHandler);
+    }
+
+    /**
+     * Looks up the interceptor beans, in the order decided at build time. Called before {@link #initStompServer}.
+     */
+    public void registerInterceptors(List<String> send, List<String> message, List<String> connect,
+                                     List<String> subscribe, List<String> asyncSubscribe) {
+        interceptors = StompInterceptors.lookup(send, message, connect, subscribe, asyncSubscribe);
+        log.debugf("%s SEND, %s MESSAGE and %s CONNECT interceptors have been found", send.size(), message.size(),
+                connect.size());
+    }
+
+    /**
+     * Records the destination provider beans found at build time. Called before {@link #initStompServer}.
+     */
+    public void registerDestinationProviders(List<String> providers) {
+        destinationProviders = providers;
+    }
+
+    /**
+     * Closes the durable queues on shutdown, so that their last acknowledgements are synced and their journal can be
+     * opened again by the next start in dev mode, and stops the periodic sweeps.
+     */
+    public void closeOnShutdown(ShutdownContext shutdownContext) {
+        shutdownContext.addShutdownTask(() -> {
+            if (transactions != null) {
+                transactions.close();
+            }
+            if (evictingHandler != null) {
+                evictingHandler.close();
+            }
+            for (DurableQueue queue : new ArrayList<>(durableQueues.values())) {
+                try {
+                    queue.close();
+                } catch (IOException | RuntimeException e) {
+                    log.errorf(e, "Cannot close the durable queue %s", queue.destination());
+                }
+            }
+        });
+    }
+
+    public RuntimeValue<StompMetrics> micrometerMetrics() {
+        return new RuntimeValue<>(MicrometerStompMetrics.globalRegistry());
+    }
+
+    public RuntimeValue<StompMetrics> noMetrics() {
+        return new RuntimeValue<>(StompMetrics.NOOP);
+    }
+
+    private void configureCompression(StompConnectionOptions connectionOptions) {
+        InstanceHandle<StompCompressionCustomizer> instance = Arc.container()
+                .instance(StompCompressionCustomizer.class);
         if (instance.isAvailable()) {
-            return new SubscribeHandler(instance.get());
+            instance.get().configure(connectionOptions);
+        }
+    }
+
+    private void registerDestinationGauges(StompMetrics metrics) {
+        for (DestinationProvider provider : destinationIndex.providers()) {
+            metrics.destinationSubscriptions(provider.getDestinationPath(), () -> {
+                if (provider.isDestinationPerName()) {
+                    return provider.getNamedDestinations().stream().mapToInt(Destination::numberOfSubscriptions).sum();
+                }
+                return provider.isDestinationSetUp() ? provider.getDestination().numberOfSubscriptions() : 0;
+            });
+        }
+    }
+
+    private SubscribeHandler getSubscribeHandler(Vertx vertx, StompDestinationOptions destinationOptions) {
+        SubscribeInterceptor interceptor = interceptors.subscribe();
+        AsyncSubscribeInterceptor asyncInterceptor = interceptors.asyncSubscribe();
+        if (asyncInterceptor != null) {
+            return new SubscribeHandler(interceptor, new SubscribeAuthorizer(vertx, asyncInterceptor,
+                    destinationOptions.getAuthorizationCacheTtlMillis(),
+                    destinationOptions.getAuthorizationCacheMaxEntries(),
+                    destinationOptions.getAuthorizationTimeoutMillis(),
+                    destinationOptions.isAuthorizationOnWorker()));
+        }
+        if (interceptor != null) {
+            return new SubscribeHandler(interceptor);
         }
         return new SubscribeHandler();
     }
 
     private DestinationFactory getDestinationFactory(Vertx vertx) {
         return (v, name) -> {
-            log.debugf("Destination path is %s", name);
-            Optional<DestinationProvider> optionalDestinationProvider = destinationProviders.stream()
-                    .filter(destinationProvider -> name.startsWith(destinationProvider.getDestinationPath()))
-                    .findFirst();
-            return optionalDestinationProvider
-                    .map(destinationProvider -> {
-                        log.debugf("Get known destination path");
-                        return getDestination(vertx, name, destinationProvider);
-                    })
-                    .orElseGet(() -> {
-                        log.debugf("Get unknown destination path");
-                        return null;
-                    });
+            DestinationProvider destinationProvider = destinationIndex.resolve(name);
+            log.debugf("Destination path %s resolved to %s", name, destinationProvider);
+            return destinationProvider == null ? null : getDestination(vertx, name, destinationProvider);
         };
     }
 
     private Destination getDestination(Vertx vertx, String name, DestinationProvider destinationProvider) {
-        if (!destinationProvider.isDestinationSetUp()) {
-            if (destinationProvider.getDestinationType() == DestinationProvider.DestinationType.TOPIC) {
-                log.debugf("Set subscription as TOPIC");
-                destinationProvider.setDestination(Destination.topic(vertx, name));
-            } else if (destinationProvider.getDestinationType() == DestinationProvider.DestinationType.QUEUE) {
-                log.debugf("Set subscription as QUEUE");
-                destinationProvider.setDestination(Destination.queue(vertx, name));
-            } else {
-                throw new RuntimeException("You must set destination type from Destination "
-                        + destinationProvider.getDestinationPath());
+        if (destinationProvider.isDestinationPerName()) {
+            return createDestination(vertx, name, destinationProvider);
+        }
+        // with sharding, the handlers of several event loops may ask for the destination of a provider at once
+        synchronized (destinationProvider) {
+            if (!destinationProvider.isDestinationSetUp()) {
+                destinationProvider.setDestination(createDestination(vertx, name, destinationProvider));
+            }
+            return destinationProvider.getDestination();
+        }
+    }
+
+    private Destination createDestination(Vertx vertx, String name, DestinationProvider destinationProvider) {
+        if (shards != null && destinationProvider.getDestinationType() == DestinationProvider.DestinationType.TOPIC) {
+            log.debugf("Set subscription as TOPIC sharded across event loops");
+            return new ShardedDestination(name, shards, () -> new BroadcastTopic(name, interceptors.message()),
+                    false);
+        } else if (shards != null
+                && destinationProvider.getDestinationType() == DestinationProvider.DestinationType.QUEUE) {
+            log.debugf("Set subscription as QUEUE sharded across event loops");
+            return new ShardedDestination(name, shards, () -> ackQueue(name), true);
+        } else if (destinationProvider.getDestinationType() == DestinationProvider.DestinationType.TOPIC) {
+            log.debugf("Set subscription as TOPIC");
+            return new BroadcastTopic(name, interceptors.message());
+        } else if (destinationProvider.getDestinationType() == DestinationProvider.DestinationType.QUEUE) {
+            log.debugf("Set subscription as QUEUE");
+            return ackQueue(name);
+        } else if (destinationProvider.getDestinationType() == DestinationProvider.DestinationType.CLUSTERED_TOPIC) {
+            log.debugf("Set subscription as CLUSTERED_TOPIC");
+            return new ClusteredTopic(name, clusterRelay, interceptors.message());
+        } else if (destinationProvider.getDestinationType() == DestinationProvider.DestinationType.CONFLATED_TOPIC) {
+            log.debugf("Set subscription as CONFLATED_TOPIC");
+            String keyHeader = destinationProvider.getConflationKeyHeader();
+            return new ConflatedTopic(name, keyHeader != null ? keyHeader : destinationOptions.getConflationKeyHeader(),
+                    destinationOptions.getConflationMaxKeys(), interceptors.message());
+        } else if (destinationProvider.getDestinationType() == DestinationProvider.DestinationType.CLUSTERED_QUEUE) {
+            log.debugf("Set subscription as CLUSTERED_QUEUE");
+            return new ClusteredQueue(clusterRelay, ackQueue(name));
+        } else if (destinationProvider.getDestinationType() == DestinationProvider.DestinationType.DURABLE_QUEUE) {
+            log.debugf("Set subscription as DURABLE_QUEUE");
+            return durableQueue(name);
+        }
+        throw new RuntimeException("You must set destination type from Destination "
+                + destinationProvider.getDestinationPath());
+    }
+
+    private AckQueue ackQueue(String name) {
+        return new AckQueue(name, destinationOptions.getQueuePrefetchCount(), destinationOptions.getQueueMaxBacklog(),
+                destinationOptions.getQueueBacklogPolicy());
+    }
+
+    /**
+     * @return the open durable queue of {@code name}, or a new one unless the maximum of open queues is reached
+     */
+    private DurableQueue durableQueue(String name) {
+        synchronized (durableQueues) {
+            DurableQueue queue = durableQueues.get(name);
+            if (queue != null) {
+                return queue;
             }
+            if (durableQueues.size() >= destinationOptions.getJournalMaxQueues()) {
+                log.warnf("No durable queue for %s, %d are open already", name, durableQueues.size());
+                return null;
+            }
+            DurableQueue[] opened = new DurableQueue[1];
+            opened[0] = new DurableQueue(name, Journal.open(journalDirectory(name),
+                    destinationOptions.getJournalSegmentBytes(), destinationOptions.getJournalSyncIntervalMillis()),
+                    () -> durableQueues.remove(name, opened[0]));
+            durableQueues.put(name, opened[0]);
+            return opened[0];
         }
-        return destinationProvider.getDestination();
     }
 
-    private void collectDestinationProviders() {
-        destinationProviders = CDI.current()
-                .select(DestinationProvider.class)
-                .stream()
-                .collect(Collectors.toList());
-        log.debugf("%s implementations of destination provider have been found", destinationProviders.size());
+    /**
+     * @return the journal directory of the destination {@code name}, a file name which stays the same across restarts
+     */
+    private Path journalDirectory(String name) {
+        String fileName = name.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + Integer.toHexString(name.hashCode());
+        return Paths.get(destinationOptions.getJournalDirectory()).resolve(fileName);
+    }
+
+    private void collectDestinationProviders(StompDestinationOptions destinationOptions) {
+        destinationIndex = new DestinationIndex(DiscoveredBeans.lookup(destinationProviders, DestinationProvider.class),
+                destinationOptions.getRoutingCacheSize());
+        log.debugf("%s implementations of destination provider have been found", destinationIndex.providers().size());
+    }
+
+    private void startClusterRelay(Vertx vertx, StompDestinationOptions destinationOptions) {
+        boolean clustered = destinationIndex.providers().stream()
+                .map(DestinationProvider::getDestinationType)
+                .anyMatch(type -> type == DestinationProvider.DestinationType.CLUSTERED_TOPIC
+                        || type == DestinationProvider.DestinationType.CLUSTERED_QUEUE);
+        if (clustered) {
+            clusterRelay = new ClusterRelay(vertx, destinationOptions.getClusterAddress(),
+                    destinationOptions.getClusterBatchWindowMillis(), destinationOptions.getClusterBatchMaxFrames())
+                    .start();
+        }
     }
 
     public Handler<RoutingContext> stompHandler() {
         return routingContext -> {
+            if (!"websocket".equalsIgnoreCase(routingContext.request().getHeader(HttpHeaders.UPGRADE))) {
+                // a SockJS xhr transport request
+                routingContext.next();
+                return;
+            }
             Future<ServerWebSocket> serverWebSocketFuture = routingContext.request().toWebSocket();
             serverWebSocketFuture.onComplete(event -> {
                 if (event.succeeded()) {
                     ServerWebSocket webSocket = event.result();
-                    Handler<ServerWebSocket> serverWebSocketHandler = stompServer.webSocketHandler();
+                    Handler<ServerWebSocket> serverWebSocketHandler = currentStompServer().webSocketHandler();
                     serverWebSocketHandler.handle(webSocket);
                 } else {
                     try {
@@ -115,10 +379,44 @@ public class StompServerRecorder {
         };
     }
 
-    public Handler<RoutingContext> sockJsInfoHandler() {
+    /**
+     * @return the server of the shard of the calling event loop when sharded, the only server otherwise
+     */
+    private StompServer currentStompServer() {
+        return shards == null ? stompServer : shards.currentOrNext().server();
+    }
+
+    public Handler<RoutingContext> sockJsInfoHandler(StompConnectionOptions connectionOptions) {
         return event -> {
+            JsonObject info = new JsonObject()
+                    .put("websocket", true)
+                    .put("cookie_needed", connectionOptions.isSockJsCookieNeeded())
+                    .put("origins", new JsonArray(connectionOptions.getSockJsOrigins()))
+                    .put("entropy", ThreadLocalRandom.current().nextInt() & Integer.MAX_VALUE);
             event.response().setStatusCode(200);
-            event.response().end(Buffer.buffer("{\"websocket\":true}"));
+            event.response().putHeader(HttpHeaders.CONTENT_TYPE, "application/json; charset=UTF-8");
+            event.response().putHeader(HttpHeaders.CACHE_CONTROL,
+                    "no-store, no-cache, no-transform, must-revalidate, max-age=0");
+            event.response().end(info.toBuffer());
         };
     }
+
+    public Handler<RoutingContext> xhrStreamingHandler() {
+        return routingContext -> xhrTransport().streamingHandler().handle(routingContext);
+    }
+
+    public Handler<RoutingContext> xhrPollingHandler() {
+        return routingContext -> xhrTransport().pollingHandler().handle(routingContext);
+    }
+
+    public Handler<RoutingContext> xhrSendHandler() {
+        return routingContext -> xhrTransport().sendHandler().handle(routingContext);
+    }
+
+    /**
+     * @return the xhr transports of the server of the calling event loop's shard, which opens the new sessions there
+     */
+    private SockJsXhrTransport xhrTransport() {
+        return ((SockJsStompServer) currentStompServer()).xhrTransport();
+    }
 }
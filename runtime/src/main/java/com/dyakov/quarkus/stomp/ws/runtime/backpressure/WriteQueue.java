@@ -0,0 +1,235 @@
+package com.dyakov.quarkus.stomp.ws.runtime.backpressure;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Outbound messages of one connection held back while its socket is not writable, bounded in bytes.
+ * <p>
+ * Messages go straight to the socket as long as nothing is queued and its write queue is not full. Otherwise they
+ * are queued until {@link #drain()} is called from the socket's drain handler. Once the queued bytes would exceed
+ * the limit, the {@link WriteQueuePolicy} decides what happens to the MESSAGEs of topic subscriptions without
+ * acknowledgement; the other frames are never dropped, the connection is closed instead.
+ */
+public class WriteQueue {
+
+    /**
+     * The socket the messages are written to.
+     */
+    public interface Sink {
+        boolean writeQueueFull();
+
+        void write(ByteBuf message);
+
+        /**
+         * @param compressed whether {@code message} is already a permessage-deflate payload
+         */
+        default void write(ByteBuf message, boolean compressed) {
+            write(message);
+        }
+    }
+
+    private final Sink sink;
+    private final long maxBytes;
+    private final WriteQueuePolicy policy;
+    private final WriteQueueStats stats;
+
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    /** Queued entries by conflation key, used by {@link WriteQueuePolicy#CONFLATE} and conflated destinations */
+    private final Map<String, Entry> byKey = new HashMap<>();
+    private long queuedBytes;
+    private long droppedFrames;
+    private long conflatedFrames;
+
+    public WriteQueue(Sink sink, long maxBytes, WriteQueuePolicy policy, WriteQueueStats stats) {
+        this.sink = sink;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.stats = stats;
+    }
+
+    /**
+     * Writes or queues {@code message}, taking ownership of it. The message is never dropped: the frames which do not
+     * come from a topic subscription without acknowledgement, ack-required MESSAGEs, RECEIPTs and ERRORs, must reach
+     * the client or the connection must go.
+     *
+     * @return {@code false} if the limit is exceeded once the droppable messages are dropped, the connection must be
+     * closed then
+     */
+    public boolean offer(ByteBuf message) {
+        return offer(message, false);
+    }
+
+    /**
+     * Like {@link #offer(ByteBuf)}, for a message which may be a permessage-deflate payload already.
+     */
+    public boolean offer(ByteBuf message, boolean compressed) {
+        return offer(message, null, compressed, false, false);
+    }
+
+    /**
+     * Writes or queues a MESSAGE of a topic subscription without acknowledgement, taking ownership of it. Once the
+     * limit is exceeded the policy applies: it is dropped, older droppable messages are, or it replaces the queued
+     * message of the same subscription.
+     *
+     * @return {@code false} if the limit is exceeded and the policy is {@link WriteQueuePolicy#DISCONNECT}
+     */
+    public boolean offerDroppable(ByteBuf message, String destination, String subscription, boolean compressed) {
+        return offer(message, destination + '\n' + subscription, compressed, true,
+                policy == WriteQueuePolicy.CONFLATE);
+    }
+
+    /**
+     * Like {@link #offerDroppable(ByteBuf, String, String, boolean)}, replacing the queued message of the same
+     * subscription and conflation key whatever the policy, for the destinations which only keep the last value of a
+     * key.
+     */
+    public boolean offerConflated(ByteBuf message, String destination, String subscription, String conflationKey,
+                                  boolean compressed) {
+        return offer(message, destination + '\n' + subscription + '\n' + conflationKey, compressed, true, true);
+    }
+
+    private synchronized boolean offer(ByteBuf message, String key, boolean compressed, boolean droppable,
+                                       boolean conflate) {
+        if (queue.isEmpty() && !sink.writeQueueFull()) {
+            sink.write(message, compressed);
+            return true;
+        }
+        int size = message.readableBytes();
+        if (conflate) {
+            Entry queued = byKey.get(key);
+            if (queued != null) {
+                queued.message.release();
+                queued.message = message;
+                queued.compressed = compressed;
+                adjust(size - queued.size);
+                queued.size = size;
+                conflatedFrames++;
+                stats.conflated();
+                trimOldest(0, queued);
+                return true;
+            }
+        }
+        if (queuedBytes + size > maxBytes) {
+            if (policy == WriteQueuePolicy.DISCONNECT) {
+                message.release();
+                return false;
+            }
+            if (droppable && policy == WriteQueuePolicy.DROP_NEWEST) {
+                message.release();
+                dropped();
+                return true;
+            }
+            trimOldest(size, null);
+            if (queuedBytes + size > maxBytes) {
+                // only messages which must be delivered are left
+                message.release();
+                if (!droppable) {
+                    return false;
+                }
+                dropped();
+                return true;
+            }
+        }
+        Entry entry = new Entry(message, size, conflate ? key : null, compressed, droppable);
+        queue.add(entry);
+        if (entry.key != null) {
+            byKey.put(entry.key, entry);
+        }
+        adjust(size);
+        return true;
+    }
+
+    /**
+     * Writes the queued messages until the socket is full again.
+     */
+    public synchronized void drain() {
+        while (!queue.isEmpty() && !sink.writeQueueFull()) {
+            Entry entry = remove();
+            sink.write(entry.message, entry.compressed);
+        }
+    }
+
+    /**
+     * Releases the queued messages, when the connection is closed.
+     */
+    public synchronized void clear() {
+        while (!queue.isEmpty()) {
+            remove().message.release();
+        }
+    }
+
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return the queued messages replaced by a newer one of the same key
+     */
+    public synchronized long getConflatedFrames() {
+        return conflatedFrames;
+    }
+
+    /**
+     * Drops the oldest droppable messages but {@code keep} until {@code incoming} more bytes fit.
+     */
+    private void trimOldest(int incoming, Entry keep) {
+        Iterator<Entry> entries = queue.iterator();
+        while (queuedBytes + incoming > maxBytes && entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.droppable && entry != keep) {
+                entries.remove();
+                forget(entry);
+                entry.message.release();
+                dropped();
+            }
+        }
+    }
+
+    private Entry remove() {
+        Entry entry = queue.poll();
+        forget(entry);
+        return entry;
+    }
+
+    private void forget(Entry entry) {
+        if (entry.key != null) {
+            byKey.remove(entry.key, entry);
+        }
+        adjust(-entry.size);
+    }
+
+    private void adjust(long bytes) {
+        queuedBytes += bytes;
+        stats.queued(bytes);
+    }
+
+    private void dropped() {
+        droppedFrames++;
+        stats.dropped();
+    }
+
+    private static final class Entry {
+        private ByteBuf message;
+        private int size;
+        private final String key;
+        private boolean compressed;
+        private final boolean droppable;
+
+        Entry(ByteBuf message, int size, String key, boolean compressed, boolean droppable) {
+            this.message = message;
+            this.size = size;
+            this.key = key;
+            this.compressed = compressed;
+            this.droppable = droppable;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.dyakov.quarkus.stomp.ws.runtime.backpressure;
+
+/**
+ * What a connection does with the MESSAGEs of its topic subscriptions without acknowledgement once the frames queued
+ * behind a full WebSocket exceed the limit. The other frames are never dropped: the connection is closed instead.
+ */
+public enum WriteQueuePolicy {
+
+    /** Drops the oldest queued frames to make room for the new one */
+    DROP_OLDEST,
+
+    /** Drops the new frame */
+    DROP_NEWEST,
+
+    /** Replaces the queued frame of the same subscription with the new one, dropping the oldest frames otherwise */
+    CONFLATE,
+
+    /** Sends a STOMP ERROR frame and closes the connection */
+    DISCONNECT
+}
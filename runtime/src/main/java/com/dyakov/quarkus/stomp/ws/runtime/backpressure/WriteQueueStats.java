@@ -0,0 +1,49 @@
+package com.dyakov.quarkus.stomp.ws.runtime.backpressure;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Slow consumer counters of all the connections of a server.
+ */
+public class WriteQueueStats {
+
+    private final LongAdder queuedBytes = new LongAdder();
+    private final LongAdder droppedFrames = new LongAdder();
+    private final LongAdder conflatedFrames = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+
+    /**
+     * @return the bytes currently held in the write queues, waiting for the sockets to drain
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.sum();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.sum();
+    }
+
+    public long getConflatedFrames() {
+        return conflatedFrames.sum();
+    }
+
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    public void queued(long bytes) {
+        queuedBytes.add(bytes);
+    }
+
+    public void dropped() {
+        droppedFrames.increment();
+    }
+
+    public void conflated() {
+        conflatedFrames.increment();
+    }
+
+    public void disconnected() {
+        disconnects.increment();
+    }
+}
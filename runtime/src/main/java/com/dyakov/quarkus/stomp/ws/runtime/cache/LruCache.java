@@ -0,0 +1,96 @@
+package com.dyakov.quarkus.stomp.ws.runtime.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent cache of at most {@code maxSize} entries, which evicts the least recently used ones when it is full.
+ * <p>
+ * A hit is a map lookup and, at most once per insertion, a volatile write of the entry's last use, so that the
+ * event loops reading the cache do not contend on a lock. Recency is approximate: the entries used since the same
+ * insertion are equally recent. Going over {@code maxSize} evicts the least recently used quarter of the entries in
+ * one pass, on the inserting thread.
+ */
+public final class LruCache<K, V> {
+
+    private final int maxSize;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    /** Advanced by every insertion */
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * @param maxSize 0 for no caching
+     */
+    public LruCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the value of {@code key}, {@code null} if it is not cached
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = clock.get();
+        if (entry.used != now) {
+            entry.used = now;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Caches {@code value} unless {@code key} is already, evicting the least recently used entries when full.
+     *
+     * @return the cached value of {@code key}
+     */
+    public V putIfAbsent(K key, V value) {
+        if (maxSize <= 0) {
+            return value;
+        }
+        Entry<V> existing = entries.putIfAbsent(key, new Entry<>(value, clock.incrementAndGet()));
+        if (existing != null) {
+            return existing.value;
+        }
+        if (entries.size() > maxSize) {
+            evict();
+        }
+        return value;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long[] used = entries.values().stream().mapToLong(entry -> entry.used).toArray();
+            int excess = used.length - maxSize * 3 / 4;
+            if (excess <= 0) {
+                return;
+            }
+            Arrays.sort(used);
+            long oldest = used[excess - 1];
+            entries.values().removeIf(entry -> entry.used <= oldest);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        volatile long used;
+
+        Entry(V value, long used) {
+            this.value = value;
+            this.used = used;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.dyakov.quarkus.stomp.ws.runtime.cluster;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.stomp.Frame;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Relays the frames of clustered destinations between the nodes over the Vert.x event bus.
+ * <p>
+ * Every node announces on {@code <prefix>.interest} the destinations it holds subscribers for, so frames are only
+ * sent to the {@code <prefix>.node.<id>} address of the nodes which have an interest in them. Frames are batched
+ * per node and destination until the end of the current event loop task, or of the configured window.
+ */
+public class ClusterRelay {
+
+    private static final Logger log = Logger.getLogger(ClusterRelay.class.getName());
+
+    private static final String TYPE = "type";
+    private static final String NODE = "node";
+    private static final String DESTINATION = "destination";
+    private static final String INTEREST = "interest";
+    private static final String NO_INTEREST = "no-interest";
+    private static final String SYNC = "sync";
+    private static final String BYE = "bye";
+
+    private final Vertx vertx;
+    private final Context context;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final String addressPrefix;
+    private final String interestAddress;
+    private final long batchWindowMillis;
+    private final int batchMaxFrames;
+
+    private final ConcurrentMap<String, ClusteredDestination> localDestinations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> interest = new ConcurrentHashMap<>();
+
+    /** Frames waiting to be sent, by node and destination */
+    private Map<String, Map<String, List<Frame>>> pending = new HashMap<>();
+    private boolean flushScheduled;
+
+    private MessageConsumer<JsonObject> interestConsumer;
+    private MessageConsumer<FrameBatch> nodeConsumer;
+
+    public ClusterRelay(Vertx vertx, String addressPrefix, long batchWindowMillis, int batchMaxFrames) {
+        this.vertx = vertx;
+        this.context = vertx.getOrCreateContext();
+        this.addressPrefix = addressPrefix;
+        this.interestAddress = addressPrefix + ".interest";
+        this.batchWindowMillis = batchWindowMillis;
+        this.batchMaxFrames = batchMaxFrames;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Registers the consumers of this node and asks the other nodes to announce their interests again.
+     */
+    public ClusterRelay start() {
+        EventBus eventBus = vertx.eventBus();
+        try {
+            eventBus.registerDefaultCodec(FrameBatch.class, new FrameBatchCodec());
+        } catch (IllegalStateException e) {
+            // already registered by another relay of this Vert.x instance
+        }
+        interestConsumer = eventBus.consumer(interestAddress, this::onInterest);
+        nodeConsumer = eventBus.consumer(nodeAddress(nodeId), this::onFrames);
+        eventBus.publish(interestAddress, announcement(SYNC, null));
+        log.debugf("Cluster relay %s started on %s", nodeId, addressPrefix);
+        return this;
+    }
+
+    public void close() {
+        flush();
+        vertx.eventBus().publish(interestAddress, announcement(BYE, null));
+        if (interestConsumer != null) {
+            interestConsumer.unregister();
+        }
+        if (nodeConsumer != null) {
+            nodeConsumer.unregister();
+        }
+    }
+
+    /**
+     * Announces that this node holds subscribers for {@code destination}.
+     */
+    public void addInterest(ClusteredDestination destination) {
+        localDestinations.put(destination.destination(), destination);
+        vertx.eventBus().publish(interestAddress, announcement(INTEREST, destination.destination()));
+    }
+
+    /**
+     * Announces that this node no longer holds subscribers for {@code destination}.
+     */
+    public void removeInterest(ClusteredDestination destination) {
+        if (localDestinations.remove(destination.destination(), destination)) {
+            vertx.eventBus().publish(interestAddress, announcement(NO_INTEREST, destination.destination()));
+        }
+    }
+
+    /**
+     * @return the other nodes which hold subscribers for {@code destination}
+     */
+    public Set<String> interestedNodes(String destination) {
+        return interest.getOrDefault(destination, Collections.emptySet());
+    }
+
+    /**
+     * Sends {@code frame} to every other node interested in {@code destination}.
+     */
+    public void publish(String destination, Frame frame) {
+        Set<String> nodes = interestedNodes(destination);
+        if (nodes.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (String node : nodes) {
+                batched(node, destination, frame);
+            }
+        }
+    }
+
+    /**
+     * Sends {@code frame} to the {@code destination} of one node.
+     */
+    public void send(String node, String destination, Frame frame) {
+        synchronized (this) {
+            batched(node, destination, frame);
+        }
+    }
+
+    /**
+     * Sends the frames batched so far.
+     */
+    public void flush() {
+        Map<String, Map<String, List<Frame>>> batches;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batches = pending;
+            pending = new HashMap<>();
+        }
+        EventBus eventBus = vertx.eventBus();
+        for (Map.Entry<String, Map<String, List<Frame>>> node : batches.entrySet()) {
+            String address = nodeAddress(node.getKey());
+            for (Map.Entry<String, List<Frame>> destination : node.getValue().entrySet()) {
+                eventBus.send(address, new FrameBatch(destination.getKey(), destination.getValue()));
+            }
+        }
+    }
+
+    private void batched(String node, String destination, Frame frame) {
+        List<Frame> frames = pending.computeIfAbsent(node, n -> new HashMap<>())
+                .computeIfAbsent(destination, d -> new ArrayList<>());
+        frames.add(frame);
+        if (frames.size() >= batchMaxFrames) {
+            // flush() takes the lock again, the monitor is reentrant
+            flush();
+            return;
+        }
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        if (batchWindowMillis > 0) {
+            vertx.setTimer(batchWindowMillis, id -> flush());
+        } else {
+            context.runOnContext(v -> flush());
+        }
+    }
+
+    private void onFrames(Message<FrameBatch> message) {
+        FrameBatch batch = message.body();
+        ClusteredDestination destination = localDestinations.get(batch.destination());
+        if (destination == null) {
+            log.debugf("Dropping %d frames relayed to %s, no local subscribers", batch.frames().size(),
+                    batch.destination());
+            return;
+        }
+        for (Frame frame : batch.frames()) {
+            destination.deliver(frame);
+        }
+    }
+
+    private void onInterest(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String node = body.getString(NODE);
+        if (nodeId.equals(node)) {
+            return;
+        }
+        String destination = body.getString(DESTINATION);
+        switch (body.getString(TYPE)) {
+            case INTEREST:
+                interest.computeIfAbsent(destination, d -> ConcurrentHashMap.newKeySet()).add(node);
+                break;
+            case NO_INTEREST:
+                interest.computeIfPresent(destination, (d, nodes) -> {
+                    nodes.remove(node);
+                    return nodes.isEmpty() ? null : nodes;
+                });
+                break;
+            case SYNC:
+                for (String local : localDestinations.keySet()) {
+                    vertx.eventBus().publish(interestAddress, announcement(INTEREST, local));
+                }
+                break;
+            case BYE:
+                for (String known : interest.keySet()) {
+                    interest.computeIfPresent(known, (d, nodes) -> {
+                        nodes.remove(node);
+                        return nodes.isEmpty() ? null : nodes;
+                    });
+                }
+                break;
+            default:
+                log.warnf("Unknown cluster announcement %s", body);
+        }
+    }
+
+    private JsonObject announcement(String type, String destination) {
+        JsonObject announcement = new JsonObject().put(TYPE, type).put(NODE, nodeId);
+        if (destination != null) {
+            announcement.put(DESTINATION, destination);
+        }
+        return announcement;
+    }
+
+    private String nodeAddress(String node) {
+        return addressPrefix + ".node." + node;
+    }
+}
@@ -0,0 +1,16 @@
+package com.dyakov.quarkus.stomp.ws.runtime.cluster;
+
+import io.vertx.ext.stomp.Frame;
+
+/**
+ * Local end of a destination shared between the nodes of a cluster through a {@link ClusterRelay}.
+ */
+public interface ClusteredDestination {
+
+    String destination();
+
+    /**
+     * Dispatches a frame relayed by another node to the local subscribers, without relaying it again.
+     */
+    void deliver(Frame frame);
+}
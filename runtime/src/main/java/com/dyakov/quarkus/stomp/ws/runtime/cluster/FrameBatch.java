@@ -0,0 +1,27 @@
+package com.dyakov.quarkus.stomp.ws.runtime.cluster;
+
+import io.vertx.ext.stomp.Frame;
+
+import java.util.List;
+
+/**
+ * Frames of one destination sent to a node as a single event bus message.
+ */
+public final class FrameBatch {
+
+    private final String destination;
+    private final List<Frame> frames;
+
+    public FrameBatch(String destination, List<Frame> frames) {
+        this.destination = destination;
+        this.frames = frames;
+    }
+
+    public String destination() {
+        return destination;
+    }
+
+    public List<Frame> frames() {
+        return frames;
+    }
+}
@@ -0,0 +1,97 @@
+package com.dyakov.quarkus.stomp.ws.runtime.cluster;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.utils.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Length prefixed binary encoding of a {@link FrameBatch}. Local deliveries pass the batch as is.
+ */
+public class FrameBatchCodec implements MessageCodec<FrameBatch, FrameBatch> {
+
+    public static final String NAME = "stomp-frame-batch";
+
+    @Override
+    public void encodeToWire(Buffer buffer, FrameBatch batch) {
+        writeString(buffer, batch.destination());
+        buffer.appendInt(batch.frames().size());
+        for (Frame frame : batch.frames()) {
+            writeString(buffer, frame.getCommand().name());
+            buffer.appendInt(frame.getHeaders().size());
+            for (Map.Entry<String, String> header : frame.getHeaders().entrySet()) {
+                writeString(buffer, header.getKey());
+                writeString(buffer, header.getValue());
+            }
+            Buffer body = frame.getBody();
+            if (body == null) {
+                buffer.appendInt(-1);
+            } else {
+                buffer.appendInt(body.length()).appendBuffer(body);
+            }
+        }
+    }
+
+    @Override
+    public FrameBatch decodeFromWire(int pos, Buffer buffer) {
+        int[] position = {pos};
+        String destination = readString(buffer, position);
+        int count = readInt(buffer, position);
+        List<Frame> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Command command = Command.valueOf(readString(buffer, position));
+            int headerCount = readInt(buffer, position);
+            Headers headers = Headers.create();
+            for (int h = 0; h < headerCount; h++) {
+                headers.add(readString(buffer, position), readString(buffer, position));
+            }
+            int bodyLength = readInt(buffer, position);
+            Buffer body = null;
+            if (bodyLength >= 0) {
+                body = buffer.getBuffer(position[0], position[0] + bodyLength);
+                position[0] += bodyLength;
+            }
+            frames.add(new Frame(command, headers, body));
+        }
+        return new FrameBatch(destination, frames);
+    }
+
+    @Override
+    public FrameBatch transform(FrameBatch batch) {
+        return batch;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+
+    private static void writeString(Buffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.appendInt(bytes.length).appendBytes(bytes);
+    }
+
+    private static String readString(Buffer buffer, int[] position) {
+        int length = readInt(buffer, position);
+        String value = buffer.getString(position[0], position[0] + length, StandardCharsets.UTF_8.name());
+        position[0] += length;
+        return value;
+    }
+
+    private static int readInt(Buffer buffer, int[] position) {
+        int value = buffer.getInt(position[0]);
+        position[0] += 4;
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+package com.dyakov.quarkus.stomp.ws.runtime.compression;
+
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsFrameEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.util.zip.Deflater;
+
+/**
+ * Raw DEFLATE as framed by permessage-deflate (RFC 7692), for messages compressed outside of the Netty pipeline.
+ * <p>
+ * Every segment is compressed on its own and ends with a sync flush, so it is byte aligned, holds no final block
+ * and does not refer to data before it. Segments can therefore be compressed once and concatenated in any
+ * combination, provided the peer does not expect the server to keep its compression context between messages.
+ */
+public final class PerMessageDeflate {
+
+    /** The {@code 00 00 ff ff} a sync flush ends with, left out at the end of every message */
+    public static final int FLUSH_TRAILER_LENGTH = 4;
+
+    private static final int MAX_STORED_BLOCK = 0xFFFF;
+    private static final int MIN_OUTPUT_STEP = 64;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(
+            Deflater.DEFAULT_COMPRESSION, true));
+
+    private PerMessageDeflate() {
+    }
+
+    /**
+     * Compresses a whole message, as Netty would for a peer without context takeover. The caller owns the result.
+     */
+    public static ByteBuf deflate(ByteBuf message, int level) {
+        ByteBuf out = deflateSegment(message, level);
+        out.writerIndex(out.writerIndex() - FLUSH_TRAILER_LENGTH);
+        return out;
+    }
+
+    /**
+     * Compresses {@code in} into a sync flushed segment. The caller owns the result.
+     */
+    public static ByteBuf deflateSegment(ByteBuf in, int level) {
+        int length = in.readableBytes();
+        byte[] input;
+        int offset;
+        if (in.hasArray()) {
+            input = in.array();
+            offset = in.arrayOffset() + in.readerIndex();
+        } else {
+            input = ByteBufUtil.getBytes(in);
+            offset = 0;
+        }
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(input, offset, length);
+        ByteBuf out = SockJsFrameEncoder.ALLOCATOR.heapBuffer((length >> 1) + MIN_OUTPUT_STEP);
+        int written;
+        int writable;
+        do {
+            out.ensureWritable(Math.max(MIN_OUTPUT_STEP, length >> 3));
+            writable = out.writableBytes();
+            written = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(), writable,
+                    Deflater.SYNC_FLUSH);
+            out.writerIndex(out.writerIndex() + written);
+        } while (written == writable);
+        return out;
+    }
+
+    /**
+     * Writes {@code in} as stored (uncompressed) non-final blocks, which is cheaper than compressing the few
+     * bytes which differ between the copies of a message.
+     */
+    public static void writeStored(ByteBuf out, ByteBuf in) {
+        int index = in.readerIndex();
+        int remaining = in.readableBytes();
+        do {
+            int length = Math.min(remaining, MAX_STORED_BLOCK);
+            // BFINAL 0 and BTYPE 00, padded up to the byte boundary the previous segment ended on
+            out.writeByte(0);
+            out.writeShortLE(length);
+            out.writeShortLE(~length);
+            out.writeBytes(in, index, length);
+            index += length;
+            remaining -= length;
+        } while (remaining > 0);
+    }
+}
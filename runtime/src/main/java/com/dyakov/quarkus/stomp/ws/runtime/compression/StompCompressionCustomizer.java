@@ -0,0 +1,42 @@
+package com.dyakov.quarkus.stomp.ws.runtime.compression;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import io.quarkus.vertx.http.HttpServerOptionsCustomizer;
+import io.vertx.core.http.HttpServerOptions;
+
+import javax.inject.Singleton;
+
+/**
+ * Negotiates permessage-deflate on the HTTP server the STOMP WebSocket route is upgraded on. Left alone unless
+ * compression is enabled, since the options apply to every WebSocket of the application.
+ */
+@Singleton
+public class StompCompressionCustomizer implements HttpServerOptionsCustomizer {
+
+    private volatile StompConnectionOptions options;
+
+    public void configure(StompConnectionOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public void customizeHttpServer(HttpServerOptions httpServerOptions) {
+        customize(httpServerOptions);
+    }
+
+    @Override
+    public void customizeHttpsServer(HttpServerOptions httpServerOptions) {
+        customize(httpServerOptions);
+    }
+
+    private void customize(HttpServerOptions httpServerOptions) {
+        StompConnectionOptions options = this.options;
+        if (options == null || !options.isCompressionEnabled()) {
+            return;
+        }
+        httpServerOptions.setPerMessageWebSocketCompressionSupported(true)
+                .setWebSocketCompressionLevel(options.getCompressionLevel())
+                .setWebSocketAllowServerNoContext(options.isCompressionServerNoContextTakeover())
+                .setWebSocketPreferredClientNoContext(options.isCompressionClientNoContextTakeover());
+    }
+}
@@ -0,0 +1,129 @@
+package com.dyakov.quarkus.stomp.ws.runtime.compression;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.impl.WebSocketInternal;
+
+import java.util.Map;
+
+/**
+ * The permessage-deflate state of one WebSocket, when the HTTP server negotiated the extension with the client.
+ * <p>
+ * Messages below the configured size skip the Netty deflate encoder and go out uncompressed. Messages which are a
+ * deflate payload already (see {@link PerMessageDeflate}) go out with RSV1 set, which is only valid when the
+ * client asked the server not to keep its compression context between messages. All writes are handed to the event
+ * loop of the channel, in order.
+ */
+public final class WebSocketDeflate {
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+
+    private final ChannelHandlerContext socketContext;
+    private final boolean serverNoContextTakeover;
+    private final int minBytes;
+    private final int level;
+
+    /** Writes on the context of the deflate encoder skip it, resolved on the first write */
+    private ChannelHandlerContext encoderContext;
+    private boolean resolved;
+
+    private WebSocketDeflate(ChannelHandlerContext socketContext, boolean serverNoContextTakeover,
+                             StompConnectionOptions options) {
+        this.socketContext = socketContext;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.minBytes = options.getCompressionMinBytes();
+        this.level = options.getCompressionLevel();
+    }
+
+    /**
+     * @return the deflate state of {@code socket}, {@code null} when compression is not configured
+     */
+    public static WebSocketDeflate of(ServerWebSocket socket, StompConnectionOptions options) {
+        if (!options.isCompressionEnabled() || !(socket instanceof WebSocketInternal)) {
+            return null;
+        }
+        boolean noContextTakeover = options.isCompressionServerNoContextTakeover()
+                && offersServerNoContextTakeover(socket.headers().get(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS));
+        return new WebSocketDeflate(((WebSocketInternal) socket).channelHandlerContext(), noContextTakeover, options);
+    }
+
+    /**
+     * Whether the first permessage-deflate offer of the client, the one the server accepts, asks for
+     * server_no_context_takeover with the full window size the precompressed messages are made for.
+     */
+    static boolean offersServerNoContextTakeover(String extensions) {
+        if (extensions == null) {
+            return false;
+        }
+        for (String offer : extensions.split(",")) {
+            String[] parameters = offer.split(";");
+            if (!PERMESSAGE_DEFLATE.equalsIgnoreCase(parameters[0].trim())) {
+                continue;
+            }
+            boolean noContextTakeover = false;
+            for (int i = 1; i < parameters.length; i++) {
+                String name = parameters[i].split("=", 2)[0].trim();
+                if (SERVER_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(name)) {
+                    noContextTakeover = true;
+                } else if (SERVER_MAX_WINDOW_BITS.equalsIgnoreCase(name)) {
+                    return false;
+                }
+            }
+            return noContextTakeover;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether precompressed messages can be written to this socket
+     */
+    public boolean acceptsPrecompressed() {
+        return serverNoContextTakeover && encoderContext() != null;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    /**
+     * Writes {@code message}, taking ownership of it.
+     *
+     * @return {@code false} if the extension was not negotiated, the caller then writes the message itself
+     */
+    public boolean write(ByteBuf message, boolean compressed) {
+        ChannelHandlerContext encoder = encoderContext();
+        if (encoder == null) {
+            return false;
+        }
+        ChannelHandlerContext context = compressed || message.readableBytes() < minBytes ? encoder : socketContext;
+        TextWebSocketFrame frame = new TextWebSocketFrame(true, compressed ? WebSocketExtension.RSV1 : 0, message);
+        // always through the event loop queue, so that writes from any thread keep their order
+        context.executor().execute(() -> context.writeAndFlush(frame));
+        return true;
+    }
+
+    private synchronized ChannelHandlerContext encoderContext() {
+        if (!resolved) {
+            // the encoder is added once the handshake response is written, which is long done by the first frame
+            resolved = true;
+            ChannelPipeline pipeline = socketContext.pipeline();
+            for (Map.Entry<String, ChannelHandler> handler : pipeline) {
+                if (handler.getValue() instanceof WebSocketExtensionEncoder) {
+                    encoderContext = pipeline.context(handler.getValue());
+                    break;
+                }
+            }
+        }
+        return encoderContext;
+    }
+}
@@ -0,0 +1,394 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.Frames;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Queue which gives each frame, round robin, to one subscriber, like the Vert.x queue. The message ids are numbers
+ * instead of random UUIDs, and the frames waiting for an acknowledgement are kept per subscription in
+ * {@link PendingAcks}, so that an ACK or a NACK is a binary search instead of a scan of every subscription and of
+ * their frames.
+ * <p>
+ * A subscription which acknowledges its frames holds at most its {@link #PREFETCH_COUNT} of them unacknowledged.
+ * The subscriptions with room left take turns in a ring, a subscription which is full leaves it until an ACK or a
+ * NACK frees some room. When every subscription is full, the frames wait in the backlog of the queue and go to the
+ * first one freeing room, or to the next subscriber. The backlog holds at most {@code maxBacklog} frames, the
+ * {@link BacklogPolicy} decides what happens to the next ones, and it is emptied when the last subscription goes
+ * away.
+ * <p>
+ * As with the Vert.x queue, a frame dispatched without subscribers is dropped, the frames of a subscription which
+ * goes away are not delivered again, and ACKs and NACKs are reported to
+ * {@link io.vertx.ext.stomp.StompServerHandler#onAck} and {@link io.vertx.ext.stomp.StompServerHandler#onNack}.
+ */
+public class AckQueue implements Destination {
+
+    /**
+     * Header of the SUBSCRIBE frame limiting the unacknowledged frames of the subscription, 0 for no limit
+     */
+    public static final String PREFETCH_COUNT = "prefetch-count";
+
+    /** Shared by all the queues, so that a message id is only ever pending in one subscription */
+    private static final AtomicLong MESSAGE_IDS = new AtomicLong();
+
+    private final String destination;
+    private final int prefetchCount;
+    private final int maxBacklog;
+    private final BacklogPolicy backlogPolicy;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    /** The subscriptions with room for another frame, in turn order, unsubscribed ones are skipped when polled */
+    private final ArrayDeque<Subscription> ready = new ArrayDeque<>();
+    /** The frames waiting for a subscription to have room */
+    private final ArrayDeque<Frame> backlog = new ArrayDeque<>();
+    private volatile boolean saturated;
+    private long droppedFrames;
+
+    public AckQueue(String destination) {
+        this(destination, 0);
+    }
+
+    /**
+     * @param prefetchCount the limit of the subscriptions whose SUBSCRIBE frame has no {@link #PREFETCH_COUNT}
+     *                      header, 0 for no limit
+     */
+    public AckQueue(String destination, int prefetchCount) {
+        this(destination, prefetchCount, Integer.MAX_VALUE, BacklogPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param maxBacklog the frames which can wait for a subscription to have room, 0 for none
+     */
+    public AckQueue(String destination, int prefetchCount, int maxBacklog, BacklogPolicy backlogPolicy) {
+        if (maxBacklog < 0) {
+            throw new IllegalArgumentException("The backlog of " + destination + " cannot be negative");
+        }
+        this.destination = destination;
+        this.prefetchCount = prefetchCount;
+        this.maxBacklog = maxBacklog;
+        this.backlogPolicy = backlogPolicy;
+    }
+
+    @Override
+    public String destination() {
+        return destination;
+    }
+
+    @Override
+    public synchronized Destination dispatch(StompServerConnection connection, Frame frame) {
+        if (subscriptions.isEmpty()) {
+            return this;
+        }
+        Subscription subscription = ready.poll();
+        while (subscription != null && !subscription.active) {
+            subscription = ready.poll();
+        }
+        if (subscription == null) {
+            saturated = true;
+            if (backlog.size() < maxBacklog) {
+                backlog.add(frame);
+                return this;
+            }
+            switch (backlogPolicy) {
+                case DROP_OLDEST:
+                    // without a backlog there is no older frame, the new one is dropped
+                    if (backlog.poll() != null) {
+                        backlog.add(frame);
+                    }
+                    droppedFrames++;
+                    break;
+                case DROP_NEWEST:
+                    droppedFrames++;
+                    break;
+                default:
+                    reject(connection, frame);
+                    break;
+            }
+            return this;
+        }
+        deliver(subscription, frame);
+        if (subscription.hasRoom()) {
+            ready.add(subscription);
+        } else {
+            subscription.ready = false;
+            saturated = ready.isEmpty();
+        }
+        return this;
+    }
+
+    private void reject(StompServerConnection connection, Frame frame) {
+        droppedFrames++;
+        if (connection == null) {
+            return;
+        }
+        Headers headers = Headers.create(Frame.DESTINATION, destination);
+        if (frame.getReceipt() != null) {
+            headers.add(Frame.RECEIPT_ID, frame.getReceipt());
+        }
+        connection.write(Frames.createErrorFrame("Queue full", headers,
+                "The " + maxBacklog + " frames waiting for a subscriber of " + destination + " are not consumed"));
+        connection.close();
+    }
+
+    private void deliver(Subscription subscription, Frame frame) {
+        long messageId = MESSAGE_IDS.incrementAndGet();
+        String id = Long.toString(messageId);
+        Headers headers = Headers.create(frame.getHeaders())
+                .add(Frame.SUBSCRIPTION, subscription.id)
+                .add(Frame.MESSAGE_ID, id)
+                .add(Frame.DESTINATION, destination);
+        if (subscription.pending != null) {
+            headers.add(Frame.ACK, id);
+        }
+        Frame message = new Frame(Command.MESSAGE, headers, frame.getBody());
+        if (subscription.pending != null) {
+            subscription.pending.add(messageId, message);
+        }
+        subscription.connection.write(message);
+    }
+
+    @Override
+    public synchronized Destination subscribe(StompServerConnection connection, Frame frame) {
+        Subscription subscription = new Subscription(connection, frame, prefetchCount);
+        subscriptions.add(subscription);
+        refill(subscription);
+        return this;
+    }
+
+    @Override
+    public synchronized boolean unsubscribe(StompServerConnection connection, Frame frame) {
+        String id = frame.getId();
+        for (Iterator<Subscription> iterator = subscriptions.iterator(); iterator.hasNext(); ) {
+            Subscription subscription = iterator.next();
+            if (subscription.connection == connection && subscription.id.equals(id)) {
+                iterator.remove();
+                subscription.active = false;
+                clearWhenUnsubscribed();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized Destination unsubscribeConnection(StompServerConnection connection) {
+        subscriptions.removeIf(subscription -> {
+            if (subscription.connection == connection) {
+                subscription.active = false;
+                return true;
+            }
+            return false;
+        });
+        clearWhenUnsubscribed();
+        return this;
+    }
+
+    /**
+     * Drops the frames waiting in the backlog once there is no subscription left to take them, as frames
+     * dispatched without subscribers are.
+     */
+    private void clearWhenUnsubscribed() {
+        if (subscriptions.isEmpty()) {
+            backlog.clear();
+            ready.clear();
+            saturated = false;
+        }
+    }
+
+    @Override
+    public boolean ack(StompServerConnection connection, Frame frame) {
+        Settled settled = settle(connection, frame);
+        if (settled == null) {
+            return false;
+        }
+        connection.handler().onAck(connection, settled.subscription.frame, settled.frames);
+        return true;
+    }
+
+    @Override
+    public boolean nack(StompServerConnection connection, Frame frame) {
+        Settled settled = settle(connection, frame);
+        if (settled == null) {
+            return false;
+        }
+        connection.handler().onNack(connection, settled.subscription.frame, settled.frames);
+        return true;
+    }
+
+    @Override
+    public synchronized List<String> getSubscriptions(StompServerConnection connection) {
+        return subscriptions.stream()
+                .filter(subscription -> subscription.connection == connection)
+                .map(subscription -> subscription.id)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized int numberOfSubscriptions() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public boolean matches(String address) {
+        return destination.equals(address);
+    }
+
+    /**
+     * @return the frames of the subscriptions of {@code connection} waiting for an acknowledgement
+     */
+    public synchronized int pending(StompServerConnection connection) {
+        int pending = 0;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.connection == connection && subscription.pending != null) {
+                pending += subscription.pending.size();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * @return whether every subscription is full, frames dispatched meanwhile wait for one to have room
+     */
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    /**
+     * @return the frames waiting for a subscription to have room
+     */
+    public synchronized int backlog() {
+        return backlog.size();
+    }
+
+    /**
+     * @return the frames dropped or rejected because the backlog was full
+     */
+    public synchronized long droppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Gives the waiting frames to {@code subscription} while it has room, and puts it back in the ring if it
+     * still has some.
+     */
+    private void refill(Subscription subscription) {
+        while (!backlog.isEmpty() && subscription.hasRoom()) {
+            deliver(subscription, backlog.poll());
+        }
+        if (subscription.hasRoom()) {
+            subscription.ready = true;
+            ready.add(subscription);
+            saturated = false;
+        }
+    }
+
+    /**
+     * Removes the frames acknowledged by {@code frame}: the one it names for {@code client-individual}
+     * subscriptions, and every one up to it for {@code client} subscriptions.
+     *
+     * @return {@code null} if none of the subscriptions of {@code connection} waits for it
+     */
+    private synchronized Settled settle(StompServerConnection connection, Frame frame) {
+        long messageId = parse(frame.getId());
+        if (messageId < 0) {
+            return null;
+        }
+        for (Subscription subscription : subscriptions) {
+            if (subscription.connection != connection || subscription.pending == null) {
+                continue;
+            }
+            List<Frame> frames;
+            if (subscription.cumulative) {
+                frames = subscription.pending.removeUpTo(messageId);
+            } else {
+                Frame settled = subscription.pending.remove(messageId);
+                frames = settled == null ? null : Collections.singletonList(settled);
+            }
+            if (frames != null) {
+                if (!subscription.ready && subscription.hasRoom()) {
+                    refill(subscription);
+                }
+                return new Settled(subscription, frames);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the message id, {@code -1} if {@code id} is not one of ours
+     */
+    private static long parse(String id) {
+        if (id == null || id.isEmpty() || id.length() > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static final class Subscription {
+        final StompServerConnection connection;
+        final Frame frame;
+        final String id;
+        /** Whether an ACK acknowledges every frame before it, as with the {@code client} mode */
+        final boolean cumulative;
+        /** {@code null} for the {@code auto} mode */
+        final PendingAcks pending;
+        /** The limit of unacknowledged frames, 0 for no limit */
+        final int prefetchCount;
+        /** Whether it is in the ring of the subscriptions with room */
+        boolean ready;
+        boolean active = true;
+
+        Subscription(StompServerConnection connection, Frame frame, int defaultPrefetchCount) {
+            this.connection = connection;
+            this.frame = frame;
+            this.id = frame.getId();
+            String ack = frame.getAck();
+            this.cumulative = "client".equals(ack);
+            this.pending = ack == null || "auto".equals(ack) ? null : new PendingAcks();
+            this.prefetchCount = prefetchCount(frame.getHeader(PREFETCH_COUNT), defaultPrefetchCount);
+        }
+
+        boolean hasRoom() {
+            return pending == null || prefetchCount <= 0 || pending.size() < prefetchCount;
+        }
+
+        private static int prefetchCount(String header, int defaultPrefetchCount) {
+            if (header == null) {
+                return defaultPrefetchCount;
+            }
+            try {
+                return Math.max(0, Integer.parseInt(header.trim()));
+            } catch (NumberFormatException e) {
+                return defaultPrefetchCount;
+            }
+        }
+    }
+
+    private static final class Settled {
+        final Subscription subscription;
+        final List<Frame> frames;
+
+        Settled(Subscription subscription, List<Frame> frames) {
+            this.subscription = subscription;
+            this.frames = frames;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+/**
+ * What an {@link AckQueue} does with a frame dispatched while every subscription is full and its backlog holds the
+ * maximum of waiting frames.
+ */
+public enum BacklogPolicy {
+
+    /** Drops the oldest waiting frame to make room for the new one */
+    DROP_OLDEST,
+
+    /** Drops the new frame */
+    DROP_NEWEST,
+
+    /** Sends a STOMP ERROR frame to the sender of the new frame and closes its connection */
+    REJECT
+}
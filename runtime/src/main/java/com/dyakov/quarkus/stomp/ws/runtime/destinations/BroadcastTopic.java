@@ -0,0 +1,293 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.MessageInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.selectors.Selector;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsBroadcastFrame;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsStompWebSocketConnectionImpl;
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsXhrConnection;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Topic destination with the semantics of the Vert.x {@code Topic}, which encodes a dispatched frame only once
+ * for all of its SockJS subscribers (see {@link SockJsBroadcastFrame}). Subscriptions with a {@link Selector} only
+ * get the frames whose headers match it.
+ */
+public class BroadcastTopic implements Destination {
+
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    protected final String destination;
+    protected final List<Subscription> subscriptions = new ArrayList<>();
+
+    private final MessageInterceptor messageInterceptor;
+    private Routing snapshot = Routing.EMPTY;
+
+    public BroadcastTopic(String destination) {
+        this(destination, null);
+    }
+
+    /**
+     * @param messageInterceptor the filter of the subscribers of each frame, {@code null} for none
+     */
+    public BroadcastTopic(String destination, MessageInterceptor messageInterceptor) {
+        this.destination = destination;
+        this.messageInterceptor = messageInterceptor;
+    }
+
+    @Override
+    public String destination() {
+        return destination;
+    }
+
+    @Override
+    public Destination dispatch(StompServerConnection connection, Frame frame) {
+        Routing routing = snapshot();
+        if (routing.isEmpty()) {
+            return this;
+        }
+        String messageIdPrefix = UUID.randomUUID() + "-";
+        Delivery delivery = new Delivery(frame, messageIdPrefix);
+        try {
+            for (Subscription subscription : routing.unfiltered) {
+                delivery.deliver(subscription);
+            }
+            for (Subscription subscription : routing.scanned) {
+                if (subscription.selector.matches(frame)) {
+                    delivery.deliver(subscription);
+                }
+            }
+            // only the subscriptions whose selector requires the value of the header the frame has
+            for (Map.Entry<String, Map<String, Subscription[]>> index : routing.indexed.entrySet()) {
+                String value = frame.getHeader(index.getKey());
+                Subscription[] candidates = value == null ? null : index.getValue().get(value);
+                if (candidates != null) {
+                    for (Subscription subscription : candidates) {
+                        if (subscription.selector.matches(frame)) {
+                            delivery.deliver(subscription);
+                        }
+                    }
+                }
+            }
+        } finally {
+            delivery.release();
+        }
+        return this;
+    }
+
+    /**
+     * The delivery of one frame to the matching subscriptions, encoding it once for the SockJS ones.
+     */
+    private final class Delivery {
+        private final Frame frame;
+        private final String messageIdPrefix;
+        private final String conflationKey;
+        private SockJsBroadcastFrame broadcast;
+        private int delivered;
+
+        Delivery(Frame frame, String messageIdPrefix) {
+            this.frame = frame;
+            this.messageIdPrefix = messageIdPrefix;
+            this.conflationKey = conflationKey(frame);
+        }
+
+        void deliver(Subscription subscription) {
+            if (messageInterceptor != null && !messageInterceptor.onMessage(frame, subscription.connection)) {
+                return;
+            }
+            String messageId = messageIdPrefix + delivered++;
+            if (subscription.connection instanceof SockJsStompWebSocketConnectionImpl) {
+                if (broadcast == null) {
+                    broadcast = SockJsBroadcastFrame.create(frame);
+                }
+                ((SockJsStompWebSocketConnectionImpl) subscription.connection).writeBroadcast(broadcast,
+                        subscription.id, messageId, subscription.isAckRequired(), conflationKey);
+            } else if (subscription.connection instanceof SockJsXhrConnection && !subscription.isAckRequired()) {
+                ((SockJsXhrConnection) subscription.connection).writeDroppable(
+                        transform(frame, subscription, messageId), conflationKey);
+            } else {
+                subscription.connection.write(transform(frame, subscription, messageId));
+            }
+        }
+
+        void release() {
+            if (broadcast != null) {
+                broadcast.release();
+            }
+        }
+    }
+
+    /**
+     * @return the key under which the messages of {@code frame} replace each other while a subscriber is backed
+     * up, {@code null} to queue them all
+     */
+    protected String conflationKey(Frame frame) {
+        return null;
+    }
+
+    /**
+     * Delivers {@code frames} to {@code subscription} alone, in order, when they match its selector.
+     */
+    protected void replay(Subscription subscription, Collection<Frame> frames) {
+        String messageIdPrefix = UUID.randomUUID() + "-";
+        int replayed = 0;
+        for (Frame frame : frames) {
+            if ((subscription.selector == null || subscription.selector.matches(frame))
+                    && (messageInterceptor == null || messageInterceptor.onMessage(frame, subscription.connection))) {
+                subscription.connection.write(transform(frame, subscription, messageIdPrefix + replayed++));
+            }
+        }
+    }
+
+    @Override
+    public synchronized Destination subscribe(StompServerConnection connection, Frame frame) {
+        subscriptions.add(new Subscription(connection, frame));
+        snapshot = null;
+        return this;
+    }
+
+    @Override
+    public synchronized boolean unsubscribe(StompServerConnection connection, Frame frame) {
+        String id = frame.getHeader(Frame.ID);
+        Iterator<Subscription> iterator = subscriptions.iterator();
+        while (iterator.hasNext()) {
+            Subscription subscription = iterator.next();
+            if (subscription.connection.equals(connection) && subscription.id.equals(id)) {
+                iterator.remove();
+                snapshot = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized Destination unsubscribeConnection(StompServerConnection connection) {
+        if (subscriptions.removeIf(subscription -> subscription.connection.equals(connection))) {
+            snapshot = null;
+        }
+        return this;
+    }
+
+    @Override
+    public boolean ack(StompServerConnection connection, Frame frame) {
+        return false;
+    }
+
+    @Override
+    public boolean nack(StompServerConnection connection, Frame frame) {
+        return false;
+    }
+
+    @Override
+    public synchronized List<String> getSubscriptions(StompServerConnection connection) {
+        List<String> ids = new ArrayList<>();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.connection.equals(connection)) {
+                ids.add(subscription.id);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public synchronized int numberOfSubscriptions() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public boolean matches(String address) {
+        return destination.equals(address);
+    }
+
+    private synchronized Routing snapshot() {
+        if (snapshot == null) {
+            snapshot = new Routing(subscriptions);
+        }
+        return snapshot;
+    }
+
+    protected static Frame transform(Frame frame, Subscription subscription, String messageId) {
+        Headers headers = Headers.create(frame.getHeaders())
+                .add(Frame.SUBSCRIPTION, subscription.id)
+                .add(Frame.MESSAGE_ID, messageId);
+        if (subscription.isAckRequired()) {
+            headers.add(Frame.ACK, messageId);
+        }
+        return new Frame(Command.MESSAGE, headers, frame.getBody());
+    }
+
+    /**
+     * The subscriptions as of the last change: those without a selector, those whose selector can be looked up by
+     * the value of a header, and the others, whose selector is tested on every frame.
+     */
+    private static final class Routing {
+
+        static final Routing EMPTY = new Routing(Collections.emptyList());
+
+        final Subscription[] unfiltered;
+        final Subscription[] scanned;
+        final Map<String, Map<String, Subscription[]>> indexed = new HashMap<>();
+
+        Routing(List<Subscription> subscriptions) {
+            List<Subscription> unfiltered = new ArrayList<>();
+            List<Subscription> scanned = new ArrayList<>();
+            Map<String, Map<String, List<Subscription>>> indexed = new HashMap<>();
+            for (Subscription subscription : subscriptions) {
+                Selector selector = subscription.selector;
+                if (selector == null) {
+                    unfiltered.add(subscription);
+                } else if (selector.indexHeader() == null) {
+                    scanned.add(subscription);
+                } else {
+                    indexed.computeIfAbsent(selector.indexHeader(), header -> new HashMap<>())
+                            .computeIfAbsent(selector.indexValue(), value -> new ArrayList<>())
+                            .add(subscription);
+                }
+            }
+            this.unfiltered = unfiltered.toArray(NO_SUBSCRIPTIONS);
+            this.scanned = scanned.toArray(NO_SUBSCRIPTIONS);
+            indexed.forEach((header, byValue) -> {
+                Map<String, Subscription[]> values = new HashMap<>();
+                byValue.forEach((value, matching) -> values.put(value, matching.toArray(NO_SUBSCRIPTIONS)));
+                this.indexed.put(header, values);
+            });
+        }
+
+        boolean isEmpty() {
+            return unfiltered.length == 0 && scanned.length == 0 && indexed.isEmpty();
+        }
+    }
+
+    protected static class Subscription {
+        final StompServerConnection connection;
+        final String id;
+        final String ackMode;
+        final Selector selector;
+
+        Subscription(StompServerConnection connection, Frame frame) {
+            this.connection = connection;
+            this.id = frame.getHeader(Frame.ID);
+            String ack = frame.getHeader(Frame.ACK);
+            this.ackMode = ack == null ? "auto" : ack;
+            String selector = frame.getHeader(Selector.HEADER);
+            this.selector = selector == null ? null : Selector.compile(selector);
+        }
+
+        boolean isAckRequired() {
+            return !"auto".equals(ackMode);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import com.dyakov.quarkus.stomp.ws.runtime.cluster.ClusterRelay;
+import com.dyakov.quarkus.stomp.ws.runtime.cluster.ClusteredDestination;
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queue shared by the nodes of the cluster: each frame is given, round robin, either to the local {@link AckQueue} or
+ * to one of the other nodes holding subscribers, which hands it to its own local queue.
+ */
+public class ClusteredQueue implements Destination, ClusteredDestination {
+
+    private final Destination queue;
+    private final ClusterRelay relay;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ClusteredQueue(Vertx vertx, String destination, ClusterRelay relay) {
+        this(vertx, destination, relay, 0);
+    }
+
+    /**
+     * @param prefetchCount the default limit of unacknowledged frames of the local subscriptions, 0 for no limit
+     */
+    public ClusteredQueue(Vertx vertx, String destination, ClusterRelay relay, int prefetchCount) {
+        this(relay, new AckQueue(destination, prefetchCount));
+    }
+
+    /**
+     * @param queue the local queue, holding the subscriptions of this node
+     */
+    public ClusteredQueue(ClusterRelay relay, AckQueue queue) {
+        this.queue = queue;
+        this.relay = relay;
+    }
+
+    @Override
+    public String destination() {
+        return queue.destination();
+    }
+
+    @Override
+    public Destination dispatch(StompServerConnection connection, Frame frame) {
+        Set<String> nodes = relay.interestedNodes(destination());
+        int local = queue.numberOfSubscriptions() > 0 ? 1 : 0;
+        int candidates = local + nodes.size();
+        int target = candidates == 0 ? 0 : Math.floorMod(next.getAndIncrement(), candidates);
+        if (target < local || nodes.isEmpty()) {
+            queue.dispatch(connection, frame);
+            return this;
+        }
+        int index = target - local;
+        for (String node : nodes) {
+            if (index-- == 0) {
+                relay.send(node, destination(), frame);
+                return this;
+            }
+        }
+        // the interest table changed meanwhile
+        queue.dispatch(connection, frame);
+        return this;
+    }
+
+    @Override
+    public void deliver(Frame frame) {
+        queue.dispatch(null, frame);
+    }
+
+    @Override
+    public synchronized Destination subscribe(StompServerConnection connection, Frame frame) {
+        boolean first = queue.numberOfSubscriptions() == 0;
+        queue.subscribe(connection, frame);
+        if (first && queue.numberOfSubscriptions() > 0) {
+            relay.addInterest(this);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized boolean unsubscribe(StompServerConnection connection, Frame frame) {
+        boolean removed = queue.unsubscribe(connection, frame);
+        if (removed && queue.numberOfSubscriptions() == 0) {
+            relay.removeInterest(this);
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized Destination unsubscribeConnection(StompServerConnection connection) {
+        boolean subscribed = queue.numberOfSubscriptions() > 0;
+        queue.unsubscribeConnection(connection);
+        if (subscribed && queue.numberOfSubscriptions() == 0) {
+            relay.removeInterest(this);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean ack(StompServerConnection connection, Frame frame) {
+        return queue.ack(connection, frame);
+    }
+
+    @Override
+    public boolean nack(StompServerConnection connection, Frame frame) {
+        return queue.nack(connection, frame);
+    }
+
+    @Override
+    public List<String> getSubscriptions(StompServerConnection connection) {
+        return queue.getSubscriptions(connection);
+    }
+
+    @Override
+    public int numberOfSubscriptions() {
+        return queue.numberOfSubscriptions();
+    }
+
+    @Override
+    public boolean matches(String address) {
+        return queue.matches(address);
+    }
+}
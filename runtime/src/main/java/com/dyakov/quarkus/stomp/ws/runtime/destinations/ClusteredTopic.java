@@ -0,0 +1,66 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import com.dyakov.quarkus.stomp.ws.runtime.cluster.ClusterRelay;
+import com.dyakov.quarkus.stomp.ws.runtime.cluster.ClusteredDestination;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.MessageInterceptor;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+/**
+ * {@link BroadcastTopic} whose frames also reach the subscribers connected to the other nodes of the cluster.
+ */
+public class ClusteredTopic extends BroadcastTopic implements ClusteredDestination {
+
+    private final ClusterRelay relay;
+
+    public ClusteredTopic(String destination, ClusterRelay relay) {
+        this(destination, relay, null);
+    }
+
+    public ClusteredTopic(String destination, ClusterRelay relay, MessageInterceptor messageInterceptor) {
+        super(destination, messageInterceptor);
+        this.relay = relay;
+    }
+
+    @Override
+    public Destination dispatch(StompServerConnection connection, Frame frame) {
+        super.dispatch(connection, frame);
+        relay.publish(destination, frame);
+        return this;
+    }
+
+    @Override
+    public void deliver(Frame frame) {
+        super.dispatch(null, frame);
+    }
+
+    @Override
+    public synchronized Destination subscribe(StompServerConnection connection, Frame frame) {
+        boolean first = subscriptions.isEmpty();
+        super.subscribe(connection, frame);
+        if (first) {
+            relay.addInterest(this);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized boolean unsubscribe(StompServerConnection connection, Frame frame) {
+        boolean removed = super.unsubscribe(connection, frame);
+        if (removed && subscriptions.isEmpty()) {
+            relay.removeInterest(this);
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized Destination unsubscribeConnection(StompServerConnection connection) {
+        boolean subscribed = !subscriptions.isEmpty();
+        super.unsubscribeConnection(connection);
+        if (subscribed && subscriptions.isEmpty()) {
+            relay.removeInterest(this);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,62 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.MessageInterceptor;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+/**
+ * {@link BroadcastTopic} which only keeps the last value of every conflation key, the value of a configured header
+ * of the frames. While the socket of a SockJS subscriber is backed up its queued message of a key is replaced by
+ * the newest one, and a new subscriber first gets the last frame of every key.
+ * <p>
+ * Frames without the header share the empty key. At most {@code maxKeys} keys are remembered for new subscribers,
+ * the frames of the keys beyond are delivered but not replayed.
+ * <p>
+ * A dispatch remembers and delivers its frame, and a subscribe registers the subscription and replays the last
+ * frames, under the same lock: a new subscriber gets the replayed frame of a key before any newer one, and never a
+ * replayed frame after a newer one it was already delivered.
+ */
+public class ConflatedTopic extends BroadcastTopic {
+
+    private final String keyHeader;
+    private final ConflationSlots slots;
+
+    public ConflatedTopic(String destination, String keyHeader, int maxKeys, MessageInterceptor messageInterceptor) {
+        super(destination, messageInterceptor);
+        this.keyHeader = keyHeader;
+        this.slots = new ConflationSlots(maxKeys);
+    }
+
+    @Override
+    public Destination dispatch(StompServerConnection connection, Frame frame) {
+        synchronized (slots) {
+            slots.put(conflationKey(frame), frame);
+            return super.dispatch(connection, frame);
+        }
+    }
+
+    @Override
+    public Destination subscribe(StompServerConnection connection, Frame frame) {
+        synchronized (slots) {
+            super.subscribe(connection, frame);
+            replay(new Subscription(connection, frame), slots.frames());
+        }
+        return this;
+    }
+
+    @Override
+    protected String conflationKey(Frame frame) {
+        String key = frame.getHeader(keyHeader);
+        return key == null ? "" : key;
+    }
+
+    /**
+     * @return the number of keys whose last frame is remembered
+     */
+    public int keys() {
+        synchronized (slots) {
+            return slots.size();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import io.vertx.ext.stomp.Frame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last frame of every conflation key of a {@link ConflatedTopic}, one slot per key in an open addressing table
+ * with linear probing. Keys are never removed, and the table stops taking new keys once it holds
+ * {@code maxKeys}.
+ */
+final class ConflationSlots {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxKeys;
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private Frame[] frames = new Frame[INITIAL_CAPACITY];
+    private int size;
+
+    ConflationSlots(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @return {@code false} if {@code key} is new and the table is full, in which case the frame is not kept
+     */
+    boolean put(String key, Frame frame) {
+        int slot = slot(keys, key);
+        if (keys[slot] != null) {
+            frames[slot] = frame;
+            return true;
+        }
+        if (size >= maxKeys) {
+            return false;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            slot = slot(keys, key);
+        }
+        keys[slot] = key;
+        frames[slot] = frame;
+        size++;
+        return true;
+    }
+
+    Frame get(String key) {
+        int slot = slot(keys, key);
+        return keys[slot] == null ? null : frames[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the last frames, in no particular order
+     */
+    List<Frame> frames() {
+        List<Frame> last = new ArrayList<>(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                last.add(frames[i]);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return the slot holding {@code key}, or the empty slot where it belongs
+     */
+    private static int slot(String[] keys, String key) {
+        int mask = keys.length - 1;
+        int slot = mix(key.hashCode()) & mask;
+        while (keys[slot] != null && !keys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        Frame[] oldFrames = frames;
+        keys = new String[oldKeys.length * 2];
+        frames = new Frame[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                frames[slot] = oldFrames[i];
+            }
+        }
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
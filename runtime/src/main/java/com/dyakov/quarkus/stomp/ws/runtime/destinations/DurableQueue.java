@@ -0,0 +1,250 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import com.dyakov.quarkus.stomp.ws.runtime.journal.Journal;
+import com.dyakov.quarkus.stomp.ws.runtime.journal.JournalCodec;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Queue whose frames are appended to a {@link Journal} before being given, round robin, to one subscriber. A frame
+ * is acknowledged in the journal once written to an {@code auto} subscription, or once ACKed otherwise, so that the
+ * frames which were not delivered or not ACKed are delivered again after a restart. A NACKed frame, and the
+ * unacknowledged frames of a subscription which goes away, are given to the next subscriber.
+ * <p>
+ * The message id of a frame is its journal sequence, it is kept across restarts. Closing the queue closes its
+ * journal, the frames it holds are delivered again by the next queue opening the journal.
+ */
+public class DurableQueue implements Destination, Closeable {
+
+    private final String destination;
+    private final Journal journal;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final ArrayDeque<Message> undelivered = new ArrayDeque<>();
+    private final Map<String, Message> unacknowledged = new HashMap<>();
+    private final Runnable closeHandler;
+    private int next;
+
+    public DurableQueue(String destination, Journal journal) {
+        this(destination, journal, () -> { });
+    }
+
+    /**
+     * @param closeHandler called once the queue and its journal are closed
+     */
+    public DurableQueue(String destination, Journal journal, Runnable closeHandler) {
+        this.destination = destination;
+        this.journal = journal;
+        this.closeHandler = closeHandler;
+        for (Journal.Record record : journal.takeRecovered()) {
+            undelivered.add(new Message(record.sequence(), JournalCodec.decode(record.payload())));
+        }
+    }
+
+    @Override
+    public String destination() {
+        return destination;
+    }
+
+    @Override
+    public synchronized Destination dispatch(StompServerConnection connection, Frame frame) {
+        long sequence = journal.append(JournalCodec.encode(frame));
+        deliver(new Message(sequence, frame));
+        return this;
+    }
+
+    @Override
+    public synchronized Destination subscribe(StompServerConnection connection, Frame frame) {
+        subscriptions.add(new Subscription(connection, frame));
+        while (!undelivered.isEmpty()) {
+            deliver(undelivered.poll());
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized boolean unsubscribe(StompServerConnection connection, Frame frame) {
+        String id = frame.getHeader(Frame.ID);
+        for (Iterator<Subscription> iterator = subscriptions.iterator(); iterator.hasNext(); ) {
+            Subscription subscription = iterator.next();
+            if (subscription.connection == connection && subscription.id.equals(id)) {
+                iterator.remove();
+                redeliver(message -> message.subscription == subscription);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized Destination unsubscribeConnection(StompServerConnection connection) {
+        if (subscriptions.removeIf(subscription -> subscription.connection == connection)) {
+            redeliver(message -> message.subscription.connection == connection);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized boolean ack(StompServerConnection connection, Frame frame) {
+        Message acked = unacknowledged(connection, frame);
+        if (acked == null) {
+            return false;
+        }
+        if ("client".equals(acked.subscription.ackMode)) {
+            // cumulative, every message delivered to the subscription before this one is acknowledged as well
+            for (Iterator<Message> iterator = unacknowledged.values().iterator(); iterator.hasNext(); ) {
+                Message message = iterator.next();
+                if (message.subscription == acked.subscription && message.sequence <= acked.sequence) {
+                    iterator.remove();
+                    journal.ack(message.sequence);
+                }
+            }
+        } else {
+            unacknowledged.remove(acked.id());
+            journal.ack(acked.sequence);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean nack(StompServerConnection connection, Frame frame) {
+        Message nacked = unacknowledged(connection, frame);
+        if (nacked == null) {
+            return false;
+        }
+        unacknowledged.remove(nacked.id());
+        deliver(nacked);
+        return true;
+    }
+
+    @Override
+    public synchronized List<String> getSubscriptions(StompServerConnection connection) {
+        return subscriptions.stream()
+                .filter(subscription -> subscription.connection == connection)
+                .map(subscription -> subscription.id)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized int numberOfSubscriptions() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public boolean matches(String address) {
+        return destination.equals(address);
+    }
+
+    /**
+     * @return the number of frames which were not delivered yet
+     */
+    public synchronized int undelivered() {
+        return undelivered.size();
+    }
+
+    /**
+     * @return completed once the frames dispatched so far are on disk
+     */
+    public CompletionStage<Void> whenSynced() {
+        return journal.whenSynced();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            journal.close();
+        } finally {
+            closeHandler.run();
+        }
+    }
+
+    private Message unacknowledged(StompServerConnection connection, Frame frame) {
+        String id = frame.getHeader(Frame.ID);
+        Message message = id == null ? null : unacknowledged.get(id);
+        return message == null || message.subscription.connection != connection ? null : message;
+    }
+
+    private void deliver(Message message) {
+        if (subscriptions.isEmpty()) {
+            undelivered.add(message);
+            return;
+        }
+        if (next >= subscriptions.size()) {
+            next = 0;
+        }
+        Subscription subscription = subscriptions.get(next++);
+        String id = message.id();
+        Headers headers = Headers.create(message.frame.getHeaders())
+                .add(Frame.SUBSCRIPTION, subscription.id)
+                .add(Frame.MESSAGE_ID, id);
+        if (subscription.isAckRequired()) {
+            headers.add(Frame.ACK, id);
+            message.subscription = subscription;
+            unacknowledged.put(id, message);
+        }
+        subscription.connection.write(new Frame(Command.MESSAGE, headers, message.frame.getBody()));
+        if (!subscription.isAckRequired()) {
+            journal.ack(message.sequence);
+        }
+    }
+
+    private void redeliver(Predicate<Message> orphaned) {
+        List<Message> messages = unacknowledged.values().stream()
+                .filter(orphaned)
+                .sorted(Comparator.comparingLong(message -> message.sequence))
+                .collect(Collectors.toList());
+        for (Message message : messages) {
+            unacknowledged.remove(message.id());
+            message.subscription = null;
+            deliver(message);
+        }
+    }
+
+    private static final class Message {
+        final long sequence;
+        final Frame frame;
+        /** The subscription the message waits to be acknowledged by */
+        Subscription subscription;
+
+        Message(long sequence, Frame frame) {
+            this.sequence = sequence;
+            this.frame = frame;
+        }
+
+        String id() {
+            return Long.toString(sequence);
+        }
+    }
+
+    private static final class Subscription {
+        final StompServerConnection connection;
+        final String id;
+        final String ackMode;
+
+        Subscription(StompServerConnection connection, Frame frame) {
+            this.connection = connection;
+            this.id = frame.getHeader(Frame.ID);
+            String ack = frame.getHeader(Frame.ACK);
+            this.ackMode = ack == null ? "auto" : ack;
+        }
+
+        boolean isAckRequired() {
+            return !"auto".equals(ackMode);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import io.vertx.ext.stomp.Frame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The frames a subscription has to acknowledge, in a ring of {@code long} message ids and frames. The ids of a
+ * subscription only grow, so the ring stays sorted: an id is found by binary search, a cumulative ACK takes the
+ * head of the ring, and an individual ACK leaves a hole which is skipped once it reaches the head.
+ * <p>
+ * Not thread safe, the owning {@link AckQueue} holds its lock.
+ */
+final class PendingAcks {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private Frame[] frames = new Frame[INITIAL_CAPACITY];
+    private int head;
+    /** The slots in use, holes included */
+    private int slots;
+    /** The frames still waiting for an acknowledgement */
+    private int size;
+
+    /**
+     * @param id greater than the ids added before
+     */
+    void add(long id, Frame frame) {
+        if (slots == ids.length) {
+            resize();
+        }
+        int index = (head + slots) & (ids.length - 1);
+        ids[index] = id;
+        frames[index] = frame;
+        slots++;
+        size++;
+    }
+
+    /**
+     * @return the frame of {@code id}, {@code null} if it is not pending
+     */
+    Frame remove(long id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return null;
+        }
+        int index = (head + slot) & (ids.length - 1);
+        Frame frame = frames[index];
+        frames[index] = null;
+        size--;
+        skipHoles();
+        return frame;
+    }
+
+    /**
+     * @return the frames up to and including {@code id}, in order, {@code null} if {@code id} is not pending
+     */
+    List<Frame> removeUpTo(long id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return null;
+        }
+        int mask = ids.length - 1;
+        if (slot == 0) {
+            Frame frame = frames[head];
+            frames[head] = null;
+            size--;
+            skipHoles();
+            return Collections.singletonList(frame);
+        }
+        List<Frame> removed = new ArrayList<>(slot + 1);
+        for (int i = 0; i <= slot; i++) {
+            int index = (head + i) & mask;
+            if (frames[index] != null) {
+                removed.add(frames[index]);
+                frames[index] = null;
+            }
+        }
+        size -= removed.size();
+        head = (head + slot + 1) & mask;
+        slots -= slot + 1;
+        skipHoles();
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the position of {@code id} from the head, {@code -1} if it is not pending
+     */
+    private int find(long id) {
+        int mask = ids.length - 1;
+        int low = 0;
+        int high = slots - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int index = (head + middle) & mask;
+            long found = ids[index];
+            if (found < id) {
+                low = middle + 1;
+            } else if (found > id) {
+                high = middle - 1;
+            } else {
+                return frames[index] == null ? -1 : middle;
+            }
+        }
+        return -1;
+    }
+
+    private void skipHoles() {
+        int mask = ids.length - 1;
+        while (slots > 0 && frames[head] == null) {
+            head = (head + 1) & mask;
+            slots--;
+        }
+        if (slots == 0) {
+            head = 0;
+        }
+    }
+
+    /**
+     * Drops the holes, and doubles the capacity unless that freed at least half of it.
+     */
+    private void resize() {
+        int capacity = size * 2 > ids.length ? ids.length * 2 : ids.length;
+        long[] newIds = new long[capacity];
+        Frame[] newFrames = new Frame[capacity];
+        int mask = ids.length - 1;
+        int count = 0;
+        for (int i = 0; i < slots; i++) {
+            int index = (head + i) & mask;
+            if (frames[index] != null) {
+                newIds[count] = ids[index];
+                newFrames[count++] = frames[index];
+            }
+        }
+        ids = newIds;
+        frames = newFrames;
+        head = 0;
+        slots = count;
+    }
+}
@@ -0,0 +1,55 @@
+package com.dyakov.quarkus.stomp.ws.runtime.handlers;
+
+import io.vertx.ext.stomp.DefaultAckHandler;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.Frames;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+/**
+ * {@link DefaultAckHandler} which, when the server runs an {@link IndexedStompServerHandler}, first tries the
+ * destination the connection acknowledged last, then only the destinations the connection subscribed to. A consumer
+ * acknowledges the same queue over and over, so most ACKs visit a single destination.
+ */
+public class AckHandler extends DefaultAckHandler {
+
+    @Override
+    public void handle(ServerFrame serverFrame) {
+        if (!settle(serverFrame, Destination::ack)) {
+            super.handle(serverFrame);
+        }
+    }
+
+    /**
+     * @return {@code false} if the frame is left to the Vert.x handler: the server does not run an
+     * {@link IndexedStompServerHandler}, or the frame has no id or is part of a transaction
+     */
+    static boolean settle(ServerFrame serverFrame, Settlement settlement) {
+        StompServerConnection connection = serverFrame.connection();
+        Frame frame = serverFrame.frame();
+        if (!(connection.handler() instanceof IndexedStompServerHandler) || frame.getId() == null
+                || frame.getTransaction() != null) {
+            return false;
+        }
+        IndexedStompServerHandler handler = (IndexedStompServerHandler) connection.handler();
+        Destination last = handler.lastSettled(connection);
+        if (last == null || !settlement.settle(last, connection, frame)) {
+            for (Destination destination : handler.getDestinations(connection)) {
+                if (destination != last && settlement.settle(destination, connection, frame)) {
+                    handler.lastSettled(connection, destination);
+                    break;
+                }
+            }
+        }
+        Frames.handleReceipt(frame, connection);
+        return true;
+    }
+
+    /**
+     * {@link Destination#ack} or {@link Destination#nack}.
+     */
+    interface Settlement {
+        boolean settle(Destination destination, StompServerConnection connection, Frame frame);
+    }
+}
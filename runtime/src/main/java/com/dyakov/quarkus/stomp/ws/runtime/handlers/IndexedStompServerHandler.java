@@ -0,0 +1,417 @@
+package com.dyakov.quarkus.stomp.ws.runtime.handlers;
+
+import com.dyakov.quarkus.stomp.ws.runtime.DestinationProvider;
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.DurableQueue;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.ConnectInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SendInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.StompInterceptors;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import com.dyakov.quarkus.stomp.ws.runtime.routing.DestinationIndex;
+import com.dyakov.quarkus.stomp.ws.runtime.transactions.StagedTransactions;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.DestinationFactory;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.Frames;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.StompServerHandler;
+import io.vertx.ext.stomp.impl.ServerFrameImpl;
+import io.vertx.ext.stomp.impl.StompServerHandlerImpl;
+import io.vertx.ext.stomp.impl.Transactions;
+import io.vertx.ext.stomp.utils.Headers;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link StompServerHandlerImpl} which keeps the destinations of {@link DestinationProvider#isDestinationPerName()}
+ * providers in the providers, keyed by their full name, instead of in the shared list scanned by the Vert.x handler.
+ * Lookups go through the {@link DestinationIndex}, and the per-name destinations a connection subscribed to are
+ * remembered so that UNSUBSCRIBE and disconnects only visit those, and the destination a connection acknowledged last
+ * is tried first by the next ACK or NACK.
+ */
+public class IndexedStompServerHandler extends StompServerHandlerImpl {
+
+    private static final Logger log = Logger.getLogger(IndexedStompServerHandler.class.getName());
+
+    private final Vertx vertx;
+    private final DestinationIndex destinationIndex;
+    private final ConcurrentMap<String, Set<Destination>> subscribedDestinations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Destination> settledDestinations = new ConcurrentHashMap<>();
+
+    private volatile DestinationFactory destinationFactory;
+    private volatile Handler<StompServerConnection> closeHandler;
+    private volatile SubscribeHandler subscribeHandler;
+    private StompMetrics metrics = StompMetrics.NOOP;
+    private SendInterceptor sendInterceptor;
+    private ConnectInterceptor connectInterceptor;
+    private StagedTransactions transactions;
+    private long sweepTimer = -1;
+
+    public IndexedStompServerHandler(Vertx vertx, DestinationIndex destinationIndex) {
+        super(vertx);
+        this.vertx = vertx;
+        this.destinationIndex = destinationIndex;
+        unsubscribeHandler(new UnsubscribeHandler());
+        ackHandler(new AckHandler());
+        nackHandler(new NackHandler());
+    }
+
+    /**
+     * Evicts the idle per-name destinations every {@code sweepMillis}.
+     */
+    public synchronized IndexedStompServerHandler evictIdleDestinations(long idleMillis, long sweepMillis) {
+        if (sweepTimer == -1
+                && destinationIndex.providers().stream().anyMatch(DestinationProvider::isDestinationPerName)) {
+            sweepTimer = vertx.setPeriodic(sweepMillis, id -> {
+                int evicted = 0;
+                for (DestinationProvider provider : destinationIndex.providers()) {
+                    if (provider.isDestinationPerName()) {
+                        evicted += provider.evictIdleDestinations(idleMillis);
+                    }
+                }
+                log.debugf("%d idle destinations have been evicted", evicted);
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Stops the eviction of the idle destinations, on shutdown.
+     */
+    public synchronized void close() {
+        if (sweepTimer != -1) {
+            vertx.cancelTimer(sweepTimer);
+            sweepTimer = -1;
+        }
+    }
+
+    /**
+     * Counts the received frames and times the SEND frames with {@code metrics}.
+     */
+    public IndexedStompServerHandler metrics(StompMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Passes the SEND and CONNECT frames through the chains of {@code interceptors}.
+     */
+    public IndexedStompServerHandler interceptors(StompInterceptors interceptors) {
+        this.sendInterceptor = interceptors.send();
+        this.connectInterceptor = interceptors.connect();
+        return this;
+    }
+
+    /**
+     * Stages the frames of the STOMP transactions in {@code transactions} instead of the Vert.x transactions, and
+     * dispatches the SEND frames of a COMMIT to each destination in one pass.
+     */
+    public IndexedStompServerHandler transactions(StagedTransactions transactions) {
+        this.transactions = transactions;
+        return this;
+    }
+
+    @Override
+    public StompServerHandler destinationFactory(DestinationFactory factory) {
+        this.destinationFactory = factory;
+        return super.destinationFactory(factory);
+    }
+
+    @Override
+    public StompServerHandler subscribeHandler(Handler<ServerFrame> handler) {
+        this.subscribeHandler = handler instanceof SubscribeHandler ? (SubscribeHandler) handler : null;
+        return super.subscribeHandler(handler);
+    }
+
+    @Override
+    public StompServerHandler closeHandler(Handler<StompServerConnection> handler) {
+        this.closeHandler = handler;
+        return super.closeHandler(handler);
+    }
+
+    @Override
+    public void handle(ServerFrame serverFrame) {
+        Frame frame = serverFrame.frame();
+        metrics.frameIn(frame.getCommand());
+        if (frame.getCommand() == Command.SEND) {
+            if (sendInterceptor != null) {
+                Frame intercepted = sendInterceptor.onSend(frame, serverFrame.connection());
+                if (intercepted == null) {
+                    reject(serverFrame, "Message rejected");
+                    return;
+                }
+                if (intercepted != frame) {
+                    serverFrame = new ServerFrameImpl(intercepted, serverFrame.connection());
+                }
+            }
+            Frame sent = serverFrame.frame();
+            if (transactions != null && sent.getTransaction() != null && sent.getDestination() != null) {
+                transactions.stage(serverFrame);
+                return;
+            }
+            long start = System.nanoTime();
+            Destination destination = sent.getReceipt() != null && sent.getDestination() != null
+                    ? getDestination(sent.getDestination()) : null;
+            if (destination instanceof DurableQueue) {
+                Headers headers = Headers.create(sent.getHeaders());
+                headers.remove(Frame.RECEIPT);
+                super.handle(new ServerFrameImpl(new Frame(Command.SEND, headers, sent.getBody()),
+                        serverFrame.connection()));
+                receiptWhenSynced(sent, serverFrame.connection(), (DurableQueue) destination);
+            } else {
+                super.handle(serverFrame);
+            }
+            metrics.dispatched(System.nanoTime() - start);
+            return;
+        }
+        if (connectInterceptor != null && (frame.getCommand() == Command.CONNECT || frame.getCommand() == Command.STOMP)
+                && !connectInterceptor.onConnect(frame, serverFrame.connection())) {
+            reject(serverFrame, "Connection refused");
+            return;
+        }
+        if (transactions != null && handleTransaction(serverFrame)) {
+            return;
+        }
+        super.handle(serverFrame);
+        if (frame.getCommand() == Command.SUBSCRIBE && subscribeHandler == null) {
+            // the SubscribeHandler reports the subscriptions itself, once they are authorized
+            subscribed(serverFrame.connection(), frame.getDestination());
+        }
+    }
+
+    /**
+     * Remembers the per-name destination {@code connection} subscribed to, once the subscription is made.
+     */
+    void subscribed(StompServerConnection connection, String name) {
+        if (name == null) {
+            return;
+        }
+        DestinationProvider provider = destinationIndex.resolve(name);
+        if (provider == null || !provider.isDestinationPerName()) {
+            return;
+        }
+        Destination destination = provider.getNamedDestination(name);
+        if (destination != null && !destination.getSubscriptions(connection).isEmpty()) {
+            subscribedDestinations.computeIfAbsent(connection.session(), session -> ConcurrentHashMap.newKeySet())
+                    .add(destination);
+        }
+    }
+
+    /**
+     * @return whether the frame was handled by the staged transactions
+     */
+    private boolean handleTransaction(ServerFrame serverFrame) {
+        Frame frame = serverFrame.frame();
+        switch (frame.getCommand()) {
+            case BEGIN:
+                transactions.begin(serverFrame);
+                return true;
+            case COMMIT:
+                commit(serverFrame);
+                return true;
+            case ABORT:
+                transactions.abort(serverFrame);
+                return true;
+            case ACK:
+            case NACK:
+                if (frame.getTransaction() != null && frame.getId() != null) {
+                    transactions.stage(serverFrame);
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Resolves the destinations of the SEND frames of the transaction first, so that the whole transaction fails
+     * before anything is dispatched when one of them has no subscriptions. Then replays the ACK and NACK frames in
+     * order, and dispatches the SEND frames grouped by destination, each group in the order the frames were sent.
+     */
+    private void commit(ServerFrame serverFrame) {
+        List<Frame> frames = transactions.commit(serverFrame);
+        if (frames == null) {
+            return;
+        }
+        StompServerConnection connection = serverFrame.connection();
+        Map<String, List<Frame>> sends = new LinkedHashMap<>();
+        for (Frame frame : frames) {
+            if (frame.getCommand() == Command.SEND) {
+                sends.computeIfAbsent(frame.getDestination(), destination -> new ArrayList<>()).add(frame);
+            }
+        }
+        List<Destination> destinations = new ArrayList<>(sends.size());
+        for (String name : sends.keySet()) {
+            Destination destination = getDestination(name);
+            if (destination == null && connection.server().options().isSendErrorOnNoSubscriptions()) {
+                Headers headers = Headers.create(Frame.DESTINATION, name);
+                if (serverFrame.frame().getReceipt() != null) {
+                    headers.add(Frame.RECEIPT_ID, serverFrame.frame().getReceipt());
+                }
+                connection.write(Frames.createErrorFrame("No subscriptions", headers,
+                        "Your transaction has not been committed because the destination does not have any "
+                                + "subscriptions"));
+                connection.close();
+                return;
+            }
+            destinations.add(destination);
+        }
+        for (Frame frame : frames) {
+            if (frame.getCommand() != Command.SEND) {
+                super.handle(new ServerFrameImpl(frame, connection));
+            }
+        }
+        DurableQueue durable = null;
+        int index = 0;
+        for (List<Frame> group : sends.values()) {
+            long start = System.nanoTime();
+            Destination destination = destinations.get(index++);
+            if (destination != null) {
+                for (Frame frame : group) {
+                    destination.dispatch(connection, frame);
+                }
+                if (destination instanceof DurableQueue) {
+                    durable = (DurableQueue) destination;
+                }
+            }
+            metrics.dispatched(System.nanoTime() - start);
+        }
+        if (durable != null && serverFrame.frame().getReceipt() != null) {
+            receiptWhenSynced(serverFrame.frame(), connection, durable);
+        } else {
+            Frames.handleReceipt(serverFrame.frame(), connection);
+        }
+    }
+
+    /**
+     * Sends the RECEIPT of {@code frame} once the journal of {@code queue} has forced the dispatched frames to disk,
+     * or an ERROR frame if it could not.
+     */
+    private static void receiptWhenSynced(Frame frame, StompServerConnection connection, DurableQueue queue) {
+        Context context = Vertx.currentContext();
+        queue.whenSynced().whenComplete((synced, failure) -> {
+            Handler<Void> receipt = ignored -> {
+                if (failure == null) {
+                    Frames.handleReceipt(frame, connection);
+                    return;
+                }
+                connection.write(Frames.createErrorFrame("Not journaled",
+                        Headers.create(Frame.RECEIPT_ID, frame.getReceipt()), failure.getMessage()));
+                connection.close();
+            };
+            if (context == null || context == Vertx.currentContext()) {
+                receipt.handle(null);
+            } else {
+                context.runOnContext(receipt);
+            }
+        });
+    }
+
+    private static void reject(ServerFrame serverFrame, String message) {
+        Frame frame = serverFrame.frame();
+        Headers headers = Headers.create();
+        if (frame.getReceipt() != null) {
+            headers.add(Frame.RECEIPT_ID, frame.getReceipt());
+        }
+        serverFrame.connection().write(Frames.createErrorFrame(message, headers,
+                frame.getCommand() + " refused by an interceptor"));
+        serverFrame.connection().close();
+    }
+
+    @Override
+    public Destination getDestination(String destination) {
+        DestinationProvider provider = destinationIndex.resolve(destination);
+        if (provider != null && provider.isDestinationPerName()) {
+            return provider.getNamedDestination(destination);
+        }
+        return super.getDestination(destination);
+    }
+
+    @Override
+    public Destination getOrCreateDestination(String destination) {
+        DestinationProvider provider = destinationIndex.resolve(destination);
+        DestinationFactory factory = destinationFactory;
+        if (provider != null && provider.isDestinationPerName() && factory != null) {
+            return provider.getOrCreateNamedDestination(destination, name -> factory.create(vertx, name));
+        }
+        return super.getOrCreateDestination(destination);
+    }
+
+    @Override
+    public List<Destination> getDestinations() {
+        List<Destination> destinations = new ArrayList<>(super.getDestinations());
+        for (DestinationProvider provider : destinationIndex.providers()) {
+            if (provider.isDestinationPerName()) {
+                destinations.addAll(provider.getNamedDestinations());
+            }
+        }
+        return destinations;
+    }
+
+    /**
+     * The destinations which may hold subscriptions of {@code connection}: the shared ones and the per-name ones
+     * it subscribed to.
+     */
+    public List<Destination> getDestinations(StompServerConnection connection) {
+        List<Destination> destinations = new ArrayList<>(super.getDestinations());
+        destinations.addAll(subscribedDestinations.getOrDefault(connection.session(), Collections.emptySet()));
+        return destinations;
+    }
+
+    /**
+     * @return the destination {@code connection} acknowledged last, {@code null} if none
+     */
+    Destination lastSettled(StompServerConnection connection) {
+        return settledDestinations.get(connection.session());
+    }
+
+    void lastSettled(StompServerConnection connection, Destination destination) {
+        settledDestinations.put(connection.session(), destination);
+    }
+
+    /**
+     * Drops the SUBSCRIBE {@code id} of {@code connection} if it still waits for its authorization.
+     *
+     * @return whether there was one
+     */
+    boolean cancelPendingSubscribe(StompServerConnection connection, String id) {
+        SubscribeHandler handler = subscribeHandler;
+        return handler != null && handler.cancel(connection, id);
+    }
+
+    @Override
+    public void onClose(StompServerConnection connection) {
+        Collection<Destination> destinations = getDestinations(connection);
+        subscribedDestinations.remove(connection.session());
+        settledDestinations.remove(connection.session());
+        SubscribeHandler handler = subscribeHandler;
+        if (handler != null) {
+            handler.cancel(connection);
+        }
+        if (transactions != null) {
+            transactions.release(connection);
+        }
+        for (Destination destination : destinations) {
+            destination.unsubscribeConnection(connection);
+        }
+        Transactions.instance().unregisterTransactionsFromConnection(connection);
+        Handler<StompServerConnection> handler = closeHandler;
+        if (handler != null) {
+            handler.handle(connection);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.dyakov.quarkus.stomp.ws.runtime.handlers;
+
+import io.vertx.ext.stomp.DefaultNackHandler;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.ServerFrame;
+
+/**
+ * {@link DefaultNackHandler} which looks for the destination of the NACK like the {@link AckHandler} does.
+ */
+public class NackHandler extends DefaultNackHandler {
+
+    @Override
+    public void handle(ServerFrame serverFrame) {
+        if (!AckHandler.settle(serverFrame, Destination::nack)) {
+            super.handle(serverFrame);
+        }
+    }
+}
@@ -1,17 +1,39 @@
 package com.dyakov.quarkus.stomp.ws.runtime.handlers;
 
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SubscribeAuthorizer;
 import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SubscribeInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.selectors.Selector;
+import com.dyakov.quarkus.stomp.ws.runtime.selectors.SelectorException;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
 import io.vertx.ext.stomp.DefaultSubscribeHandler;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.Frames;
 import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.StompServerHandler;
+import io.vertx.ext.stomp.utils.Headers;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class SubscribeHandler  extends DefaultSubscribeHandler {
 
     private SubscribeInterceptor subscribeInterceptor;
+    private SubscribeAuthorizer subscribeAuthorizer;
+    /** The ids of the subscriptions waiting for their authorization, by session */
+    private final ConcurrentMap<String, Set<String>> pending = new ConcurrentHashMap<>();
 
     public SubscribeHandler (SubscribeInterceptor subscribeInterceptor){
         this.subscribeInterceptor = subscribeInterceptor;
     }
 
+    public SubscribeHandler (SubscribeInterceptor subscribeInterceptor, SubscribeAuthorizer subscribeAuthorizer){
+        this.subscribeInterceptor = subscribeInterceptor;
+        this.subscribeAuthorizer = subscribeAuthorizer;
+    }
+
     public SubscribeHandler (){ }
 
     @Override
@@ -19,7 +41,95 @@ public class SubscribeHandler  extends DefaultSubscribeHandler {
         if (subscribeInterceptor != null){
             subscribeInterceptor.preSubscribe(serverFrame);
         }
+        String selector = serverFrame.frame().getHeader(Selector.HEADER);
+        if (selector != null) {
+            try {
+                Selector.compile(selector);
+            } catch (SelectorException e) {
+                reject(serverFrame, "Invalid selector", e.getMessage());
+                return;
+            }
+        }
+        if (subscribeAuthorizer == null) {
+            subscribe(serverFrame);
+            return;
+        }
+        StompServerConnection connection = serverFrame.connection();
+        String id = serverFrame.frame().getId();
+        if (id != null) {
+            pending.compute(connection.session(), (session, ids) -> {
+                Set<String> pendingIds = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                pendingIds.add(id);
+                return pendingIds;
+            });
+        }
+        Context context = Vertx.currentContext();
+        subscribeAuthorizer.authorize(serverFrame).thenAccept(allowed -> {
+            // cached decisions complete right away, the others on the thread which made the lookup
+            if (context == null || context == Vertx.currentContext()) {
+                subscribeOrReject(serverFrame, allowed);
+            } else {
+                context.runOnContext(v -> subscribeOrReject(serverFrame, allowed));
+            }
+        });
+    }
+
+    /**
+     * Drops the SUBSCRIBE of {@code id} waiting for its authorization, on UNSUBSCRIBE.
+     *
+     * @return whether there was one
+     */
+    public boolean cancel(StompServerConnection connection, String id) {
+        Set<String> ids = pending.get(connection.session());
+        return ids != null && ids.remove(id);
+    }
+
+    /**
+     * Drops the SUBSCRIBE frames of {@code connection} waiting for their authorization, on close.
+     */
+    public void cancel(StompServerConnection connection) {
+        pending.remove(connection.session());
+    }
+
+    private void subscribeOrReject(ServerFrame serverFrame, boolean allowed) {
+        String id = serverFrame.frame().getId();
+        if (id != null) {
+            boolean[] cancelled = {true};
+            pending.computeIfPresent(serverFrame.connection().session(), (session, ids) -> {
+                cancelled[0] = !ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+            if (cancelled[0]) {
+                // an UNSUBSCRIBE or the close of the connection came first
+                return;
+            }
+        }
+        if (allowed) {
+            subscribe(serverFrame);
+        } else {
+            reject(serverFrame, "Subscription denied",
+                    "Not allowed to subscribe to " + serverFrame.frame().getDestination());
+        }
+    }
+
+    private static void reject(ServerFrame serverFrame, String message, String detail) {
+        Frame frame = serverFrame.frame();
+        StompServerConnection connection = serverFrame.connection();
+        Headers headers = Headers.create(Frame.DESTINATION, frame.getDestination());
+        if (frame.getReceipt() != null) {
+            headers.add(Frame.RECEIPT_ID, frame.getReceipt());
+        }
+        connection.write(Frames.createErrorFrame(message, headers, detail));
+        connection.close();
+    }
+
+    private void subscribe(ServerFrame serverFrame) {
         super.handle(serverFrame);
+        StompServerHandler handler = serverFrame.connection().handler();
+        if (handler instanceof IndexedStompServerHandler) {
+            ((IndexedStompServerHandler) handler).subscribed(serverFrame.connection(),
+                    serverFrame.frame().getDestination());
+        }
         if (subscribeInterceptor != null){
             subscribeInterceptor.postSubscribe(serverFrame);
         }
@@ -0,0 +1,48 @@
+package com.dyakov.quarkus.stomp.ws.runtime.handlers;
+
+import io.vertx.ext.stomp.DefaultUnsubscribeHandler;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.Frames;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+
+/**
+ * {@link DefaultUnsubscribeHandler} which only looks for the subscription in the destinations the connection
+ * subscribed to when the server runs an {@link IndexedStompServerHandler}.
+ */
+public class UnsubscribeHandler extends DefaultUnsubscribeHandler {
+
+    @Override
+    public void handle(ServerFrame serverFrame) {
+        StompServerConnection connection = serverFrame.connection();
+        if (!(connection.handler() instanceof IndexedStompServerHandler)) {
+            super.handle(serverFrame);
+            return;
+        }
+        Frame frame = serverFrame.frame();
+        String id = frame.getId();
+        if (id == null) {
+            connection.write(Frames.createErrorFrame("Invalid unsubscribe", Headers.create(frame.getHeaders()),
+                    "The 'id' header must be set"));
+            connection.close();
+            return;
+        }
+        IndexedStompServerHandler handler = (IndexedStompServerHandler) connection.handler();
+        if (handler.cancelPendingSubscribe(connection, id)) {
+            // the subscription had not been made yet, it never will
+            Frames.handleReceipt(frame, connection);
+            return;
+        }
+        for (Destination destination : handler.getDestinations(connection)) {
+            if (destination.unsubscribe(connection, frame)) {
+                Frames.handleReceipt(frame, connection);
+                return;
+            }
+        }
+        connection.write(Frames.createErrorFrame("Invalid unsubscribe", Headers.create(frame.getHeaders()),
+                "No subscription associated with the given 'id'"));
+        connection.close();
+    }
+}
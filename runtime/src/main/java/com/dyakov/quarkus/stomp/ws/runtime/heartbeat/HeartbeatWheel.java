@@ -0,0 +1,120 @@
+package com.dyakov.quarkus.stomp.ws.runtime.heartbeat;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel which drives the heartbeats of every connection of one event loop from a single periodic
+ * timer. It is confined to its context: timeouts are scheduled, run and dropped on the event loop only, and
+ * {@link Timeout#cancel()} just flags the entry so that it is unlinked on the next visit of its bucket.
+ */
+public final class HeartbeatWheel {
+
+    private static final String CONTEXT_KEY = HeartbeatWheel.class.getName();
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    /**
+     * Work done on expiry. Returns the next absolute deadline in milliseconds (see {@link #now()}), or a negative
+     * value when the task should not run again.
+     */
+    public interface Task {
+        long run(long now);
+    }
+
+    private final Vertx vertx;
+    private final long tickMillis;
+    private final Timeout[] buckets = new Timeout[WHEEL_SIZE];
+
+    private long currentTick;
+    private long timerId = -1;
+    private int size;
+
+    private HeartbeatWheel(Vertx vertx, long tickMillis) {
+        this.vertx = vertx;
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * The wheel of {@code context}, created on first use. Must be called on that context.
+     */
+    public static HeartbeatWheel get(Vertx vertx, Context context, long tickMillis) {
+        HeartbeatWheel wheel = context.get(CONTEXT_KEY);
+        if (wheel == null) {
+            wheel = new HeartbeatWheel(vertx, tickMillis);
+            context.put(CONTEXT_KEY, wheel);
+        }
+        return wheel;
+    }
+
+    public static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    public Timeout schedule(Task task, long deadline) {
+        Timeout timeout = new Timeout(task);
+        add(timeout, deadline);
+        if (timerId == -1) {
+            timerId = vertx.setPeriodic(tickMillis, id -> tick());
+        }
+        return timeout;
+    }
+
+    private void add(Timeout timeout, long deadline) {
+        long ticks = Math.max(1, (deadline - now() + tickMillis - 1) / tickMillis);
+        timeout.remainingRounds = (ticks - 1) / WHEEL_SIZE;
+        int bucket = (int) ((currentTick + ticks) & MASK);
+        timeout.next = buckets[bucket];
+        buckets[bucket] = timeout;
+        size++;
+    }
+
+    private void tick() {
+        currentTick++;
+        int bucket = (int) (currentTick & MASK);
+        Timeout timeout = buckets[bucket];
+        buckets[bucket] = null;
+        long now = now();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            size--;
+            if (!timeout.cancelled) {
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                    timeout.next = buckets[bucket];
+                    buckets[bucket] = timeout;
+                    size++;
+                } else {
+                    long deadline = timeout.task.run(now);
+                    if (deadline >= 0 && !timeout.cancelled) {
+                        add(timeout, deadline);
+                    }
+                }
+            }
+            timeout = next;
+        }
+        if (size == 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+    }
+
+    public static final class Timeout {
+
+        private final Task task;
+        private Timeout next;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Task task) {
+            this.task = task;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
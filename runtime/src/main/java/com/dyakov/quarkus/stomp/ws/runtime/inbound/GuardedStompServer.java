@@ -0,0 +1,93 @@
+package com.dyakov.quarkus.stomp.ws.runtime.inbound;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.stomp.Frames;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServer;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.StompServerHandler;
+import io.vertx.ext.stomp.StompServerOptions;
+import io.vertx.ext.stomp.impl.FrameParser;
+import io.vertx.ext.stomp.impl.ServerFrameImpl;
+import io.vertx.ext.stomp.impl.StompServerImpl;
+import io.vertx.ext.stomp.impl.StompServerWebSocketConnectionImpl;
+
+/**
+ * The Vert.x STOMP server of the plain WebSocket endpoint, whose WebSocket handler, a copy of the one of
+ * {@link StompServerImpl}, puts an {@link InboundFrameGuard} in front of the frame parser.
+ */
+public class GuardedStompServer extends StompServerImpl {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StompServerImpl.class);
+
+    private final StompConnectionOptions connectionOptions;
+
+    private volatile Handler<ServerFrame> writingFrameHandler;
+    private volatile LargeBodySink largeBodySink;
+
+    public GuardedStompServer(Vertx vertx, StompServerOptions options, StompConnectionOptions connectionOptions) {
+        super(vertx, null, options);
+        this.connectionOptions = connectionOptions;
+    }
+
+    /**
+     * Streams the large SEND bodies to {@code sink} instead of aggregating them, see {@link LargeBodySink}.
+     */
+    public GuardedStompServer largeBodySink(LargeBodySink sink) {
+        this.largeBodySink = sink;
+        return this;
+    }
+
+    @Override
+    public StompServer writingFrameHandler(Handler<ServerFrame> handler) {
+        this.writingFrameHandler = handler;
+        return super.writingFrameHandler(handler);
+    }
+
+    @Override
+    public Handler<ServerWebSocket> webSocketHandler() {
+        StompServerOptions options = options();
+        if (!options.isWebsocketBridge()) {
+            return null;
+        }
+
+        StompServerHandler stomp = stompHandler();
+
+        return socket -> {
+            if (!socket.path().equals(options.getWebsocketPath())) {
+                LOGGER.error("Receiving a web socket connection on an invalid path (" + socket.path()
+                        + "), the path is configured to " + options.getWebsocketPath() + ". Rejecting connection");
+                socket.reject();
+                return;
+            }
+            StompServerConnection connection = new StompServerWebSocketConnectionImpl(socket, this,
+                    writingFrameHandler);
+            FrameParser parser = new FrameParser(options);
+            InboundFrameGuard guard = new InboundFrameGuard(connectionOptions, largeBodySink, connection,
+                    parser::handle, exception -> {
+                        connection.write(Frames.createInvalidFrameErrorFrame(exception));
+                        connection.close();
+                    });
+            socket.exceptionHandler((exception) -> {
+                LOGGER.error("The STOMP server caught a WebSocket error - closing connection", exception);
+                connection.close();
+            });
+            socket.endHandler(v -> connection.close());
+            socket.closeHandler(v -> guard.close());
+            parser
+                    .errorHandler((exception) -> {
+                                connection.write(
+                                        Frames.createInvalidFrameErrorFrame(exception));
+                                connection.close();
+                            }
+                    )
+                    .handler(frame -> stomp.handle(new ServerFrameImpl(frame, connection)));
+            socket.handler(guard);
+        };
+    }
+}
@@ -0,0 +1,301 @@
+package com.dyakov.quarkus.stomp.ws.runtime.inbound;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ByteProcessor;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.impl.FrameException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Enforces the inbound limits on the STOMP byte stream of a connection before it reaches the {@code FrameParser},
+ * which aggregates a whole frame before checking its size. The header lines are counted and measured as they
+ * arrive, a declared {@code content-length} is checked before any of the body is read and a body without one is
+ * counted up to its NUL, so that an oversized frame fails with an ERROR after at most a limit worth of bytes. A
+ * streamed body must be followed by the NUL ending its frame, as the parser checks for the aggregated ones.
+ * <p>
+ * Without a {@link LargeBodySink} the bytes are only scanned and handed over as they came. With one, the header
+ * block of every frame is held until it is complete, and the body of a SEND above the stream threshold goes to the
+ * sink instead of the parser.
+ */
+public class InboundFrameGuard implements Handler<Buffer> {
+
+    private static final int BETWEEN_FRAMES = 0;
+    private static final int HEADERS = 1;
+    private static final int BODY = 2;
+    private static final int BODY_UNTIL_NUL = 3;
+    private static final int STREAMED_BODY = 4;
+
+    private static final String SEND = "SEND";
+
+    private final long maxFrameBytes;
+    private final int maxHeaders;
+    private final int maxHeaderBytes;
+    private final long maxBodyBytes;
+    private final long streamThresholdBytes;
+    private final LargeBodySink sink;
+    private final StompServerConnection connection;
+    private final Handler<Buffer> downstream;
+    private final Handler<FrameException> errorHandler;
+    private final ByteBuf head = Unpooled.buffer(256);
+
+    private int state = BETWEEN_FRAMES;
+    private boolean failed;
+    private long frameBytes;
+    private int headerLines;
+    private int lineBytes;
+    private long remaining;
+    private long bodyBytes;
+    private LargeBodySink.LargeBody largeBody;
+
+    /**
+     * @param sink       where the large SEND bodies go, {@code null} to aggregate them like the others
+     * @param downstream the STOMP parser
+     */
+    public InboundFrameGuard(StompConnectionOptions options, LargeBodySink sink, StompServerConnection connection,
+                             Handler<Buffer> downstream, Handler<FrameException> errorHandler) {
+        this.maxFrameBytes = options.getInboundMaxFrameBytes();
+        this.maxHeaders = options.getInboundMaxHeaders();
+        this.maxHeaderBytes = options.getInboundMaxHeaderBytes();
+        this.maxBodyBytes = options.getInboundMaxBodyBytes();
+        this.streamThresholdBytes = options.getInboundStreamThresholdBytes();
+        this.sink = sink;
+        this.connection = connection;
+        this.downstream = downstream;
+        this.errorHandler = errorHandler;
+    }
+
+    @Override
+    public void handle(Buffer event) {
+        if (failed) {
+            return;
+        }
+        ByteBuf in = event.getByteBuf();
+        int start = in.readerIndex();
+        int end = in.writerIndex();
+        int index = start;
+        // the bytes from there on are handed over unchanged
+        int passFrom = start;
+        while (index < end) {
+            switch (state) {
+                case BETWEEN_FRAMES: {
+                    byte b = in.getByte(index);
+                    if (b == '\n' || b == '\r') {
+                        // heart-beats
+                        index++;
+                        break;
+                    }
+                    if (sink != null) {
+                        pass(event, in, passFrom, index, start, end);
+                    }
+                    startFrame();
+                    break;
+                }
+                case HEADERS: {
+                    byte b = in.getByte(index++);
+                    head.writeByte(b);
+                    if (++frameBytes > maxFrameBytes) {
+                        fail("Frame too large, more than " + maxFrameBytes + " bytes");
+                        return;
+                    }
+                    if (b != '\n') {
+                        if (++lineBytes > maxHeaderBytes) {
+                            fail("Header line too long, more than " + maxHeaderBytes + " bytes");
+                            return;
+                        }
+                        break;
+                    }
+                    boolean blank = lineBytes == 0 || lineBytes == 1 && head.getByte(head.writerIndex() - 2) == '\r';
+                    lineBytes = 0;
+                    if (!blank) {
+                        // the command line is not a header
+                        if (headerLines++ > maxHeaders) {
+                            fail("Too many headers, more than " + maxHeaders);
+                            return;
+                        }
+                        break;
+                    }
+                    if (!endOfHeaders()) {
+                        return;
+                    }
+                    if (sink != null && state != STREAMED_BODY) {
+                        // the held header block goes first, then the body as it came
+                        downstream.handle(Buffer.buffer(head.copy()));
+                        passFrom = index;
+                    }
+                    break;
+                }
+                case BODY:
+                case STREAMED_BODY: {
+                    int length = (int) Math.min(remaining, end - index);
+                    if (state == STREAMED_BODY) {
+                        // the terminating NUL is not part of the body
+                        int chunk = (int) Math.min(length, remaining - 1);
+                        if (chunk > 0) {
+                            largeBody.chunk(Buffer.buffer(in.copy(index, chunk)));
+                        }
+                    }
+                    index += length;
+                    remaining -= length;
+                    if (remaining == 0) {
+                        if (state == STREAMED_BODY) {
+                            if (in.getByte(index - 1) != 0) {
+                                fail("Body not terminated by NUL after its content-length");
+                                return;
+                            }
+                            endStreamedBody();
+                            passFrom = index;
+                        }
+                        state = BETWEEN_FRAMES;
+                    }
+                    break;
+                }
+                default: {
+                    int nul = in.forEachByte(index, end - index, ByteProcessor.FIND_NUL);
+                    int length = (nul < 0 ? end : nul) - index;
+                    bodyBytes += length;
+                    frameBytes += length;
+                    if (bodyBytes > maxBodyBytes) {
+                        fail("Body too large, more than " + maxBodyBytes + " bytes");
+                        return;
+                    }
+                    if (frameBytes > maxFrameBytes) {
+                        fail("Frame too large, more than " + maxFrameBytes + " bytes");
+                        return;
+                    }
+                    if (nul < 0) {
+                        index = end;
+                    } else {
+                        index = nul + 1;
+                        state = BETWEEN_FRAMES;
+                    }
+                    break;
+                }
+            }
+        }
+        if (state != STREAMED_BODY && (sink == null || state != HEADERS)) {
+            pass(event, in, passFrom, end, start, end);
+        }
+    }
+
+    /**
+     * Drops the body of a frame being streamed, once the connection is closed.
+     */
+    public void close() {
+        failed = true;
+        release();
+    }
+
+    /**
+     * @return the buffer holding the header block of the current frame
+     */
+    ByteBuf heldHeaders() {
+        return head;
+    }
+
+    private void startFrame() {
+        state = HEADERS;
+        head.clear();
+        frameBytes = 0;
+        headerLines = 0;
+        lineBytes = 0;
+        bodyBytes = 0;
+    }
+
+    /**
+     * Checks the declared body length and decides where the body goes.
+     *
+     * @return whether the frame is within the limits
+     */
+    private boolean endOfHeaders() {
+        String block = head.toString(StandardCharsets.UTF_8);
+        String[] lines = block.split("\r?\n");
+        long contentLength = -1;
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.putIfAbsent(lines[i].substring(0, colon), lines[i].substring(colon + 1));
+            }
+        }
+        String declared = headers.get(Frame.CONTENT_LENGTH);
+        if (declared != null) {
+            try {
+                contentLength = Long.parseLong(declared.trim());
+            } catch (NumberFormatException e) {
+                // left to the parser to reject
+                contentLength = -1;
+            }
+        }
+        if (contentLength < 0) {
+            state = BODY_UNTIL_NUL;
+            return true;
+        }
+        if (contentLength > maxBodyBytes) {
+            fail("Body too large, " + contentLength + " bytes declared, more than " + maxBodyBytes);
+            return false;
+        }
+        if (frameBytes + contentLength + 1 > maxFrameBytes) {
+            fail("Frame too large, more than " + maxFrameBytes + " bytes");
+            return false;
+        }
+        remaining = contentLength + 1;
+        if (sink != null && contentLength > streamThresholdBytes && SEND.equals(lines[0])) {
+            largeBody = sink.open(connection, headers);
+            state = STREAMED_BODY;
+        } else {
+            state = BODY;
+        }
+        return true;
+    }
+
+    /**
+     * Hands over the frame with the body returned by the sink in place of the streamed one.
+     */
+    private void endStreamedBody() {
+        LargeBodySink.LargeBody body = largeBody;
+        largeBody = null;
+        Buffer replacement = body.end();
+        StringBuilder frame = new StringBuilder(head.readableBytes() + 16);
+        for (String line : head.toString(StandardCharsets.UTF_8).split("\r?\n")) {
+            if (!line.isEmpty() && !line.startsWith(Frame.CONTENT_LENGTH + ":")) {
+                frame.append(line).append('\n');
+            }
+        }
+        frame.append(Frame.CONTENT_LENGTH).append(':').append(replacement.length()).append("\n\n");
+        downstream.handle(Buffer.buffer(frame.toString()).appendBuffer(replacement).appendByte((byte) 0));
+    }
+
+    private void pass(Buffer event, ByteBuf in, int from, int to, int start, int end) {
+        if (from >= to) {
+            return;
+        }
+        downstream.handle(from == start && to == end ? event : Buffer.buffer(in.copy(from, to - from)));
+    }
+
+    private void fail(String message) {
+        failed = true;
+        release();
+        errorHandler.handle(new FrameException(message));
+    }
+
+    /**
+     * Aborts the body being streamed and releases the held header block, once nothing else is read.
+     */
+    private void release() {
+        if (largeBody != null) {
+            largeBody.abort();
+            largeBody = null;
+        }
+        if (head.refCnt() > 0) {
+            head.release();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.dyakov.quarkus.stomp.ws.runtime.inbound;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.Map;
+
+/**
+ * Receives the bodies of the SEND frames whose {@code content-length} is above the stream threshold chunk by chunk,
+ * as they are read, instead of having them aggregated in memory. The frame is then handled with the body returned
+ * by {@link LargeBody#end()}, typically a reference to where the body was stored.
+ * <p>
+ * Called on the event loop of the connection, so a sink must not block: write with an {@code AsyncFile} or hand the
+ * chunks over to another thread.
+ */
+public interface LargeBodySink {
+
+    /**
+     * @param headers the headers of the SEND frame, as received, the first value of a repeated header
+     * @return where the chunks of the body go
+     */
+    LargeBody open(StompServerConnection connection, Map<String, String> headers);
+
+    interface LargeBody {
+
+        void chunk(Buffer chunk);
+
+        /**
+         * @return the body the frame is handled with
+         */
+        Buffer end();
+
+        /**
+         * The connection failed or was closed before the end of the body.
+         */
+        void abort();
+    }
+}
@@ -0,0 +1,38 @@
+package com.dyakov.quarkus.stomp.ws.runtime.interceptors;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+/**
+ * Decides whether a SUBSCRIBE is allowed before the subscription is made. A denied SUBSCRIBE is answered with an
+ * ERROR frame and the connection is closed.
+ * <p>
+ * Decisions are cached and concurrent checks are coalesced by principal and destination, so {@link #authorize}
+ * should depend on nothing else. A {@code CompletionStage} can be returned as
+ * {@code Uni.createFrom().completionStage(stage)}.
+ */
+public interface AsyncSubscribeInterceptor {
+
+    /**
+     * Called on the event loop of the connection, or on a worker thread when the authorization is offloaded, in
+     * which case it may block.
+     *
+     * @param principal   the principal of the connection, {@code null} if it has none
+     * @param destination the destination of the SUBSCRIBE frame
+     * @param serverFrame the SUBSCRIBE frame, one of them when concurrent checks are coalesced
+     * @return whether the subscription is allowed, a failure denies it without caching the decision
+     */
+    Uni<Boolean> authorize(String principal, String destination, ServerFrame serverFrame);
+
+    /**
+     * @return the principal the decisions about {@code serverFrame} are cached under, {@code null} to not cache
+     * them. Defaults to the subject of the user authenticated on CONNECT.
+     */
+    default String principal(ServerFrame serverFrame) {
+        StompServerConnection connection = serverFrame.connection();
+        User user = connection.handler().getUserBySession(connection.session());
+        return user == null ? null : user.subject();
+    }
+}
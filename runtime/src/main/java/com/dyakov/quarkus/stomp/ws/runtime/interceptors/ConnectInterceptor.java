@@ -0,0 +1,41 @@
+package com.dyakov.quarkus.stomp.ws.runtime.interceptors;
+
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.List;
+
+/**
+ * Accepts or refuses CONNECT and STOMP frames, before the authentication of the Vert.x handler. Beans are
+ * discovered at build time and chained in the order of their {@code @Priority}, lowest first.
+ */
+public interface ConnectInterceptor {
+
+    /**
+     * Called on the event loop of {@code connection}.
+     *
+     * @return whether the connection is accepted, a refused one gets an ERROR frame and is closed
+     */
+    boolean onConnect(Frame frame, StompServerConnection connection);
+
+    /**
+     * @return the interceptors called in turn, the only one when there is one, {@code null} when there is none
+     */
+    static ConnectInterceptor chain(List<ConnectInterceptor> interceptors) {
+        if (interceptors.isEmpty()) {
+            return null;
+        }
+        if (interceptors.size() == 1) {
+            return interceptors.get(0);
+        }
+        ConnectInterceptor[] chain = interceptors.toArray(new ConnectInterceptor[0]);
+        return (frame, connection) -> {
+            for (ConnectInterceptor interceptor : chain) {
+                if (!interceptor.onConnect(frame, connection)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+}
@@ -0,0 +1,43 @@
+package com.dyakov.quarkus.stomp.ws.runtime.interceptors;
+
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.List;
+
+/**
+ * Filters the MESSAGE frames of a topic per subscriber. Beans are discovered at build time and chained in the
+ * order of their {@code @Priority}, lowest first.
+ */
+public interface MessageInterceptor {
+
+    /**
+     * Called on the thread dispatching {@code frame}, once per subscriber of the topic.
+     *
+     * @param frame      the SEND frame being dispatched, shared by the subscribers and not to be modified
+     * @param subscriber the connection of the subscriber
+     * @return whether the subscriber gets the message
+     */
+    boolean onMessage(Frame frame, StompServerConnection subscriber);
+
+    /**
+     * @return the interceptors called in turn, the only one when there is one, {@code null} when there is none
+     */
+    static MessageInterceptor chain(List<MessageInterceptor> interceptors) {
+        if (interceptors.isEmpty()) {
+            return null;
+        }
+        if (interceptors.size() == 1) {
+            return interceptors.get(0);
+        }
+        MessageInterceptor[] chain = interceptors.toArray(new MessageInterceptor[0]);
+        return (frame, subscriber) -> {
+            for (MessageInterceptor interceptor : chain) {
+                if (!interceptor.onMessage(frame, subscriber)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+}
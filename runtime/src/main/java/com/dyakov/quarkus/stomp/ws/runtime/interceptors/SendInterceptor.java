@@ -0,0 +1,43 @@
+package com.dyakov.quarkus.stomp.ws.runtime.interceptors;
+
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.List;
+
+/**
+ * Enriches or validates SEND frames before they are dispatched. Beans are discovered at build time and chained in
+ * the order of their {@code @Priority}, lowest first.
+ */
+public interface SendInterceptor {
+
+    /**
+     * Called on the event loop of {@code connection}.
+     *
+     * @return the frame to dispatch, {@code frame} itself or a new one, {@code null} to reject it with an ERROR
+     * frame
+     */
+    Frame onSend(Frame frame, StompServerConnection connection);
+
+    /**
+     * @return the interceptors called in turn, the only one when there is one, {@code null} when there is none
+     */
+    static SendInterceptor chain(List<SendInterceptor> interceptors) {
+        if (interceptors.isEmpty()) {
+            return null;
+        }
+        if (interceptors.size() == 1) {
+            return interceptors.get(0);
+        }
+        SendInterceptor[] chain = interceptors.toArray(new SendInterceptor[0]);
+        return (frame, connection) -> {
+            for (SendInterceptor interceptor : chain) {
+                frame = interceptor.onSend(frame, connection);
+                if (frame == null) {
+                    return null;
+                }
+            }
+            return frame;
+        };
+    }
+}
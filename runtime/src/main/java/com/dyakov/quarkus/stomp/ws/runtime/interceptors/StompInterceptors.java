@@ -0,0 +1,66 @@
+package com.dyakov.quarkus.stomp.ws.runtime.interceptors;
+
+import com.dyakov.quarkus.stomp.ws.runtime.DiscoveredBeans;
+
+import java.util.List;
+
+/**
+ * The interceptor chains of the STOMP server, each {@code null} when no bean was discovered for it so that the
+ * frames of uninterceptable commands only cost a null check, and the SUBSCRIBE interceptors.
+ */
+public final class StompInterceptors {
+
+    public static final StompInterceptors NONE = new StompInterceptors(null, null, null);
+
+    private final SendInterceptor send;
+    private final MessageInterceptor message;
+    private final ConnectInterceptor connect;
+    private final SubscribeInterceptor subscribe;
+    private final AsyncSubscribeInterceptor asyncSubscribe;
+
+    public StompInterceptors(SendInterceptor send, MessageInterceptor message, ConnectInterceptor connect) {
+        this(send, message, connect, null, null);
+    }
+
+    public StompInterceptors(SendInterceptor send, MessageInterceptor message, ConnectInterceptor connect,
+                             SubscribeInterceptor subscribe, AsyncSubscribeInterceptor asyncSubscribe) {
+        this.send = send;
+        this.message = message;
+        this.connect = connect;
+        this.subscribe = subscribe;
+        this.asyncSubscribe = asyncSubscribe;
+    }
+
+    /**
+     * Looks up the beans ordered at build time. Only the first SUBSCRIBE interceptor of each kind is
+     * used.
+     */
+    public static StompInterceptors lookup(List<String> send, List<String> message, List<String> connect,
+                                           List<String> subscribe, List<String> asyncSubscribe) {
+        return new StompInterceptors(SendInterceptor.chain(DiscoveredBeans.lookup(send, SendInterceptor.class)),
+                MessageInterceptor.chain(DiscoveredBeans.lookup(message, MessageInterceptor.class)),
+                ConnectInterceptor.chain(DiscoveredBeans.lookup(connect, ConnectInterceptor.class)),
+                DiscoveredBeans.first(subscribe, SubscribeInterceptor.class),
+                DiscoveredBeans.first(asyncSubscribe, AsyncSubscribeInterceptor.class));
+    }
+
+    public SendInterceptor send() {
+        return send;
+    }
+
+    public MessageInterceptor message() {
+        return message;
+    }
+
+    public ConnectInterceptor connect() {
+        return connect;
+    }
+
+    public SubscribeInterceptor subscribe() {
+        return subscribe;
+    }
+
+    public AsyncSubscribeInterceptor asyncSubscribe() {
+        return asyncSubscribe;
+    }
+}
@@ -0,0 +1,163 @@
+package com.dyakov.quarkus.stomp.ws.runtime.interceptors;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.ServerFrame;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asks an {@link AsyncSubscribeInterceptor} whether a SUBSCRIBE is allowed. Decisions are cached by principal and
+ * destination for a TTL, and concurrent checks of the same principal and destination share one lookup, so that a
+ * reconnect storm costs one lookup per distinct pair.
+ */
+public class SubscribeAuthorizer {
+
+    private static final Logger log = Logger.getLogger(SubscribeAuthorizer.class.getName());
+
+    private static final CompletionStage<Boolean> ALLOWED = CompletableFuture.completedStage(true);
+    private static final CompletionStage<Boolean> DENIED = CompletableFuture.completedStage(false);
+
+    private final AsyncSubscribeInterceptor interceptor;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Duration timeout;
+    private final Executor worker;
+    private final ConcurrentHashMap<Key, Decision> decisions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param worker whether {@link AsyncSubscribeInterceptor#authorize} is called on a worker thread, for
+     *               interceptors which block
+     */
+    public SubscribeAuthorizer(Vertx vertx, AsyncSubscribeInterceptor interceptor, long ttlMillis, int maxEntries,
+                               long timeoutMillis, boolean worker) {
+        this.interceptor = interceptor;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.worker = worker ? task -> vertx.<Void>executeBlocking(promise -> {
+            task.run();
+            promise.complete();
+        }, false) : null;
+    }
+
+    /**
+     * @return whether the SUBSCRIBE is allowed, never completed exceptionally
+     */
+    public CompletionStage<Boolean> authorize(ServerFrame serverFrame) {
+        String destination = serverFrame.frame().getDestination();
+        String principal = interceptor.principal(serverFrame);
+        if (principal == null || ttlNanos <= 0) {
+            return lookup(principal, destination, serverFrame).exceptionally(failure -> denied(destination, failure));
+        }
+        Key key = new Key(principal, destination);
+        Decision decision = decisions.get(key);
+        if (decision != null && decision.expiresAt - System.nanoTime() > 0) {
+            return decision.allowed ? ALLOWED : DENIED;
+        }
+        CompletableFuture<Boolean> created = new CompletableFuture<>();
+        CompletableFuture<Boolean> inFlight = pending.putIfAbsent(key, created);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        lookup(principal, destination, serverFrame).whenComplete((allowed, failure) -> {
+            if (failure == null) {
+                cache(key, allowed);
+            }
+            pending.remove(key, created);
+            created.complete(failure == null ? allowed : denied(destination, failure));
+        });
+        return created;
+    }
+
+    /**
+     * @return the number of cached decisions, expired ones included until they are evicted
+     */
+    public int size() {
+        return decisions.size();
+    }
+
+    private CompletionStage<Boolean> lookup(String principal, String destination, ServerFrame serverFrame) {
+        Uni<Boolean> decision = Uni.createFrom().deferred(() -> interceptor.authorize(principal, destination,
+                serverFrame));
+        if (worker != null) {
+            decision = decision.runSubscriptionOn(worker);
+        }
+        return decision.ifNoItem().after(timeout).fail()
+                .map(Boolean.TRUE::equals)
+                .subscribeAsCompletionStage();
+    }
+
+    private void cache(Key key, boolean allowed) {
+        long now = System.nanoTime();
+        if (decisions.size() >= maxEntries) {
+            evict(now);
+        }
+        decisions.put(key, new Decision(allowed, now + ttlNanos));
+    }
+
+    /**
+     * Drops the expired decisions, and a tenth of the others when that is not enough.
+     */
+    private void evict(long now) {
+        decisions.values().removeIf(decision -> decision.expiresAt - now <= 0);
+        int excess = decisions.size() - maxEntries + Math.max(1, maxEntries / 10);
+        Iterator<Map.Entry<Key, Decision>> iterator = decisions.entrySet().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static boolean denied(String destination, Throwable failure) {
+        log.warnf(failure, "Authorization of the subscription to %s failed, denying it", destination);
+        return false;
+    }
+
+    private static final class Key {
+        final String principal;
+        final String destination;
+
+        Key(String principal, String destination) {
+            this.principal = principal;
+            this.destination = destination;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return principal.equals(key.principal) && Objects.equals(destination, key.destination);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * principal.hashCode() + Objects.hashCode(destination);
+        }
+    }
+
+    private static final class Decision {
+        final boolean allowed;
+        final long expiresAt;
+
+        Decision(boolean allowed, long expiresAt) {
+            this.allowed = allowed;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
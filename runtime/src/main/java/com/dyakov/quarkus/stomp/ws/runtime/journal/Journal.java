@@ -0,0 +1,587 @@
+package com.dyakov.quarkus.stomp.ws.runtime.journal;
+
+import io.netty.util.internal.PlatformDependent;
+import org.jboss.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the messages of one durable queue, in memory-mapped segment files of a directory.
+ * <p>
+ * A record is its payload length, the CRC32 of the payload, its sequence number and the payload; a zero length
+ * ends a segment. Appends only write to the mapped segment, and {@link #sync()} forces the segments written since
+ * the previous sync to disk in one go, every {@code syncIntervalMillis} on a journal thread (group commit), then
+ * appends the sequences acknowledged meanwhile to the checkpoint, as ranges. Each segment keeps a bitmap of its
+ * acknowledged records; a segment whose records are all acknowledged is unmapped and deleted, and the checkpoint is
+ * then rewritten with the acknowledged ranges of the remaining segments only. Recovery reads the checkpoint and
+ * replays the unacknowledged records.
+ */
+public class Journal implements Closeable {
+
+    private static final Logger log = Logger.getLogger(Journal.class.getName());
+
+    static final int RECORD_HEADER = 16;
+    static final String CHECKPOINT = "checkpoint";
+    private static final String SEGMENT_SUFFIX = ".log";
+    /** The count of ranges and their CRC32 */
+    private static final int BATCH_HEADER = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final List<Segment> dirty = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    /** Held by one sync at a time, so that the checkpoint is written in order */
+    private final Object syncLock = new Object();
+    private final ScheduledExecutorService syncer;
+
+    private Segment active;
+    private long nextSequence;
+    /** The sequences acknowledged since the previous sync */
+    private long[] acks = new long[64];
+    private int ackCount;
+    private CompletableFuture<Void> nextSync = new CompletableFuture<>();
+    private List<Record> recovered;
+    private boolean closed;
+    /** The bytes appended to the checkpoint since it was last rewritten, guarded by the sync lock */
+    private long checkpointBytes;
+    /** Whether the segments are unmapped, guarded by the sync lock */
+    private boolean unmapped;
+
+    private Journal(Path directory, int segmentBytes, long syncIntervalMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        if (syncIntervalMillis > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stomp-journal-" + directory.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    /**
+     * Opens the journal of {@code directory}, creating it if needed, and recovers the unacknowledged records.
+     *
+     * @param syncIntervalMillis how often the appended records are forced to disk, 0 to only do it on
+     *                           {@link #sync()} and {@link #whenSynced()}
+     */
+    public static Journal open(Path directory, int segmentBytes, long syncIntervalMillis) {
+        try {
+            Files.createDirectories(directory);
+            Journal journal = new Journal(directory, segmentBytes, syncIntervalMillis);
+            journal.recover();
+            return journal;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the journal " + directory, e);
+        }
+    }
+
+    /**
+     * @return the records which were not acknowledged when the journal was last closed, once
+     */
+    public synchronized List<Record> takeRecovered() {
+        List<Record> records = recovered;
+        recovered = Collections.emptyList();
+        return records;
+    }
+
+    /**
+     * @return the sequence of the appended record
+     */
+    public synchronized long append(byte[] payload) {
+        if (payload.length == 0 || payload.length + RECORD_HEADER * 2 > segmentBytes) {
+            throw new IllegalArgumentException("Cannot journal a record of " + payload.length + " bytes");
+        }
+        if (closed) {
+            throw new IllegalStateException("The journal " + directory + " is closed");
+        }
+        if (active.position + RECORD_HEADER + payload.length + 4 > segmentBytes) {
+            roll();
+        }
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        MappedByteBuffer buffer = active.buffer;
+        int position = active.position;
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putLong(position + 8, nextSequence);
+        ByteBuffer record = buffer.duplicate();
+        record.position(position + RECORD_HEADER);
+        record.put(payload);
+        // the length last, a record is only complete once it is set
+        buffer.putInt(position, payload.length);
+        active.position = position + RECORD_HEADER + payload.length;
+        active.records++;
+        markDirty(active);
+        return nextSequence++;
+    }
+
+    /**
+     * Marks the record of {@code sequence} as acknowledged, made durable by the next {@link #sync()}.
+     */
+    public synchronized void ack(long sequence) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+        if (entry == null) {
+            return;
+        }
+        Segment segment = entry.getValue();
+        long offset = sequence - segment.base;
+        if (offset >= segment.records || segment.acked.get((int) offset)) {
+            return;
+        }
+        segment.acked.set((int) offset);
+        segment.ackedCount++;
+        if (ackCount == acks.length) {
+            acks = Arrays.copyOf(acks, ackCount * 2);
+        }
+        acks[ackCount++] = sequence;
+    }
+
+    /**
+     * @return completed once the records appended so far are on disk. Without sync interval, syncs them first.
+     */
+    public CompletionStage<Void> whenSynced() {
+        if (syncer != null) {
+            synchronized (this) {
+                return nextSync;
+            }
+        }
+        try {
+            sync();
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Forces the records appended since the previous sync to disk, then checkpoints the acknowledgements and
+     * deletes the segments whose records are all acknowledged.
+     */
+    public void sync() throws IOException {
+        synchronized (syncLock) {
+            List<Segment> written;
+            List<Segment> deleted = new ArrayList<>();
+            CompletableFuture<Void> synced;
+            long[] acknowledged;
+            long[] ranges;
+            synchronized (this) {
+                written = new ArrayList<>(dirty);
+                dirty.clear();
+                for (Segment segment : written) {
+                    segment.dirty = false;
+                }
+                synced = nextSync;
+                nextSync = new CompletableFuture<>();
+                if (unmapped) {
+                    synced.complete(null);
+                    return;
+                }
+                for (Iterator<Segment> iterator = segments.values().iterator(); iterator.hasNext(); ) {
+                    Segment segment = iterator.next();
+                    if (segment != active && segment.ackedCount == segment.records) {
+                        iterator.remove();
+                        deleted.add(segment);
+                    }
+                }
+                boolean rewrite = !deleted.isEmpty() || checkpointBytes > segmentBytes;
+                ranges = rewrite ? ackedRanges() : null;
+                acknowledged = rewrite ? null : Arrays.copyOf(acks, ackCount);
+                ackCount = 0;
+            }
+            for (Segment segment : written) {
+                segment.buffer.force();
+            }
+            if (ranges != null) {
+                writeCheckpoint(ranges);
+            } else if (acknowledged.length > 0) {
+                appendCheckpoint(ranges(acknowledged));
+            }
+            for (Segment segment : deleted) {
+                unmap(segment);
+                Files.deleteIfExists(segment.path);
+                log.debugf("Deleted the acknowledged journal segment %s", segment.path);
+            }
+            synced.complete(null);
+        }
+    }
+
+    /**
+     * @return the sequence of the next appended record
+     */
+    public synchronized long nextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * @return the lowest sequence which is not acknowledged
+     */
+    public synchronized long watermark() {
+        for (Segment segment : segments.values()) {
+            int unacknowledged = segment.acked.nextClearBit(0);
+            if (unacknowledged < segment.records) {
+                return segment.base + unacknowledged;
+            }
+        }
+        return nextSequence;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Syncs the journal and unmaps its segments.
+     */
+    @Override
+    public void close() throws IOException {
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        sync();
+        synchronized (syncLock) {
+            synchronized (this) {
+                unmapped = true;
+                for (Segment segment : segments.values()) {
+                    unmap(segment);
+                }
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException | RuntimeException e) {
+            log.errorf(e, "Sync of the journal %s failed", directory);
+        }
+    }
+
+    private void markDirty(Segment segment) {
+        if (!segment.dirty) {
+            segment.dirty = true;
+            dirty.add(segment);
+        }
+    }
+
+    private void roll() {
+        try {
+            active = openSegment(nextSequence);
+            segments.put(active.base, active);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create a segment of the journal " + directory, e);
+        }
+    }
+
+    private Segment openSegment(long base) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return new Segment(base, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    /**
+     * Unmaps the segment right away instead of when its buffer is collected, so that the file can be deleted and
+     * mapped again.
+     */
+    private static void unmap(Segment segment) {
+        PlatformDependent.freeDirectBuffer(segment.buffer);
+    }
+
+    /**
+     * @return the acknowledged sequences as ranges: every sequence below the first segment, then the acknowledged
+     * records of each segment
+     */
+    private long[] ackedRanges() {
+        long[] ranges = new long[16];
+        int count = 0;
+        if (!segments.isEmpty() && segments.firstKey() > 0) {
+            ranges[count++] = 0;
+            ranges[count++] = segments.firstKey();
+        }
+        for (Segment segment : segments.values()) {
+            for (int from = segment.acked.nextSetBit(0); from >= 0; ) {
+                int to = segment.acked.nextClearBit(from);
+                if (count == ranges.length) {
+                    ranges = Arrays.copyOf(ranges, count * 2);
+                }
+                ranges[count++] = segment.base + from;
+                ranges[count++] = segment.base + to;
+                from = segment.acked.nextSetBit(to);
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * @return {@code sequences} as ranges, each a first sequence and the sequence after its last one
+     */
+    private static long[] ranges(long[] sequences) {
+        Arrays.sort(sequences);
+        long[] ranges = new long[sequences.length * 2];
+        int count = 0;
+        for (long sequence : sequences) {
+            if (count > 0 && ranges[count - 1] == sequence) {
+                ranges[count - 1] = sequence + 1;
+            } else {
+                ranges[count++] = sequence;
+                ranges[count++] = sequence + 1;
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * @return a batch of the checkpoint: the number of ranges, the CRC32 of the ranges and the ranges
+     */
+    private ByteBuffer batch(long[] ranges) {
+        ByteBuffer batch = ByteBuffer.allocate(BATCH_HEADER + ranges.length * 8);
+        batch.position(BATCH_HEADER);
+        for (long value : ranges) {
+            batch.putLong(value);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(batch.array(), BATCH_HEADER, ranges.length * 8);
+        batch.putInt(0, ranges.length / 2);
+        batch.putInt(4, (int) checksum.getValue());
+        batch.rewind();
+        return batch;
+    }
+
+    private void appendCheckpoint(long[] ranges) throws IOException {
+        ByteBuffer batch = batch(ranges);
+        try (FileChannel channel = FileChannel.open(directory.resolve(CHECKPOINT), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            channel.force(false);
+        }
+        checkpointBytes += batch.capacity();
+    }
+
+    private void writeCheckpoint(long[] ranges) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        ByteBuffer batch = batch(ranges);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        checkpointBytes = 0;
+    }
+
+    /**
+     * @return the acknowledged ranges of the checkpoint, up to a torn batch
+     */
+    private List<long[]> readCheckpoint() throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        List<long[]> ranges = new ArrayList<>();
+        if (!Files.exists(checkpoint)) {
+            return ranges;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+        CRC32 checksum = new CRC32();
+        while (in.remaining() >= BATCH_HEADER) {
+            int count = in.getInt(in.position());
+            int expected = in.getInt(in.position() + 4);
+            if (count < 0 || (long) count * 16 > in.remaining() - BATCH_HEADER) {
+                break;
+            }
+            checksum.reset();
+            checksum.update(in.array(), in.position() + BATCH_HEADER, count * 16);
+            if ((int) checksum.getValue() != expected) {
+                break;
+            }
+            in.position(in.position() + BATCH_HEADER);
+            for (int i = 0; i < count; i++) {
+                ranges.add(new long[]{in.getLong(), in.getLong()});
+            }
+        }
+        if (in.hasRemaining()) {
+            log.warnf("Torn batch at %d of the checkpoint of the journal %s, ignoring it", in.position(), directory);
+        }
+        return ranges;
+    }
+
+    private void recover() throws IOException {
+        List<long[]> ranges = readCheckpoint();
+        List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> bases.add(Long.parseLong(name.substring(0, name.length()
+                            - SEGMENT_SUFFIX.length()))));
+        }
+        Collections.sort(bases);
+        for (long base : bases) {
+            segments.put(base, openSegment(base));
+        }
+        for (long[] range : ranges) {
+            markAcked(range[0], range[1]);
+            nextSequence = Math.max(nextSequence, range[1]);
+        }
+        List<Record> records = new ArrayList<>();
+        for (Iterator<Segment> iterator = segments.values().iterator(); iterator.hasNext(); ) {
+            Segment segment = iterator.next();
+            nextSequence = Math.max(nextSequence, segment.base);
+            scan(segment, records);
+            // only the acknowledgements of the records which made it to disk count
+            segment.acked.clear(segment.records, Math.max(segment.records, segment.acked.length()));
+            segment.ackedCount = segment.acked.cardinality();
+            if (iterator.hasNext() && segment.ackedCount == segment.records) {
+                // every record is acknowledged, left over by a crash before the segment was deleted
+                iterator.remove();
+                unmap(segment);
+                Files.deleteIfExists(segment.path);
+                continue;
+            }
+            active = segment;
+        }
+        if (active == null) {
+            roll();
+        }
+        // drops the acknowledgements of the deleted segments and any torn batch
+        writeCheckpoint(ackedRanges());
+        recovered = records;
+        log.debugf("Recovered %d unacknowledged records of the journal %s up to sequence %d", records.size(),
+                directory, nextSequence);
+    }
+
+    /**
+     * Sets the acknowledged bits of the sequences from {@code from} to {@code to} in the segments holding them.
+     */
+    private void markAcked(long from, long to) {
+        Long first = segments.floorKey(from);
+        NavigableMap<Long, Segment> overlapping = first == null ? segments.headMap(to, false)
+                : segments.subMap(first, true, to, false);
+        for (Segment segment : overlapping.values()) {
+            Long next = segments.higherKey(segment.base);
+            long end = next != null ? next : segment.base + segmentBytes / RECORD_HEADER;
+            long start = Math.max(from, segment.base);
+            long stop = Math.min(to, end);
+            if (start < stop) {
+                segment.acked.set((int) (start - segment.base), (int) (stop - segment.base));
+            }
+        }
+    }
+
+    /**
+     * Reads the complete records of {@code segment}, stopping at the end of the segment or at a torn record.
+     */
+    private void scan(Segment segment, List<Record> records) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + RECORD_HEADER <= segmentBytes) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            byte[] payload = length > 0 && position + RECORD_HEADER + length <= segmentBytes ? new byte[length] : null;
+            if (payload != null) {
+                ByteBuffer record = buffer.duplicate();
+                record.position(position + RECORD_HEADER);
+                record.get(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+            }
+            if (payload == null || (int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.warnf("Torn record at %d of the journal segment %s, truncating it", position, segment.path);
+                // clears what the torn record left behind, so that it cannot be read after the next appends
+                for (int i = position; i < segmentBytes; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                break;
+            }
+            long sequence = buffer.getLong(position + 8);
+            int offset = (int) (sequence - segment.base);
+            if (!segment.acked.get(offset)) {
+                records.add(new Record(sequence, payload));
+            }
+            segment.records = offset + 1;
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            position += RECORD_HEADER + length;
+        }
+        segment.position = position;
+    }
+
+    /**
+     * A journaled message.
+     */
+    public static final class Record {
+        private final long sequence;
+        private final byte[] payload;
+
+        Record(long sequence, byte[] payload) {
+            this.sequence = sequence;
+            this.payload = payload;
+        }
+
+        public long sequence() {
+            return sequence;
+        }
+
+        public byte[] payload() {
+            return payload;
+        }
+    }
+
+    private static final class Segment {
+        final long base;
+        final Path path;
+        final MappedByteBuffer buffer;
+        /** The acknowledged records, by offset from the base */
+        final BitSet acked = new BitSet();
+        int position;
+        /** The records appended to the segment */
+        int records;
+        int ackedCount;
+        boolean dirty;
+
+        Segment(long base, Path path, MappedByteBuffer buffer) {
+            this.base = base;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.dyakov.quarkus.stomp.ws.runtime.journal;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.utils.Headers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Encodes the headers and the body of a SEND frame as a journal record: the number of headers, every header name
+ * and value, the body length and the body.
+ */
+public final class JournalCodec {
+
+    private JournalCodec() {
+    }
+
+    public static byte[] encode(Frame frame) {
+        Map<String, String> headers = frame.getHeaders();
+        Buffer body = frame.getBody();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (body == null ? 0 : body.length()));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(headers.size());
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+            if (body == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(body.length());
+                out.write(body.getBytes());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Frame decode(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            int count = in.readInt();
+            Headers headers = Headers.create();
+            for (int i = 0; i < count; i++) {
+                headers.put(in.readUTF(), in.readUTF());
+            }
+            int length = in.readInt();
+            Buffer body = null;
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                body = Buffer.buffer(bytes);
+            }
+            return new Frame(Command.SEND, headers, body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupted journal record", e);
+        }
+    }
+}
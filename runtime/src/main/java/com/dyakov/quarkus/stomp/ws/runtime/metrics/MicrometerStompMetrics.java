@@ -0,0 +1,171 @@
+package com.dyakov.quarkus.stomp.ws.runtime.metrics;
+
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.ext.stomp.Command;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * {@link StompMetrics} backed by Micrometer. Every meter is resolved up front, per command where tagged by it, so
+ * that recording is an array lookup and an increment.
+ */
+public class MicrometerStompMetrics implements StompMetrics {
+
+    private static final String HEARTBEAT = "HEARTBEAT";
+
+    private final MeterRegistry registry;
+    private final AtomicLong connections = new AtomicLong();
+    private final Counter[] framesIn;
+    private final Counter[] framesOut;
+    private final Counter heartbeatsOut;
+    private final DistributionSummary bytesIn;
+    private final DistributionSummary bytesOut;
+    private final Timer decode;
+    private final Timer encode;
+    private final Timer dispatch;
+    private final Counter heartbeatTimeouts;
+    private final Counter parserErrors;
+
+    public MicrometerStompMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("stomp.connections.active", connections, AtomicLong::get)
+                .description("Open STOMP connections")
+                .register(registry);
+        Command[] commands = Command.values();
+        framesIn = new Counter[commands.length];
+        framesOut = new Counter[commands.length];
+        for (Command command : commands) {
+            framesIn[command.ordinal()] = frames("in", command.name());
+            framesOut[command.ordinal()] = frames("out", command.name());
+        }
+        heartbeatsOut = frames("out", HEARTBEAT);
+        bytesIn = bytes("in");
+        bytesOut = bytes("out");
+        decode = Timer.builder("stomp.frames.decode").description("Time spent decoding inbound messages")
+                .register(registry);
+        encode = Timer.builder("stomp.frames.encode").description("Time spent encoding outbound frames")
+                .register(registry);
+        dispatch = Timer.builder("stomp.frames.dispatch").description("Time spent handling a SEND frame")
+                .publishPercentileHistogram()
+                .register(registry);
+        heartbeatTimeouts = Counter.builder("stomp.heartbeat.timeouts")
+                .description("Connections closed because the client stopped sending heartbeats")
+                .register(registry);
+        parserErrors = Counter.builder("stomp.parser.errors").description("Inbound messages which could not be parsed")
+                .register(registry);
+    }
+
+    /**
+     * Metrics registered in the global registry, to which Quarkus adds the configured registries.
+     */
+    public static MicrometerStompMetrics globalRegistry() {
+        return new MicrometerStompMetrics(Metrics.globalRegistry);
+    }
+
+    @Override
+    public void connectionOpened() {
+        connections.incrementAndGet();
+    }
+
+    @Override
+    public void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    @Override
+    public void frameIn(Command command) {
+        framesIn[command.ordinal()].increment();
+    }
+
+    @Override
+    public void frameOut(Command command) {
+        (command == null ? heartbeatsOut : framesOut[command.ordinal()]).increment();
+    }
+
+    @Override
+    public void bytesIn(int bytes) {
+        bytesIn.record(bytes);
+    }
+
+    @Override
+    public void bytesOut(int bytes) {
+        bytesOut.record(bytes);
+    }
+
+    @Override
+    public void decoded(long nanos) {
+        decode.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void encoded(long nanos) {
+        encode.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void dispatched(long nanos) {
+        dispatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void heartbeatTimeout() {
+        heartbeatTimeouts.increment();
+    }
+
+    @Override
+    public void parserError() {
+        parserErrors.increment();
+    }
+
+    @Override
+    public void destinationSubscriptions(String destinationPath, Supplier<Number> subscriptions) {
+        Gauge.builder("stomp.destination.subscriptions", subscriptions)
+                .description("Subscriptions of the destinations under a destination provider path")
+                .tag("destination", destinationPath)
+                .register(registry);
+    }
+
+    @Override
+    public void writeQueues(WriteQueueStats stats) {
+        Gauge.builder("stomp.write.queue.bytes", stats, WriteQueueStats::getQueuedBytes)
+                .description("Bytes held in the write queues, waiting for the sockets to drain")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("stomp.write.queue.frames", stats, WriteQueueStats::getDroppedFrames)
+                .description("Frames dropped or conflated away because the client did not keep up")
+                .tag("outcome", "dropped")
+                .register(registry);
+        FunctionCounter.builder("stomp.write.queue.frames", stats, WriteQueueStats::getConflatedFrames)
+                .description("Frames dropped or conflated away because the client did not keep up")
+                .tag("outcome", "conflated")
+                .register(registry);
+        FunctionCounter.builder("stomp.write.queue.disconnects", stats, WriteQueueStats::getDisconnects)
+                .description("Connections closed because their write queue was full")
+                .register(registry);
+    }
+
+    private Counter frames(String direction, String command) {
+        return Counter.builder("stomp.frames")
+                .description("STOMP frames received and sent")
+                .tag("direction", direction)
+                .tag("command", command)
+                .register(registry);
+    }
+
+    private DistributionSummary bytes(String direction) {
+        return DistributionSummary.builder("stomp.bytes")
+                .description("Size of the WebSocket messages received and sent")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(registry);
+    }
+}
@@ -0,0 +1,64 @@
+package com.dyakov.quarkus.stomp.ws.runtime.metrics;
+
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import io.vertx.ext.stomp.Command;
+
+import java.util.function.Supplier;
+
+/**
+ * Instrumentation points of the STOMP server. Implementations are called on the event loops for every frame and
+ * must not allocate; {@link #NOOP} is used when no metrics backend is present.
+ */
+public interface StompMetrics {
+
+    StompMetrics NOOP = new StompMetrics() {
+    };
+
+    default void connectionOpened() {
+    }
+
+    default void connectionClosed() {
+    }
+
+    default void frameIn(Command command) {
+    }
+
+    /**
+     * @param command the command of the frame, {@code null} for a heartbeat
+     */
+    default void frameOut(Command command) {
+    }
+
+    default void bytesIn(int bytes) {
+    }
+
+    default void bytesOut(int bytes) {
+    }
+
+    default void decoded(long nanos) {
+    }
+
+    default void encoded(long nanos) {
+    }
+
+    default void dispatched(long nanos) {
+    }
+
+    default void heartbeatTimeout() {
+    }
+
+    default void parserError() {
+    }
+
+    /**
+     * Registers a gauge of the subscriptions of the destinations under {@code destinationPath}.
+     */
+    default void destinationSubscriptions(String destinationPath, Supplier<Number> subscriptions) {
+    }
+
+    /**
+     * Registers the gauges of the write queues of the SockJS connections.
+     */
+    default void writeQueues(WriteQueueStats stats) {
+    }
+}
@@ -0,0 +1,114 @@
+package com.dyakov.quarkus.stomp.ws.runtime.routing;
+
+import com.dyakov.quarkus.stomp.ws.runtime.DestinationProvider;
+import com.dyakov.quarkus.stomp.ws.runtime.cache.LruCache;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prefix trie over {@link DestinationProvider#getDestinationPath()}, built once when the providers are collected.
+ * A destination name resolves to the provider with the longest path it starts with, independently of the
+ * discovery order. Resolved names are memoized in a bounded {@link LruCache}. Unknown names are not, so that
+ * clients sending to made-up destinations cannot evict the known ones.
+ */
+public final class DestinationIndex {
+
+    private static final Logger log = Logger.getLogger(DestinationIndex.class.getName());
+
+    private final Node root = new Node();
+    private final List<DestinationProvider> providers;
+    private final LruCache<String, DestinationProvider> resolved;
+
+    public DestinationIndex(Collection<DestinationProvider> providers, int cacheSize) {
+        this.providers = Collections.unmodifiableList(new ArrayList<>(providers));
+        this.resolved = new LruCache<>(cacheSize);
+        for (DestinationProvider provider : providers) {
+            add(provider);
+        }
+    }
+
+    public List<DestinationProvider> providers() {
+        return providers;
+    }
+
+    /**
+     * @return the provider with the longest path which is a prefix of {@code name}, {@code null} if there is none
+     */
+    public DestinationProvider resolve(String name) {
+        DestinationProvider provider = resolved.get(name);
+        if (provider == null) {
+            provider = lookup(name);
+            if (provider != null) {
+                provider = resolved.putIfAbsent(name, provider);
+            }
+        }
+        return provider;
+    }
+
+    private DestinationProvider lookup(String name) {
+        Node node = root;
+        DestinationProvider match = node.provider;
+        for (int i = 0; i < name.length() && node != null; i++) {
+            node = node.child(name.charAt(i));
+            if (node != null && node.provider != null) {
+                match = node.provider;
+            }
+        }
+        return match;
+    }
+
+    private void add(DestinationProvider provider) {
+        String path = provider.getDestinationPath();
+        Node node = root;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.getOrAddChild(path.charAt(i));
+        }
+        if (node.provider != null) {
+            log.warnf("Destination path %s is provided by both %s and %s, the first one is used", path,
+                    node.provider.getClass().getName(), provider.getClass().getName());
+            return;
+        }
+        node.provider = provider;
+    }
+
+    private static final class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /** Sorted, so that lookups can binary search */
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private DestinationProvider provider;
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+
+        Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertion = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+            Node child = new Node();
+            newKeys[insertion] = c;
+            newChildren[insertion] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
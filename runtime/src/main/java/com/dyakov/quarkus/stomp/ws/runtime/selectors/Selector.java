@@ -0,0 +1,71 @@
+package com.dyakov.quarkus.stomp.ws.runtime.selectors;
+
+import com.dyakov.quarkus.stomp.ws.runtime.cache.LruCache;
+import io.vertx.ext.stomp.Frame;
+
+/**
+ * A compiled {@code selector} header of a SUBSCRIBE frame, such as {@code symbol = 'AAPL' AND price > 100}, tested
+ * against the headers of the frames dispatched to the subscription.
+ * <p>
+ * Selectors support {@code =}, {@code <>}, {@code <}, {@code <=}, {@code >}, {@code >=}, {@code [NOT] IN (...)},
+ * {@code IS [NOT] NULL}, {@code AND}, {@code OR}, {@code NOT} and parentheses, with string literals in single
+ * quotes and numbers compared numerically. Compiled selectors are shared by the subscriptions with the same
+ * expression, the recently used ones are kept in an {@link LruCache}.
+ */
+public final class Selector {
+
+    public static final String HEADER = "selector";
+
+    private static final int CACHE_SIZE = 10_000;
+    private static final LruCache<String, Selector> compiled = new LruCache<>(CACHE_SIZE);
+
+    private final String expression;
+    private final SelectorParser.Node root;
+    private final String indexHeader;
+    private final String indexValue;
+
+    Selector(String expression, SelectorParser.Node root) {
+        this.expression = expression;
+        this.root = root;
+        SelectorParser.Equals equals = root.indexable();
+        this.indexHeader = equals == null ? null : equals.header;
+        this.indexValue = equals == null ? null : equals.value;
+    }
+
+    /**
+     * @return the selector of {@code expression}, compiled once and shared
+     * @throws SelectorException if {@code expression} is not a valid selector
+     */
+    public static Selector compile(String expression) {
+        Selector selector = compiled.get(expression);
+        if (selector == null) {
+            selector = compiled.putIfAbsent(expression,
+                    new Selector(expression, new SelectorParser(expression).parse()));
+        }
+        return selector;
+    }
+
+    public boolean matches(Frame frame) {
+        return root.matches(frame.getHeaders());
+    }
+
+    /**
+     * @return the header of an equality every matching frame satisfies, {@code null} when there is none, so that
+     * the subscription can be looked up by the value of that header
+     */
+    public String indexHeader() {
+        return indexHeader;
+    }
+
+    /**
+     * @return the value {@link #indexHeader()} is equal to in every matching frame
+     */
+    public String indexValue() {
+        return indexValue;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
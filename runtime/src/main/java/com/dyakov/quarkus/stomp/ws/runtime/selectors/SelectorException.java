@@ -0,0 +1,11 @@
+package com.dyakov.quarkus.stomp.ws.runtime.selectors;
+
+/**
+ * Thrown when the {@code selector} header of a SUBSCRIBE frame is not a valid selector.
+ */
+public class SelectorException extends IllegalArgumentException {
+
+    public SelectorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,352 @@
+package com.dyakov.quarkus.stomp.ws.runtime.selectors;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recursive descent parser of selectors into a tree of {@link Node}s.
+ */
+final class SelectorParser {
+
+    private final String expression;
+    private int position;
+
+    SelectorParser(String expression) {
+        this.expression = expression;
+    }
+
+    Node parse() {
+        Node node = or();
+        skipWhitespace();
+        if (position < expression.length()) {
+            throw error("unexpected '" + expression.charAt(position) + "'");
+        }
+        return node;
+    }
+
+    private Node or() {
+        Node node = and();
+        while (keyword("OR")) {
+            node = new Or(node, and());
+        }
+        return node;
+    }
+
+    private Node and() {
+        Node node = not();
+        while (keyword("AND")) {
+            node = new And(node, not());
+        }
+        return node;
+    }
+
+    private Node not() {
+        if (keyword("NOT")) {
+            return new Not(not());
+        }
+        return primary();
+    }
+
+    private Node primary() {
+        if (symbol("(")) {
+            Node node = or();
+            expect(")");
+            return node;
+        }
+        String header = identifier();
+        if (keyword("IS")) {
+            boolean negated = keyword("NOT");
+            if (!keyword("NULL")) {
+                throw error("expected NULL");
+            }
+            return negated ? new Not(new IsNull(header)) : new IsNull(header);
+        }
+        if (keyword("NOT")) {
+            if (!keyword("IN")) {
+                throw error("expected IN");
+            }
+            return new Not(in(header));
+        }
+        if (keyword("IN")) {
+            return in(header);
+        }
+        String operator = operator();
+        Object literal = literal();
+        switch (operator) {
+            case "=":
+                return literal instanceof String ? new Equals(header, (String) literal)
+                        : new Compare(header, operator, literal);
+            case "<>":
+            case "!=":
+                return new Not(literal instanceof String ? new Equals(header, (String) literal)
+                        : new Compare(header, "=", literal));
+            default:
+                return new Compare(header, operator, literal);
+        }
+    }
+
+    private Node in(String header) {
+        expect("(");
+        Set<String> values = new HashSet<>();
+        do {
+            Object literal = literal();
+            if (!(literal instanceof String)) {
+                throw error("IN only takes strings");
+            }
+            values.add((String) literal);
+        } while (symbol(","));
+        expect(")");
+        return new In(header, values);
+    }
+
+    private String identifier() {
+        skipWhitespace();
+        int start = position;
+        while (position < expression.length() && isIdentifierPart(expression.charAt(position), position == start)) {
+            position++;
+        }
+        if (start == position) {
+            throw error("expected a header name");
+        }
+        return expression.substring(start, position);
+    }
+
+    private static boolean isIdentifierPart(char c, boolean first) {
+        if (Character.isLetter(c) || c == '_' || c == '$') {
+            return true;
+        }
+        return !first && (Character.isDigit(c) || c == '-' || c == '.');
+    }
+
+    private String operator() {
+        skipWhitespace();
+        for (String operator : new String[]{"<=", ">=", "<>", "!=", "=", "<", ">"}) {
+            if (expression.startsWith(operator, position)) {
+                position += operator.length();
+                return operator;
+            }
+        }
+        throw error("expected a comparison operator");
+    }
+
+    private Object literal() {
+        skipWhitespace();
+        if (position < expression.length() && expression.charAt(position) == '\'') {
+            StringBuilder value = new StringBuilder();
+            position++;
+            while (position < expression.length()) {
+                char c = expression.charAt(position++);
+                if (c != '\'') {
+                    value.append(c);
+                } else if (position < expression.length() && expression.charAt(position) == '\'') {
+                    value.append('\'');
+                    position++;
+                } else {
+                    return value.toString();
+                }
+            }
+            throw error("unterminated string");
+        }
+        int start = position;
+        while (position < expression.length() && "+-.0123456789eE".indexOf(expression.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return Double.parseDouble(expression.substring(start, position));
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("expected a string or a number");
+        }
+    }
+
+    private boolean keyword(String keyword) {
+        skipWhitespace();
+        int end = position + keyword.length();
+        if (expression.regionMatches(true, position, keyword, 0, keyword.length())
+                && (end == expression.length() || !isIdentifierPart(expression.charAt(end), false))) {
+            position = end;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean symbol(String symbol) {
+        skipWhitespace();
+        if (expression.startsWith(symbol, position)) {
+            position += symbol.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String symbol) {
+        if (!symbol(symbol)) {
+            throw error("expected '" + symbol + "'");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+            position++;
+        }
+    }
+
+    private SelectorException error(String message) {
+        return new SelectorException("Invalid selector \"" + expression + "\" at " + position + ": " + message);
+    }
+
+    abstract static class Node {
+
+        abstract boolean matches(Map<String, String> headers);
+
+        /**
+         * @return an equality every frame matching this node satisfies, {@code null} if there is none
+         */
+        Equals indexable() {
+            return null;
+        }
+    }
+
+    static final class Equals extends Node {
+        final String header;
+        final String value;
+
+        Equals(String header, String value) {
+            this.header = header;
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(Map<String, String> headers) {
+            return value.equals(headers.get(header));
+        }
+
+        @Override
+        Equals indexable() {
+            return this;
+        }
+    }
+
+    static final class Compare extends Node {
+        final String header;
+        final String operator;
+        final Object value;
+
+        Compare(String header, String operator, Object value) {
+            this.header = header;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(Map<String, String> headers) {
+            String actual = headers.get(header);
+            if (actual == null) {
+                return false;
+            }
+            int comparison;
+            if (value instanceof Double) {
+                double number;
+                try {
+                    number = Double.parseDouble(actual);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                comparison = Double.compare(number, (Double) value);
+            } else {
+                comparison = actual.compareTo((String) value);
+            }
+            switch (operator) {
+                case "=":
+                    return comparison == 0;
+                case "<":
+                    return comparison < 0;
+                case "<=":
+                    return comparison <= 0;
+                case ">":
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+    }
+
+    static final class In extends Node {
+        final String header;
+        final Set<String> values;
+
+        In(String header, Set<String> values) {
+            this.header = header;
+            this.values = values;
+        }
+
+        @Override
+        boolean matches(Map<String, String> headers) {
+            String actual = headers.get(header);
+            return actual != null && values.contains(actual);
+        }
+    }
+
+    static final class IsNull extends Node {
+        final String header;
+
+        IsNull(String header) {
+            this.header = header;
+        }
+
+        @Override
+        boolean matches(Map<String, String> headers) {
+            return headers.get(header) == null;
+        }
+    }
+
+    static final class And extends Node {
+        final Node left;
+        final Node right;
+
+        And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean matches(Map<String, String> headers) {
+            return left.matches(headers) && right.matches(headers);
+        }
+
+        @Override
+        Equals indexable() {
+            Equals equals = left.indexable();
+            return equals != null ? equals : right.indexable();
+        }
+    }
+
+    static final class Or extends Node {
+        final Node left;
+        final Node right;
+
+        Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean matches(Map<String, String> headers) {
+            return left.matches(headers) || right.matches(headers);
+        }
+    }
+
+    static final class Not extends Node {
+        final Node node;
+
+        Not(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        boolean matches(Map<String, String> headers) {
+            return !node.matches(headers);
+        }
+    }
+}
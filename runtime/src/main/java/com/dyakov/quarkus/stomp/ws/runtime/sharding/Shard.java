@@ -0,0 +1,89 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sharding;
+
+import io.netty.channel.EventLoop;
+import io.netty.util.internal.PlatformDependent;
+import io.vertx.core.Context;
+import io.vertx.ext.stomp.StompServer;
+import org.jboss.logging.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The STOMP server of one event loop, and the inbox through which the other event loops hand it work.
+ * <p>
+ * The inbox is a lock-free multi-producer single-consumer queue drained on the shard's own context, a bounded
+ * batch per event loop task, so that a burst of cross-shard dispatches costs one wake-up and does not starve the
+ * sockets of the shard.
+ */
+public final class Shard {
+
+    private static final Logger log = Logger.getLogger(Shard.class.getName());
+
+    private final int index;
+    private final Context context;
+    private final EventLoop eventLoop;
+    private final int drainBatch;
+    private final Queue<Runnable> inbox = PlatformDependent.newMpscQueue();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile StompServer server;
+
+    Shard(int index, Context context, EventLoop eventLoop, int drainBatch) {
+        this.index = index;
+        this.context = context;
+        this.eventLoop = eventLoop;
+        this.drainBatch = drainBatch;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public Context context() {
+        return context;
+    }
+
+    public StompServer server() {
+        return server;
+    }
+
+    public void server(StompServer server) {
+        this.server = server;
+    }
+
+    /**
+     * @return whether the calling thread is the event loop of this shard
+     */
+    public boolean isCurrent() {
+        return eventLoop.inEventLoop();
+    }
+
+    /**
+     * Runs {@code task} on this shard, after the tasks handed over before it.
+     */
+    public void execute(Runnable task) {
+        inbox.offer(task);
+        if (scheduled.compareAndSet(false, true)) {
+            context.runOnContext(v -> drain());
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        int drained = 0;
+        while (drained < drainBatch && (task = inbox.poll()) != null) {
+            drained++;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.errorf(e, "Cross-shard task failed on shard %d", index);
+            }
+        }
+        scheduled.set(false);
+        // a producer which saw the flag still set before it was cleared left its task for us
+        if (!inbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+            context.runOnContext(v -> drain());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sharding;
+
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.AckQueue;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * Destination split into one delegate per {@link Shard}, each holding the subscriptions made on its event loop.
+ * <p>
+ * A frame dispatched on a shard is delivered inline to the subscribers of that shard, and handed to the inbox of
+ * every other shard with subscribers. With queue semantics a frame goes to the subscribers of one shard only, the
+ * shards with subscribers taking turns, skipping those whose {@link AckQueue} subscriptions are all full.
+ */
+public class ShardedDestination implements Destination {
+
+    private final String destination;
+    private final StompShards shards;
+    private final Destination[] delegates;
+    private final AtomicIntegerArray subscriptions;
+    private final boolean queue;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ShardedDestination(String destination, StompShards shards, Supplier<Destination> factory, boolean queue) {
+        this.destination = destination;
+        this.shards = shards;
+        this.queue = queue;
+        delegates = new Destination[shards.size()];
+        for (int i = 0; i < delegates.length; i++) {
+            delegates[i] = factory.get();
+        }
+        subscriptions = new AtomicIntegerArray(delegates.length);
+    }
+
+    @Override
+    public String destination() {
+        return destination;
+    }
+
+    @Override
+    public Destination dispatch(StompServerConnection connection, Frame frame) {
+        if (queue) {
+            int start = Math.floorMod(next.getAndIncrement(), delegates.length);
+            int fallback = -1;
+            for (int i = 0; i < delegates.length; i++) {
+                int index = (start + i) % delegates.length;
+                if (subscriptions.get(index) > 0) {
+                    if (!(delegates[index] instanceof AckQueue) || !((AckQueue) delegates[index]).isSaturated()) {
+                        dispatch(index, connection, frame);
+                        return this;
+                    }
+                    if (fallback < 0 || ((AckQueue) delegates[index]).backlog()
+                            < ((AckQueue) delegates[fallback]).backlog()) {
+                        fallback = index;
+                    }
+                }
+            }
+            if (fallback >= 0) {
+                // every shard is saturated, the frame waits in the shortest backlog, bounded by its backlog policy
+                dispatch(fallback, connection, frame);
+            }
+            return this;
+        }
+        for (int i = 0; i < delegates.length; i++) {
+            if (subscriptions.get(i) > 0) {
+                dispatch(i, connection, frame);
+            }
+        }
+        return this;
+    }
+
+    private void dispatch(int index, StompServerConnection connection, Frame frame) {
+        Shard shard = shards.get(index);
+        Destination delegate = delegates[index];
+        if (shard.isCurrent()) {
+            delegate.dispatch(connection, frame);
+        } else {
+            shard.execute(() -> delegate.dispatch(connection, frame));
+        }
+    }
+
+    @Override
+    public Destination subscribe(StompServerConnection connection, Frame frame) {
+        Shard shard = shards.current();
+        if (shard == null) {
+            // not on an event loop of the server, the subscription goes to the first shard, on its own loop
+            onOwner(0, () -> subscribe(0, connection, frame));
+        } else {
+            subscribe(shard.index(), connection, frame);
+        }
+        return this;
+    }
+
+    /**
+     * A subscription is made on the shard of its connection, so that is the only one whose delegate is touched
+     * from the calling loop. Without a current shard, every shard with subscriptions removes it on its own loop,
+     * and the subscription is assumed found.
+     */
+    @Override
+    public boolean unsubscribe(StompServerConnection connection, Frame frame) {
+        Shard shard = shards.current();
+        if (shard != null) {
+            return unsubscribe(shard.index(), connection, frame);
+        }
+        boolean scheduled = false;
+        for (int i = 0; i < delegates.length; i++) {
+            if (subscriptions.get(i) > 0) {
+                int index = i;
+                onOwner(index, () -> unsubscribe(index, connection, frame));
+                scheduled = true;
+            }
+        }
+        return scheduled;
+    }
+
+    @Override
+    public Destination unsubscribeConnection(StompServerConnection connection) {
+        Shard shard = shards.current();
+        for (int i = 0; i < delegates.length; i++) {
+            if (shard != null && shard.index() == i) {
+                unsubscribeConnection(i, connection);
+            } else if (subscriptions.get(i) > 0) {
+                int index = i;
+                onOwner(index, () -> unsubscribeConnection(index, connection));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * The subscription counts are only updated on the loop of their shard, after a change of its delegate.
+     */
+    private void subscribe(int index, StompServerConnection connection, Frame frame) {
+        delegates[index].subscribe(connection, frame);
+        subscriptions.set(index, delegates[index].numberOfSubscriptions());
+    }
+
+    private boolean unsubscribe(int index, StompServerConnection connection, Frame frame) {
+        if (delegates[index].unsubscribe(connection, frame)) {
+            subscriptions.set(index, delegates[index].numberOfSubscriptions());
+            return true;
+        }
+        return false;
+    }
+
+    private void unsubscribeConnection(int index, StompServerConnection connection) {
+        delegates[index].unsubscribeConnection(connection);
+        subscriptions.set(index, delegates[index].numberOfSubscriptions());
+    }
+
+    private void onOwner(int index, Runnable task) {
+        Shard shard = shards.get(index);
+        if (shard.isCurrent()) {
+            task.run();
+        } else {
+            shard.execute(task);
+        }
+    }
+
+    @Override
+    public boolean ack(StompServerConnection connection, Frame frame) {
+        int current = currentIndex();
+        for (int i = 0; i < delegates.length; i++) {
+            if (delegates[(current + i) % delegates.length].ack(connection, frame)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean nack(StompServerConnection connection, Frame frame) {
+        int current = currentIndex();
+        for (int i = 0; i < delegates.length; i++) {
+            if (delegates[(current + i) % delegates.length].nack(connection, frame)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<String> getSubscriptions(StompServerConnection connection) {
+        List<String> ids = new ArrayList<>();
+        for (Destination delegate : delegates) {
+            ids.addAll(delegate.getSubscriptions(connection));
+        }
+        return ids;
+    }
+
+    @Override
+    public int numberOfSubscriptions() {
+        int count = 0;
+        for (int i = 0; i < delegates.length; i++) {
+            count += subscriptions.get(i);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean matches(String address) {
+        return delegates[0].matches(address);
+    }
+
+    private int currentIndex() {
+        Shard shard = shards.current();
+        return shard == null ? 0 : shard.index();
+    }
+}
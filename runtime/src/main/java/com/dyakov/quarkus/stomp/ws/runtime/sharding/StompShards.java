@@ -0,0 +1,75 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sharding;
+
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.EventExecutor;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One {@link Shard} per event loop of the Vert.x instance, so that the STOMP connections and subscriptions of an
+ * event loop are only touched by that event loop.
+ */
+public final class StompShards {
+
+    private final Shard[] shards;
+    private final Map<EventLoop, Shard> byEventLoop;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private StompShards(Shard[] shards, Map<EventLoop, Shard> byEventLoop) {
+        this.shards = shards;
+        this.byEventLoop = byEventLoop;
+    }
+
+    /**
+     * Creates a shard, with its own event loop context, for every event loop of {@code vertx}.
+     */
+    public static StompShards create(Vertx vertx, int drainBatch) {
+        VertxInternal internal = (VertxInternal) vertx;
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        List<Shard> shards = new ArrayList<>();
+        Map<EventLoop, Shard> byEventLoop = new IdentityHashMap<>();
+        for (EventExecutor executor : internal.getEventLoopGroup()) {
+            EventLoop eventLoop = (EventLoop) executor;
+            Context context = internal.createEventLoopContext(eventLoop, null, classLoader);
+            Shard shard = new Shard(shards.size(), context, eventLoop, drainBatch);
+            shards.add(shard);
+            byEventLoop.put(eventLoop, shard);
+        }
+        return new StompShards(shards.toArray(new Shard[0]), byEventLoop);
+    }
+
+    public int size() {
+        return shards.length;
+    }
+
+    public Shard get(int index) {
+        return shards[index];
+    }
+
+    /**
+     * @return the shard of the calling event loop, {@code null} when not called on one
+     */
+    public Shard current() {
+        Context context = Vertx.currentContext();
+        if (!(context instanceof ContextInternal) || !context.isEventLoopContext()) {
+            return null;
+        }
+        return byEventLoop.get(((ContextInternal) context).nettyEventLoop());
+    }
+
+    /**
+     * @return the shard of the calling event loop, or the next one in turn when not called on one
+     */
+    public Shard currentOrNext() {
+        Shard shard = current();
+        return shard != null ? shard : shards[Math.floorMod(next.getAndIncrement(), shards.length)];
+    }
+}
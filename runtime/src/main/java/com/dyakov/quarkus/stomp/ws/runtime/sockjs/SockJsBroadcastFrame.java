@@ -0,0 +1,245 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
+
+import com.dyakov.quarkus.stomp.ws.runtime.compression.PerMessageDeflate;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.utils.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A MESSAGE frame encoded once for every SockJS subscriber of a destination.
+ * <p>
+ * Only the {@code subscription}, {@code message-id} and {@code ack} headers differ between subscribers, so the
+ * command, the shared headers and the body are escaped once into two reference counted buffers and every socket
+ * gets a composite of retained duplicates of those with its own header lines spliced in between.
+ * For permessage-deflate peers without server context takeover, the parts before and after the subscriber headers
+ * are also compressed once (see {@link #deflateFor}).
+ * The creator must {@link #release()} the frame once it has been handed to all subscribers.
+ */
+public final class SockJsBroadcastFrame {
+
+    private static final ByteBuf OPEN = constant("a[");
+    private static final ByteBuf CLOSE = constant("]");
+    private static final ByteBuf QUOTE = constant("\"");
+    private static final ByteBuf TRAILING_LINE = constant("\\n");
+    private static final ByteBuf SUBSCRIPTION = constant(Frame.SUBSCRIPTION + ":");
+    private static final ByteBuf MESSAGE_ID = constant(Frame.MESSAGE_ID + ":");
+    private static final ByteBuf ACK = constant(Frame.ACK + ":");
+    private static final ByteBuf NEW_LINE = constant("\\n");
+    private static final ByteBuf BODY_END = constant("\\u0000");
+
+    private static final int SUBSCRIBER_HEADERS_CAPACITY = 128;
+
+    private final Frame frame;
+    private final ByteBuf head;
+    private final ByteBuf tail;
+
+    /** The deflated {@code a["} and head, and tail up to {@code "]} without the flush trailer, built on first use */
+    private ByteBuf deflatedHead;
+    private ByteBuf deflatedTail;
+
+    private SockJsBroadcastFrame(Frame frame, ByteBuf head, ByteBuf tail) {
+        this.frame = frame;
+        this.head = head;
+        this.tail = tail;
+    }
+
+    /**
+     * Escapes the command, the shared headers and the body of {@code frame} (usually the SEND frame being dispatched).
+     */
+    public static SockJsBroadcastFrame create(Frame frame) {
+        ByteBuf head = SockJsFrameEncoder.ALLOCATOR.heapBuffer(SUBSCRIBER_HEADERS_CAPACITY * 2);
+        writeText(head, Command.MESSAGE.name());
+        head.writeBytes(NEW_LINE.duplicate());
+        for (Map.Entry<String, String> header : frame.getHeaders().entrySet()) {
+            String name = header.getKey();
+            if (Frame.SUBSCRIPTION.equals(name) || Frame.MESSAGE_ID.equals(name) || Frame.ACK.equals(name)) {
+                continue;
+            }
+            writeHeaderValue(head, name);
+            head.writeByte(':');
+            writeHeaderValue(head, header.getValue());
+            head.writeBytes(NEW_LINE.duplicate());
+        }
+        Buffer body = frame.getBody();
+        int bodyLength = body == null ? 0 : body.length();
+        ByteBuf tail = SockJsFrameEncoder.ALLOCATOR.heapBuffer(SockJsFrameEncoder.estimateElementSize(bodyLength));
+        tail.writeBytes(NEW_LINE.duplicate());
+        if (bodyLength > 0) {
+            ByteBuf in = body.getByteBuf();
+            SockJsFrameEncoder.writeEscaped(tail, in, in.readerIndex(), bodyLength);
+        }
+        tail.writeBytes(BODY_END.duplicate());
+        return new SockJsBroadcastFrame(frame, head, tail);
+    }
+
+    /**
+     * Builds the SockJS message for one subscriber. The caller owns the returned buffer.
+     */
+    public ByteBuf encodeFor(String subscriptionId, String messageId, boolean ack, boolean trailingLine) {
+        CompositeByteBuf message = SockJsFrameEncoder.ALLOCATOR.compositeHeapBuffer(8);
+        message.addComponent(true, OPEN.duplicate());
+        writeElementTo(message, subscriptionId, messageId, ack, trailingLine);
+        message.addComponent(true, CLOSE.duplicate());
+        return message;
+    }
+
+    /**
+     * Adds the quoted SockJS array element for one subscriber to {@code message}, without the envelope.
+     */
+    public void writeElementTo(CompositeByteBuf message, String subscriptionId, String messageId,
+                               boolean ack, boolean trailingLine) {
+        message.addComponent(true, QUOTE.duplicate());
+        message.addComponent(true, head.retainedDuplicate());
+        message.addComponent(true, subscriberHeaders(subscriptionId, messageId, ack));
+        message.addComponent(true, tail.retainedDuplicate());
+        if (trailingLine) {
+            message.addComponent(true, TRAILING_LINE.duplicate());
+        }
+        message.addComponent(true, QUOTE.duplicate());
+    }
+
+    /**
+     * Copies the quoted SockJS array element for one subscriber into {@code out}, used when frames are batched.
+     */
+    public void writeElement(ByteBuf out, String subscriptionId, String messageId, boolean ack, boolean trailingLine) {
+        out.writeByte('"');
+        out.writeBytes(head, head.readerIndex(), head.readableBytes());
+        ByteBuf headers = subscriberHeaders(subscriptionId, messageId, ack);
+        try {
+            out.writeBytes(headers);
+        } finally {
+            headers.release();
+        }
+        out.writeBytes(tail, tail.readerIndex(), tail.readableBytes());
+        if (trailingLine) {
+            out.writeBytes(TRAILING_LINE.duplicate());
+        }
+        out.writeByte('"');
+    }
+
+    /**
+     * Builds the permessage-deflate payload of the SockJS message for one subscriber: the shared parts deflated
+     * once for all subscribers, with the subscriber headers in between as a stored block. The caller owns the
+     * returned buffer.
+     */
+    public ByteBuf deflateFor(String subscriptionId, String messageId, boolean ack, boolean trailingLine, int level) {
+        if (deflatedHead == null) {
+            CompositeByteBuf head = SockJsFrameEncoder.ALLOCATOR.compositeHeapBuffer(3)
+                    .addComponents(true, OPEN.duplicate(), QUOTE.duplicate(), this.head.retainedDuplicate());
+            CompositeByteBuf tail = SockJsFrameEncoder.ALLOCATOR.compositeHeapBuffer(4)
+                    .addComponent(true, this.tail.retainedDuplicate());
+            if (trailingLine) {
+                tail.addComponent(true, TRAILING_LINE.duplicate());
+            }
+            tail.addComponents(true, QUOTE.duplicate(), CLOSE.duplicate());
+            try {
+                deflatedHead = PerMessageDeflate.deflateSegment(head, level);
+                deflatedTail = PerMessageDeflate.deflate(tail, level);
+            } finally {
+                head.release();
+                tail.release();
+            }
+        }
+        ByteBuf headers = subscriberHeaders(subscriptionId, messageId, ack);
+        ByteBuf stored = SockJsFrameEncoder.ALLOCATOR.heapBuffer(headers.readableBytes() + 5);
+        try {
+            PerMessageDeflate.writeStored(stored, headers);
+        } finally {
+            headers.release();
+        }
+        return SockJsFrameEncoder.ALLOCATOR.compositeHeapBuffer(3)
+                .addComponents(true, deflatedHead.retainedDuplicate(), stored, deflatedTail.retainedDuplicate());
+    }
+
+    /**
+     * @return the destination the frame is dispatched to
+     */
+    public String destination() {
+        return frame.getDestination();
+    }
+
+    public int estimateElementSize() {
+        return head.readableBytes() + tail.readableBytes() + SUBSCRIBER_HEADERS_CAPACITY;
+    }
+
+    /**
+     * The plain STOMP frame a subscriber receives, for callers which need a {@link Frame} instance.
+     */
+    public Frame toFrame(String subscriptionId, String messageId, boolean ack) {
+        Headers headers = Headers.create(frame.getHeaders())
+                .add(Frame.SUBSCRIPTION, subscriptionId)
+                .add(Frame.MESSAGE_ID, messageId);
+        if (ack) {
+            headers.add(Frame.ACK, messageId);
+        }
+        return new Frame(Command.MESSAGE, headers, frame.getBody());
+    }
+
+    public void release() {
+        head.release();
+        tail.release();
+        if (deflatedHead != null) {
+            deflatedHead.release();
+            deflatedTail.release();
+        }
+    }
+
+    private static ByteBuf subscriberHeaders(String subscriptionId, String messageId, boolean ack) {
+        ByteBuf headers = SockJsFrameEncoder.ALLOCATOR.heapBuffer(SUBSCRIBER_HEADERS_CAPACITY);
+        headers.writeBytes(SUBSCRIPTION.duplicate());
+        writeHeaderValue(headers, subscriptionId);
+        headers.writeBytes(NEW_LINE.duplicate());
+        headers.writeBytes(MESSAGE_ID.duplicate());
+        writeHeaderValue(headers, messageId);
+        headers.writeBytes(NEW_LINE.duplicate());
+        if (ack) {
+            headers.writeBytes(ACK.duplicate());
+            writeHeaderValue(headers, messageId);
+            headers.writeBytes(NEW_LINE.duplicate());
+        }
+        return headers;
+    }
+
+    /**
+     * Writes a header name or value with the STOMP header escaping of {@link Frame} applied, then SockJS escaped.
+     */
+    private static void writeHeaderValue(ByteBuf out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.writeByte('\\').writeByte('\\').writeByte('\\').writeByte('\\');
+                    break;
+                case '\n':
+                    out.writeByte('\\').writeByte('\\').writeByte('n');
+                    break;
+                case '\r':
+                    out.writeByte('\\').writeByte('\\').writeByte('r');
+                    break;
+                case ':':
+                    out.writeByte('\\').writeByte('\\').writeByte('c');
+                    break;
+                default:
+                    SockJsFrameEncoder.writeEscaped(out, c);
+                    break;
+            }
+        }
+    }
+
+    private static void writeText(ByteBuf out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            SockJsFrameEncoder.writeEscaped(out, text.charAt(i));
+        }
+    }
+
+    private static ByteBuf constant(String value) {
+        return Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(value.getBytes(StandardCharsets.UTF_8)));
+    }
+}
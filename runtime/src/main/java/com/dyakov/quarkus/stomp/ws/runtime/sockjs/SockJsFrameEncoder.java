@@ -0,0 +1,186 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ByteProcessor;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Single pass SockJS encoder. Writes the {@code a["..."]} envelope, the JSON quoting and the SockJS escaping of
+ * UTF-8 encoded STOMP frames directly into a {@link ByteBuf}, without going through {@link String}.
+ */
+public final class SockJsFrameEncoder {
+
+    public static final ByteBufAllocator ALLOCATOR = PooledByteBufAllocator.DEFAULT;
+
+    private static final byte LITERAL = 0;
+    private static final byte UNICODE_ESCAPE = 1;
+
+    /** Per UTF-16 code unit: {@link #LITERAL}, {@link #UNICODE_ESCAPE} or the character to put after a backslash */
+    private static final byte[] ESCAPES = new byte[0x10000];
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+
+    private static final ByteProcessor ASCII_LITERAL = value -> value >= 0x20 && value != '"' && value != '\\';
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = UNICODE_ESCAPE;
+        }
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        // characters which browsers or proxies mangle, see SockJS protocol "escaping"
+        markUnicodeEscape(0x200C, 0x200F);
+        markUnicodeEscape(0x2028, 0x202F);
+        markUnicodeEscape(0x2060, 0x206F);
+        markUnicodeEscape(0xD800, 0xDFFF);
+        markUnicodeEscape(0xFFF0, 0xFFFF);
+    }
+
+    private SockJsFrameEncoder() {
+    }
+
+    private static void markUnicodeEscape(int from, int to) {
+        for (int c = from; c <= to; c++) {
+            ESCAPES[c] = UNICODE_ESCAPE;
+        }
+    }
+
+    /**
+     * Encodes the given frames into one pooled SockJS message. The caller owns the returned buffer.
+     */
+    public static ByteBuf encode(Buffer... frames) {
+        int estimate = 3;
+        for (Buffer frame : frames) {
+            estimate += estimateElementSize(frame.length());
+        }
+        ByteBuf out = ALLOCATOR.heapBuffer(estimate);
+        out.writeByte('a').writeByte('[');
+        for (int i = 0; i < frames.length; i++) {
+            if (i > 0) {
+                out.writeByte(',');
+            }
+            writeElement(out, frames[i]);
+        }
+        out.writeByte(']');
+        return out;
+    }
+
+    public static int estimateElementSize(int length) {
+        // STOMP frames carry a few escaped new lines and the trailing NULL, leave room for those
+        return length + (length >> 3) + 16;
+    }
+
+    /**
+     * Writes {@code frame} as a quoted and escaped JSON string element.
+     */
+    public static void writeElement(ByteBuf out, Buffer frame) {
+        ByteBuf in = frame.getByteBuf();
+        out.writeByte('"');
+        writeEscaped(out, in, in.readerIndex(), in.readableBytes());
+        out.writeByte('"');
+    }
+
+    /**
+     * Writes the escaped form of {@code length} UTF-8 bytes of {@code in} starting at {@code index}, without quotes.
+     */
+    public static void writeEscaped(ByteBuf out, ByteBuf in, int index, int length) {
+        int end = index + length;
+        while (index < end) {
+            int stop = in.forEachByte(index, end - index, ASCII_LITERAL);
+            int runEnd = stop < 0 ? end : stop;
+            if (runEnd > index) {
+                out.writeBytes(in, index, runEnd - index);
+            }
+            if (stop < 0) {
+                return;
+            }
+            int b = in.getByte(stop) & 0xFF;
+            if (b < 0x80) {
+                writeEscapedUnit(out, b);
+                index = stop + 1;
+            } else {
+                index = writeMultiByte(out, in, stop, end, b);
+            }
+        }
+    }
+
+    /**
+     * Writes the escaped UTF-8 form of a single UTF-16 code unit. Surrogates are always escaped on their own.
+     */
+    public static void writeEscaped(ByteBuf out, char c) {
+        if (c < 0x80) {
+            writeEscapedUnit(out, c);
+        } else if (c < 0x800) {
+            out.writeByte(0xC0 | (c >> 6)).writeByte(0x80 | (c & 0x3F));
+        } else if (ESCAPES[c] == LITERAL) {
+            out.writeByte(0xE0 | (c >> 12)).writeByte(0x80 | ((c >> 6) & 0x3F)).writeByte(0x80 | (c & 0x3F));
+        } else {
+            writeUnicodeEscape(out, c);
+        }
+    }
+
+    private static int writeMultiByte(ByteBuf out, ByteBuf in, int index, int end, int lead) {
+        if (lead >= 0xC2 && lead <= 0xDF && index + 1 < end && isContinuation(in.getByte(index + 1))) {
+            // U+0080..U+07FF never needs escaping
+            out.writeBytes(in, index, 2);
+            return index + 2;
+        }
+        if (lead >= 0xE0 && lead <= 0xEF && index + 2 < end
+                && isContinuation(in.getByte(index + 1)) && isContinuation(in.getByte(index + 2))) {
+            int c = ((lead & 0x0F) << 12) | ((in.getByte(index + 1) & 0x3F) << 6) | (in.getByte(index + 2) & 0x3F);
+            if (c < 0x800) {
+                writeUnicodeEscape(out, REPLACEMENT_CHARACTER);
+            } else if (ESCAPES[c] == LITERAL) {
+                out.writeBytes(in, index, 3);
+            } else {
+                writeUnicodeEscape(out, c);
+            }
+            return index + 3;
+        }
+        if (lead >= 0xF0 && lead <= 0xF4 && index + 3 < end && isContinuation(in.getByte(index + 1))
+                && isContinuation(in.getByte(index + 2)) && isContinuation(in.getByte(index + 3))) {
+            int codePoint = ((lead & 0x07) << 18) | ((in.getByte(index + 1) & 0x3F) << 12)
+                    | ((in.getByte(index + 2) & 0x3F) << 6) | (in.getByte(index + 3) & 0x3F);
+            if (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT) {
+                writeUnicodeEscape(out, REPLACEMENT_CHARACTER);
+            } else {
+                // supplementary characters are sent as an escaped surrogate pair
+                writeUnicodeEscape(out, Character.highSurrogate(codePoint));
+                writeUnicodeEscape(out, Character.lowSurrogate(codePoint));
+            }
+            return index + 4;
+        }
+        writeUnicodeEscape(out, REPLACEMENT_CHARACTER);
+        return index + 1;
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private static void writeEscapedUnit(ByteBuf out, int c) {
+        byte escape = ESCAPES[c];
+        if (escape == LITERAL) {
+            out.writeByte(c);
+        } else if (escape == UNICODE_ESCAPE) {
+            writeUnicodeEscape(out, c);
+        } else {
+            out.writeByte('\\').writeByte(escape);
+        }
+    }
+
+    private static void writeUnicodeEscape(ByteBuf out, int c) {
+        out.writeByte('\\').writeByte('u')
+                .writeByte(HEX[(c >> 12) & 0xF])
+                .writeByte(HEX[(c >> 8) & 0xF])
+                .writeByte(HEX[(c >> 4) & 0xF])
+                .writeByte(HEX[c & 0xF]);
+    }
+}
@@ -1,34 +1,282 @@
 package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.inbound.InboundFrameGuard;
+import com.dyakov.quarkus.stomp.ws.runtime.inbound.LargeBodySink;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ByteProcessor;
+import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.StompServerConnection;
 import io.vertx.ext.stomp.StompServerOptions;
+import io.vertx.ext.stomp.impl.FrameException;
 import io.vertx.ext.stomp.impl.FrameParser;
 import org.jboss.logging.Logger;
 
+/**
+ * Decodes SockJS client messages ({@code ["frame1","frame2",...]}) straight into the STOMP {@link FrameParser}.
+ * <p>
+ * The JSON array is unescaped byte by byte from the incoming buffer, every element of the array is forwarded
+ * and the decoder state survives between calls, so a message split over several WebSocket frames is handled too.
+ * With a {@link #guard guard} the decoded bytes go through an {@link InboundFrameGuard} on their way.
+ */
 public class SockJsFrameParser extends FrameParser {
 
     private static final Logger log = Logger.getLogger(SockJsFrameParser.class.getName());
 
+    private static final int INITIAL_CAPACITY = 256;
 
-    private ObjectMapper objectMapper = new ObjectMapper();
+    private static final int EXPECT_ARRAY = 0;
+    private static final int EXPECT_FIRST_ELEMENT = 1;
+    private static final int EXPECT_ELEMENT = 2;
+    private static final int IN_STRING = 3;
+    private static final int IN_ESCAPE = 4;
+    private static final int IN_UNICODE_ESCAPE = 5;
+    private static final int AFTER_ELEMENT = 6;
+
+    private static final ByteProcessor STRING_RUN = value -> value != '"' && value != '\\';
+
+    private final ByteBuf decoded = Unpooled.buffer(INITIAL_CAPACITY);
+
+    private Handler<FrameException> errorHandler;
+    private InboundFrameGuard guard;
+
+    private int state = EXPECT_ARRAY;
+    private int unicodeValue;
+    private int unicodeDigits;
+    private char pendingHighSurrogate;
 
     public SockJsFrameParser(StompServerOptions options) {
         super(options);
     }
 
+    /**
+     * Enforces the inbound limits of {@code options} on the decoded frames of {@code connection}.
+     *
+     * @param sink where the large SEND bodies go, {@code null} if there is none
+     */
+    public SockJsFrameParser guard(StompConnectionOptions options, LargeBodySink sink,
+                                   StompServerConnection connection) {
+        guard = new InboundFrameGuard(options, sink, connection, super::handle,
+                exception -> fail(exception.getMessage()));
+        return this;
+    }
+
+    /**
+     * Releases the guard, once the connection is closed.
+     */
+    public void close() {
+        if (guard != null) {
+            guard.close();
+        }
+    }
+
     @Override
-    public synchronized void handle(Buffer event) {
-        log.debugf("Receive message (before decode): " + event);
-        String[] strings;
-        try {
-            strings = objectMapper.readValue(event.toString(), String[].class);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
-        Buffer buffer = Buffer.buffer(strings[0]);
-        log.debugf("Receive message (after decode): " + buffer);
-        super.handle(buffer);
+    public FrameParser errorHandler(Handler<FrameException> handler) {
+        this.errorHandler = handler;
+        return super.errorHandler(handler);
+    }
+
+    @Override
+    public void handle(Buffer event) {
+        log.debugf("Receive message (before decode): %s", event);
+        ByteBuf in = event.getByteBuf();
+        int index = in.readerIndex();
+        int end = in.writerIndex();
+        while (index < end) {
+            switch (state) {
+                case IN_STRING: {
+                    int stop = in.forEachByte(index, end - index, STRING_RUN);
+                    int runEnd = stop < 0 ? end : stop;
+                    if (runEnd > index) {
+                        dropPendingSurrogate();
+                        decoded.writeBytes(in, index, runEnd - index);
+                    }
+                    if (stop < 0) {
+                        index = end;
+                    } else if (in.getByte(stop) == '"') {
+                        dropPendingSurrogate();
+                        flush();
+                        state = AFTER_ELEMENT;
+                        index = stop + 1;
+                    } else {
+                        state = IN_ESCAPE;
+                        index = stop + 1;
+                    }
+                    break;
+                }
+                case IN_ESCAPE:
+                    if (!unescape(in.getByte(index++))) {
+                        return;
+                    }
+                    break;
+                case IN_UNICODE_ESCAPE: {
+                    int digit = Character.digit(in.getByte(index++), 16);
+                    if (digit < 0) {
+                        fail("Invalid unicode escape in SockJS message");
+                        return;
+                    }
+                    unicodeValue = (unicodeValue << 4) | digit;
+                    if (++unicodeDigits == 4) {
+                        writeCodeUnit((char) unicodeValue);
+                        state = IN_STRING;
+                    }
+                    break;
+                }
+                default:
+                    if (!structural(in.getByte(index++))) {
+                        return;
+                    }
+                    break;
+            }
+        }
+        if (state >= IN_STRING && state <= IN_UNICODE_ESCAPE && decoded.isReadable()) {
+            // the STOMP parser is streaming, hand over what we have instead of holding the element
+            flush();
+        }
+    }
+
+    private boolean structural(byte b) {
+        if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+            return true;
+        }
+        switch (state) {
+            case EXPECT_ARRAY:
+                if (b == '[') {
+                    state = EXPECT_FIRST_ELEMENT;
+                    return true;
+                }
+                break;
+            case EXPECT_FIRST_ELEMENT:
+                if (b == ']') {
+                    state = EXPECT_ARRAY;
+                    return true;
+                }
+                if (b == '"') {
+                    state = IN_STRING;
+                    return true;
+                }
+                break;
+            case EXPECT_ELEMENT:
+                if (b == '"') {
+                    state = IN_STRING;
+                    return true;
+                }
+                break;
+            case AFTER_ELEMENT:
+                if (b == ',') {
+                    state = EXPECT_ELEMENT;
+                    return true;
+                }
+                if (b == ']') {
+                    state = EXPECT_ARRAY;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        fail("Unexpected character '" + (char) b + "' in SockJS message");
+        return false;
+    }
+
+    private boolean unescape(byte b) {
+        state = IN_STRING;
+        if (b == 'u') {
+            unicodeValue = 0;
+            unicodeDigits = 0;
+            state = IN_UNICODE_ESCAPE;
+            return true;
+        }
+        dropPendingSurrogate();
+        switch (b) {
+            case '"':
+            case '\\':
+            case '/':
+                decoded.writeByte(b);
+                return true;
+            case 'b':
+                decoded.writeByte('\b');
+                return true;
+            case 'f':
+                decoded.writeByte('\f');
+                return true;
+            case 'n':
+                decoded.writeByte('\n');
+                return true;
+            case 'r':
+                decoded.writeByte('\r');
+                return true;
+            case 't':
+                decoded.writeByte('\t');
+                return true;
+            default:
+                fail("Invalid escape sequence '\\" + (char) b + "' in SockJS message");
+                return false;
+        }
+    }
+
+    private void writeCodeUnit(char c) {
+        if (pendingHighSurrogate != 0) {
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(pendingHighSurrogate, c);
+                pendingHighSurrogate = 0;
+                decoded.writeByte(0xF0 | (codePoint >> 18));
+                decoded.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                decoded.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                decoded.writeByte(0x80 | (codePoint & 0x3F));
+                return;
+            }
+            dropPendingSurrogate();
+        }
+        if (c < 0x80) {
+            decoded.writeByte(c);
+        } else if (c < 0x800) {
+            decoded.writeByte(0xC0 | (c >> 6));
+            decoded.writeByte(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            // lone surrogates are replaced the same way String.getBytes(UTF_8) does it
+            decoded.writeByte('?');
+        } else {
+            decoded.writeByte(0xE0 | (c >> 12));
+            decoded.writeByte(0x80 | ((c >> 6) & 0x3F));
+            decoded.writeByte(0x80 | (c & 0x3F));
+        }
+    }
+
+    private void dropPendingSurrogate() {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            decoded.writeByte('?');
+        }
+    }
+
+    private void flush() {
+        if (!decoded.isReadable()) {
+            return;
+        }
+        // FrameParser may keep the buffer it is handed while a frame is incomplete, so it gets its own exact copy
+        Buffer buffer = Buffer.buffer(decoded.copy());
+        decoded.clear();
+        log.debugf("Receive message (after decode): %s", buffer);
+        if (guard != null) {
+            guard.handle(buffer);
+        } else {
+            super.handle(buffer);
+        }
+    }
+
+    private void fail(String message) {
+        state = EXPECT_ARRAY;
+        pendingHighSurrogate = 0;
+        decoded.clear();
+        FrameException exception = new FrameException(message);
+        if (errorHandler == null) {
+            throw exception;
+        }
+        errorHandler.handle(exception);
     }
 }
@@ -0,0 +1,86 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.heartbeat.HeartbeatWheel;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * The open sessions of the SockJS xhr transports, keyed by {@code <server>/<session>}.
+ * <p>
+ * A single periodic timer, running at the heartbeat tick, serves every session: it sends the SockJS and STOMP
+ * heartbeats and closes the sessions which went without a receiving request for longer than the session timeout.
+ * The timer only runs while there are sessions.
+ */
+public class SockJsSessions {
+
+    private final Vertx vertx;
+    private final StompConnectionOptions connectionOptions;
+    private final ConcurrentMap<String, SockJsXhrConnection> sessions = new ConcurrentHashMap<>();
+
+    private long sweepTimer = -1;
+
+    public SockJsSessions(Vertx vertx, StompConnectionOptions connectionOptions) {
+        this.vertx = vertx;
+        this.connectionOptions = connectionOptions;
+    }
+
+    public SockJsXhrConnection get(String key) {
+        return sessions.get(key);
+    }
+
+    /**
+     * @return the session of {@code key}, opened with {@code factory} if there is none
+     */
+    public SockJsXhrConnection open(String key, Function<String, SockJsXhrConnection> factory) {
+        SockJsXhrConnection connection = sessions.computeIfAbsent(key, factory);
+        startSweeper();
+        return connection;
+    }
+
+    void remove(SockJsXhrConnection connection) {
+        sessions.remove(connection.key(), connection);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (sweepTimer != -1) {
+                vertx.cancelTimer(sweepTimer);
+                sweepTimer = -1;
+            }
+        }
+        for (SockJsXhrConnection connection : new ArrayList<>(sessions.values())) {
+            connection.close();
+            remove(connection);
+        }
+    }
+
+    private synchronized void startSweeper() {
+        if (sweepTimer == -1) {
+            sweepTimer = vertx.setPeriodic(connectionOptions.getHeartbeatTickMillis(), id -> sweep());
+        }
+    }
+
+    private void sweep() {
+        long now = HeartbeatWheel.now();
+        for (SockJsXhrConnection connection : sessions.values()) {
+            if (!connection.sweep(now)) {
+                remove(connection);
+            }
+        }
+        synchronized (this) {
+            if (sessions.isEmpty() && sweepTimer != -1) {
+                vertx.cancelTimer(sweepTimer);
+                sweepTimer = -1;
+            }
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
 
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.inbound.LargeBodySink;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
 import io.vertx.core.*;
 import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.logging.Logger;
@@ -18,34 +22,78 @@ public class SockJsStompServer implements StompServer {
 
     private final Vertx vertx;
     private final StompServerOptions options;
+    private final StompConnectionOptions connectionOptions;
+    private final WriteQueueStats writeQueueStats;
+    private final StompMetrics metrics;
     private final NetServer server;
 
-    private StompServerHandler handler;
+    private volatile StompServerHandler handler;
     private volatile boolean listening;
 
-    private Handler<ServerFrame> writingFrameHandler;
+    private volatile Handler<ServerFrame> writingFrameHandler;
+    private volatile LargeBodySink largeBodySink;
+    private SockJsSessions xhrSessions;
+    private SockJsXhrTransport xhrTransport;
 
     /**
-     * Creates a new instance of {@link StompServerImpl}.
+     * Creates a new instance of {@link SockJsStompServer} with the default connection settings.
      *
      * @param vertx   the vert.x instance
      * @param options the options
      */
     public SockJsStompServer(Vertx vertx, StompServerOptions options) {
+        this(vertx, options, new StompConnectionOptions(), StompMetrics.NOOP, new WriteQueueStats());
+    }
+
+    /**
+     * Creates a new instance of {@link SockJsStompServer}.
+     *
+     * @param vertx             the vert.x instance
+     * @param options           the options
+     * @param connectionOptions the settings of the SockJS connections
+     * @param metrics           the instrumentation of the connections
+     * @param writeQueueStats   the slow consumer counters, which the servers of all the shards share
+     */
+    public SockJsStompServer(Vertx vertx, StompServerOptions options, StompConnectionOptions connectionOptions,
+                             StompMetrics metrics, WriteQueueStats writeQueueStats) {
         Objects.requireNonNull(vertx);
         Objects.requireNonNull(options);
+        Objects.requireNonNull(connectionOptions);
+        Objects.requireNonNull(metrics);
+        Objects.requireNonNull(writeQueueStats);
         this.options = options;
+        this.connectionOptions = connectionOptions;
+        this.metrics = metrics;
+        this.writeQueueStats = writeQueueStats;
         this.vertx = vertx;
         server = vertx.createNetServer(options);
     }
 
     @Override
-    public synchronized StompServer handler(StompServerHandler handler) {
+    public StompServer handler(StompServerHandler handler) {
         Objects.requireNonNull(handler);
         this.handler = handler;
         return this;
     }
 
+    /**
+     * Registers the xhr sessions of this server in {@code sessions}, shared by the servers of all the shards so that
+     * the requests of a session find it whichever event loop they come on. A session stays on the server of the
+     * shard it was opened on.
+     */
+    public synchronized SockJsStompServer xhrSessions(SockJsSessions sessions) {
+        this.xhrSessions = sessions;
+        return this;
+    }
+
+    /**
+     * Streams the large SEND bodies to {@code sink} instead of aggregating them, see {@link LargeBodySink}.
+     */
+    public SockJsStompServer largeBodySink(LargeBodySink sink) {
+        this.largeBodySink = sink;
+        return this;
+    }
+
     @Override
     public Future<StompServer> listen() {
         Promise<StompServer> promise = Promise.promise();
@@ -81,10 +129,7 @@ public class SockJsStompServer implements StompServer {
             handler.handle(Future.failedFuture("TCP server disabled. The port is set to '-1'."));
             return this;
         }
-        StompServerHandler stomp;
-        synchronized (this) {
-            stomp = this.handler;
-        }
+        StompServerHandler stomp = this.handler;
 
         Objects.requireNonNull(stomp, "Cannot open STOMP server - no StompServerConnectionHandler attached to the " +
                 "server.");
@@ -152,14 +197,39 @@ public class SockJsStompServer implements StompServer {
         return vertx;
     }
 
+    /**
+     * @return the slow consumer counters of the SockJS connections of this server
+     */
+    public WriteQueueStats writeQueueStats() {
+        return writeQueueStats;
+    }
+
     @Override
-    public synchronized StompServerHandler stompHandler() {
+    public StompServerHandler stompHandler() {
         return handler;
     }
 
 
+    /**
+     * @return the xhr-streaming and xhr-polling transports of this server, sharing one session registry
+     */
+    public synchronized SockJsXhrTransport xhrTransport() {
+        if (xhrTransport == null) {
+            SockJsSessions sessions = xhrSessions != null ? xhrSessions : new SockJsSessions(vertx, connectionOptions);
+            xhrTransport = new SockJsXhrTransport(sessions, key -> new SockJsXhrConnection(key, this,
+                    writingFrameHandler, vertx, connectionOptions, writeQueueStats, metrics, sessions, largeBodySink),
+                    connectionOptions);
+        }
+        return xhrTransport;
+    }
+
     @Override
     public void close(Handler<AsyncResult<Void>> done) {
+        synchronized (this) {
+            if (xhrTransport != null) {
+                xhrTransport.sessions().close();
+            }
+        }
         if (!isListening()) {
             if (done != null) {
                 vertx.runOnContext((v) -> done.handle(Future.succeededFuture()));
@@ -189,29 +259,46 @@ public class SockJsStompServer implements StompServer {
             return null;
         }
 
-        StompServerHandler stomp;
-        synchronized (this) {
-            stomp = this.handler;
-        }
+        StompServerHandler stomp = this.handler;
 
         return socket -> {
             sendOpenFrame(socket);
-            StompServerConnection connection = new SockJsStompWebSocketConnectionImpl(socket, this, writingFrameHandler, vertx);
-            FrameParser parser = new SockJsFrameParser(options);
+            StompServerConnection connection = new SockJsStompWebSocketConnectionImpl(socket, this,
+                    writingFrameHandler, vertx, connectionOptions, writeQueueStats, metrics);
+            metrics.connectionOpened();
+            SockJsFrameParser parser = new SockJsFrameParser(options)
+                    .guard(connectionOptions, largeBodySink, connection);
             socket.exceptionHandler((exception) -> {
                 LOGGER.error("The STOMP server caught a WebSocket error - closing connection", exception);
                 connection.close();
             });
             socket.endHandler(v -> connection.close());
+            socket.closeHandler(v -> {
+                parser.close();
+                metrics.connectionClosed();
+            });
+            // time spent in the STOMP handler by the frames of the message being decoded, not part of decoding
+            long[] handling = new long[1];
             parser
                     .errorHandler((exception) -> {
+                                metrics.parserError();
                                 connection.write(
                                         Frames.createInvalidFrameErrorFrame(exception));
                                 connection.close();
                             }
                     )
-                    .handler(frame -> stomp.handle(new ServerFrameImpl(frame, connection)));
-            socket.handler(parser);
+                    .handler(frame -> {
+                        long start = System.nanoTime();
+                        stomp.handle(new ServerFrameImpl(frame, connection));
+                        handling[0] += System.nanoTime() - start;
+                    });
+            socket.handler(buffer -> {
+                metrics.bytesIn(buffer.length());
+                handling[0] = 0;
+                long start = System.nanoTime();
+                parser.handle(buffer);
+                metrics.decoded(System.nanoTime() - start - handling[0]);
+            });
         };
     }
 
@@ -221,9 +308,7 @@ public class SockJsStompServer implements StompServer {
 
     @Override
     public StompServer writingFrameHandler(Handler<ServerFrame> handler) {
-        synchronized (this) {
-            this.writingFrameHandler = handler;
-        }
+        this.writingFrameHandler = handler;
         return this;
     }
 }
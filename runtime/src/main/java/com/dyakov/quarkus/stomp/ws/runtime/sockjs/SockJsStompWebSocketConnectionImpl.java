@@ -1,94 +1,436 @@
 package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
 
-import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueue;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.compression.WebSocketDeflate;
+import com.dyakov.quarkus.stomp.ws.runtime.heartbeat.HeartbeatWheel;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.WebSocketFrameType;
+import io.vertx.core.http.impl.ws.WebSocketFrameImpl;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.Frames;
 import io.vertx.ext.stomp.ServerFrame;
 import io.vertx.ext.stomp.StompServer;
 import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.impl.FrameParser;
+import io.vertx.ext.stomp.impl.ServerFrameImpl;
 import io.vertx.ext.stomp.impl.StompServerWebSocketConnectionImpl;
+import io.vertx.ext.stomp.utils.Headers;
 import org.jboss.logging.Logger;
 
+import java.nio.charset.StandardCharsets;
+
 public class SockJsStompWebSocketConnectionImpl extends StompServerWebSocketConnectionImpl {
 
     private final ServerWebSocket socket;
+    private final StompServer server;
+    private final Handler<ServerFrame> writtenFrameHandler;
+    private final StompConnectionOptions connectionOptions;
+    private final Context context;
     private Vertx vertx;
+    private final WriteQueueStats writeQueueStats;
+    private final WriteQueue writeQueue;
+    private final StompMetrics metrics;
+    /** {@code null} unless compression is enabled */
+    private final WebSocketDeflate deflate;
+    private volatile boolean disconnecting;
+
+    /** The batch being collected when coalescing is enabled, an {@code a[} followed by the elements so far */
+    private ByteBuf batch;
+    private boolean flushScheduled;
+    private long flushTimer = -1;
+
+    private volatile long lastInbound;
+    private volatile long lastOutbound;
+    private volatile long lastStompOutbound;
+    private volatile long ping;
+    private volatile long pong;
+    private volatile Handler<StompServerConnection> pingHandler;
+    private HeartbeatWheel.Timeout heartbeat;
 
     private static final Logger log = Logger.getLogger(SockJsStompWebSocketConnectionImpl.class.getName());
 
+    /** Like the Vert.x connections, a peer is dropped after twice the negotiated pong period without traffic */
+    private static final int PONG_GRACE_FACTOR = 2;
+
     public SockJsStompWebSocketConnectionImpl(ServerWebSocket socket,
                                               StompServer server,
                                               Handler<ServerFrame> writtenFrameHandler,
                                               Vertx vertx) {
+        this(socket, server, writtenFrameHandler, vertx, new StompConnectionOptions(), new WriteQueueStats(),
+                StompMetrics.NOOP);
+    }
+
+    public SockJsStompWebSocketConnectionImpl(ServerWebSocket socket,
+                                              StompServer server,
+                                              Handler<ServerFrame> writtenFrameHandler,
+                                              Vertx vertx,
+                                              StompConnectionOptions connectionOptions,
+                                              WriteQueueStats writeQueueStats,
+                                              StompMetrics metrics) {
         super(socket, server, writtenFrameHandler);
         this.socket = socket;
+        this.server = server;
+        this.writtenFrameHandler = writtenFrameHandler;
+        this.connectionOptions = connectionOptions;
+        this.context = vertx.getOrCreateContext();
         this.vertx = vertx;
+        this.writeQueueStats = writeQueueStats;
+        this.metrics = metrics;
+        this.deflate = WebSocketDeflate.of(socket, connectionOptions);
+        this.writeQueue = new WriteQueue(new WriteQueue.Sink() {
+            @Override
+            public boolean writeQueueFull() {
+                return socket.writeQueueFull();
+            }
+
+            @Override
+            public void write(ByteBuf message) {
+                write(message, false);
+            }
+
+            @Override
+            public void write(ByteBuf message, boolean compressed) {
+                if (deflate == null || !deflate.write(message, compressed)) {
+                    socket.writeFrame(new WebSocketFrameImpl(WebSocketFrameType.TEXT, message, true));
+                }
+            }
+        }, connectionOptions.getWriteQueueMaxBytes(), connectionOptions.getWriteQueuePolicy(), writeQueueStats);
+        socket.drainHandler(v -> writeQueue.drain());
+        long now = HeartbeatWheel.now();
+        this.lastInbound = now;
+        this.lastOutbound = now;
+        this.lastStompOutbound = now;
+        onContext(() -> scheduleHeartbeat(now + connectionOptions.getSockJsHeartbeatMillis()));
     }
 
+    /**
+     * Applies the STOMP heart-beat negotiated on CONNECT on top of the SockJS heartbeat, both driven by the
+     * {@link HeartbeatWheel} of the connection's event loop.
+     */
     @Override
-    public synchronized void configureHeartbeat(long ping, long pong, Handler<StompServerConnection> pingHandler) {
-        vertx.setPeriodic(25_000, tid -> {
-            if (!socket.isClosed()){
-                socket.writeTextMessage("h");
-            } else {
-                vertx.cancelTimer(tid);
-            }
-        });
+    public void configureHeartbeat(long ping, long pong, Handler<StompServerConnection> pingHandler) {
+        this.ping = ping;
+        this.pong = pong;
+        this.pingHandler = pingHandler;
+        onContext(() -> scheduleHeartbeat(nextHeartbeat(HeartbeatWheel.now())));
+    }
+
+    @Override
+    public void onServerActivity() {
+        lastInbound = HeartbeatWheel.now();
+    }
+
+    @Override
+    public void ping() {
+        write(Buffer.buffer(FrameParser.EOL));
+    }
+
+    @Override
+    public StompServerConnection write(Frame frame) {
+        if (writtenFrameHandler != null) {
+            writtenFrameHandler.handle(new ServerFrameImpl(frame, this));
+        }
+        return write(frame.toBuffer(server.options().isTrailingLine()), frame.getCommand());
     }
 
     @Override
     public StompServerConnection write(Buffer buffer) {
-        String message = buffer.toString();
-        log.debugf("send message (before encoding): " + message);
-        message = encode(message);
-        log.debugf("send message (after encoding): " + message);
-        socket.writeTextMessage(message);
+        return write(buffer, null);
+    }
+
+    /**
+     * @param command the command of the frame, {@code null} for a heartbeat or an already encoded frame
+     */
+    private StompServerConnection write(Buffer buffer, Command command) {
+        log.debugf("send message (before encoding): %s", buffer);
+        metrics.frameOut(command);
+        long start = System.nanoTime();
+        // the RECEIPTs of the frames handled in one event loop turn go out together even without coalescing
+        if (connectionOptions.isCoalescingEnabled() || command == Command.RECEIPT) {
+            synchronized (this) {
+                ByteBuf out = batchFor(SockJsFrameEncoder.estimateElementSize(buffer.length()));
+                SockJsFrameEncoder.writeElement(out, buffer);
+                metrics.encoded(System.nanoTime() - start);
+                batched();
+            }
+            return this;
+        }
+        // keeps the order of the frames written after batched RECEIPTs
+        flush();
+        ByteBuf message = SockJsFrameEncoder.encode(buffer);
+        metrics.encoded(System.nanoTime() - start);
+        if (log.isDebugEnabled()) {
+            log.debugf("send message (after encoding): %s", message.toString(StandardCharsets.UTF_8));
+        }
+        writeTextFrame(message, false);
         return this;
     }
 
+    /**
+     * Writes a MESSAGE of a topic broadcast, reusing the escaped frame shared by all subscribers, and its deflated
+     * parts when the client negotiated permessage-deflate without server context takeover. Unless {@code ack} is set,
+     * the write queue policy may drop or conflate it while the socket is backed up.
+     */
+    public StompServerConnection writeBroadcast(SockJsBroadcastFrame frame, String subscriptionId,
+                                                String messageId, boolean ack) {
+        return writeBroadcast(frame, subscriptionId, messageId, ack, null);
+    }
+
+    /**
+     * Like {@link #writeBroadcast(SockJsBroadcastFrame, String, String, boolean)}, for a destination which only
+     * keeps the last value of a key: while the socket is backed up, the queued MESSAGE of the subscription with the
+     * same key is replaced instead of queueing another one.
+     *
+     * @param conflationKey the conflation key of the frame, {@code null} to queue every frame
+     */
+    public StompServerConnection writeBroadcast(SockJsBroadcastFrame frame, String subscriptionId,
+                                                String messageId, boolean ack, String conflationKey) {
+        if (writtenFrameHandler != null) {
+            writtenFrameHandler.handle(new ServerFrameImpl(frame.toFrame(subscriptionId, messageId, ack), this));
+        }
+        boolean trailingLine = server.options().isTrailingLine();
+        metrics.frameOut(Command.MESSAGE);
+        long start = System.nanoTime();
+        if (connectionOptions.isCoalescingEnabled()) {
+            synchronized (this) {
+                ByteBuf out = batchFor(frame.estimateElementSize());
+                frame.writeElement(out, subscriptionId, messageId, ack, trailingLine);
+                metrics.encoded(System.nanoTime() - start);
+                batched();
+            }
+            return this;
+        }
+        flush();
+        if (connectionOptions.isCompressionPrecompressBroadcast() && deflate != null
+                && deflate.acceptsPrecompressed()) {
+            ByteBuf message = frame.deflateFor(subscriptionId, messageId, ack, trailingLine, deflate.level());
+            metrics.encoded(System.nanoTime() - start);
+            writeTextFrame(message, ack ? null : frame.destination(), subscriptionId, conflationKey, true);
+            return this;
+        }
+        ByteBuf message = frame.encodeFor(subscriptionId, messageId, ack, trailingLine);
+        metrics.encoded(System.nanoTime() - start);
+        writeTextFrame(message, ack ? null : frame.destination(), subscriptionId, conflationKey, false);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        onContext(() -> {
+            if (heartbeat != null) {
+                heartbeat.cancel();
+                heartbeat = null;
+            }
+        });
+        flush();
+        super.close();
+        writeQueue.clear();
+    }
+
+    /**
+     * @return the bytes waiting for the socket to drain
+     */
+    public long getQueuedBytes() {
+        return writeQueue.getQueuedBytes();
+    }
+
+    /**
+     * @return the frames dropped because the client did not keep up
+     */
+    public long getDroppedFrames() {
+        return writeQueue.getDroppedFrames();
+    }
+
+    /**
+     * @return the queued frames replaced by a newer one of the same key because the client did not keep up
+     */
+    public long getConflatedFrames() {
+        return writeQueue.getConflatedFrames();
+    }
+
     public String encode(String... messages) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("a[");
+        Buffer[] frames = new Buffer[messages.length];
         for (int i = 0; i < messages.length; i++) {
-            sb.append('"');
-            char[] quotedChars = applyJsonQuoting(messages[i]);
-            sb.append(escapeSockJsSpecialChars(quotedChars));
-            sb.append('"');
-            if (i < messages.length - 1) {
-                sb.append(',');
+            frames[i] = Buffer.buffer(messages[i]);
+        }
+        ByteBuf message = SockJsFrameEncoder.encode(frames);
+        try {
+            return message.toString(StandardCharsets.UTF_8);
+        } finally {
+            message.release();
+        }
+    }
+
+    /**
+     * Sends the frames batched so far as one {@code a[...]} message.
+     */
+    public void flush() {
+        ByteBuf message;
+        synchronized (this) {
+            if (flushTimer != -1) {
+                vertx.cancelTimer(flushTimer);
+                flushTimer = -1;
+            }
+            flushScheduled = false;
+            message = batch;
+            batch = null;
+        }
+        if (message != null) {
+            message.writeByte(']');
+            if (log.isDebugEnabled()) {
+                log.debugf("send batched message: %s", message.toString(StandardCharsets.UTF_8));
             }
+            writeTextFrame(message, false);
         }
-        sb.append(']');
-        return sb.toString();
     }
 
-    private boolean isSockJsSpecialChar(char ch) {
-        return (ch <= '\u001F') || (ch >= '\u200C' && ch <= '\u200F') ||
-                (ch >= '\u2028' && ch <= '\u202F') || (ch >= '\u2060' && ch <= '\u206F') ||
-                (ch >= '\uFFF0') || (ch >= '\uD800' && ch <= '\uDFFF');
+    private ByteBuf batchFor(int elementSize) {
+        if (batch == null) {
+            batch = SockJsFrameEncoder.ALLOCATOR.heapBuffer(
+                    Math.max(elementSize + 3, Math.min(connectionOptions.getCoalescingMaxBytes(), elementSize * 4)));
+            batch.writeByte('a').writeByte('[');
+        } else {
+            batch.writeByte(',');
+        }
+        return batch;
     }
 
-    private String escapeSockJsSpecialChars(char[] characters) {
-        StringBuilder result = new StringBuilder();
-        for (char c : characters) {
-            if (isSockJsSpecialChar(c)) {
-                result.append('\\').append('u');
-                String hex = Integer.toHexString(c).toLowerCase();
-                for (int i = 0; i < (4 - hex.length()); i++) {
-                    result.append('0');
+    private void batched() {
+        if (batch.readableBytes() >= connectionOptions.getCoalescingMaxBytes()) {
+            // flush() takes the lock again, the monitor is reentrant
+            flush();
+            return;
+        }
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        long window = connectionOptions.isCoalescingEnabled() ? connectionOptions.getCoalescingWindowMillis() : 0;
+        if (window > 0) {
+            flushTimer = vertx.setTimer(window, tid -> {
+                synchronized (this) {
+                    flushTimer = -1;
                 }
-                result.append(hex);
-            } else {
-                result.append(c);
+                flush();
+            });
+        } else {
+            context.runOnContext(v -> flush());
+        }
+    }
+
+    /**
+     * @param compressed whether {@code message} is a permessage-deflate payload already
+     */
+    private void writeTextFrame(ByteBuf message, boolean compressed) {
+        writeTextFrame(message, null, null, null, compressed);
+    }
+
+    /**
+     * @param destination the destination of a MESSAGE which the write queue may drop or conflate, {@code null} for
+     *                    the frames which must be delivered
+     */
+    private void writeTextFrame(ByteBuf message, String destination, String subscriptionId, String conflationKey,
+                                boolean compressed) {
+        if (socket.isClosed() || disconnecting) {
+            message.release();
+            return;
+        }
+        long now = HeartbeatWheel.now();
+        lastOutbound = now;
+        lastStompOutbound = now;
+        metrics.bytesOut(message.readableBytes());
+        boolean accepted;
+        if (destination == null) {
+            accepted = writeQueue.offer(message, compressed);
+        } else if (conflationKey == null) {
+            accepted = writeQueue.offerDroppable(message, destination, subscriptionId, compressed);
+        } else {
+            accepted = writeQueue.offerConflated(message, destination, subscriptionId, conflationKey, compressed);
+        }
+        if (!accepted) {
+            disconnectSlowConsumer();
+        }
+    }
+
+    private void disconnectSlowConsumer() {
+        synchronized (this) {
+            if (disconnecting) {
+                return;
             }
+            disconnecting = true;
         }
-        return result.toString();
+        writeQueueStats.disconnected();
+        log.warnf("Disconnecting slow consumer %s - more than %d bytes queued", session(),
+                connectionOptions.getWriteQueueMaxBytes());
+        writeQueue.clear();
+        Frame error = Frames.createErrorFrame("Slow consumer", Headers.create(),
+                "The client did not keep up with the frames sent to it");
+        socket.writeFrame(new WebSocketFrameImpl(WebSocketFrameType.TEXT,
+                SockJsFrameEncoder.encode(error.toBuffer(server.options().isTrailingLine())), true));
+        close();
     }
 
-    protected char[] applyJsonQuoting(String content) {
-        return JsonStringEncoder.getInstance().quoteAsString(content);
+    private void scheduleHeartbeat(long deadline) {
+        if (heartbeat != null) {
+            heartbeat.cancel();
+        }
+        if (socket.isClosed()) {
+            heartbeat = null;
+            return;
+        }
+        heartbeat = HeartbeatWheel.get(vertx, context, connectionOptions.getHeartbeatTickMillis())
+                .schedule(this::onHeartbeat, deadline);
+    }
+
+    private long onHeartbeat(long now) {
+        if (socket.isClosed()) {
+            return -1;
+        }
+        long pong = this.pong;
+        if (pong > 0 && now - lastInbound > pong * PONG_GRACE_FACTOR) {
+            log.warnf("Disconnecting client %s - no client activity in the last %d ms", session(), now - lastInbound);
+            metrics.heartbeatTimeout();
+            close();
+            return -1;
+        }
+        Handler<StompServerConnection> pingHandler = this.pingHandler;
+        if (ping > 0 && pingHandler != null && now - lastStompOutbound >= ping) {
+            pingHandler.handle(this);
+            flush();
+        }
+        if (now - lastOutbound >= connectionOptions.getSockJsHeartbeatMillis()) {
+            lastOutbound = now;
+            socket.writeTextMessage("h");
+        }
+        return nextHeartbeat(now);
+    }
+
+    private long nextHeartbeat(long now) {
+        long next = lastOutbound + connectionOptions.getSockJsHeartbeatMillis();
+        if (ping > 0) {
+            next = Math.min(next, lastStompOutbound + ping);
+        }
+        if (pong > 0) {
+            next = Math.min(next, lastInbound + pong * PONG_GRACE_FACTOR + 1);
+        }
+        return Math.max(next, now + 1);
+    }
+
+    private void onContext(Runnable action) {
+        if (Vertx.currentContext() == context) {
+            action.run();
+        } else {
+            context.runOnContext(v -> action.run());
+        }
     }
 
 }
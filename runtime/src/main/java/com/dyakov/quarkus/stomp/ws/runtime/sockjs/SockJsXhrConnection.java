@@ -0,0 +1,457 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueue;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.heartbeat.HeartbeatWheel;
+import com.dyakov.quarkus.stomp.ws.runtime.inbound.LargeBodySink;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.Frames;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServer;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.impl.FrameParser;
+import io.vertx.ext.stomp.impl.ServerFrameImpl;
+import io.vertx.ext.stomp.impl.StompServerTCPConnectionImpl;
+import io.vertx.ext.stomp.utils.Headers;
+import org.jboss.logging.Logger;
+
+import javax.net.ssl.SSLSession;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * STOMP connection of a SockJS session served by the xhr-streaming and xhr-polling transports.
+ * <p>
+ * Outbound frames are encoded into one pending {@code a[...]} message, sent as a single chunk of the streaming
+ * response, or as the body of the poll response, at the end of the event loop task. While no request is there to
+ * receive them, they wait in a {@link WriteQueue} instead, bounded by the write queue limit and policy like the
+ * frames behind a full WebSocket, and join the pending message once a request comes. At most one receiving request
+ * is attached at a time. Inbound frames come from xhr_send requests and are parsed on the context the session was
+ * opened on.
+ */
+public class SockJsXhrConnection extends StompServerTCPConnectionImpl {
+
+    private static final Logger log = Logger.getLogger(SockJsXhrConnection.class.getName());
+
+    static final Buffer OPEN = Buffer.buffer("o\n");
+    static final Buffer HEARTBEAT = Buffer.buffer("h\n");
+    static final Buffer GO_AWAY = Buffer.buffer("c[3000,\"Go away!\"]\n");
+    static final Buffer ANOTHER_CONNECTION = Buffer.buffer("c[2010,\"Another connection still open\"]\n");
+
+    /** Like the Vert.x connections, a peer is dropped after twice the negotiated pong period without traffic */
+    private static final int PONG_GRACE_FACTOR = 2;
+
+    private final String key;
+    private final StompServer server;
+    private final Handler<ServerFrame> writtenFrameHandler;
+    private final StompConnectionOptions connectionOptions;
+    private final WriteQueueStats writeQueueStats;
+    private final StompMetrics metrics;
+    private final Context context;
+    private final SockJsSessions sessions;
+    private final SockJsFrameParser parser;
+    private final WriteQueue writeQueue;
+
+    /** The message being collected, an {@code a[} followed by the elements so far */
+    private ByteBuf pending;
+    private HttpServerResponse receiver;
+    private boolean streaming;
+    private long streamed;
+    private boolean flushScheduled;
+    private boolean closed;
+    private long detachedAt;
+
+    private long lastOutbound;
+    private volatile long lastInbound;
+    private volatile long lastStompOutbound;
+    private volatile long ping;
+    private volatile long pong;
+    private volatile Handler<StompServerConnection> pingHandler;
+
+    public SockJsXhrConnection(String key,
+                               StompServer server,
+                               Handler<ServerFrame> writtenFrameHandler,
+                               Vertx vertx,
+                               StompConnectionOptions connectionOptions,
+                               WriteQueueStats writeQueueStats,
+                               StompMetrics metrics,
+                               SockJsSessions sessions) {
+        this(key, server, writtenFrameHandler, vertx, connectionOptions, writeQueueStats, metrics, sessions, null);
+    }
+
+    /**
+     * @param largeBodySink where the large SEND bodies go, {@code null} if there is none
+     */
+    public SockJsXhrConnection(String key,
+                               StompServer server,
+                               Handler<ServerFrame> writtenFrameHandler,
+                               Vertx vertx,
+                               StompConnectionOptions connectionOptions,
+                               WriteQueueStats writeQueueStats,
+                               StompMetrics metrics,
+                               SockJsSessions sessions,
+                               LargeBodySink largeBodySink) {
+        super(server, writtenFrameHandler);
+        this.key = key;
+        this.server = server;
+        this.writtenFrameHandler = writtenFrameHandler;
+        this.connectionOptions = connectionOptions;
+        this.writeQueueStats = writeQueueStats;
+        this.metrics = metrics;
+        this.context = vertx.getOrCreateContext();
+        this.sessions = sessions;
+        this.writeQueue = new WriteQueue(new WriteQueue.Sink() {
+            @Override
+            public boolean writeQueueFull() {
+                synchronized (SockJsXhrConnection.this) {
+                    // a closed session keeps its frames for the request which gets its close frame
+                    return receiver == null && !closed;
+                }
+            }
+
+            @Override
+            public void write(ByteBuf element) {
+                append(element);
+            }
+        }, connectionOptions.getWriteQueueMaxBytes(), connectionOptions.getWriteQueuePolicy(), writeQueueStats);
+        this.parser = new SockJsFrameParser(server.options())
+                .guard(connectionOptions, largeBodySink, this);
+        parser.errorHandler(exception -> {
+            metrics.parserError();
+            write(Frames.createInvalidFrameErrorFrame(exception));
+            close();
+        }).handler(frame -> server.stompHandler().handle(new ServerFrameImpl(frame, this)));
+        long now = HeartbeatWheel.now();
+        this.detachedAt = now;
+        this.lastOutbound = now;
+        this.lastInbound = now;
+        this.lastStompOutbound = now;
+        metrics.connectionOpened();
+    }
+
+    /**
+     * @return the {@code <server>/<session>} key of the SockJS session
+     */
+    public String key() {
+        return key;
+    }
+
+    @Override
+    public SSLSession sslSession() {
+        return null;
+    }
+
+    @Override
+    public StompServerConnection write(Frame frame) {
+        return write(frame, null, null, null);
+    }
+
+    /**
+     * Writes a MESSAGE of a topic subscription without acknowledgement, which the write queue policy may drop or
+     * conflate while no request receives the frames.
+     *
+     * @param conflationKey the conflation key of the frame, {@code null} to leave it to the policy
+     */
+    public StompServerConnection writeDroppable(Frame message, String conflationKey) {
+        return write(message, message.getDestination(), message.getHeader(Frame.SUBSCRIPTION), conflationKey);
+    }
+
+    private StompServerConnection write(Frame frame, String destination, String subscription, String conflationKey) {
+        if (writtenFrameHandler != null) {
+            writtenFrameHandler.handle(new ServerFrameImpl(frame, this));
+        }
+        return write(frame.toBuffer(server.options().isTrailingLine()), frame.getCommand(), destination,
+                subscription, conflationKey);
+    }
+
+    @Override
+    public StompServerConnection write(Buffer buffer) {
+        return write(buffer, null, null, null, null);
+    }
+
+    /**
+     * @param destination the destination of a MESSAGE which the write queue may drop or conflate, {@code null} for
+     *                    the frames which must be delivered
+     */
+    private StompServerConnection write(Buffer buffer, Command command, String destination, String subscription,
+                                        String conflationKey) {
+        metrics.frameOut(command);
+        synchronized (this) {
+            if (closed) {
+                return this;
+            }
+        }
+        long start = System.nanoTime();
+        ByteBuf element = Unpooled.buffer(SockJsFrameEncoder.estimateElementSize(buffer.length()));
+        SockJsFrameEncoder.writeElement(element, buffer);
+        metrics.encoded(System.nanoTime() - start);
+        lastStompOutbound = HeartbeatWheel.now();
+        boolean accepted;
+        if (destination == null) {
+            accepted = writeQueue.offer(element);
+        } else if (conflationKey == null) {
+            accepted = writeQueue.offerDroppable(element, destination, subscription, false);
+        } else {
+            accepted = writeQueue.offerConflated(element, destination, subscription, conflationKey, false);
+        }
+        if (!accepted) {
+            disconnectSlowConsumer();
+        }
+        return this;
+    }
+
+    /**
+     * Adds an encoded frame to the pending message, sent at the end of the task if a request is attached.
+     */
+    private void append(ByteBuf element) {
+        synchronized (this) {
+            if (pending == null) {
+                pending = Unpooled.buffer(element.readableBytes() + 4);
+                pending.writeByte('a').writeByte('[');
+            } else {
+                pending.writeByte(',');
+            }
+            pending.writeBytes(element);
+            if (receiver != null) {
+                scheduleFlush();
+            }
+        }
+        element.release();
+    }
+
+    /**
+     * Attaches the response of an xhr or xhr_streaming request, which receives the pending frames right away.
+     * A second receiver is turned down, a closed session answers with its close frame.
+     */
+    public void attach(HttpServerResponse response, boolean streaming) {
+        Buffer rejection = null;
+        synchronized (this) {
+            if (closed) {
+                Buffer last = pendingMessage();
+                rejection = last == null ? GO_AWAY : last.appendBuffer(GO_AWAY);
+                pending = null;
+            } else if (receiver != null) {
+                rejection = ANOTHER_CONNECTION;
+            } else {
+                receiver = response;
+                this.streaming = streaming;
+                streamed = 0;
+            }
+        }
+        if (rejection != null) {
+            response.end(rejection);
+            if (rejection != ANOTHER_CONNECTION) {
+                sessions.remove(this);
+            }
+            return;
+        }
+        response.closeHandler(v -> detach(response));
+        writeQueue.drain();
+        flush();
+    }
+
+    /**
+     * Feeds the body of an xhr_send request, a JSON array of STOMP frames, to the STOMP handler.
+     */
+    public void receive(Buffer body) {
+        lastInbound = HeartbeatWheel.now();
+        metrics.bytesIn(body.length());
+        if (Vertx.currentContext() == context) {
+            parse(body);
+        } else {
+            context.runOnContext(v -> parse(body));
+        }
+    }
+
+    private void parse(Buffer body) {
+        long start = System.nanoTime();
+        parser.handle(body);
+        metrics.decoded(System.nanoTime() - start);
+    }
+
+    @Override
+    public void configureHeartbeat(long ping, long pong, Handler<StompServerConnection> pingHandler) {
+        this.ping = ping;
+        this.pong = pong;
+        this.pingHandler = pingHandler;
+    }
+
+    @Override
+    public void onServerActivity() {
+        lastInbound = HeartbeatWheel.now();
+    }
+
+    @Override
+    public void ping() {
+        write(Buffer.buffer(FrameParser.EOL));
+    }
+
+    @Override
+    public void close() {
+        HttpServerResponse response;
+        Buffer last;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // the queued frames go out before the close frame
+        writeQueue.drain();
+        synchronized (this) {
+            response = receiver;
+            receiver = null;
+            last = null;
+            if (response != null) {
+                last = pendingMessage();
+                pending = null;
+                detachedAt = HeartbeatWheel.now();
+            }
+        }
+        server.stompHandler().onClose(this);
+        metrics.connectionClosed();
+        context.runOnContext(v -> parser.close());
+        if (response != null) {
+            // the close frame goes out right away, otherwise to the next request of the client
+            response.end(last == null ? GO_AWAY : last.appendBuffer(GO_AWAY));
+            sessions.remove(this);
+        }
+    }
+
+    /**
+     * Sends the pending frames to the attached receiver as one chunk.
+     */
+    void flush() {
+        HttpServerResponse response;
+        Buffer message;
+        boolean end;
+        synchronized (this) {
+            flushScheduled = false;
+            if (receiver == null) {
+                return;
+            }
+            message = pendingMessage();
+            if (message == null) {
+                return;
+            }
+            pending = null;
+            response = receiver;
+            lastOutbound = HeartbeatWheel.now();
+            end = !streaming || (streamed += message.length()) >= connectionOptions.getSockJsStreamingLimitBytes();
+            if (end) {
+                detached(lastOutbound);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debugf("send xhr message: %s", message.toString(StandardCharsets.UTF_8));
+        }
+        metrics.bytesOut(message.length());
+        if (end) {
+            response.end(message);
+        } else {
+            response.write(message);
+        }
+    }
+
+    /**
+     * Runs the periodic duties of the session, on the timer shared by all sessions.
+     *
+     * @return {@code false} once the session is over and can be forgotten
+     */
+    boolean sweep(long now) {
+        HttpServerResponse heartbeatTo = null;
+        boolean endHeartbeat = false;
+        boolean expired = false;
+        synchronized (this) {
+            if (closed) {
+                return now - detachedAt <= connectionOptions.getSockJsSessionTimeoutMillis();
+            }
+            if (receiver == null && now - detachedAt > connectionOptions.getSockJsSessionTimeoutMillis()) {
+                log.debugf("Closing SockJS session %s - no receiving request in the last %d ms", key,
+                        now - detachedAt);
+                closed = true;
+                expired = true;
+                pending = null;
+            } else if (receiver != null && now - lastOutbound >= connectionOptions.getSockJsHeartbeatMillis()) {
+                heartbeatTo = receiver;
+                endHeartbeat = !streaming;
+                lastOutbound = now;
+                if (endHeartbeat) {
+                    detached(now);
+                }
+            }
+        }
+        if (expired) {
+            writeQueue.clear();
+            server.stompHandler().onClose(this);
+            metrics.connectionClosed();
+            context.runOnContext(v -> parser.close());
+            return false;
+        }
+        if (pong > 0 && now - lastInbound > pong * PONG_GRACE_FACTOR) {
+            log.warnf("Disconnecting client %s - no client activity in the last %d ms", key, now - lastInbound);
+            metrics.heartbeatTimeout();
+            close();
+            return true;
+        }
+        Handler<StompServerConnection> pingHandler = this.pingHandler;
+        if (ping > 0 && pingHandler != null && now - lastStompOutbound >= ping) {
+            pingHandler.handle(this);
+        }
+        if (heartbeatTo != null) {
+            if (endHeartbeat) {
+                heartbeatTo.end(HEARTBEAT);
+            } else {
+                heartbeatTo.write(HEARTBEAT);
+            }
+        }
+        return true;
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            context.runOnContext(v -> flush());
+        }
+    }
+
+    private synchronized void detach(HttpServerResponse response) {
+        if (receiver == response) {
+            detached(HeartbeatWheel.now());
+        }
+    }
+
+    private void detached(long now) {
+        receiver = null;
+        detachedAt = now;
+    }
+
+    private Buffer pendingMessage() {
+        return pending == null ? null : Buffer.buffer(pending.writeByte(']').writeByte('\n'));
+    }
+
+    private void disconnectSlowConsumer() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            pending = null;
+        }
+        writeQueue.clear();
+        writeQueueStats.disconnected();
+        log.warnf("Disconnecting slow consumer %s - more than %d bytes queued", key,
+                connectionOptions.getWriteQueueMaxBytes());
+        write(Frames.createErrorFrame("Slow consumer", Headers.create(),
+                "The client did not keep up with the frames sent to it"));
+        close();
+    }
+}
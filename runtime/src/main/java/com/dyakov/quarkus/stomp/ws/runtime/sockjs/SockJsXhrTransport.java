@@ -0,0 +1,249 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.Cookie;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import org.jboss.logging.Logger;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Route handlers of the SockJS {@code xhr_streaming}, {@code xhr} and {@code xhr_send} transports, mounted on
+ * {@code <websocket-path>/:server/:session/<transport>}.
+ */
+public class SockJsXhrTransport {
+
+    private static final Logger log = Logger.getLogger(SockJsXhrTransport.class.getName());
+
+    public static final String SERVER_PARAM = "server";
+    public static final String SESSION_PARAM = "session";
+
+    /** Sent first on xhr_streaming, so that browsers start handing the response over before it completes */
+    private static final Buffer STREAMING_PRELUDE = Buffer.buffer("h".repeat(2048) + "\n");
+
+    private static final String JAVASCRIPT = "application/javascript; charset=UTF-8";
+    private static final String PLAIN_TEXT = "text/plain; charset=UTF-8";
+    private static final String NO_CACHE = "no-store, no-cache, no-transform, must-revalidate, max-age=0";
+    private static final String ONE_YEAR = "31536000";
+    private static final String SESSION_COOKIE = "JSESSIONID";
+
+    private final SockJsSessions sessions;
+    private final Function<String, SockJsXhrConnection> connectionFactory;
+    private final boolean cookieNeeded;
+    private final long maxSendBytes;
+    /** The {@code host:port} patterns of the allowed origins, {@code *} matching any host or port */
+    private final List<String> origins;
+
+    public SockJsXhrTransport(SockJsSessions sessions, Function<String, SockJsXhrConnection> connectionFactory,
+                              StompConnectionOptions connectionOptions) {
+        this.sessions = sessions;
+        this.connectionFactory = connectionFactory;
+        this.cookieNeeded = connectionOptions.isSockJsCookieNeeded();
+        this.maxSendBytes = connectionOptions.getSockJsSendMaxBytes();
+        this.origins = connectionOptions.getSockJsOrigins();
+    }
+
+    public SockJsSessions sessions() {
+        return sessions;
+    }
+
+    public Handler<RoutingContext> streamingHandler() {
+        return routingContext -> receive(routingContext, true);
+    }
+
+    public Handler<RoutingContext> pollingHandler() {
+        return routingContext -> receive(routingContext, false);
+    }
+
+    public Handler<RoutingContext> sendHandler() {
+        return routingContext -> {
+            HttpServerRequest request = routingContext.request();
+            HttpServerResponse response = routingContext.response();
+            if (preflight(request, response)) {
+                return;
+            }
+            String key = sessionKey(routingContext);
+            SockJsXhrConnection connection = key == null ? null : sessions.get(key);
+            if (connection == null) {
+                response.setStatusCode(404).end();
+                return;
+            }
+            String contentLength = request.getHeader(HttpHeaders.CONTENT_LENGTH);
+            if (contentLength != null && tooLarge(contentLength)) {
+                response.setStatusCode(413).end();
+                return;
+            }
+            // aggregated up to the limit, the rest of a larger body is discarded as it comes
+            Buffer body = Buffer.buffer();
+            request.handler(chunk -> {
+                if (response.ended()) {
+                    return;
+                }
+                if (body.length() + chunk.length() > maxSendBytes) {
+                    response.setStatusCode(413).end();
+                    return;
+                }
+                body.appendBuffer(chunk);
+            });
+            request.exceptionHandler(failure -> {
+                if (!response.ended()) {
+                    response.setStatusCode(500).end("Payload expected.");
+                }
+            });
+            request.endHandler(v -> {
+                if (response.ended()) {
+                    return;
+                }
+                if (body.length() == 0) {
+                    response.setStatusCode(500).end("Payload expected.");
+                    return;
+                }
+                connection.receive(body);
+                headers(request, response, PLAIN_TEXT);
+                response.setStatusCode(204).end();
+            });
+            request.resume();
+        };
+    }
+
+    /**
+     * @return whether the declared {@code contentLength} is over the xhr_send limit, or is not a length
+     */
+    private boolean tooLarge(String contentLength) {
+        try {
+            long length = Long.parseLong(contentLength.trim());
+            return length < 0 || length > maxSendBytes;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private void receive(RoutingContext routingContext, boolean streaming) {
+        HttpServerRequest request = routingContext.request();
+        HttpServerResponse response = routingContext.response();
+        if (preflight(request, response)) {
+            return;
+        }
+        String key = sessionKey(routingContext);
+        if (key == null) {
+            response.setStatusCode(404).end();
+            return;
+        }
+        SockJsXhrConnection connection = sessions.get(key);
+        boolean opened = connection == null;
+        if (opened) {
+            connection = sessions.open(key, connectionFactory);
+            log.debugf("SockJS session %s opened over %s", key, streaming ? "xhr_streaming" : "xhr");
+        }
+        headers(request, response, JAVASCRIPT);
+        if (!streaming) {
+            if (opened) {
+                response.end(SockJsXhrConnection.OPEN);
+            } else {
+                connection.attach(response, false);
+            }
+            return;
+        }
+        response.setChunked(true);
+        response.write(STREAMING_PRELUDE);
+        if (opened) {
+            response.write(SockJsXhrConnection.OPEN);
+        }
+        connection.attach(response, true);
+    }
+
+    private boolean preflight(HttpServerRequest request, HttpServerResponse response) {
+        if (request.method() != HttpMethod.OPTIONS) {
+            return false;
+        }
+        if (!isAllowedOrigin(request.getHeader(HttpHeaders.ORIGIN))) {
+            response.setStatusCode(403).end();
+            return true;
+        }
+        headers(request, response, null);
+        response.putHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, "OPTIONS, POST")
+                .putHeader(HttpHeaders.ACCESS_CONTROL_MAX_AGE, ONE_YEAR)
+                .putHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + ONE_YEAR);
+        String requestHeaders = request.getHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS);
+        if (requestHeaders != null) {
+            response.putHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, requestHeaders);
+        }
+        response.setStatusCode(204).end();
+        return true;
+    }
+
+    private void headers(HttpServerRequest request, HttpServerResponse response, String contentType) {
+        String origin = request.getHeader(HttpHeaders.ORIGIN);
+        if (origin == null || "null".equals(origin)) {
+            response.putHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        } else if (isAllowedOrigin(origin)) {
+            // credentials are only allowed for an origin named in full, which is then one of the allowed ones
+            response.putHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, origin)
+                    .putHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true")
+                    .putHeader(HttpHeaders.VARY, HttpHeaders.ORIGIN);
+        }
+        if (contentType != null) {
+            response.putHeader(HttpHeaders.CONTENT_TYPE, contentType)
+                    .putHeader(HttpHeaders.CACHE_CONTROL, NO_CACHE);
+        }
+        if (cookieNeeded) {
+            Cookie cookie = request.getCookie(SESSION_COOKIE);
+            response.addCookie(Cookie.cookie(SESSION_COOKIE, cookie == null ? "dummy" : cookie.getValue())
+                    .setPath("/"));
+        }
+    }
+
+    /**
+     * @return whether {@code origin} matches one of the configured {@code host:port} patterns, an absent or
+     * {@code null} origin always does
+     */
+    boolean isAllowedOrigin(String origin) {
+        if (origin == null || "null".equals(origin)) {
+            return true;
+        }
+        String host;
+        int port;
+        try {
+            URI uri = URI.create(origin);
+            host = uri.getHost();
+            port = uri.getPort() >= 0 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (host == null) {
+            return false;
+        }
+        for (String pattern : origins) {
+            int colon = pattern.lastIndexOf(':');
+            String hostPattern = colon < 0 ? pattern : pattern.substring(0, colon);
+            String portPattern = colon < 0 ? "*" : pattern.substring(colon + 1);
+            if (("*".equals(hostPattern) || hostPattern.toLowerCase(Locale.ROOT).equals(host.toLowerCase(Locale.ROOT)))
+                    && ("*".equals(portPattern) || portPattern.equals(Integer.toString(port)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code <server>/<session>}, {@code null} when either part is empty or holds a dot
+     */
+    private static String sessionKey(RoutingContext routingContext) {
+        String server = routingContext.pathParam(SERVER_PARAM);
+        String session = routingContext.pathParam(SESSION_PARAM);
+        if (server == null || session == null || server.isEmpty() || session.isEmpty()
+                || server.indexOf('.') >= 0 || session.indexOf('.') >= 0) {
+            return null;
+        }
+        return server + "/" + session;
+    }
+}
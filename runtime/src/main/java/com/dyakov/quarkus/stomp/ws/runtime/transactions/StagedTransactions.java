@@ -0,0 +1,404 @@
+package com.dyakov.quarkus.stomp.ws.runtime.transactions;
+
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsFrameEncoder;
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.Frames;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+import org.jboss.logging.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The STOMP transactions of the connections, in place of the Vert.x ones which keep the frames on the heap without
+ * size or age limit. The SEND, ACK and NACK frames of a transaction are encoded into a pooled direct buffer until
+ * COMMIT or ABORT. A transaction holds at most {@code maxFrames} frames, the transactions of a connection at most
+ * {@code maxBytes} bytes, and a transaction older than {@code maxAgeMillis} is discarded. Going over a limit is
+ * answered with an ERROR frame, and the connection is closed.
+ * <p>
+ * The buffers are released as soon as the transaction is committed, aborted or discarded, or the connection closed.
+ */
+public class StagedTransactions {
+
+    private static final Logger log = Logger.getLogger(StagedTransactions.class.getName());
+
+    private static final Command[] COMMANDS = Command.values();
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Vertx vertx;
+    private final int maxFrames;
+    private final long maxBytes;
+    private final long maxAgeNanos;
+    private final ConcurrentMap<String, ConnectionTransactions> connections = new ConcurrentHashMap<>();
+    private final long expiryTimer;
+
+    /**
+     * @param maxAgeMillis 0 for no age limit, otherwise the expired transactions are discarded by a periodic sweep
+     */
+    public StagedTransactions(Vertx vertx, int maxFrames, long maxBytes, long maxAgeMillis) {
+        this.vertx = vertx;
+        this.maxFrames = maxFrames;
+        this.maxBytes = maxBytes;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        if (maxAgeMillis > 0) {
+            expiryTimer = vertx.setPeriodic(Math.max(1, Math.min(maxAgeMillis, 1000)), id -> {
+                int expired = expire(System.nanoTime());
+                if (expired > 0) {
+                    log.debugf("%d expired transactions have been discarded", expired);
+                }
+            });
+        } else {
+            expiryTimer = -1;
+        }
+    }
+
+    /**
+     * Stops the expiry sweep and releases the open transactions, on shutdown.
+     */
+    public void close() {
+        if (expiryTimer != -1) {
+            vertx.cancelTimer(expiryTimer);
+        }
+        for (String session : new ArrayList<>(connections.keySet())) {
+            ConnectionTransactions transactions = connections.remove(session);
+            if (transactions != null) {
+                synchronized (transactions) {
+                    transactions.releaseAll();
+                }
+            }
+        }
+    }
+
+    public void begin(ServerFrame serverFrame) {
+        StompServerConnection connection = serverFrame.connection();
+        Frame frame = serverFrame.frame();
+        String id = transactionId(serverFrame);
+        if (id == null) {
+            return;
+        }
+        ConnectionTransactions transactions = connections.computeIfAbsent(connection.session(),
+                session -> new ConnectionTransactions());
+        synchronized (transactions) {
+            if (transactions.get(id, System.nanoTime()) != null) {
+                fail(connection, frame, "Already existing transaction",
+                        "A transaction using the same id is still active");
+                return;
+            }
+            transactions.open.put(id, new Transaction(System.nanoTime()));
+        }
+        Frames.handleReceipt(frame, connection);
+    }
+
+    /**
+     * Adds a SEND, ACK or NACK frame with a {@code transaction} header to its transaction.
+     */
+    public void stage(ServerFrame serverFrame) {
+        StompServerConnection connection = serverFrame.connection();
+        Frame frame = serverFrame.frame();
+        String id = frame.getTransaction();
+        ConnectionTransactions transactions = connections.get(connection.session());
+        boolean staged = false;
+        if (transactions != null) {
+            synchronized (transactions) {
+                Transaction transaction = transactions.get(id, System.nanoTime());
+                if (transaction != null) {
+                    if (transaction.frames >= maxFrames) {
+                        fail(connection, frame, "Transaction too large",
+                                "The transaction holds more than " + maxFrames + " frames");
+                        return;
+                    }
+                    int written = transaction.append(frame);
+                    transactions.bytes += written;
+                    if (transactions.bytes > maxBytes) {
+                        fail(connection, frame, "Transaction too large",
+                                "The transactions of the connection hold more than " + maxBytes + " bytes");
+                        return;
+                    }
+                    staged = true;
+                }
+            }
+        }
+        if (!staged) {
+            fail(connection, frame, "No transaction", "The transaction " + id + " is not active");
+            return;
+        }
+        Frames.handleReceipt(frame, connection);
+    }
+
+    /**
+     * Ends the transaction of a COMMIT frame, the caller dispatches its frames and sends the RECEIPT.
+     *
+     * @return the frames of the transaction in order, without their {@code transaction} and {@code receipt}
+     * headers, {@code null} if the COMMIT was answered with an ERROR frame
+     */
+    public List<Frame> commit(ServerFrame serverFrame) {
+        Transaction transaction = remove(serverFrame);
+        if (transaction == null) {
+            return null;
+        }
+        try {
+            return transaction.frames();
+        } finally {
+            transaction.release();
+        }
+    }
+
+    public void abort(ServerFrame serverFrame) {
+        Transaction transaction = remove(serverFrame);
+        if (transaction != null) {
+            transaction.release();
+            Frames.handleReceipt(serverFrame.frame(), serverFrame.connection());
+        }
+    }
+
+    /**
+     * Discards the transactions of a closed connection.
+     */
+    public void release(StompServerConnection connection) {
+        ConnectionTransactions transactions = connections.remove(connection.session());
+        if (transactions != null) {
+            synchronized (transactions) {
+                transactions.releaseAll();
+            }
+        }
+    }
+
+    /**
+     * @return the open transactions of {@code connection}
+     */
+    public int transactions(StompServerConnection connection) {
+        ConnectionTransactions transactions = connections.get(connection.session());
+        if (transactions == null) {
+            return 0;
+        }
+        synchronized (transactions) {
+            return transactions.open.size();
+        }
+    }
+
+    /**
+     * @return the bytes staged by the transactions of {@code connection}
+     */
+    public long stagedBytes(StompServerConnection connection) {
+        ConnectionTransactions transactions = connections.get(connection.session());
+        if (transactions == null) {
+            return 0;
+        }
+        synchronized (transactions) {
+            return transactions.bytes;
+        }
+    }
+
+    /**
+     * Discards the transactions begun more than the maximum age before {@code now}.
+     *
+     * @return the number of discarded transactions
+     */
+    int expire(long now) {
+        int expired = 0;
+        for (ConnectionTransactions transactions : connections.values()) {
+            synchronized (transactions) {
+                expired += transactions.expire(now);
+            }
+        }
+        return expired;
+    }
+
+    private Transaction remove(ServerFrame serverFrame) {
+        StompServerConnection connection = serverFrame.connection();
+        String id = transactionId(serverFrame);
+        if (id == null) {
+            return null;
+        }
+        ConnectionTransactions transactions = connections.get(connection.session());
+        if (transactions != null) {
+            synchronized (transactions) {
+                Transaction transaction = transactions.get(id, System.nanoTime());
+                if (transaction != null) {
+                    transactions.open.remove(id);
+                    transactions.bytes -= transaction.bytes();
+                    return transaction;
+                }
+            }
+        }
+        fail(connection, serverFrame.frame(), "No transaction", "The transaction " + id + " is not active");
+        return null;
+    }
+
+    private String transactionId(ServerFrame serverFrame) {
+        String id = serverFrame.frame().getTransaction();
+        if (id == null) {
+            fail(serverFrame.connection(), serverFrame.frame(), "Missing transaction id",
+                    serverFrame.frame().getCommand() + " frames must have a 'transaction' header");
+        }
+        return id;
+    }
+
+    private void fail(StompServerConnection connection, Frame frame, String message, String detail) {
+        Headers headers = Headers.create();
+        if (frame.getReceipt() != null) {
+            headers.add(Frame.RECEIPT_ID, frame.getReceipt());
+        }
+        if (frame.getTransaction() != null) {
+            headers.add(Frame.TRANSACTION, frame.getTransaction());
+        }
+        release(connection);
+        connection.write(Frames.createErrorFrame(message, headers, detail));
+        connection.close();
+    }
+
+    private final class ConnectionTransactions {
+        final Map<String, Transaction> open = new HashMap<>();
+        long bytes;
+
+        /**
+         * @return the transaction {@code id}, {@code null} if it is not open or has just expired
+         */
+        Transaction get(String id, long now) {
+            Transaction transaction = open.get(id);
+            if (transaction != null && isExpired(transaction, now)) {
+                open.remove(id);
+                bytes -= transaction.bytes();
+                transaction.release();
+                return null;
+            }
+            return transaction;
+        }
+
+        int expire(long now) {
+            int expired = 0;
+            for (Iterator<Transaction> iterator = open.values().iterator(); iterator.hasNext(); ) {
+                Transaction transaction = iterator.next();
+                if (isExpired(transaction, now)) {
+                    iterator.remove();
+                    bytes -= transaction.bytes();
+                    transaction.release();
+                    expired++;
+                }
+            }
+            return expired;
+        }
+
+        void releaseAll() {
+            for (Transaction transaction : open.values()) {
+                transaction.release();
+            }
+            open.clear();
+            bytes = 0;
+        }
+
+        private boolean isExpired(Transaction transaction, long now) {
+            return maxAgeNanos > 0 && now - transaction.begun > maxAgeNanos;
+        }
+    }
+
+    /**
+     * A transaction and its frames, each encoded as the command ordinal, the number of headers, every header name
+     * and value prefixed by its length, and the body length, {@code -1} without body, followed by the body.
+     */
+    private static final class Transaction {
+        final long begun;
+        /** Allocated with the first frame */
+        ByteBuf buffer;
+        int frames;
+
+        Transaction(long begun) {
+            this.begun = begun;
+        }
+
+        /**
+         * @return the number of bytes written
+         */
+        int append(Frame frame) {
+            if (buffer == null) {
+                buffer = SockJsFrameEncoder.ALLOCATOR.directBuffer(INITIAL_CAPACITY);
+            }
+            int start = buffer.writerIndex();
+            buffer.writeByte(frame.getCommand().ordinal());
+            Map<String, String> headers = frame.getHeaders();
+            int countIndex = buffer.writerIndex();
+            buffer.writeInt(0);
+            int count = 0;
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                // the RECEIPT was sent when the frame was staged
+                if (!Frame.TRANSACTION.equals(header.getKey()) && !Frame.RECEIPT.equals(header.getKey())) {
+                    writeString(header.getKey());
+                    writeString(header.getValue());
+                    count++;
+                }
+            }
+            buffer.setInt(countIndex, count);
+            Buffer body = frame.getBody();
+            if (body == null) {
+                buffer.writeInt(-1);
+            } else {
+                buffer.writeInt(body.length());
+                buffer.writeBytes(body.getByteBuf());
+            }
+            frames++;
+            return buffer.writerIndex() - start;
+        }
+
+        List<Frame> frames() {
+            List<Frame> decoded = new ArrayList<>(frames);
+            if (buffer == null) {
+                return decoded;
+            }
+            ByteBuf in = buffer.duplicate();
+            while (in.isReadable()) {
+                Command command = COMMANDS[in.readByte()];
+                int count = in.readInt();
+                Headers headers = Headers.create();
+                for (int i = 0; i < count; i++) {
+                    headers.put(readString(in), readString(in));
+                }
+                int length = in.readInt();
+                Buffer body = null;
+                if (length >= 0) {
+                    byte[] bytes = new byte[length];
+                    in.readBytes(bytes);
+                    body = Buffer.buffer(bytes);
+                }
+                decoded.add(new Frame(command, headers, body));
+            }
+            return decoded;
+        }
+
+        int bytes() {
+            return buffer == null ? 0 : buffer.writerIndex();
+        }
+
+        void release() {
+            if (buffer != null) {
+                buffer.release();
+                buffer = null;
+            }
+        }
+
+        private void writeString(String value) {
+            int lengthIndex = buffer.writerIndex();
+            buffer.writeInt(0);
+            buffer.setInt(lengthIndex, buffer.writeCharSequence(value, StandardCharsets.UTF_8));
+        }
+
+        private static String readString(ByteBuf in) {
+            int length = in.readInt();
+            String value = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+            in.skipBytes(length);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.dyakov.quarkus.stomp.ws.runtime;
+
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BroadcastTopic;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.Closeable;
+
+class DestinationProviderTest {
+
+    static DestinationProvider perName() {
+        return new TestDestinationProvider("/channels", DestinationProvider.DestinationType.TOPIC, true);
+    }
+
+    @Test
+    void test_DestinationProvider_CreatesOneDestinationPerName() {
+        DestinationProvider provider = perName();
+        Destination a = provider.getOrCreateNamedDestination("/channels/a", BroadcastTopic::new);
+        Destination b = provider.getOrCreateNamedDestination("/channels/b", BroadcastTopic::new);
+        Assertions.assertNotSame(a, b);
+        Assertions.assertEquals("/channels/a", a.destination());
+        Assertions.assertSame(a, provider.getOrCreateNamedDestination("/channels/a", BroadcastTopic::new));
+        Assertions.assertSame(b, provider.getNamedDestination("/channels/b"));
+        Assertions.assertNull(provider.getNamedDestination("/channels/c"));
+        Assertions.assertEquals(2, provider.getNamedDestinations().size());
+    }
+
+    @Test
+    void test_DestinationProvider_EvictsIdleDestinationsOnly() {
+        DestinationProvider provider = perName();
+        Destination subscribed = provider.getOrCreateNamedDestination("/channels/a", BroadcastTopic::new);
+        provider.getOrCreateNamedDestination("/channels/b", BroadcastTopic::new);
+        subscribed.subscribe(null, new Frame(Command.SUBSCRIBE,
+                Headers.create(Frame.ID, "sub-0", Frame.DESTINATION, "/channels/a"), null));
+
+        Assertions.assertEquals(0, provider.evictIdleDestinations(60_000));
+        Assertions.assertEquals(1, provider.evictIdleDestinations(0));
+        Assertions.assertSame(subscribed, provider.getNamedDestination("/channels/a"));
+        Assertions.assertNull(provider.getNamedDestination("/channels/b"));
+    }
+
+    @Test
+    void test_DestinationProvider_ClosesTheEvictedDestinations() throws Exception {
+        DestinationProvider provider = perName();
+        Destination durable = Mockito.mock(Destination.class, Mockito.withSettings().extraInterfaces(Closeable.class));
+        Assertions.assertSame(durable, provider.getOrCreateNamedDestination("/channels/a", name -> durable));
+        Mockito.when(durable.numberOfSubscriptions()).thenReturn(1);
+        Assertions.assertEquals(0, provider.evictIdleDestinations(0));
+        Mockito.verify((Closeable) durable, Mockito.never()).close();
+
+        Mockito.when(durable.numberOfSubscriptions()).thenReturn(0);
+        Assertions.assertEquals(1, provider.evictIdleDestinations(0));
+        Mockito.verify((Closeable) durable).close();
+        Assertions.assertNull(provider.getNamedDestination("/channels/a"));
+    }
+}
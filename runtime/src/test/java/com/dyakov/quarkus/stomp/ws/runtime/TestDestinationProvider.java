@@ -0,0 +1,57 @@
+package com.dyakov.quarkus.stomp.ws.runtime;
+
+import io.vertx.ext.stomp.Destination;
+
+/**
+ * {@link DestinationProvider} of a fixed path, shared by the runtime tests.
+ */
+public class TestDestinationProvider extends DestinationProvider {
+
+    private final String path;
+    private final DestinationType type;
+    private final boolean perName;
+    private volatile Destination destination;
+
+    public TestDestinationProvider(String path) {
+        this(path, DestinationType.TOPIC, false);
+    }
+
+    /**
+     * @param perName whether every destination name under {@code path} gets its own destination
+     */
+    public TestDestinationProvider(String path, DestinationType type, boolean perName) {
+        this.path = path;
+        this.type = type;
+        this.perName = perName;
+    }
+
+    @Override
+    public String getDestinationPath() {
+        return path;
+    }
+
+    @Override
+    public void setDestination(Destination destination) {
+        this.destination = destination;
+    }
+
+    @Override
+    public Destination getDestination() {
+        return destination;
+    }
+
+    @Override
+    public DestinationType getDestinationType() {
+        return type;
+    }
+
+    @Override
+    public boolean isDestinationSetUp() {
+        return destination != null;
+    }
+
+    @Override
+    public boolean isDestinationPerName() {
+        return perName;
+    }
+}
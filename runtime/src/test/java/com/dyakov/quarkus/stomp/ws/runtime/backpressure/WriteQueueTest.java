@@ -0,0 +1,146 @@
+package com.dyakov.quarkus.stomp.ws.runtime.backpressure;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class WriteQueueTest {
+
+    static class TestSink implements WriteQueue.Sink {
+        boolean full;
+        final List<String> written = new ArrayList<>();
+
+        @Override
+        public boolean writeQueueFull() {
+            return full;
+        }
+
+        @Override
+        public void write(ByteBuf message) {
+            written.add(message.toString(StandardCharsets.UTF_8));
+            message.release();
+        }
+    }
+
+    static ByteBuf message(String text) {
+        return Unpooled.copiedBuffer(text, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void test_WriteQueue_WritesThroughUntilFull() {
+        TestSink sink = new TestSink();
+        WriteQueueStats stats = new WriteQueueStats();
+        WriteQueue queue = new WriteQueue(sink, 8, WriteQueuePolicy.DROP_OLDEST, stats);
+        Assertions.assertTrue(queue.offer(message("aa")));
+        sink.full = true;
+        Assertions.assertTrue(queue.offer(message("bb")));
+        Assertions.assertEquals(2, queue.getQueuedBytes());
+        Assertions.assertEquals(2, stats.getQueuedBytes());
+
+        sink.full = false;
+        queue.drain();
+        Assertions.assertEquals(List.of("aa", "bb"), sink.written);
+        Assertions.assertEquals(0, stats.getQueuedBytes());
+    }
+
+    @Test
+    void test_WriteQueue_DropOldest() {
+        TestSink sink = new TestSink();
+        sink.full = true;
+        WriteQueue queue = new WriteQueue(sink, 6, WriteQueuePolicy.DROP_OLDEST, new WriteQueueStats());
+        queue.offerDroppable(message("aa"), "/quotes", "sub-0", false);
+        queue.offerDroppable(message("bb"), "/quotes", "sub-0", false);
+        queue.offerDroppable(message("cc"), "/quotes", "sub-0", false);
+        queue.offerDroppable(message("dd"), "/quotes", "sub-0", false);
+        Assertions.assertEquals(1, queue.getDroppedFrames());
+        sink.full = false;
+        queue.drain();
+        Assertions.assertEquals(List.of("bb", "cc", "dd"), sink.written);
+    }
+
+    @Test
+    void test_WriteQueue_DropNewest() {
+        TestSink sink = new TestSink();
+        sink.full = true;
+        WriteQueue queue = new WriteQueue(sink, 4, WriteQueuePolicy.DROP_NEWEST, new WriteQueueStats());
+        queue.offerDroppable(message("aa"), "/quotes", "sub-0", false);
+        queue.offerDroppable(message("bb"), "/quotes", "sub-0", false);
+        queue.offerDroppable(message("cc"), "/quotes", "sub-0", false);
+        sink.full = false;
+        queue.drain();
+        Assertions.assertEquals(List.of("aa", "bb"), sink.written);
+        Assertions.assertEquals(1, queue.getDroppedFrames());
+    }
+
+    @Test
+    void test_WriteQueue_ConflatesBySubscription() {
+        TestSink sink = new TestSink();
+        sink.full = true;
+        WriteQueueStats stats = new WriteQueueStats();
+        WriteQueue queue = new WriteQueue(sink, 1024, WriteQueuePolicy.CONFLATE, stats);
+        queue.offerDroppable(message("a1"), "/a", "sub-0", false);
+        queue.offerDroppable(message("b1"), "/b", "sub-0", false);
+        queue.offerDroppable(message("a2"), "/a", "sub-0", false);
+        queue.offerDroppable(message("a1"), "/a", "sub-1", false);
+        queue.offer(message("x"));
+        Assertions.assertEquals(1, stats.getConflatedFrames());
+        Assertions.assertEquals(1, queue.getConflatedFrames());
+        Assertions.assertEquals(0, queue.getDroppedFrames());
+        sink.full = false;
+        queue.drain();
+        Assertions.assertEquals(List.of("a2", "b1", "a1", "x"), sink.written);
+    }
+
+    @Test
+    void test_WriteQueue_DisconnectWhenExceeded() {
+        TestSink sink = new TestSink();
+        sink.full = true;
+        WriteQueue queue = new WriteQueue(sink, 3, WriteQueuePolicy.DISCONNECT, new WriteQueueStats());
+        Assertions.assertTrue(queue.offer(message("aa")));
+        Assertions.assertFalse(queue.offer(message("bb")));
+        queue.clear();
+        Assertions.assertEquals(0, queue.getQueuedBytes());
+    }
+
+    @Test
+    void test_WriteQueue_OfferConflatedReplacesTheSameKeyWhateverThePolicy() {
+        TestSink sink = new TestSink();
+        sink.full = true;
+        WriteQueue queue = new WriteQueue(sink, 64, WriteQueuePolicy.DROP_OLDEST, new WriteQueueStats());
+        queue.offerConflated(message("AAPL 1"), "/quotes", "sub-0", "AAPL", false);
+        queue.offerConflated(message("MSFT 1"), "/quotes", "sub-0", "MSFT", false);
+        queue.offerConflated(message("AAPL 2"), "/quotes", "sub-0", "AAPL", false);
+        queue.offerConflated(message("AAPL 1"), "/quotes", "sub-1", "AAPL", false);
+        queue.offerDroppable(message("news"), "/quotes", "sub-0", false);
+        queue.offerDroppable(message("news"), "/quotes", "sub-0", false);
+
+        sink.full = false;
+        queue.drain();
+        Assertions.assertEquals(List.of("AAPL 2", "MSFT 1", "AAPL 1", "news", "news"), sink.written);
+        Assertions.assertEquals(0, queue.getQueuedBytes());
+    }
+
+    @Test
+    void test_WriteQueue_NeverDropsTheFramesWhichMustBeDelivered() {
+        TestSink sink = new TestSink();
+        sink.full = true;
+        WriteQueue queue = new WriteQueue(sink, 6, WriteQueuePolicy.DROP_NEWEST, new WriteQueueStats());
+        Assertions.assertTrue(queue.offer(message("ack")));
+        Assertions.assertTrue(queue.offerDroppable(message("aa"), "/quotes", "sub-0", false));
+        // a RECEIPT makes room by dropping the topic MESSAGEs, an ack-required MESSAGE which does not fit disconnects
+        Assertions.assertTrue(queue.offer(message("rcp")));
+        Assertions.assertEquals(1, queue.getDroppedFrames());
+        Assertions.assertFalse(queue.offer(message("msg")));
+        Assertions.assertTrue(queue.offerDroppable(message("bb"), "/quotes", "sub-0", false));
+        Assertions.assertEquals(2, queue.getDroppedFrames());
+
+        sink.full = false;
+        queue.drain();
+        Assertions.assertEquals(List.of("ack", "rcp"), sink.written);
+    }
+}
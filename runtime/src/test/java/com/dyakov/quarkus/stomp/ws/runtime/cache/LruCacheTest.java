@@ -0,0 +1,41 @@
+package com.dyakov.quarkus.stomp.ws.runtime.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LruCacheTest {
+
+    @Test
+    void test_LruCache_EvictsTheLeastRecentlyUsedEntries() {
+        LruCache<String, Integer> cache = new LruCache<>(8);
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertEquals(i, cache.putIfAbsent("key-" + i, i));
+        }
+        Assertions.assertEquals(0, cache.putIfAbsent("key-0", 42));
+        // the first entries are used again, the next ones become the least recently used
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(i, cache.get("key-" + i));
+        }
+        cache.putIfAbsent("key-8", 8);
+        Assertions.assertTrue(cache.size() <= 8);
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(i, cache.get("key-" + i));
+        }
+        Assertions.assertNull(cache.get("key-4"));
+        Assertions.assertEquals(8, cache.get("key-8"));
+
+        for (int i = 0; i < 1000; i++) {
+            cache.putIfAbsent("other-" + i, i);
+            Assertions.assertTrue(cache.size() <= 8);
+        }
+        Assertions.assertEquals(999, cache.get("other-999"));
+    }
+
+    @Test
+    void test_LruCache_CachesNothingWithoutSize() {
+        LruCache<String, Integer> cache = new LruCache<>(0);
+        Assertions.assertEquals(1, cache.putIfAbsent("key", 1));
+        Assertions.assertNull(cache.get("key"));
+        Assertions.assertEquals(0, cache.size());
+    }
+}
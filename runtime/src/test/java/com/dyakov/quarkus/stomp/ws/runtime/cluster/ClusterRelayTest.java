@@ -0,0 +1,111 @@
+package com.dyakov.quarkus.stomp.ws.runtime.cluster;
+
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.ClusteredTopic;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+class ClusterRelayTest {
+
+    static final String TOPIC = "/cluster/quotes";
+
+    Vertx vertx;
+    ClusterRelay nodeA;
+    ClusterRelay nodeB;
+    ClusterRelay nodeC;
+
+    @BeforeEach
+    void setUp() {
+        // every relay is a node of its own, sharing the event bus of one Vert.x instance
+        vertx = Vertx.vertx();
+        nodeA = new ClusterRelay(vertx, "test.cluster", 0, 16).start();
+        nodeB = new ClusterRelay(vertx, "test.cluster", 0, 16).start();
+        nodeC = new ClusterRelay(vertx, "test.cluster", 0, 16).start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    Frame send(String body) {
+        return new Frame(Command.SEND, Headers.create(Frame.DESTINATION, TOPIC), Buffer.buffer(body));
+    }
+
+    Frame subscribe(String id) {
+        return new Frame(Command.SUBSCRIBE, Headers.create(Frame.ID, id, Frame.DESTINATION, TOPIC), null);
+    }
+
+    void awaitInterest(ClusterRelay relay, ClusterRelay node, boolean interested) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (relay.interestedNodes(TOPIC).contains(node.nodeId()) != interested) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "Interest was not propagated");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void test_ClusterRelay_DeliversToInterestedNodesOnly() throws Exception {
+        ClusteredTopic topicA = new ClusteredTopic(TOPIC, nodeA);
+        ClusteredTopic topicB = new ClusteredTopic(TOPIC, nodeB);
+        new ClusteredTopic(TOPIC, nodeC);
+        StompServerConnection subscriber = Mockito.mock(StompServerConnection.class);
+        topicB.subscribe(subscriber, subscribe("sub-0"));
+        awaitInterest(nodeA, nodeB, true);
+        Assertions.assertFalse(nodeA.interestedNodes(TOPIC).contains(nodeC.nodeId()));
+
+        topicA.dispatch(null, send("first"));
+        topicA.dispatch(null, send("second"));
+
+        ArgumentCaptor<Frame> frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(subscriber, Mockito.timeout(5000).times(2)).write(frames.capture());
+        Assertions.assertEquals(Command.MESSAGE, frames.getValue().getCommand());
+        Assertions.assertEquals("sub-0", frames.getValue().getHeader(Frame.SUBSCRIPTION));
+        Assertions.assertEquals(Arrays.asList("first", "second"),
+                Arrays.asList(frames.getAllValues().get(0).getBodyAsString(), frames.getValue().getBodyAsString()));
+    }
+
+    @Test
+    void test_ClusterRelay_DropsInterestOnLastUnsubscribe() throws Exception {
+        ClusteredTopic topicB = new ClusteredTopic(TOPIC, nodeB);
+        StompServerConnection subscriber = Mockito.mock(StompServerConnection.class);
+        topicB.subscribe(subscriber, subscribe("sub-0"));
+        topicB.subscribe(subscriber, subscribe("sub-1"));
+        awaitInterest(nodeA, nodeB, true);
+
+        topicB.unsubscribe(subscriber, subscribe("sub-0"));
+        Thread.sleep(100);
+        Assertions.assertTrue(nodeA.interestedNodes(TOPIC).contains(nodeB.nodeId()));
+        topicB.unsubscribeConnection(subscriber);
+        awaitInterest(nodeA, nodeB, false);
+    }
+
+    @Test
+    void test_FrameBatchCodec_RoundTrip() {
+        FrameBatchCodec codec = new FrameBatchCodec();
+        Frame withBody = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, TOPIC, "note", "\u00e9:\u00fc"),
+                Buffer.buffer("{\"price\":1}"));
+        Frame withoutBody = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, TOPIC), null);
+        Buffer wire = Buffer.buffer("prefix");
+        codec.encodeToWire(wire, new FrameBatch(TOPIC, Arrays.asList(withBody, withoutBody)));
+
+        FrameBatch decoded = codec.decodeFromWire("prefix".length(), wire);
+        Assertions.assertEquals(TOPIC, decoded.destination());
+        Assertions.assertEquals(2, decoded.frames().size());
+        Assertions.assertEquals(withBody.getHeaders(), decoded.frames().get(0).getHeaders());
+        Assertions.assertEquals("{\"price\":1}", decoded.frames().get(0).getBodyAsString());
+        Assertions.assertEquals(Command.SEND, decoded.frames().get(1).getCommand());
+    }
+}
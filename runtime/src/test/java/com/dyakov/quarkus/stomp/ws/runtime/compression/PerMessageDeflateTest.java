@@ -0,0 +1,95 @@
+package com.dyakov.quarkus.stomp.ws.runtime.compression;
+
+import com.dyakov.quarkus.stomp.ws.runtime.sockjs.SockJsBroadcastFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+class PerMessageDeflateTest {
+
+    static final byte[] FLUSH_TRAILER = {0, 0, (byte) 0xFF, (byte) 0xFF};
+
+    /**
+     * Inflates a permessage-deflate payload the way a client does, with the flush trailer appended again.
+     */
+    static String inflate(ByteBuf payload) throws DataFormatException {
+        byte[] compressed = ByteBufUtil.getBytes(payload);
+        byte[] input = new byte[compressed.length + FLUSH_TRAILER.length];
+        System.arraycopy(compressed, 0, input, 0, compressed.length);
+        System.arraycopy(FLUSH_TRAILER, 0, input, compressed.length, FLUSH_TRAILER.length);
+        return inflate(input);
+    }
+
+    static String inflate(byte[] input) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(input);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[256];
+        int read;
+        while ((read = inflater.inflate(chunk)) > 0) {
+            out.write(chunk, 0, read);
+        }
+        inflater.end();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void test_PerMessageDeflate_PrecompressedBroadcastInflatesToTheEncodedMessage() throws Exception {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            body.append("{\"symbol\":\"AAPL\",\"bid\":151.25,\"ask\":151.27,\"note\":\"\u00e9t\u00e9\"},");
+        }
+        Frame send = new Frame(Command.SEND, Headers.create(Frame.DESTINATION, "/channels/quotes"),
+                Buffer.buffer(body.append("{}]").toString()));
+        SockJsBroadcastFrame broadcast = SockJsBroadcastFrame.create(send);
+        try {
+            for (int i = 0; i < 3; i++) {
+                ByteBuf plain = broadcast.encodeFor("sub-" + i, "id-" + i, i == 2, true);
+                ByteBuf deflated = broadcast.deflateFor("sub-" + i, "id-" + i, i == 2, true, 6);
+                Assertions.assertTrue(deflated.readableBytes() < plain.readableBytes() / 5);
+                Assertions.assertEquals(plain.toString(StandardCharsets.UTF_8), inflate(deflated));
+                plain.release();
+                deflated.release();
+            }
+        } finally {
+            broadcast.release();
+        }
+    }
+
+    @Test
+    void test_PerMessageDeflate_StoredBlocksSplitLongInput() throws Exception {
+        byte[] data = new byte[70_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        ByteBuf out = Unpooled.buffer();
+        PerMessageDeflate.writeStored(out, Unpooled.wrappedBuffer(data));
+        Assertions.assertEquals(data.length + 10, out.readableBytes());
+        // stored blocks end on a byte boundary, without the header bits of a flush trailer to complete
+        Assertions.assertEquals(new String(data, StandardCharsets.UTF_8), inflate(ByteBufUtil.getBytes(out)));
+    }
+
+    @Test
+    void test_WebSocketDeflate_DetectsServerNoContextTakeoverOffer() {
+        Assertions.assertTrue(WebSocketDeflate.offersServerNoContextTakeover(
+                "permessage-deflate; server_no_context_takeover; client_max_window_bits"));
+        Assertions.assertFalse(WebSocketDeflate.offersServerNoContextTakeover(
+                "permessage-deflate; client_max_window_bits"));
+        Assertions.assertFalse(WebSocketDeflate.offersServerNoContextTakeover(
+                "permessage-deflate; server_no_context_takeover; server_max_window_bits=10"));
+        Assertions.assertFalse(WebSocketDeflate.offersServerNoContextTakeover(
+                "x-webkit-deflate-frame, permessage-deflate, permessage-deflate; server_no_context_takeover"));
+        Assertions.assertFalse(WebSocketDeflate.offersServerNoContextTakeover(null));
+    }
+}
@@ -0,0 +1,203 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.StompServerHandler;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+class AckQueueTest {
+
+    static final String QUEUE = "/orders";
+
+    static Frame order(int index) {
+        return new Frame(Command.SEND, Headers.create(Frame.DESTINATION, QUEUE), Buffer.buffer("order-" + index));
+    }
+
+    static Frame subscribe(String ack) {
+        return new Frame(Command.SUBSCRIBE, Headers.create(Frame.ID, "sub-0", Frame.DESTINATION, QUEUE, Frame.ACK, ack),
+                null);
+    }
+
+    static Frame ack(Frame message) {
+        return new Frame(Command.ACK, Headers.create(Frame.ID, message.getHeader(Frame.ACK)), null);
+    }
+
+    static StompServerConnection consumer(StompServerHandler handler) {
+        StompServerConnection connection = Mockito.mock(StompServerConnection.class);
+        Mockito.when(connection.handler()).thenReturn(handler);
+        return connection;
+    }
+
+    static List<Frame> written(StompServerConnection connection, int times) {
+        ArgumentCaptor<Frame> frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(connection, Mockito.times(times)).write(frames.capture());
+        return frames.getAllValues();
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<String> acked(StompServerHandler handler, int times) {
+        ArgumentCaptor<List<Frame>> frames = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(handler, Mockito.times(times)).onAck(Mockito.any(), Mockito.any(), frames.capture());
+        return frames.getValue().stream().map(Frame::getBodyAsString).collect(Collectors.toList());
+    }
+
+    @Test
+    void test_AckQueue_AcknowledgesIndividuallyInAnyOrder() {
+        AckQueue queue = new AckQueue(QUEUE);
+        StompServerHandler handler = Mockito.mock(StompServerHandler.class);
+        StompServerConnection consumer = consumer(handler);
+        queue.subscribe(consumer, subscribe("client-individual"));
+        for (int i = 0; i < 100; i++) {
+            queue.dispatch(null, order(i));
+        }
+        List<Frame> delivered = written(consumer, 100);
+        Assertions.assertEquals("sub-0", delivered.get(0).getHeader(Frame.SUBSCRIPTION));
+        Assertions.assertEquals(delivered.get(0).getHeader(Frame.MESSAGE_ID), delivered.get(0).getHeader(Frame.ACK));
+        Assertions.assertEquals(100, queue.pending(consumer));
+
+        Assertions.assertTrue(queue.ack(consumer, ack(delivered.get(50))));
+        Assertions.assertEquals(List.of("order-50"), acked(handler, 1));
+        Assertions.assertFalse(queue.ack(consumer, ack(delivered.get(50))));
+        Assertions.assertFalse(queue.ack(consumer(handler), ack(delivered.get(0))));
+        Assertions.assertFalse(queue.ack(consumer, new Frame(Command.ACK, Headers.create(Frame.ID, "x-1"), null)));
+        for (int i = 99; i >= 0; i--) {
+            if (i != 50) {
+                Assertions.assertTrue(queue.ack(consumer, ack(delivered.get(i))));
+            }
+        }
+        Assertions.assertEquals(0, queue.pending(consumer));
+
+        // the holes left by the acknowledgements are reused
+        for (int i = 0; i < 1000; i++) {
+            queue.dispatch(null, order(i));
+        }
+        delivered = written(consumer, 1100).subList(100, 1100);
+        for (int i = 1; i < 1000; i += 2) {
+            Assertions.assertTrue(queue.nack(consumer, new Frame(Command.NACK,
+                    Headers.create(Frame.ID, delivered.get(i).getHeader(Frame.ACK)), null)));
+        }
+        Assertions.assertEquals(500, queue.pending(consumer));
+        Mockito.verify(handler, Mockito.times(500)).onNack(Mockito.any(), Mockito.any(), Mockito.anyList());
+    }
+
+    @Test
+    void test_AckQueue_AcknowledgesCumulativelyPerSubscription() {
+        AckQueue queue = new AckQueue(QUEUE);
+        StompServerHandler handler = Mockito.mock(StompServerHandler.class);
+        StompServerConnection first = consumer(handler);
+        StompServerConnection second = consumer(handler);
+        queue.subscribe(first, subscribe("client"));
+        queue.subscribe(second, subscribe("auto"));
+        for (int i = 0; i < 6; i++) {
+            queue.dispatch(null, order(i));
+        }
+        List<Frame> delivered = written(first, 3);
+        Assertions.assertEquals(List.of("order-0", "order-2", "order-4"),
+                delivered.stream().map(Frame::getBodyAsString).collect(Collectors.toList()));
+        Assertions.assertNull(written(second, 3).get(0).getHeader(Frame.ACK));
+        Assertions.assertEquals(0, queue.pending(second));
+
+        Assertions.assertTrue(queue.ack(first, ack(delivered.get(1))));
+        Assertions.assertEquals(List.of("order-0", "order-2"), acked(handler, 1));
+        Assertions.assertFalse(queue.ack(first, ack(delivered.get(0))));
+        Assertions.assertEquals(1, queue.pending(first));
+
+        Assertions.assertTrue(queue.unsubscribe(first, subscribe("client")));
+        Assertions.assertEquals(1, queue.numberOfSubscriptions());
+        Assertions.assertFalse(queue.ack(first, ack(delivered.get(2))));
+    }
+
+    @Test
+    void test_AckQueue_SkipsSubscriptionsWhichHoldTheirPrefetchCount() {
+        AckQueue queue = new AckQueue(QUEUE, 1);
+        StompServerHandler handler = Mockito.mock(StompServerHandler.class);
+        StompServerConnection slow = consumer(handler);
+        StompServerConnection fast = consumer(handler);
+        queue.subscribe(slow, subscribe("client-individual"));
+        Frame subscribe = subscribe("client-individual");
+        subscribe.addHeader(AckQueue.PREFETCH_COUNT, "3");
+        queue.subscribe(fast, subscribe);
+        for (int i = 0; i < 6; i++) {
+            queue.dispatch(null, order(i));
+        }
+        Assertions.assertTrue(queue.isSaturated());
+        Assertions.assertEquals(2, queue.backlog());
+        List<Frame> toSlow = written(slow, 1);
+        List<Frame> toFast = written(fast, 3);
+        Assertions.assertEquals("order-0", toSlow.get(0).getBodyAsString());
+        Assertions.assertEquals("order-3", toFast.get(2).getBodyAsString());
+
+        Assertions.assertTrue(queue.ack(fast, ack(toFast.get(0))));
+        Assertions.assertEquals("order-4", written(fast, 4).get(3).getBodyAsString());
+        Assertions.assertTrue(queue.ack(slow, ack(toSlow.get(0))));
+        Assertions.assertEquals("order-5", written(slow, 2).get(1).getBodyAsString());
+        Assertions.assertEquals(0, queue.backlog());
+
+        Assertions.assertTrue(queue.ack(fast, ack(toFast.get(1))));
+        Assertions.assertFalse(queue.isSaturated());
+        queue.dispatch(null, order(6));
+        Assertions.assertEquals("order-6", written(fast, 5).get(4).getBodyAsString());
+    }
+
+    @Test
+    void test_AckQueue_BoundsTheBacklogAndClearsItWithTheLastSubscription() {
+        AckQueue queue = new AckQueue(QUEUE, 1, 2, BacklogPolicy.DROP_OLDEST);
+        StompServerHandler handler = Mockito.mock(StompServerHandler.class);
+        StompServerConnection consumer = consumer(handler);
+        queue.subscribe(consumer, subscribe("client-individual"));
+        for (int i = 0; i < 5; i++) {
+            queue.dispatch(null, order(i));
+        }
+        Assertions.assertEquals(2, queue.backlog());
+        Assertions.assertEquals(2, queue.droppedFrames());
+        Assertions.assertTrue(queue.ack(consumer, ack(written(consumer, 1).get(0))));
+        Assertions.assertEquals("order-3", written(consumer, 2).get(1).getBodyAsString());
+
+        Assertions.assertTrue(queue.unsubscribe(consumer, subscribe("client-individual")));
+        Assertions.assertEquals(0, queue.backlog());
+        Assertions.assertFalse(queue.isSaturated());
+
+        queue = new AckQueue(QUEUE, 1, 1, BacklogPolicy.REJECT);
+        consumer = consumer(handler);
+        queue.subscribe(consumer, subscribe("client-individual"));
+        StompServerConnection producer = Mockito.mock(StompServerConnection.class);
+        queue.dispatch(producer, order(0));
+        queue.dispatch(producer, order(1));
+        Frame send = order(2);
+        send.addHeader(Frame.RECEIPT, "r-2");
+        queue.dispatch(producer, send);
+        Assertions.assertEquals(1, queue.backlog());
+        Frame error = written(producer, 1).get(0);
+        Assertions.assertEquals(Command.ERROR, error.getCommand());
+        Assertions.assertEquals("Queue full", error.getHeader(Frame.MESSAGE));
+        Assertions.assertEquals("r-2", error.getHeader(Frame.RECEIPT_ID));
+        Mockito.verify(producer).close();
+
+        queue.unsubscribeConnection(consumer);
+        Assertions.assertEquals(0, queue.backlog());
+    }
+
+    @Test
+    void test_AckQueue_DropsTheNewFrameWithoutABacklog() {
+        AckQueue queue = new AckQueue(QUEUE, 1, 0, BacklogPolicy.DROP_OLDEST);
+        StompServerConnection consumer = consumer(Mockito.mock(StompServerHandler.class));
+        queue.subscribe(consumer, subscribe("client-individual"));
+        queue.dispatch(null, order(0));
+        queue.dispatch(null, order(1));
+        queue.dispatch(null, order(2));
+        Assertions.assertEquals(0, queue.backlog());
+        Assertions.assertEquals(2, queue.droppedFrames());
+        Assertions.assertEquals("order-0", written(consumer, 1).get(0).getBodyAsString());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new AckQueue(QUEUE, 1, -1, BacklogPolicy.DROP_OLDEST));
+    }
+}
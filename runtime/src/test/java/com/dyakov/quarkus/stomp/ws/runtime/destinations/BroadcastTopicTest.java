@@ -0,0 +1,58 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.MessageInterceptor;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+
+class BroadcastTopicTest {
+
+    static final String TOPIC = "/news";
+
+    static Frame news(String region) {
+        return new Frame(Command.SEND, Headers.create(Frame.DESTINATION, TOPIC, "region", region),
+                Buffer.buffer("news of " + region));
+    }
+
+    static StompServerConnection subscriber(BroadcastTopic topic, String session, String id) {
+        StompServerConnection connection = Mockito.mock(StompServerConnection.class);
+        Mockito.when(connection.session()).thenReturn(session);
+        topic.subscribe(connection, new Frame(Command.SUBSCRIBE,
+                Headers.create(Frame.ID, id, Frame.DESTINATION, TOPIC), null));
+        return connection;
+    }
+
+    @Test
+    void test_BroadcastTopic_FiltersEverySubscriberWithTheMessageInterceptors() {
+        MessageInterceptor europe = (frame, subscriber) -> !"session-us".equals(subscriber.session())
+                || !"eu".equals(frame.getHeader("region"));
+        MessageInterceptor america = (frame, subscriber) -> !"session-eu".equals(subscriber.session())
+                || !"us".equals(frame.getHeader("region"));
+        BroadcastTopic topic = new BroadcastTopic(TOPIC, MessageInterceptor.chain(Arrays.asList(europe, america)));
+        StompServerConnection eu = subscriber(topic, "session-eu", "sub-0");
+        StompServerConnection us = subscriber(topic, "session-us", "sub-1");
+
+        topic.dispatch(null, news("eu"));
+        topic.dispatch(null, news("us"));
+        topic.dispatch(null, news("asia"));
+
+        ArgumentCaptor<Frame> frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(eu, Mockito.times(2)).write(frames.capture());
+        Assertions.assertEquals("news of eu", frames.getAllValues().get(0).getBodyAsString());
+        Assertions.assertEquals("news of asia", frames.getAllValues().get(1).getBodyAsString());
+        Assertions.assertEquals("sub-0", frames.getAllValues().get(0).getHeader(Frame.SUBSCRIPTION));
+
+        frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(us, Mockito.times(2)).write(frames.capture());
+        Assertions.assertEquals("news of us", frames.getAllValues().get(0).getBodyAsString());
+        Assertions.assertEquals("news of asia", frames.getAllValues().get(1).getBodyAsString());
+    }
+}
@@ -0,0 +1,103 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class ConflatedTopicTest {
+
+    static final String TOPIC = "/prices";
+
+    static Frame tick(String symbol, String price) {
+        return new Frame(Command.SEND, Headers.create(Frame.DESTINATION, TOPIC, "symbol", symbol),
+                Buffer.buffer(price));
+    }
+
+    static Frame subscribe(String id) {
+        return new Frame(Command.SUBSCRIBE, Headers.create(Frame.ID, id, Frame.DESTINATION, TOPIC), null);
+    }
+
+    @Test
+    void test_ConflatedTopic_ReplaysTheLastFrameOfEveryKeyOnSubscribe() {
+        ConflatedTopic topic = new ConflatedTopic(TOPIC, "symbol", 2, null);
+        topic.dispatch(null, tick("AAPL", "150"));
+        topic.dispatch(null, tick("MSFT", "300"));
+        topic.dispatch(null, tick("AAPL", "151"));
+        // beyond the key limit, not remembered
+        topic.dispatch(null, tick("NVDA", "400"));
+        Assertions.assertEquals(2, topic.keys());
+
+        StompServerConnection subscriber = Mockito.mock(StompServerConnection.class);
+        topic.subscribe(subscriber, subscribe("sub-0"));
+        ArgumentCaptor<Frame> frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(subscriber, Mockito.times(2)).write(frames.capture());
+        List<String> replayed = frames.getAllValues().stream()
+                .map(frame -> frame.getHeader("symbol") + " " + frame.getBodyAsString())
+                .sorted()
+                .collect(Collectors.toList());
+        Assertions.assertEquals(List.of("AAPL 151", "MSFT 300"), replayed);
+        Assertions.assertEquals(Command.MESSAGE, frames.getValue().getCommand());
+        Assertions.assertEquals("sub-0", frames.getValue().getHeader(Frame.SUBSCRIPTION));
+
+        topic.dispatch(null, tick("AAPL", "152"));
+        Mockito.verify(subscriber, Mockito.times(3)).write(Mockito.any(Frame.class));
+    }
+
+    @Test
+    void test_ConflationSlots_GrowAndReplaceInPlace() {
+        ConflationSlots slots = new ConflationSlots(1000);
+        for (int i = 0; i < 500; i++) {
+            Assertions.assertTrue(slots.put("key-" + i, tick("key-" + i, "1")));
+        }
+        for (int i = 0; i < 500; i += 2) {
+            slots.put("key-" + i, tick("key-" + i, "2"));
+        }
+        Assertions.assertEquals(500, slots.size());
+        Assertions.assertEquals("2", slots.get("key-10").getBodyAsString());
+        Assertions.assertEquals("1", slots.get("key-11").getBodyAsString());
+        Assertions.assertNull(slots.get("key-500"));
+        Assertions.assertEquals(500, slots.frames().size());
+    }
+
+    @Test
+    void test_ConflatedTopic_NeverReplaysAStaleFrameAfterANewerOne() throws Exception {
+        ConflatedTopic topic = new ConflatedTopic(TOPIC, "symbol", 2, null);
+        topic.dispatch(null, tick("AAPL", "0"));
+        Thread publisher = new Thread(() -> {
+            for (int i = 1; i <= 10_000; i++) {
+                topic.dispatch(null, tick("AAPL", Integer.toString(i)));
+            }
+        });
+        publisher.start();
+        List<List<Integer>> received = new ArrayList<>();
+        for (int s = 0; s < 100; s++) {
+            List<Integer> prices = Collections.synchronizedList(new ArrayList<>());
+            StompServerConnection subscriber = Mockito.mock(StompServerConnection.class);
+            Mockito.when(subscriber.write(Mockito.any(Frame.class))).thenAnswer(invocation -> {
+                prices.add(Integer.parseInt(invocation.<Frame>getArgument(0).getBodyAsString()));
+                return subscriber;
+            });
+            topic.subscribe(subscriber, subscribe("sub-" + s));
+            received.add(prices);
+        }
+        publisher.join();
+        for (List<Integer> prices : received) {
+            synchronized (prices) {
+                for (int i = 1; i < prices.size(); i++) {
+                    Assertions.assertTrue(prices.get(i - 1) < prices.get(i), prices.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.dyakov.quarkus.stomp.ws.runtime.destinations;
+
+import com.dyakov.quarkus.stomp.ws.runtime.journal.Journal;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class DurableQueueTest {
+
+    static final String QUEUE = "/orders";
+
+    @TempDir
+    Path directory;
+
+    static Frame order(String body) {
+        return new Frame(Command.SEND, Headers.create(Frame.DESTINATION, QUEUE, "priority", "high"),
+                Buffer.buffer(body));
+    }
+
+    static Frame subscribe(String id, String ack) {
+        return new Frame(Command.SUBSCRIBE, Headers.create(Frame.ID, id, Frame.DESTINATION, QUEUE, Frame.ACK, ack),
+                null);
+    }
+
+    static Frame ack(Command command, String id) {
+        return new Frame(command, Headers.create(Frame.ID, id), null);
+    }
+
+    static List<Frame> written(StompServerConnection connection, int times) {
+        ArgumentCaptor<Frame> frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(connection, Mockito.times(times)).write(frames.capture());
+        return frames.getAllValues();
+    }
+
+    static List<String> bodies(List<Frame> frames) {
+        return frames.stream().map(Frame::getBodyAsString).collect(Collectors.toList());
+    }
+
+    @Test
+    void test_DurableQueue_RedeliversTheUnacknowledgedFramesAfterARestart() throws Exception {
+        Journal journal = Journal.open(directory, 4096, 0);
+        DurableQueue queue = new DurableQueue(QUEUE, journal);
+        queue.dispatch(null, order("order-0"));
+        StompServerConnection consumer = Mockito.mock(StompServerConnection.class);
+        queue.subscribe(consumer, subscribe("sub-0", "client-individual"));
+        queue.dispatch(null, order("order-1"));
+        queue.dispatch(null, order("order-2"));
+
+        List<Frame> delivered = written(consumer, 3);
+        Assertions.assertEquals(List.of("order-0", "order-1", "order-2"), bodies(delivered));
+        Assertions.assertEquals("sub-0", delivered.get(1).getHeader(Frame.SUBSCRIPTION));
+        Assertions.assertEquals("high", delivered.get(1).getHeader("priority"));
+        Assertions.assertTrue(queue.ack(consumer, ack(Command.ACK, delivered.get(1).getHeader(Frame.ACK))));
+        Assertions.assertFalse(queue.ack(Mockito.mock(StompServerConnection.class),
+                ack(Command.ACK, delivered.get(0).getHeader(Frame.ACK))));
+        journal.close();
+
+        journal = Journal.open(directory, 4096, 0);
+        queue = new DurableQueue(QUEUE, journal);
+        Assertions.assertEquals(2, queue.undelivered());
+        StompServerConnection restarted = Mockito.mock(StompServerConnection.class);
+        queue.subscribe(restarted, subscribe("sub-0", "auto"));
+        List<Frame> redelivered = written(restarted, 2);
+        Assertions.assertEquals(List.of("order-0", "order-2"), bodies(redelivered));
+        Assertions.assertEquals(delivered.get(0).getHeader(Frame.MESSAGE_ID),
+                redelivered.get(0).getHeader(Frame.MESSAGE_ID));
+        journal.close();
+
+        journal = Journal.open(directory, 4096, 0);
+        Assertions.assertEquals(0, new DurableQueue(QUEUE, journal).undelivered());
+        journal.close();
+    }
+
+    @Test
+    void test_DurableQueue_GivesNackedAndOrphanedFramesToTheNextSubscriber() throws Exception {
+        Journal journal = Journal.open(directory, 4096, 0);
+        DurableQueue queue = new DurableQueue(QUEUE, journal);
+        StompServerConnection first = Mockito.mock(StompServerConnection.class);
+        StompServerConnection second = Mockito.mock(StompServerConnection.class);
+        queue.subscribe(first, subscribe("sub-0", "client"));
+        queue.subscribe(second, subscribe("sub-0", "client"));
+        for (int i = 0; i < 4; i++) {
+            queue.dispatch(null, order("order-" + i));
+        }
+        List<Frame> toFirst = written(first, 2);
+        Assertions.assertEquals(List.of("order-0", "order-2"), bodies(toFirst));
+
+        Assertions.assertTrue(queue.nack(first, ack(Command.NACK, toFirst.get(0).getHeader(Frame.ACK))));
+        Assertions.assertEquals(List.of("order-1", "order-3"), bodies(written(second, 2)));
+
+        queue.unsubscribeConnection(second);
+        List<Frame> all = written(first, 5);
+        Assertions.assertEquals(List.of("order-0", "order-2", "order-0", "order-1", "order-3"), bodies(all));
+        // cumulative, acknowledges every frame delivered to the subscription
+        Assertions.assertTrue(queue.ack(first, ack(Command.ACK, all.get(4).getHeader(Frame.ACK))));
+        Assertions.assertEquals(4, journal.watermark());
+        journal.close();
+    }
+}
@@ -0,0 +1,161 @@
+package com.dyakov.quarkus.stomp.ws.runtime.handlers;
+
+import com.dyakov.quarkus.stomp.ws.runtime.DestinationProvider;
+import com.dyakov.quarkus.stomp.ws.runtime.TestDestinationProvider;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.ConnectInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SendInterceptor;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.StompInterceptors;
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SubscribeAuthorizer;
+import com.dyakov.quarkus.stomp.ws.runtime.routing.DestinationIndex;
+import com.dyakov.quarkus.stomp.ws.runtime.transactions.StagedTransactions;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServer;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.StompServerOptions;
+import io.vertx.ext.stomp.impl.ServerFrameImpl;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class IndexedStompServerHandlerTest {
+
+    static final String QUOTES = "/quotes";
+
+    Vertx vertx;
+    StompServerConnection connection;
+    IndexedStompServerHandler handler;
+    List<Frame> sent = new ArrayList<>();
+    List<Frame> connected = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        connection = Mockito.mock(StompServerConnection.class);
+        Mockito.when(connection.session()).thenReturn("session-0");
+        // the heartbeats of an accepted CONNECT are negotiated with the options of the server
+        StompServer server = Mockito.mock(StompServer.class);
+        Mockito.when(server.options()).thenReturn(new StompServerOptions());
+        Mockito.when(connection.server()).thenReturn(server);
+        handler = new IndexedStompServerHandler(vertx,
+                new DestinationIndex(List.of(new TestDestinationProvider(QUOTES)), 16));
+        handler.sendHandler(serverFrame -> sent.add(serverFrame.frame()));
+        handler.connectHandler(serverFrame -> connected.add(serverFrame.frame()));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    ServerFrame frame(Command command, String... headers) {
+        return new ServerFrameImpl(new Frame(command, Headers.create(headers), Buffer.buffer("AAPL 150")),
+                connection);
+    }
+
+    void assertClosedWith(String message, String receiptId) {
+        ArgumentCaptor<Frame> frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(connection).write(frames.capture());
+        Assertions.assertEquals(Command.ERROR, frames.getValue().getCommand());
+        Assertions.assertEquals(message, frames.getValue().getHeader(Frame.MESSAGE));
+        Assertions.assertEquals(receiptId, frames.getValue().getHeader(Frame.RECEIPT_ID));
+        Mockito.verify(connection).close();
+    }
+
+    @Test
+    void test_IndexedStompServerHandler_DispatchesTheFrameOfTheSendInterceptors() {
+        SendInterceptor enrich = (frame, connection) -> {
+            Headers headers = Headers.create(frame.getHeaders()).add("sender", connection.session());
+            return new Frame(frame.getCommand(), headers, frame.getBody());
+        };
+        SendInterceptor validate = (frame, connection) -> frame.getHeader("sender") == null ? null : frame;
+        handler.interceptors(new StompInterceptors(SendInterceptor.chain(Arrays.asList(enrich, validate)), null,
+                null));
+
+        handler.handle(frame(Command.SEND, Frame.DESTINATION, QUOTES));
+        Assertions.assertEquals(1, sent.size());
+        Assertions.assertEquals("session-0", sent.get(0).getHeader("sender"));
+        Assertions.assertEquals(QUOTES, sent.get(0).getDestination());
+        Assertions.assertEquals("AAPL 150", sent.get(0).getBodyAsString());
+        Mockito.verify(connection, Mockito.never()).close();
+    }
+
+    @Test
+    void test_IndexedStompServerHandler_ClosesWhenASendInterceptorRejects() {
+        handler.interceptors(new StompInterceptors((frame, connection) -> null, null, null));
+
+        handler.handle(frame(Command.SEND, Frame.DESTINATION, QUOTES, Frame.RECEIPT, "r-0"));
+        Assertions.assertTrue(sent.isEmpty());
+        assertClosedWith("Message rejected", "r-0");
+    }
+
+    @Test
+    void test_IndexedStompServerHandler_ClosesWhenAConnectInterceptorRefuses() {
+        ConnectInterceptor refuse = (frame, connection) -> !"guest".equals(frame.getHeader(Frame.LOGIN));
+        handler.interceptors(new StompInterceptors(null, null, refuse));
+
+        handler.handle(frame(Command.CONNECT, Frame.LOGIN, "user", Frame.ACCEPT_VERSION, "1.2"));
+        Assertions.assertEquals(1, connected.size());
+        Mockito.verify(connection, Mockito.never()).close();
+
+        handler.handle(frame(Command.STOMP, Frame.LOGIN, "guest", Frame.ACCEPT_VERSION, "1.2"));
+        Assertions.assertEquals(1, connected.size());
+        assertClosedWith("Connection refused", null);
+    }
+
+    @Test
+    void test_IndexedStompServerHandler_UnsubscribesThePerNameDestinationsAuthorizedLaterOnClose() {
+        DestinationProvider channels = new TestDestinationProvider("/channels",
+                DestinationProvider.DestinationType.TOPIC, true);
+        handler = new IndexedStompServerHandler(vertx, new DestinationIndex(List.of(channels), 16));
+        handler.destinationFactory(Destination::topic);
+        CompletableFuture<Boolean> decision = new CompletableFuture<>();
+        handler.subscribeHandler(new SubscribeHandler(null, new SubscribeAuthorizer(vertx,
+                (principal, name, serverFrame) -> Uni.createFrom().completionStage(decision),
+                60_000, 100, 5_000, false)));
+        Mockito.when(connection.handler()).thenReturn(handler);
+
+        handler.handle(frame(Command.SUBSCRIBE, Frame.ID, "sub-0", Frame.DESTINATION, "/channels/a"));
+        Assertions.assertNull(channels.getNamedDestination("/channels/a"));
+        decision.complete(true);
+        Destination destination = channels.getNamedDestination("/channels/a");
+        Assertions.assertEquals(1, destination.numberOfSubscriptions());
+        Assertions.assertTrue(handler.getDestinations(connection).contains(destination));
+
+        handler.onClose(connection);
+        Assertions.assertEquals(0, destination.numberOfSubscriptions());
+        Assertions.assertEquals(1, channels.evictIdleDestinations(0));
+        Assertions.assertNull(channels.getNamedDestination("/channels/a"));
+    }
+
+    @Test
+    void test_IndexedStompServerHandler_FailsTheWholeCommitWhenADestinationHasNoSubscriptions() {
+        Mockito.when(connection.server().options())
+                .thenReturn(new StompServerOptions().setSendErrorOnNoSubscriptions(true));
+        Mockito.when(connection.handler()).thenReturn(handler);
+        handler.transactions(new StagedTransactions(vertx, 10, 1024 * 1024, 0));
+        handler.handle(frame(Command.SUBSCRIBE, Frame.ID, "sub-0", Frame.DESTINATION, QUOTES));
+
+        handler.handle(frame(Command.BEGIN, Frame.TRANSACTION, "tx-0"));
+        handler.handle(frame(Command.SEND, Frame.DESTINATION, QUOTES, Frame.TRANSACTION, "tx-0"));
+        handler.handle(frame(Command.SEND, Frame.DESTINATION, "/news", Frame.TRANSACTION, "tx-0"));
+        handler.handle(frame(Command.COMMIT, Frame.TRANSACTION, "tx-0", Frame.RECEIPT, "r-0"));
+        // the MESSAGE of /quotes is not delivered ahead of the ERROR
+        assertClosedWith("No subscriptions", "r-0");
+    }
+}
@@ -0,0 +1,99 @@
+package com.dyakov.quarkus.stomp.ws.runtime.handlers;
+
+import com.dyakov.quarkus.stomp.ws.runtime.interceptors.SubscribeAuthorizer;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.StompServerHandler;
+import io.vertx.ext.stomp.impl.ServerFrameImpl;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+class SubscribeHandlerTest {
+
+    static final String QUOTES = "/quotes";
+
+    Vertx vertx;
+    StompServerConnection connection;
+    Destination destination;
+    /** The pending decisions, by subscription id */
+    Map<String, CompletableFuture<Boolean>> decisions = new ConcurrentHashMap<>();
+    SubscribeHandler subscribeHandler;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        StompServerHandler handler = Mockito.mock(StompServerHandler.class);
+        destination = Mockito.mock(Destination.class);
+        Mockito.when(handler.getOrCreateDestination(QUOTES)).thenReturn(destination);
+        Mockito.when(destination.subscribe(Mockito.any(), Mockito.any())).thenReturn(destination);
+        connection = Mockito.mock(StompServerConnection.class);
+        Mockito.when(connection.session()).thenReturn("session-0");
+        Mockito.when(connection.handler()).thenReturn(handler);
+        subscribeHandler = new SubscribeHandler(null, new SubscribeAuthorizer(vertx,
+                (principal, name, serverFrame) -> Uni.createFrom().completionStage(
+                        decisions.computeIfAbsent(serverFrame.frame().getId(), id -> new CompletableFuture<>())),
+                60_000, 100, 5_000, false));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    void subscribe(String id) {
+        subscribeHandler.handle(new ServerFrameImpl(new Frame(Command.SUBSCRIBE,
+                Headers.create(Frame.ID, id, Frame.DESTINATION, QUOTES), null), connection));
+    }
+
+    @Test
+    void test_SubscribeHandler_SubscribesOrClosesOnTheDecision() {
+        subscribe("sub-0");
+        Mockito.verify(destination, Mockito.never()).subscribe(Mockito.any(), Mockito.any());
+        decisions.get("sub-0").complete(true);
+        Mockito.verify(destination).subscribe(Mockito.eq(connection), Mockito.any());
+
+        subscribe("sub-1");
+        decisions.get("sub-1").complete(false);
+        Mockito.verify(destination, Mockito.times(1)).subscribe(Mockito.any(), Mockito.any());
+        ArgumentCaptor<Frame> frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(connection).write(frames.capture());
+        Assertions.assertEquals(Command.ERROR, frames.getValue().getCommand());
+        Assertions.assertEquals("Subscription denied", frames.getValue().getHeader(Frame.MESSAGE));
+        Assertions.assertEquals(QUOTES, frames.getValue().getHeader(Frame.DESTINATION));
+        Mockito.verify(connection).close();
+    }
+
+    @Test
+    void test_SubscribeHandler_DropsTheSubscriptionsCancelledBeforeTheDecision() {
+        subscribe("sub-0");
+        subscribe("sub-1");
+        // an UNSUBSCRIBE of the first one, then the close of the connection
+        Assertions.assertTrue(subscribeHandler.cancel(connection, "sub-0"));
+        Assertions.assertFalse(subscribeHandler.cancel(connection, "sub-0"));
+        subscribeHandler.cancel(connection);
+        decisions.get("sub-0").complete(true);
+        decisions.get("sub-1").complete(true);
+        Mockito.verify(destination, Mockito.never()).subscribe(Mockito.any(), Mockito.any());
+        Mockito.verify(connection, Mockito.never()).write(Mockito.any(Frame.class));
+
+        // the denial of a subscription dropped meanwhile does not close the connection either
+        subscribe("sub-2");
+        subscribeHandler.cancel(connection);
+        decisions.get("sub-2").complete(false);
+        Mockito.verify(connection, Mockito.never()).close();
+    }
+}
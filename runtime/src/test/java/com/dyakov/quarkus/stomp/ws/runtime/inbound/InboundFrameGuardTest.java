@@ -0,0 +1,138 @@
+package com.dyakov.quarkus.stomp.ws.runtime.inbound;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class InboundFrameGuardTest {
+
+    StompConnectionOptions options;
+    Buffer passed;
+    List<String> errors;
+
+    @BeforeEach
+    void setUp() {
+        options = new StompConnectionOptions();
+        options.setInboundMaxFrameBytes(300);
+        options.setInboundMaxHeaders(3);
+        options.setInboundMaxHeaderBytes(40);
+        options.setInboundMaxBodyBytes(100);
+        options.setInboundStreamThresholdBytes(10);
+        passed = Buffer.buffer();
+        errors = new ArrayList<>();
+    }
+
+    InboundFrameGuard guard(LargeBodySink sink) {
+        return new InboundFrameGuard(options, sink, null, passed::appendBuffer,
+                exception -> errors.add(exception.getMessage()));
+    }
+
+    /**
+     * Feeds {@code frames} in chunks of {@code chunk} bytes, like WebSocket messages splitting them.
+     */
+    static void feed(InboundFrameGuard guard, String frames, int chunk) {
+        Buffer buffer = Buffer.buffer(frames);
+        for (int i = 0; i < buffer.length(); i += chunk) {
+            guard.handle(buffer.getBuffer(i, Math.min(buffer.length(), i + chunk)));
+        }
+    }
+
+    @Test
+    void test_InboundFrameGuard_PassesTheFramesWithinTheLimitsUnchanged() {
+        String frames = "CONNECT\naccept-version:1.2\n\n\0\n\nSEND\ndestination:/a\ncontent-length:5\n\nhello\0"
+                + "SEND\ndestination:/a\n\nworld\0";
+        for (int chunk : new int[]{1, 7, 1000}) {
+            setUp();
+            feed(guard(null), frames, chunk);
+            Assertions.assertEquals(frames, passed.toString(), "chunks of " + chunk);
+            Assertions.assertEquals(List.of(), errors);
+        }
+    }
+
+    @Test
+    void test_InboundFrameGuard_FailsEarlyBeyondTheLimits() {
+        feed(guard(null), "SEND\ncontent-length:1000\n\n", 1000);
+        Assertions.assertEquals(List.of("Body too large, 1000 bytes declared, more than 100"), errors);
+
+        setUp();
+        feed(guard(null), "SEND\n\n" + "x".repeat(10_000), 7);
+        Assertions.assertEquals(List.of("Body too large, more than 100 bytes"), errors);
+        Assertions.assertTrue(passed.length() < 120, "buffered " + passed.length());
+
+        setUp();
+        feed(guard(null), "SEND\na:1\nb:2\nc:3\nd:4\n\n\0", 2);
+        Assertions.assertEquals(List.of("Too many headers, more than 3"), errors);
+
+        setUp();
+        feed(guard(null), "SEND\r\nlong:" + "y".repeat(60), 5);
+        Assertions.assertEquals(List.of("Header line too long, more than 40 bytes"), errors);
+    }
+
+    @Test
+    void test_InboundFrameGuard_StreamsTheLargeSendBodiesToTheSink() {
+        StringBuilder received = new StringBuilder();
+        LargeBodySink sink = (connection, headers) -> {
+            received.append(headers.get("destination")).append(':');
+            return new LargeBodySink.LargeBody() {
+                @Override
+                public void chunk(Buffer chunk) {
+                    received.append(chunk);
+                }
+
+                @Override
+                public Buffer end() {
+                    return Buffer.buffer("upload-1");
+                }
+
+                @Override
+                public void abort() {
+                    received.append("aborted");
+                }
+            };
+        };
+        String upload = "x".repeat(50);
+        String frames = "\nCONNECT\n\n\0SEND\ndestination:/uploads\ncontent-length:50\n\n" + upload + "\0"
+                + "SEND\ndestination:/a\ncontent-length:5\n\nhello\0\n";
+        for (int chunk : new int[]{1, 13, 1000}) {
+            setUp();
+            received.setLength(0);
+            feed(guard(sink), frames, chunk);
+            Assertions.assertEquals("/uploads:" + upload, received.toString(), "chunks of " + chunk);
+            Assertions.assertEquals("\nCONNECT\n\n\0SEND\ndestination:/uploads\ncontent-length:8\n\nupload-1\0"
+                    + "SEND\ndestination:/a\ncontent-length:5\n\nhello\0\n", passed.toString());
+        }
+
+        setUp();
+        received.setLength(0);
+        InboundFrameGuard guard = guard(sink);
+        feed(guard, "SEND\ndestination:/uploads\ncontent-length:50\n\nxxx", 1000);
+        guard.close();
+        Assertions.assertEquals("/uploads:xxxaborted", received.toString());
+
+        // a body longer than its content-length is not handed over
+        setUp();
+        received.setLength(0);
+        guard = guard(sink);
+        feed(guard, "SEND\ndestination:/uploads\ncontent-length:50\n\n" + upload + "x\0", 1000);
+        Assertions.assertEquals(List.of("Body not terminated by NUL after its content-length"), errors);
+        Assertions.assertEquals("/uploads:" + upload + "aborted", received.toString());
+        Assertions.assertEquals("", passed.toString());
+        guard.close();
+    }
+
+    @Test
+    void test_InboundFrameGuard_ReleasesTheHeldHeadersOnFailure() {
+        InboundFrameGuard guard = guard((connection, headers) -> null);
+        feed(guard, "SEND\na:1\nb:2\nc:3\nd:4\n\n\0", 1000);
+        Assertions.assertEquals(List.of("Too many headers, more than 3"), errors);
+        Assertions.assertEquals(0, guard.heldHeaders().refCnt());
+        // the connection is closed afterwards
+        guard.close();
+        Assertions.assertEquals(1, errors.size());
+    }
+}
@@ -0,0 +1,124 @@
+package com.dyakov.quarkus.stomp.ws.runtime.interceptors;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+class SubscribeAuthorizerTest {
+
+    Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    static ServerFrame subscribe(String login, String destination) {
+        ServerFrame serverFrame = Mockito.mock(ServerFrame.class);
+        Mockito.when(serverFrame.frame()).thenReturn(new Frame(Command.SUBSCRIBE,
+                Headers.create(Frame.ID, "sub-0", Frame.DESTINATION, destination, "login", login), null));
+        return serverFrame;
+    }
+
+    static boolean result(CompletionStage<Boolean> decision) throws Exception {
+        return decision.toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Takes the principal from the login header of the frame, and counts the lookups.
+     */
+    static class CountingInterceptor implements AsyncSubscribeInterceptor {
+        final AtomicInteger lookups = new AtomicInteger();
+        final Supplier<Uni<Boolean>> decision;
+
+        CountingInterceptor(Supplier<Uni<Boolean>> decision) {
+            this.decision = decision;
+        }
+
+        @Override
+        public Uni<Boolean> authorize(String principal, String destination, ServerFrame serverFrame) {
+            lookups.incrementAndGet();
+            return decision.get();
+        }
+
+        @Override
+        public String principal(ServerFrame serverFrame) {
+            return serverFrame.frame().getHeader("login");
+        }
+    }
+
+    @Test
+    void test_SubscribeAuthorizer_CoalescesConcurrentChecksAndCachesTheDecision() throws Exception {
+        CompletableFuture<Boolean> lookup = new CompletableFuture<>();
+        CountingInterceptor interceptor = new CountingInterceptor(() -> Uni.createFrom().completionStage(lookup));
+        SubscribeAuthorizer authorizer = new SubscribeAuthorizer(vertx, interceptor, 60_000, 100, 5_000, false);
+
+        CompletionStage<Boolean> first = authorizer.authorize(subscribe("alice", "/quotes"));
+        CompletionStage<Boolean> second = authorizer.authorize(subscribe("alice", "/quotes"));
+        Assertions.assertEquals(1, interceptor.lookups.get());
+        Assertions.assertFalse(first.toCompletableFuture().isDone());
+
+        lookup.complete(true);
+        Assertions.assertTrue(result(first));
+        Assertions.assertTrue(result(second));
+        Assertions.assertTrue(result(authorizer.authorize(subscribe("alice", "/quotes"))));
+        Assertions.assertEquals(1, interceptor.lookups.get());
+
+        authorizer.authorize(subscribe("bob", "/quotes"));
+        authorizer.authorize(subscribe("alice", "/orders"));
+        Assertions.assertEquals(3, interceptor.lookups.get());
+    }
+
+    @Test
+    void test_SubscribeAuthorizer_DeniesWithoutCachingOnFailureAndTimeout() throws Exception {
+        CountingInterceptor failing = new CountingInterceptor(
+                () -> Uni.createFrom().failure(new IllegalStateException("database down")));
+        SubscribeAuthorizer authorizer = new SubscribeAuthorizer(vertx, failing, 60_000, 100, 5_000, false);
+        Assertions.assertFalse(result(authorizer.authorize(subscribe("alice", "/quotes"))));
+        Assertions.assertFalse(result(authorizer.authorize(subscribe("alice", "/quotes"))));
+        Assertions.assertEquals(2, failing.lookups.get());
+        Assertions.assertEquals(0, authorizer.size());
+
+        CountingInterceptor silent = new CountingInterceptor(() -> Uni.createFrom().nothing());
+        authorizer = new SubscribeAuthorizer(vertx, silent, 60_000, 100, 50, false);
+        Assertions.assertFalse(result(authorizer.authorize(subscribe("alice", "/quotes"))));
+    }
+
+    @Test
+    void test_SubscribeAuthorizer_EvictsWhenFullAndOffloadsToWorkers() throws Exception {
+        List<Boolean> workerThreads = new CopyOnWriteArrayList<>();
+        CountingInterceptor blocking = new CountingInterceptor(() -> {
+            workerThreads.add(Context.isOnWorkerThread());
+            return Uni.createFrom().item(true);
+        });
+        SubscribeAuthorizer authorizer = new SubscribeAuthorizer(vertx, blocking, 60_000, 10, 5_000, true);
+        for (int i = 0; i < 25; i++) {
+            Assertions.assertTrue(result(authorizer.authorize(subscribe("user-" + i, "/quotes"))));
+        }
+        Assertions.assertTrue(authorizer.size() <= 10);
+        Assertions.assertEquals(25, workerThreads.size());
+        Assertions.assertFalse(workerThreads.contains(false));
+    }
+}
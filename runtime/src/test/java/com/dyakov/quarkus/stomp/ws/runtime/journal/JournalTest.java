@@ -0,0 +1,130 @@
+package com.dyakov.quarkus.stomp.ws.runtime.journal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class JournalTest {
+
+    @TempDir
+    Path directory;
+
+    static byte[] payload(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static List<String> payloads(List<Journal.Record> records) {
+        return records.stream()
+                .map(record -> new String(record.payload(), StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void test_Journal_RecoversTheUnacknowledgedRecordsFromTheCheckpoint() throws Exception {
+        Journal journal = Journal.open(directory, 4096, 0);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(i, journal.append(payload("order-" + i)));
+        }
+        journal.ack(0);
+        journal.ack(1);
+        journal.ack(3);
+        Assertions.assertEquals(2, journal.watermark());
+        journal.close();
+
+        journal = Journal.open(directory, 4096, 0);
+        List<Journal.Record> recovered = journal.takeRecovered();
+        Assertions.assertEquals(List.of("order-2", "order-4"), payloads(recovered));
+        Assertions.assertEquals(2, recovered.get(0).sequence());
+        Assertions.assertTrue(journal.takeRecovered().isEmpty());
+        Assertions.assertEquals(5, journal.append(payload("order-5")));
+        journal.close();
+    }
+
+    @Test
+    void test_Journal_TruncatesATornRecord() throws Exception {
+        Journal journal = Journal.open(directory, 4096, 0);
+        journal.append(payload("order-0"));
+        journal.append(payload("order-1"));
+        journal.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // corrupts the payload of the second record, as if the process died while writing it
+            file.seek(Journal.RECORD_HEADER * 2 + "order-0".length());
+            file.write('X');
+        }
+
+        journal = Journal.open(directory, 4096, 0);
+        Assertions.assertEquals(List.of("order-0"), payloads(journal.takeRecovered()));
+        Assertions.assertEquals(1, journal.append(payload("order-1")));
+        journal.close();
+        journal = Journal.open(directory, 4096, 0);
+        Assertions.assertEquals(List.of("order-0", "order-1"), payloads(journal.takeRecovered()));
+        journal.close();
+    }
+
+    @Test
+    void test_Journal_RollsAndDeletesTheAcknowledgedSegments() throws Exception {
+        Journal journal = Journal.open(directory, 256, 0);
+        for (int i = 0; i < 40; i++) {
+            journal.append(payload("order-" + i));
+        }
+        Assertions.assertTrue(journal.segmentCount() > 3);
+        for (int i = 0; i < 38; i++) {
+            journal.ack(i);
+        }
+        journal.sync();
+        Assertions.assertEquals(1, journal.segmentCount());
+        journal.close();
+
+        journal = Journal.open(directory, 256, 0);
+        Assertions.assertEquals(List.of("order-38", "order-39"), payloads(journal.takeRecovered()));
+        journal.close();
+    }
+
+    @Test
+    void test_Journal_DeletesTheAcknowledgedSegmentsBehindAPendingRecord() throws Exception {
+        Journal journal = Journal.open(directory, 256, 0);
+        for (int i = 0; i < 40; i++) {
+            journal.append(payload("order-" + i));
+        }
+        int segments = journal.segmentCount();
+        // the first record stays pending, the segments after its own are deleted all the same
+        for (int i = 1; i < 38; i++) {
+            journal.ack(i);
+        }
+        journal.sync();
+        Assertions.assertEquals(0, journal.watermark());
+        Assertions.assertEquals(2, journal.segmentCount());
+        Assertions.assertTrue(segments > 3);
+        journal.close();
+
+        journal = Journal.open(directory, 256, 0);
+        Assertions.assertEquals(List.of("order-0", "order-38", "order-39"), payloads(journal.takeRecovered()));
+        Assertions.assertEquals(40, journal.append(payload("order-40")));
+        journal.close();
+    }
+
+    @Test
+    void test_Journal_GroupCommitsOnItsSyncInterval() throws Exception {
+        Journal journal = Journal.open(directory, 4096, 5);
+        journal.append(payload("order-0"));
+        journal.whenSynced().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        journal.ack(0);
+        journal.whenSynced().toCompletableFuture().get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(Files.exists(directory.resolve(Journal.CHECKPOINT)));
+        journal.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> journal.append(payload("order-1")));
+    }
+}
@@ -0,0 +1,51 @@
+package com.dyakov.quarkus.stomp.ws.runtime.metrics;
+
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.ext.stomp.Command;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class MicrometerStompMetricsTest {
+
+    @Test
+    void test_MicrometerStompMetrics_RecordsPerCommand() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerStompMetrics metrics = new MicrometerStompMetrics(registry);
+        metrics.connectionOpened();
+        metrics.connectionOpened();
+        metrics.connectionClosed();
+        metrics.frameIn(Command.SEND);
+        metrics.frameIn(Command.SEND);
+        metrics.frameOut(Command.MESSAGE);
+        metrics.frameOut(null);
+        metrics.dispatched(TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.destinationSubscriptions("/channels", () -> 42);
+        WriteQueueStats stats = new WriteQueueStats();
+        metrics.writeQueues(stats);
+        stats.queued(512);
+        stats.dropped();
+        stats.conflated();
+        stats.conflated();
+        stats.disconnected();
+
+        Assertions.assertEquals(1, registry.get("stomp.connections.active").gauge().value());
+        Assertions.assertEquals(2, registry.get("stomp.frames")
+                .tag("direction", "in").tag("command", "SEND").counter().count());
+        Assertions.assertEquals(0, registry.get("stomp.frames")
+                .tag("direction", "in").tag("command", "SUBSCRIBE").counter().count());
+        Assertions.assertEquals(1, registry.get("stomp.frames")
+                .tag("direction", "out").tag("command", "HEARTBEAT").counter().count());
+        Assertions.assertEquals(1, registry.get("stomp.frames.dispatch").timer().count());
+        Assertions.assertEquals(42, registry.get("stomp.destination.subscriptions")
+                .tag("destination", "/channels").gauge().value());
+        Assertions.assertEquals(512, registry.get("stomp.write.queue.bytes").gauge().value());
+        Assertions.assertEquals(1, registry.get("stomp.write.queue.frames")
+                .tag("outcome", "dropped").functionCounter().count());
+        Assertions.assertEquals(2, registry.get("stomp.write.queue.frames")
+                .tag("outcome", "conflated").functionCounter().count());
+        Assertions.assertEquals(1, registry.get("stomp.write.queue.disconnects").functionCounter().count());
+    }
+}
@@ -0,0 +1,42 @@
+package com.dyakov.quarkus.stomp.ws.runtime.routing;
+
+import com.dyakov.quarkus.stomp.ws.runtime.DestinationProvider;
+import com.dyakov.quarkus.stomp.ws.runtime.TestDestinationProvider;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+class DestinationIndexTest {
+
+    @Test
+    void test_DestinationIndex_LongestPrefixWins() {
+        DestinationProvider channels = new TestDestinationProvider("/channels");
+        DestinationProvider quotes = new TestDestinationProvider("/channels/quotes");
+        DestinationIndex index = new DestinationIndex(Arrays.asList(channels, quotes), 16);
+        Assertions.assertSame(quotes, index.resolve("/channels/quotes/AAPL"));
+        Assertions.assertSame(channels, index.resolve("/channels/news"));
+        Assertions.assertSame(quotes, new DestinationIndex(Arrays.asList(quotes, channels), 16)
+                .resolve("/channels/quotes/AAPL"));
+    }
+
+    @Test
+    void test_DestinationIndex_UnknownDestination() {
+        DestinationIndex index = new DestinationIndex(Arrays.asList(new TestDestinationProvider("/channels")), 16);
+        Assertions.assertNull(index.resolve("/chan"));
+        Assertions.assertNull(index.resolve("/topic/channels"));
+        Assertions.assertNull(index.resolve("/chan"));
+    }
+
+    @Test
+    void test_DestinationIndex_ResolvesBeyondCacheSize() {
+        DestinationProvider channels = new TestDestinationProvider("/channels");
+        DestinationIndex index = new DestinationIndex(Arrays.asList(channels), 2);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertSame(channels, index.resolve("/channels/" + i));
+        }
+        Assertions.assertSame(channels, index.resolve("/channels/0"));
+        Assertions.assertNull(index.resolve("/chan/0"));
+        Assertions.assertSame(channels, index.resolve("/channels/9"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.dyakov.quarkus.stomp.ws.runtime.selectors;
+
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BroadcastTopic;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+class SelectorTest {
+
+    static final String TOPIC = "/channels/quotes";
+
+    static Frame quote(String symbol, String price) {
+        return new Frame(Command.SEND, Headers.create(Frame.DESTINATION, TOPIC, "symbol", symbol, "price", price),
+                Buffer.buffer("{}"));
+    }
+
+    @Test
+    void test_Selector_MatchesHeaders() {
+        Selector selector = Selector.compile("symbol = 'AAPL' AND price > 100");
+        Assertions.assertTrue(selector.matches(quote("AAPL", "101.5")));
+        Assertions.assertFalse(selector.matches(quote("AAPL", "99")));
+        Assertions.assertFalse(selector.matches(quote("MSFT", "101.5")));
+        Assertions.assertFalse(selector.matches(quote("AAPL", "n/a")));
+
+        Assertions.assertTrue(Selector.compile("symbol IN ('MSFT', 'GOOG') OR region IS NULL")
+                .matches(quote("AAPL", "1")));
+        Assertions.assertFalse(Selector.compile("NOT (symbol <> 'AAPL') AND region IS NOT NULL")
+                .matches(quote("AAPL", "1")));
+        Assertions.assertTrue(Selector.compile("price >= -1.5e1 and price <= 100").matches(quote("AAPL", "-15")));
+    }
+
+    @Test
+    void test_Selector_IsSharedAndIndexedByItsEquality() {
+        Selector selector = Selector.compile("price > 100 AND symbol = 'AAPL'");
+        Assertions.assertSame(selector, Selector.compile("price > 100 AND symbol = 'AAPL'"));
+        Assertions.assertEquals("symbol", selector.indexHeader());
+        Assertions.assertEquals("AAPL", selector.indexValue());
+        Assertions.assertNull(Selector.compile("symbol = 'AAPL' OR price > 100").indexHeader());
+        Assertions.assertNull(Selector.compile("NOT symbol = 'AAPL'").indexHeader());
+    }
+
+    @Test
+    void test_Selector_IsSharedAfterTheCacheFilledUp() {
+        for (int i = 0; i < 20_000; i++) {
+            Selector.compile("price > " + i);
+        }
+        Selector selector = Selector.compile("symbol = 'MSFT'");
+        Assertions.assertSame(selector, Selector.compile("symbol = 'MSFT'"));
+    }
+
+    @Test
+    void test_Selector_RejectsInvalidExpressions() {
+        for (String invalid : new String[]{"symbol =", "symbol = 'AAPL", "(symbol = 'AAPL'", "symbol ~ 1",
+                "= 1", "symbol = 'AAPL' price"}) {
+            Assertions.assertThrows(SelectorException.class, () -> Selector.compile(invalid), invalid);
+        }
+    }
+
+    @Test
+    void test_BroadcastTopic_DeliversToMatchingSubscriptionsOnly() {
+        BroadcastTopic topic = new BroadcastTopic(TOPIC);
+        StompServerConnection all = Mockito.mock(StompServerConnection.class);
+        StompServerConnection apple = Mockito.mock(StompServerConnection.class);
+        StompServerConnection expensive = Mockito.mock(StompServerConnection.class);
+        topic.subscribe(all, new Frame(Command.SUBSCRIBE, Headers.create(Frame.ID, "all",
+                Frame.DESTINATION, TOPIC), null));
+        topic.subscribe(apple, new Frame(Command.SUBSCRIBE, Headers.create(Frame.ID, "apple",
+                Frame.DESTINATION, TOPIC, Selector.HEADER, "symbol = 'AAPL'"), null));
+        topic.subscribe(expensive, new Frame(Command.SUBSCRIBE, Headers.create(Frame.ID, "expensive",
+                Frame.DESTINATION, TOPIC, Selector.HEADER, "price > 1000"), null));
+
+        topic.dispatch(null, quote("AAPL", "150"));
+        topic.dispatch(null, quote("MSFT", "300"));
+        topic.dispatch(null, quote("NVR", "5000"));
+
+        Mockito.verify(all, Mockito.times(3)).write(Mockito.any(Frame.class));
+        ArgumentCaptor<Frame> frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(apple).write(frames.capture());
+        Assertions.assertEquals("AAPL", frames.getValue().getHeader("symbol"));
+        Assertions.assertEquals("apple", frames.getValue().getHeader(Frame.SUBSCRIPTION));
+        Mockito.verify(expensive).write(frames.capture());
+        Assertions.assertEquals("NVR", frames.getValue().getHeader("symbol"));
+    }
+}
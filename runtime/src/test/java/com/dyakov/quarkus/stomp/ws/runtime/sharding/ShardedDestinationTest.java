@@ -0,0 +1,124 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sharding;
+
+import com.dyakov.quarkus.stomp.ws.runtime.destinations.BroadcastTopic;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Destination;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+class ShardedDestinationTest {
+
+    static final String TOPIC = "/channels/quotes";
+
+    Vertx vertx;
+    StompShards shards;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(4));
+        shards = StompShards.create(vertx, 16);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    <T> T onShard(int index, Supplier<T> task) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        shards.get(index).context().runOnContext(v -> result.complete(task.get()));
+        return result.get(5, TimeUnit.SECONDS);
+    }
+
+    Frame subscribe(String id) {
+        return new Frame(Command.SUBSCRIBE, Headers.create(Frame.ID, id, Frame.DESTINATION, TOPIC), null);
+    }
+
+    Frame send(String body) {
+        return new Frame(Command.SEND, Headers.create(Frame.DESTINATION, TOPIC), Buffer.buffer(body));
+    }
+
+    /**
+     * A subscriber which records the threads its frames are written on.
+     */
+    StompServerConnection subscriber(List<Thread> threads) {
+        StompServerConnection connection = Mockito.mock(StompServerConnection.class);
+        Mockito.when(connection.write(Mockito.any(Frame.class))).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            return connection;
+        });
+        return connection;
+    }
+
+    @Test
+    void test_ShardedDestination_DeliversOnTheEventLoopOfEachSubscriber() throws Exception {
+        Assertions.assertEquals(4, shards.size());
+        ShardedDestination topic = new ShardedDestination(TOPIC, shards, () -> new BroadcastTopic(TOPIC), false);
+        List<Thread> first = new CopyOnWriteArrayList<>();
+        List<Thread> second = new CopyOnWriteArrayList<>();
+        StompServerConnection firstConnection = subscriber(first);
+        StompServerConnection secondConnection = subscriber(second);
+        Thread firstThread = onShard(1, () -> {
+            topic.subscribe(firstConnection, subscribe("sub-0"));
+            return Thread.currentThread();
+        });
+        Thread secondThread = onShard(2, () -> {
+            topic.subscribe(secondConnection, subscribe("sub-0"));
+            return Thread.currentThread();
+        });
+        Assertions.assertEquals(2, topic.numberOfSubscriptions());
+
+        onShard(0, () -> topic.dispatch(null, send("quote")));
+
+        Mockito.verify(firstConnection, Mockito.timeout(5000)).write(Mockito.any(Frame.class));
+        Mockito.verify(secondConnection, Mockito.timeout(5000)).write(Mockito.any(Frame.class));
+        Assertions.assertEquals(List.of(firstThread), first);
+        Assertions.assertEquals(List.of(secondThread), second);
+
+        onShard(1, () -> topic.unsubscribeConnection(firstConnection));
+        Assertions.assertEquals(1, topic.numberOfSubscriptions());
+    }
+
+    @Test
+    void test_ShardedDestination_QueueDeliversEveryFrameToOneShard() throws Exception {
+        ShardedDestination queue = new ShardedDestination(TOPIC, shards, () -> Destination.queue(vertx, TOPIC), true);
+        List<Thread> first = new CopyOnWriteArrayList<>();
+        List<Thread> second = new CopyOnWriteArrayList<>();
+        StompServerConnection firstConnection = subscriber(first);
+        StompServerConnection secondConnection = subscriber(second);
+        onShard(1, () -> queue.subscribe(firstConnection, subscribe("sub-0")));
+        onShard(3, () -> queue.subscribe(secondConnection, subscribe("sub-0")));
+
+        onShard(0, () -> {
+            for (int i = 0; i < 8; i++) {
+                queue.dispatch(null, send("order-" + i));
+            }
+            return null;
+        });
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (first.size() + second.size() < 8) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "Frames were not delivered");
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        Assertions.assertEquals(8, first.size() + second.size());
+        Assertions.assertFalse(first.isEmpty());
+        Assertions.assertFalse(second.isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerOptions;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class SockJsBroadcastFrameTest {
+
+    @Test
+    void test_SockJsBroadcastFrame_SplicesSubscriberHeaders() {
+        Frame send = new Frame(Command.SEND,
+                Headers.create(Frame.DESTINATION, "/channels/quotes", "note", "\"quoted\" é"),
+                Buffer.buffer("{\"symbol\":\"AAPL\",\"name\":\"é \"}"));
+        SockJsBroadcastFrame broadcast = SockJsBroadcastFrame.create(send);
+
+        List<Frame> frames = new ArrayList<>();
+        SockJsFrameParser parser = new SockJsFrameParser(new StompServerOptions());
+        parser.handler(frames::add);
+        for (int i = 0; i < 2; i++) {
+            ByteBuf message = broadcast.encodeFor("sub-" + i, "id-" + i, i == 1, false);
+            Assertions.assertEquals('a', message.getByte(0));
+            // drop the leading "a" SockJS frame type, the client side parser expects the bare array
+            parser.handle(Buffer.buffer(message.slice(1, message.readableBytes() - 1).copy()));
+            message.release();
+        }
+        broadcast.release();
+
+        Assertions.assertEquals(2, frames.size());
+        for (int i = 0; i < 2; i++) {
+            Frame message = frames.get(i);
+            Assertions.assertEquals(Command.MESSAGE, message.getCommand());
+            Assertions.assertEquals("/channels/quotes", message.getHeader(Frame.DESTINATION));
+            Assertions.assertEquals("\"quoted\" é", message.getHeader("note"));
+            Assertions.assertEquals("sub-" + i, message.getHeader(Frame.SUBSCRIPTION));
+            Assertions.assertEquals("id-" + i, message.getHeader(Frame.MESSAGE_ID));
+            Assertions.assertEquals(send.getBodyAsString(), message.getBodyAsString());
+        }
+        Assertions.assertNull(frames.get(0).getHeader(Frame.ACK));
+        Assertions.assertEquals("id-1", frames.get(1).getHeader(Frame.ACK));
+    }
+}
@@ -0,0 +1,41 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+class SockJsFrameEncoderTest {
+
+    String encode(String... frames) {
+        Buffer[] buffers = new Buffer[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            buffers[i] = Buffer.buffer(frames[i]);
+        }
+        ByteBuf message = SockJsFrameEncoder.encode(buffers);
+        try {
+            return message.toString(StandardCharsets.UTF_8);
+        } finally {
+            message.release();
+        }
+    }
+
+    @Test
+    void test_SockJsFrameEncoder_QuotesStompFrame() {
+        Assertions.assertEquals("a[\"MESSAGE\\ndestination:/channels\\n\\n{\\\"k\\\":\\\"v\\\\\\\"}\\u0000\"]",
+                encode("MESSAGE\ndestination:/channels\n\n{\"k\":\"v\\\"}\u0000"));
+    }
+
+    @Test
+    void test_SockJsFrameEncoder_EscapesSockJsSpecialCharacters() {
+        Assertions.assertEquals("a[\"é€\\u2028\\u200d\\ufff0\\ud83d\\ude00\\b\\t\\u001f\"]",
+                encode("\u00e9\u20ac\u2028\u200d\ufff0\ud83d\ude00\b\t\u001f"));
+    }
+
+    @Test
+    void test_SockJsFrameEncoder_EncodesSeveralFrames() {
+        Assertions.assertEquals("a[\"first\",\"second\"]", encode("first", "second"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.StompServerOptions;
+import io.vertx.ext.stomp.impl.FrameException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class SockJsFrameParserTest {
+
+    List<Frame> frames = new ArrayList<>();
+    List<FrameException> errors = new ArrayList<>();
+
+    SockJsFrameParser parser() {
+        SockJsFrameParser parser = new SockJsFrameParser(new StompServerOptions());
+        parser.handler(frames::add).errorHandler(errors::add);
+        return parser;
+    }
+
+    @Test
+    void test_SockJsFrameParser_DecodesEveryElementOfTheArray() {
+        parser().handle(Buffer.buffer("[\"SEND\\ndestination:/channels/a\\n\\nfirst\\u0000\","
+                + "\"SEND\\ndestination:/channels/b\\n\\nsecond\\u0000\"]"));
+
+        Assertions.assertEquals(2, frames.size());
+        Assertions.assertEquals(Command.SEND, frames.get(0).getCommand());
+        Assertions.assertEquals("/channels/a", frames.get(0).getHeader(Frame.DESTINATION));
+        Assertions.assertEquals("first", frames.get(0).getBodyAsString());
+        Assertions.assertEquals("/channels/b", frames.get(1).getHeader(Frame.DESTINATION));
+        Assertions.assertEquals("second", frames.get(1).getBodyAsString());
+    }
+
+    @Test
+    void test_SockJsFrameParser_UnescapesJsonAndUnicode() {
+        parser().handle(Buffer.buffer("[\"SEND\\ndestination:/channels\\n\\n{\\\"k\\\":\\\"\\u00e9\\u20ac\\ud83d\\ude00\\\\\\/\\\"}\\u0000\"]"));
+
+        Assertions.assertEquals(1, frames.size());
+        Assertions.assertEquals("{\"k\":\"é€😀\\/\"}", frames.get(0).getBodyAsString());
+    }
+
+    @Test
+    void test_SockJsFrameParser_HandlesMessageSplitAcrossBuffers() {
+        SockJsFrameParser parser = parser();
+        String message = "[\"SUBSCRIBE\\nid:0\\ndestination:/channels\\n\\n\\u0000\"]";
+        for (int i = 0; i < message.length(); i++) {
+            parser.handle(Buffer.buffer(message.substring(i, i + 1)));
+        }
+
+        Assertions.assertEquals(1, frames.size());
+        Assertions.assertEquals(Command.SUBSCRIBE, frames.get(0).getCommand());
+        Assertions.assertEquals("0", frames.get(0).getHeader(Frame.ID));
+    }
+
+    @Test
+    void test_SockJsFrameParser_ReportsMalformedMessage() {
+        parser().handle(Buffer.buffer("{\"SEND\"}"));
+
+        Assertions.assertTrue(frames.isEmpty());
+        Assertions.assertEquals(1, errors.size());
+    }
+}
@@ -0,0 +1,125 @@
+package com.dyakov.quarkus.stomp.ws.runtime.sockjs;
+
+import com.dyakov.quarkus.stomp.ws.runtime.StompConnectionOptions;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueuePolicy;
+import com.dyakov.quarkus.stomp.ws.runtime.backpressure.WriteQueueStats;
+import com.dyakov.quarkus.stomp.ws.runtime.metrics.StompMetrics;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.stomp.StompServer;
+import io.vertx.ext.stomp.StompServerHandler;
+import io.vertx.ext.stomp.StompServerOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+
+class SockJsXhrConnectionTest {
+
+    Vertx vertx;
+    StompServer server;
+    StompServerHandler handler;
+    StompConnectionOptions connectionOptions;
+    SockJsSessions sessions;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        handler = Mockito.mock(StompServerHandler.class);
+        server = Mockito.mock(StompServer.class);
+        Mockito.when(server.options()).thenReturn(new StompServerOptions());
+        Mockito.when(server.stompHandler()).thenReturn(handler);
+        connectionOptions = new StompConnectionOptions();
+        sessions = new SockJsSessions(vertx, connectionOptions);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    SockJsXhrConnection open(String key) {
+        return sessions.open(key, k -> new SockJsXhrConnection(k, server, null, vertx, connectionOptions,
+                new WriteQueueStats(), StompMetrics.NOOP, sessions));
+    }
+
+    @Test
+    void test_SockJsXhrConnection_PollReceivesPendingFramesAsOneMessage() {
+        SockJsXhrConnection connection = open("000/poll");
+        connection.write(Buffer.buffer("one"));
+        connection.write(Buffer.buffer("two\n"));
+
+        HttpServerResponse poll = Mockito.mock(HttpServerResponse.class);
+        connection.attach(poll, false);
+
+        ArgumentCaptor<Buffer> body = ArgumentCaptor.forClass(Buffer.class);
+        Mockito.verify(poll).end(body.capture());
+        Assertions.assertEquals("a[\"one\",\"two\\n\"]\n", body.getValue().toString());
+    }
+
+    @Test
+    void test_SockJsXhrConnection_SecondReceiverIsTurnedDown() {
+        SockJsXhrConnection connection = open("000/twice");
+        HttpServerResponse first = Mockito.mock(HttpServerResponse.class);
+        HttpServerResponse second = Mockito.mock(HttpServerResponse.class);
+
+        connection.attach(first, true);
+        connection.attach(second, false);
+
+        Mockito.verify(second).end(SockJsXhrConnection.ANOTHER_CONNECTION);
+        Mockito.verify(first, Mockito.never()).end(Mockito.any(Buffer.class));
+    }
+
+    @Test
+    void test_SockJsXhrConnection_StreamingEndsAfterLimit() {
+        connectionOptions.setSockJsStreamingLimitBytes(16);
+        SockJsXhrConnection connection = open("000/stream");
+        HttpServerResponse stream = Mockito.mock(HttpServerResponse.class);
+        connection.attach(stream, true);
+
+        connection.write(Buffer.buffer("short"));
+        Mockito.verify(stream, Mockito.timeout(5000)).write(Buffer.buffer("a[\"short\"]\n"));
+
+        connection.write(Buffer.buffer("over the limit"));
+        Mockito.verify(stream, Mockito.timeout(5000)).end(Buffer.buffer("a[\"over the limit\"]\n"));
+    }
+
+    @Test
+    void test_SockJsXhrConnection_ClosedSessionAnswersWithCloseFrame() {
+        SockJsXhrConnection connection = open("000/closed");
+        connection.write(Buffer.buffer("bye"));
+        connection.close();
+        Mockito.verify(handler).onClose(connection);
+
+        HttpServerResponse poll = Mockito.mock(HttpServerResponse.class);
+        connection.attach(poll, false);
+
+        Mockito.verify(poll).end(Buffer.buffer("a[\"bye\"]\nc[3000,\"Go away!\"]\n"));
+        Assertions.assertNull(sessions.get("000/closed"));
+    }
+
+    @Test
+    void test_SockJsXhrConnection_AppliesTheWriteQueuePolicyWithoutReceiver() {
+        connectionOptions.setWriteQueueMaxBytes(16);
+        connectionOptions.setWriteQueuePolicy(WriteQueuePolicy.DROP_OLDEST);
+        WriteQueueStats stats = new WriteQueueStats();
+        SockJsXhrConnection connection = sessions.open("000/slow", k -> new SockJsXhrConnection(k, server, null,
+                vertx, connectionOptions, stats, StompMetrics.NOOP, sessions));
+        connection.write(Buffer.buffer("first"));
+        connection.write(Buffer.buffer("second"));
+        connection.write(Buffer.buffer("third"));
+        Assertions.assertEquals(1, stats.getDroppedFrames());
+        Assertions.assertEquals(0, stats.getDisconnects());
+
+        HttpServerResponse poll = Mockito.mock(HttpServerResponse.class);
+        connection.attach(poll, false);
+        Mockito.verify(poll).end(Buffer.buffer("a[\"second\",\"third\"]\n"));
+        Assertions.assertEquals(0, stats.getQueuedBytes());
+        Mockito.verify(handler, Mockito.never()).onClose(connection);
+    }
+}
@@ -0,0 +1,128 @@
+package com.dyakov.quarkus.stomp.ws.runtime.transactions;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.stomp.Command;
+import io.vertx.ext.stomp.Frame;
+import io.vertx.ext.stomp.ServerFrame;
+import io.vertx.ext.stomp.StompServerConnection;
+import io.vertx.ext.stomp.impl.ServerFrameImpl;
+import io.vertx.ext.stomp.utils.Headers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class StagedTransactionsTest {
+
+    static final String TX = "tx-0";
+
+    Vertx vertx;
+    StompServerConnection connection;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        connection = Mockito.mock(StompServerConnection.class);
+        Mockito.when(connection.session()).thenReturn("session-0");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    ServerFrame frame(Command command, String... headers) {
+        return new ServerFrameImpl(new Frame(command, Headers.create(headers), null), connection);
+    }
+
+    ServerFrame send(String destination, String body) {
+        return new ServerFrameImpl(new Frame(Command.SEND, Headers.create(Frame.DESTINATION, destination,
+                Frame.TRANSACTION, TX, Frame.RECEIPT, "r-" + body), Buffer.buffer(body)), connection);
+    }
+
+    void assertClosedWith(String message) {
+        ArgumentCaptor<Frame> frames = ArgumentCaptor.forClass(Frame.class);
+        Mockito.verify(connection, Mockito.atLeastOnce()).write(frames.capture());
+        Frame error = frames.getValue();
+        Assertions.assertEquals(Command.ERROR, error.getCommand());
+        Assertions.assertEquals(message, error.getHeader(Frame.MESSAGE));
+        Mockito.verify(connection).close();
+    }
+
+    @Test
+    void test_StagedTransactions_CommitsTheStagedFramesInOrder() {
+        StagedTransactions transactions = new StagedTransactions(vertx, 10, 1024 * 1024, 0);
+        transactions.begin(frame(Command.BEGIN, Frame.TRANSACTION, TX));
+        transactions.stage(send("/queues/orders", "order-0"));
+        transactions.stage(frame(Command.ACK, Frame.ID, "42", Frame.TRANSACTION, TX));
+        transactions.stage(send("/queues/orders", "order-1"));
+        Assertions.assertEquals(1, transactions.transactions(connection));
+        Assertions.assertTrue(transactions.stagedBytes(connection) > 0);
+        // the RECEIPTs of the staged SEND frames
+        Mockito.verify(connection, Mockito.times(2)).write(Mockito.any(Frame.class));
+
+        List<Frame> frames = transactions.commit(frame(Command.COMMIT, Frame.TRANSACTION, TX));
+        Assertions.assertEquals(3, frames.size());
+        Assertions.assertEquals(Command.SEND, frames.get(0).getCommand());
+        Assertions.assertEquals("order-0", frames.get(0).getBodyAsString());
+        Assertions.assertEquals("/queues/orders", frames.get(0).getDestination());
+        Assertions.assertNull(frames.get(0).getTransaction());
+        Assertions.assertNull(frames.get(0).getReceipt());
+        Assertions.assertEquals(Command.ACK, frames.get(1).getCommand());
+        Assertions.assertEquals("42", frames.get(1).getId());
+        Assertions.assertNull(frames.get(1).getBody());
+        Assertions.assertEquals("order-1", frames.get(2).getBodyAsString());
+        Assertions.assertEquals(0, transactions.transactions(connection));
+        Assertions.assertEquals(0, transactions.stagedBytes(connection));
+
+        Assertions.assertNull(transactions.commit(frame(Command.COMMIT, Frame.TRANSACTION, TX)));
+        assertClosedWith("No transaction");
+    }
+
+    @Test
+    void test_StagedTransactions_ClosesTheConnectionOverALimit() {
+        StagedTransactions transactions = new StagedTransactions(vertx, 2, 1024 * 1024, 0);
+        transactions.begin(frame(Command.BEGIN, Frame.TRANSACTION, TX));
+        transactions.stage(send("/queues/orders", "order-0"));
+        transactions.stage(send("/queues/orders", "order-1"));
+        transactions.stage(send("/queues/orders", "order-2"));
+        assertClosedWith("Transaction too large");
+        Assertions.assertEquals(0, transactions.transactions(connection));
+
+        connection = Mockito.mock(StompServerConnection.class);
+        Mockito.when(connection.session()).thenReturn("session-1");
+        transactions = new StagedTransactions(vertx, 1000, 64, 0);
+        transactions.begin(frame(Command.BEGIN, Frame.TRANSACTION, TX));
+        transactions.stage(send("/queues/orders", "x".repeat(100)));
+        assertClosedWith("Transaction too large");
+        Assertions.assertEquals(0, transactions.stagedBytes(connection));
+    }
+
+    @Test
+    void test_StagedTransactions_ReleasesAbortedAndExpiredTransactions() {
+        StagedTransactions transactions = new StagedTransactions(vertx, 10, 1024 * 1024, 60_000);
+        transactions.begin(frame(Command.BEGIN, Frame.TRANSACTION, TX));
+        transactions.stage(send("/queues/orders", "order-0"));
+        transactions.abort(frame(Command.ABORT, Frame.TRANSACTION, TX));
+        Assertions.assertEquals(0, transactions.transactions(connection));
+        Assertions.assertEquals(0, transactions.stagedBytes(connection));
+
+        transactions.begin(frame(Command.BEGIN, Frame.TRANSACTION, TX));
+        transactions.begin(frame(Command.BEGIN, Frame.TRANSACTION, "tx-1"));
+        transactions.stage(send("/queues/orders", "order-1"));
+        Assertions.assertEquals(0, transactions.expire(System.nanoTime()));
+        Assertions.assertEquals(2, transactions.expire(System.nanoTime() + TimeUnit.MINUTES.toNanos(2)));
+        Assertions.assertEquals(0, transactions.stagedBytes(connection));
+        Mockito.verify(connection, Mockito.never()).close();
+
+        transactions.begin(frame(Command.BEGIN, Frame.TRANSACTION, TX));
+        transactions.release(connection);
+        Assertions.assertEquals(0, transactions.transactions(connection));
+    }
+}